@@ -1,18 +1,28 @@
 package be.uzleuven.ihe.dicom.convertor.fhir;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import org.hl7.fhir.r5.model.Bundle;
 
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import static be.uzleuven.ihe.singletons.HAPI.FHIR_R5_CONTEXT;
@@ -20,15 +30,27 @@ import static be.uzleuven.ihe.singletons.HAPI.FHIR_R5_CONTEXT;
 /**
  * Batch converter for processing multiple DICOM MADO files to FHIR format.
  *
- * Processes all .dcm files in a source directory and converts them to FHIR JSON bundles
- * in a target directory.
+ * Processes all .dcm files in a source directory tree and converts them to FHIR JSON bundles
+ * in a target directory. Subdirectories are mirrored, so files with the same name in different
+ * subdirectories don't overwrite each other.
+ *
+ * Files are converted in parallel on a work-stealing {@link ForkJoinPool}. The directory walk is
+ * streamed and at most a few files per thread are in flight, so memory stays bounded for archives
+ * of any size. Each thread reuses its own JSON parser and encodes straight to the output file.
  *
  * Usage: java MADOBatchConverter <input-directory> <output-directory>
  */
 public class MADOBatchConverter {
 
+    /** Files submitted but not yet converted, per thread */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
     private final MADOToFHIRConverter converter;
     private final boolean prettyPrint;
+    private final int threads;
+
+    /** HAPI parsers are not thread-safe, so every worker keeps its own */
+    private final ThreadLocal<IParser> parsers = ThreadLocal.withInitial(this::newParser);
 
     public MADOBatchConverter() {
         this(true, true);
@@ -45,9 +67,24 @@ public class MADOBatchConverter {
      * @param useDeterministicUuids Whether to use deterministic UUID generation (default: true)
      */
     public MADOBatchConverter(boolean prettyPrint, boolean useDeterministicUuids) {
+        this(prettyPrint, useDeterministicUuids, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch converter with configurable options.
+     *
+     * @param prettyPrint Whether to pretty-print FHIR JSON output
+     * @param useDeterministicUuids Whether to use deterministic UUID generation
+     * @param threads Number of files converted concurrently (default: number of processors)
+     */
+    public MADOBatchConverter(boolean prettyPrint, boolean useDeterministicUuids, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
         this.converter = new MADOToFHIRConverter();
         this.converter.setUseDeterministicUuids(useDeterministicUuids);
         this.prettyPrint = prettyPrint;
+        this.threads = threads;
     }
 
     /**
@@ -76,60 +113,59 @@ public class MADOBatchConverter {
             System.out.println("Created output directory: " + outputPath);
         }
 
-        // Find all .dcm files
-        List<Path> dicomFiles = new ArrayList<>();
-        try (Stream<Path> paths = Files.walk(inputPath)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.toString().toLowerCase().endsWith(".dcm"))
-                 .forEach(dicomFiles::add);
-        }
-
-        if (dicomFiles.isEmpty()) {
-            System.out.println("No DICOM files (.dcm) found in: " + inputDir);
-            return new ConversionResult(0, 0, new ArrayList<>());
-        }
-
-        System.out.println("Found " + dicomFiles.size() + " DICOM file(s) to convert");
         System.out.println("Input directory: " + inputPath.toAbsolutePath());
         System.out.println("Output directory: " + outputPath.toAbsolutePath());
+        System.out.println("Threads: " + threads);
         System.out.println();
 
-        // Process each file
-        int successCount = 0;
-        int failureCount = 0;
-        List<ConversionError> errors = new ArrayList<>();
-
-        for (Path dicomFile : dicomFiles) {
-            String fileName = dicomFile.getFileName().toString();
-            String outputFileName = fileName.replaceAll("\\.dcm$", ".json");
-            Path outputFile = outputPath.resolve(outputFileName);
-
-            try {
-                System.out.print("Converting: " + fileName + " ... ");
+        AtomicInteger successCount = new AtomicInteger();
+        AtomicInteger failureCount = new AtomicInteger();
+        AtomicLong resourceCount = new AtomicLong();
+        ConcurrentLinkedQueue<ConversionError> errors = new ConcurrentLinkedQueue<>();
 
-                // Convert DICOM to FHIR
-                Bundle bundle = converter.convert(dicomFile.toFile());
-
-                // Write FHIR bundle to file
-                IParser parser = FHIR_R5_CONTEXT.newJsonParser();
-                parser.setPrettyPrint(prettyPrint);
-                // Preserve resource IDs in Bundle entries for round-trip consistency
-                parser.setOverrideResourceIdWithBundleEntryFullUrl(false);
-                String json = parser.encodeResourceToString(bundle);
-
-                try (OutputStreamWriter writer = new OutputStreamWriter(
-                        new FileOutputStream(outputFile.toFile()), StandardCharsets.UTF_8)) {
-                    writer.write(json);
-                }
-
-                System.out.println("SUCCESS (" + bundle.getEntry().size() + " resources)");
-                successCount++;
-
-            } catch (Exception e) {
-                System.out.println("FAILED: " + e.getMessage());
-                failureCount++;
-                errors.add(new ConversionError(fileName, e));
+        // Stream the walk: submit files as they are found, with a bounded number in flight
+        int total = 0;
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore inFlight = new Semaphore(threads * IN_FLIGHT_PER_THREAD);
+        try (Stream<Path> paths = Files.walk(inputPath)) {
+            Iterator<Path> it = paths
+                .filter(Files::isRegularFile)
+                .filter(p -> p.toString().toLowerCase().endsWith(".dcm"))
+                .iterator();
+            while (it.hasNext()) {
+                Path dicomFile = it.next();
+                inFlight.acquire();
+                total++;
+                pool.execute(() -> {
+                    try {
+                        convertFile(inputPath, dicomFile, outputPath, successCount, failureCount, resourceCount, errors);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            throw new InterruptedIOException("Batch conversion interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting for the files in flight
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            throw new InterruptedIOException("Batch conversion interrupted");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (total == 0) {
+            System.out.println("No DICOM files (.dcm) found in: " + inputDir);
+            return new ConversionResult(0, 0, new ArrayList<>());
         }
 
         // Print summary
@@ -137,20 +173,71 @@ public class MADOBatchConverter {
         System.out.println("=".repeat(60));
         System.out.println("Conversion Summary");
         System.out.println("=".repeat(60));
-        System.out.println("Total files:    " + dicomFiles.size());
-        System.out.println("Successful:     " + successCount);
-        System.out.println("Failed:         " + failureCount);
+        System.out.println("Total files:    " + total);
+        System.out.println("Successful:     " + successCount.get());
+        System.out.println("Failed:         " + failureCount.get());
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        System.out.println(String.format(Locale.ROOT, "Throughput:     %.1f files/s, %.1f resources/s (%.1f s, %d threads)",
+            total / seconds, resourceCount.get() / seconds, elapsedMillis / 1000.0, threads));
         System.out.println();
 
-        if (!errors.isEmpty()) {
+        List<ConversionError> errorList = new ArrayList<>(errors);
+        if (!errorList.isEmpty()) {
             System.out.println("Errors:");
-            for (ConversionError error : errors) {
+            for (ConversionError error : errorList) {
                 System.out.println("  - " + error.fileName + ": " + error.exception.getMessage());
             }
             System.out.println();
         }
 
-        return new ConversionResult(successCount, failureCount, errors);
+        return new ConversionResult(successCount.get(), failureCount.get(), errorList);
+    }
+
+    /**
+     * Convert one file to the same relative path under the output directory. Runs on a pool thread.
+     */
+    private void convertFile(Path inputPath, Path dicomFile, Path outputPath, AtomicInteger successCount,
+                             AtomicInteger failureCount, AtomicLong resourceCount,
+                             ConcurrentLinkedQueue<ConversionError> errors) {
+        Path relative = inputPath.relativize(dicomFile);
+        String fileName = relative.toString();
+        String outputFileName = dicomFile.getFileName().toString().replaceAll("\\.dcm$", ".json");
+        Path outputFile = relative.getParent() == null
+            ? outputPath.resolve(outputFileName)
+            : outputPath.resolve(relative.getParent()).resolve(outputFileName);
+
+        try {
+            if (relative.getParent() != null) {
+                Files.createDirectories(outputFile.getParent());
+            }
+
+            // Convert DICOM to FHIR
+            Bundle bundle = converter.convert(dicomFile.toFile());
+
+            // Encode the FHIR bundle straight to the file
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(outputFile.toFile()), StandardCharsets.UTF_8), 64 * 1024)) {
+                parsers.get().encodeResourceToWriter(bundle, writer);
+            }
+
+            int resources = bundle.getEntry().size();
+            resourceCount.addAndGet(resources);
+            successCount.incrementAndGet();
+            System.out.println("Converting: " + fileName + " ... SUCCESS (" + resources + " resources)");
+
+        } catch (Exception e) {
+            failureCount.incrementAndGet();
+            errors.add(new ConversionError(fileName, e));
+            System.out.println("Converting: " + fileName + " ... FAILED: " + e.getMessage());
+        }
+    }
+
+    private IParser newParser() {
+        IParser parser = FHIR_R5_CONTEXT.newJsonParser();
+        parser.setPrettyPrint(prettyPrint);
+        // Preserve resource IDs in Bundle entries for round-trip consistency
+        parser.setOverrideResourceIdWithBundleEntryFullUrl(false);
+        return parser;
     }
 
     /**
@@ -166,6 +253,7 @@ public class MADOBatchConverter {
         String outputDir = args[1];
         boolean prettyPrint = true;
         boolean useDeterministicUuids = true; // Default: deterministic UUIDs enabled
+        int threads = Runtime.getRuntime().availableProcessors();
 
         // Check for flags
         for (int i = 2; i < args.length; i++) {
@@ -173,11 +261,21 @@ public class MADOBatchConverter {
                 prettyPrint = false;
             } else if ("--random-uuids".equals(args[i])) {
                 useDeterministicUuids = false;
+            } else if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Error: --threads must be a positive integer");
+                    System.exit(1);
+                }
             }
         }
 
         try {
-            MADOBatchConverter batchConverter = new MADOBatchConverter(prettyPrint, useDeterministicUuids);
+            MADOBatchConverter batchConverter = new MADOBatchConverter(prettyPrint, useDeterministicUuids, threads);
             ConversionResult result = batchConverter.convertDirectory(inputDir, outputDir);
 
             // Exit with error code if any conversions failed
@@ -214,6 +312,7 @@ public class MADOBatchConverter {
         System.out.println("Options:");
         System.out.println("  --compact       Output compact JSON (no pretty printing)");
         System.out.println("  --random-uuids  Use random UUIDs instead of deterministic UUIDs (default: deterministic)");
+        System.out.println("  --threads <N>   Files converted in parallel (default: number of processors)");
         System.out.println();
         System.out.println("Note:");
         System.out.println("  By default, UUIDs are generated deterministically based on DICOM identifiers.");
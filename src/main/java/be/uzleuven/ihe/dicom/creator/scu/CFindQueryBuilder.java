@@ -74,14 +74,19 @@ public class CFindQueryBuilder {
      * Requests comprehensive metadata for high-quality MADO manifests.
      *
      * @param studyInstanceUid The Study Instance UID
-     * @param seriesInstanceUid The Series Instance UID
+     * @param seriesInstanceUid The Series Instance UID (null to match the instances of all series)
      * @return Attributes containing the query keys
      */
     public static Attributes buildInstanceQuery(String studyInstanceUid, String seriesInstanceUid) {
         Attributes keys = new Attributes();
         keys.setString(Tag.QueryRetrieveLevel, VR.CS, "IMAGE");
         keys.setString(Tag.StudyInstanceUID, VR.UI, studyInstanceUid);
-        keys.setString(Tag.SeriesInstanceUID, VR.UI, seriesInstanceUid);
+
+        if (seriesInstanceUid != null && !seriesInstanceUid.trim().isEmpty()) {
+            keys.setString(Tag.SeriesInstanceUID, VR.UI, seriesInstanceUid);
+        } else {
+            keys.setNull(Tag.SeriesInstanceUID, VR.UI);
+        }
 
         // Required identifiers
         keys.setNull(Tag.SOPInstanceUID, VR.UI);
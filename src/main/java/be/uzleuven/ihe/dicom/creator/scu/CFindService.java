@@ -7,17 +7,51 @@ import org.dcm4che3.net.pdu.AAssociateRQ;
 import org.dcm4che3.net.pdu.PresentationContext;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Handles DICOM C-FIND network operations.
  * Encapsulates the complexity of dcm4che3 networking logic.
+ *
+ * One instance is a long-lived query client: it owns a single Device and keeps a small
+ * pool of associations to the called AE. Concurrent queries are multiplexed on an
+ * association with their own message IDs, up to the negotiated max-ops-invoked;
+ * associations idle for longer than {@link DefaultMetadata#associationIdleTimeout}
+ * are released. Share one instance between manifest creators instead of creating
+ * one per query, and {@link #close()} it when done.
+ *
+ * The response timeout applies per query: a query that gets no response for that long is
+ * cancelled (C-CANCEL) and fails, while the other queries on its association continue.
  */
-public class CFindService {
+public class CFindService implements AutoCloseable {
 
     private final DefaultMetadata config;
+    private final List<PooledAssociation> associations = new ArrayList<>();
+    /** Associations being connected outside the lock; they count against the pool size */
+    private int opening = 0;
+
+    private Device device;
+    private ApplicationEntity ae;
+    private ExecutorService executorService;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ExecutorService queryExecutor;
+    private boolean closed = false;
 
     public CFindService(DefaultMetadata config) {
         this.config = config;
@@ -33,56 +67,43 @@ public class CFindService {
     public CFindResult performCFind(Attributes keys) throws IOException {
         CFindResult result = new CFindResult();
 
-        Device device = new Device("dicompolice-scu");
-        Connection conn = new Connection();
-        device.addConnection(conn);
-
-        ApplicationEntity ae = new ApplicationEntity(config.callingAET);
-        device.addApplicationEntity(ae);
-        ae.addConnection(conn);
-
-        // Create executor services
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-        device.setExecutor(executorService);
-        device.setScheduledExecutor(scheduledExecutorService);
-
+        PooledAssociation pooled = null;
         try {
-            // Configure remote connection
-            Connection remote = new Connection();
-            remote.setHostname(config.remoteHost);
-            remote.setPort(config.remotePort);
-
-            // Configure timeouts
-            conn.setConnectTimeout(config.connectTimeout);
-            conn.setResponseTimeout(config.responseTimeout);
-
-            // Create association request
-            AAssociateRQ rq = new AAssociateRQ();
-            rq.setCallingAET(config.callingAET);
-            rq.setCalledAET(config.calledAET);
+            pooled = acquire();
+            Association as = pooled.association;
 
-            // Add presentation context for Study Root Query/Retrieve
-            rq.addPresentationContext(
-                    new PresentationContext(1,
-                            org.dcm4che3.data.UID.StudyRootQueryRetrieveInformationModelFind,
-                            org.dcm4che3.data.UID.ImplicitVRLittleEndian));
-
-            // Open association
-            Association as = ae.connect(remote, rq);
-
-            // Perform C-FIND
+            // Perform C-FIND; responses of other queries on the same association go to their own handlers
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicInteger finalStatus = new AtomicInteger(-1);
+            AtomicLong lastResponse = new AtomicLong(System.currentTimeMillis());
+            AtomicBoolean abandoned = new AtomicBoolean();
             DimseRSPHandler rspHandler = new DimseRSPHandler(as.nextMessageID()) {
                 @Override
                 public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
                     super.onDimseRSP(as, cmd, data);
                     int status = cmd.getInt(Tag.Status, -1);
+                    lastResponse.set(System.currentTimeMillis());
 
+                    if (abandoned.get()) {
+                        // Late responses of a timed out query; the final one removes the handler
+                        return;
+                    }
                     // Pending status means we have data
-                    if (status == Status.Pending && data != null) {
-                        result.addMatch(new Attributes(data));
+                    if (Status.isPending(status)) {
+                        if (data != null) {
+                            result.addMatch(new Attributes(data));
+                        }
+                    } else {
+                        finalStatus.set(status);
+                        done.countDown();
                     }
                 }
+
+                @Override
+                public void onClose(Association as) {
+                    super.onClose(as);
+                    done.countDown();
+                }
             };
 
             as.cfind(org.dcm4che3.data.UID.StudyRootQueryRetrieveInformationModelFind,
@@ -91,24 +112,338 @@ public class CFindService {
                     null, // TSuid
                     rspHandler);
 
-            // Wait for response
-            as.waitForOutstandingRSP();
-
-            // Release association
-            as.release();
+            // Wait for the final response; give up when the peer stays silent for the response timeout
+            long responseTimeout = Math.max(1, config.responseTimeout);
+            while (!done.await(responseTimeout, TimeUnit.MILLISECONDS)) {
+                if (System.currentTimeMillis() - lastResponse.get() >= responseTimeout) {
+                    // Fail only this query: the association is shared with other queries
+                    abandoned.set(true);
+                    try {
+                        rspHandler.cancel(as);
+                    } catch (IOException e) {
+                        // Association is unusable; the pool drops it
+                    }
+                    throw new IOException("No C-FIND response within " + responseTimeout + " ms");
+                }
+            }
+            int status = finalStatus.get();
+            if (status == -1) {
+                throw new IOException("Association closed before the final C-FIND response");
+            }
+            if (status != Status.Success) {
+                throw new IOException("C-FIND failed with status 0x" + Integer.toHexString(status));
+            }
 
             result.setSuccess(true);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setSuccess(false);
+            result.setErrorMessage("C-FIND interrupted");
+            throw new InterruptedIOException("C-FIND operation interrupted");
         } catch (Exception e) {
             result.setSuccess(false);
             result.setErrorMessage("C-FIND failed: " + e.getMessage());
             throw new IOException("C-FIND operation failed", e);
         } finally {
-            executorService.shutdown();
-            scheduledExecutorService.shutdown();
+            if (pooled != null) {
+                release(pooled);
+            }
         }
 
         return result;
     }
-}
 
+    /**
+     * Performs several C-FIND queries concurrently, e.g. one IMAGE-level query per series.
+     * At most {@code parallelism} queries are in flight, further capped by what the pool can
+     * carry ({@link DefaultMetadata#maxAssociations} x {@link DefaultMetadata#maxOpsInvoked}),
+     * so the total latency approaches that of the slowest query instead of the sum.
+     *
+     * @param queries C-FIND keys, one per query
+     * @param parallelism Maximum number of queries in flight
+     * @return Results in the order of {@code queries}
+     * @throws IOException if any query fails; remaining queries are not started
+     */
+    public List<CFindResult> performCFinds(List<Attributes> queries, int parallelism) throws IOException {
+        CFindResult[] results = new CFindResult[queries.size()];
+        int workers = Math.min(Math.max(1, Math.min(parallelism, poolCapacity())), queries.size());
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < results.length) {
+                try {
+                    results[i] = performCFind(queries.get(i));
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        // The calling thread is one of the workers
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 1; w < workers; w++) {
+            futures.add(queryExecutor().submit(worker));
+        }
+        worker.run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new InterruptedIOException("C-FIND operation interrupted"));
+                next.set(results.length);
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, new IOException("C-FIND operation failed", e.getCause()));
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Number of open pooled associations.
+     */
+    public synchronized int getOpenAssociationCount() {
+        return associations.size();
+    }
+
+    /**
+     * Release all pooled associations and stop the executors. Further queries fail.
+     */
+    @Override
+    public void close() {
+        List<PooledAssociation> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(associations);
+            associations.clear();
+            notifyAll();
+        }
+        for (PooledAssociation p : open) {
+            releaseQuietly(p.association);
+        }
+        shutdownExecutors();
+    }
+
+    private synchronized void shutdownExecutors() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+        }
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+        device = null;
+    }
+
+    // ============================================================================
+    // Association pool
+    // ============================================================================
+
+    /**
+     * Borrow the least loaded association that has a free operation slot, opening a new
+     * one while below the pool size. When the pool is full the least loaded association
+     * is shared anyway; dcm4che blocks the C-FIND until the peer has a free slot.
+     * The slot of a new association is reserved under the lock and the connect happens
+     * outside it, so a slow PACS doesn't stall queries on the associations already open.
+     */
+    private PooledAssociation acquire() throws Exception {
+        ApplicationEntity localAE;
+        synchronized (this) {
+            int max = Math.max(1, config.maxAssociations);
+            while (true) {
+                if (closed) {
+                    throw new IOException("C-FIND service closed");
+                }
+                associations.removeIf(p -> !p.association.isReadyForDataTransfer());
+
+                PooledAssociation best = null;
+                for (PooledAssociation p : associations) {
+                    if (best == null || p.active < best.active) {
+                        best = p;
+                    }
+                }
+
+                boolean canOpen = associations.size() + opening < max;
+                if (best != null && (!best.isBusy() || !canOpen)) {
+                    best.active++;
+                    return best;
+                }
+                if (canOpen) {
+                    opening++;
+                    localAE = localAE();
+                    break;
+                }
+                // Nothing open yet and every slot is being connected: wait for one of them
+                wait();
+            }
+        }
+
+        Association as = null;
+        try {
+            as = open(localAE);
+        } finally {
+            synchronized (this) {
+                opening--;
+                notifyAll();
+            }
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                PooledAssociation pooled = new PooledAssociation(as);
+                pooled.active++;
+                associations.add(pooled);
+                return pooled;
+            }
+        }
+        releaseQuietly(as);
+        throw new IOException("C-FIND service closed");
+    }
+
+    private synchronized void release(PooledAssociation pooled) {
+        pooled.active--;
+        pooled.lastUsed = System.currentTimeMillis();
+        if (!pooled.association.isReadyForDataTransfer()) {
+            associations.remove(pooled);
+        }
+    }
+
+    private void closeIdle() {
+        List<PooledAssociation> idle = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<PooledAssociation> it = associations.iterator();
+            while (it.hasNext()) {
+                PooledAssociation p = it.next();
+                if (!p.association.isReadyForDataTransfer()) {
+                    it.remove();
+                } else if (p.active == 0 && now - p.lastUsed > config.associationIdleTimeout) {
+                    it.remove();
+                    idle.add(p);
+                }
+            }
+        }
+        // Release outside the lock; A-RELEASE waits for the peer
+        for (PooledAssociation p : idle) {
+            releaseQuietly(p.association);
+        }
+    }
+
+    /**
+     * Number of queries the pool can carry at once.
+     */
+    private int poolCapacity() {
+        int associationCount = Math.max(1, config.maxAssociations);
+        return config.maxOpsInvoked <= 0 ? Integer.MAX_VALUE : associationCount * config.maxOpsInvoked;
+    }
+
+    private synchronized ExecutorService queryExecutor() throws IOException {
+        if (closed) {
+            throw new IOException("C-FIND service closed");
+        }
+        if (queryExecutor == null) {
+            queryExecutor = Executors.newCachedThreadPool(daemonThreads("cfind-query"));
+        }
+        return queryExecutor;
+    }
+
+    private Association open(ApplicationEntity localAE) throws Exception {
+        // Configure remote connection
+        Connection remote = new Connection();
+        remote.setHostname(config.remoteHost);
+        remote.setPort(config.remotePort);
+
+        // Create association request
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCallingAET(config.callingAET);
+        rq.setCalledAET(config.calledAET);
+        if (config.maxOpsInvoked != 1) {
+            // Propose asynchronous operations; 0 means unlimited
+            rq.setMaxOpsInvoked(Math.max(0, config.maxOpsInvoked));
+            rq.setMaxOpsPerformed(1);
+        }
+
+        // Add presentation context for Study Root Query/Retrieve
+        rq.addPresentationContext(
+                new PresentationContext(1,
+                        org.dcm4che3.data.UID.StudyRootQueryRetrieveInformationModelFind,
+                        org.dcm4che3.data.UID.ImplicitVRLittleEndian));
+
+        // Open association
+        return localAE.connect(remote, rq);
+    }
+
+    /**
+     * Lazily create the shared device and start the idle sweeper.
+     */
+    private ApplicationEntity localAE() {
+        if (device == null) {
+            device = new Device("dicompolice-scu");
+            Connection conn = new Connection();
+            device.addConnection(conn);
+
+            // Configure timeouts; the response timeout is enforced per query in performCFind,
+            // dcm4che's own would abort the association shared with other queries
+            conn.setConnectTimeout(config.connectTimeout);
+
+            ae = new ApplicationEntity(config.callingAET);
+            device.addApplicationEntity(ae);
+            ae.addConnection(conn);
+
+            // Daemon threads, so a forgotten close() never keeps a CLI JVM alive
+            executorService = Executors.newCachedThreadPool(daemonThreads("cfind-scu"));
+            scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(daemonThreads("cfind-scu-timer"));
+            device.setExecutor(executorService);
+            device.setScheduledExecutor(scheduledExecutorService);
+
+            long sweepInterval = Math.max(1000, config.associationIdleTimeout / 2);
+            scheduledExecutorService.scheduleWithFixedDelay(this::closeIdle,
+                    sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        }
+        return ae;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static void releaseQuietly(Association as) {
+        try {
+            if (as.isReadyForDataTransfer()) {
+                as.release();
+            }
+        } catch (IOException e) {
+            // Association is going away anyway
+        }
+    }
+
+    private static class PooledAssociation {
+        final Association association;
+        int active = 0;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledAssociation(Association association) {
+            this.association = association;
+        }
+
+        /** All negotiated operation slots are in use */
+        boolean isBusy() {
+            int maxOps = association.getMaxOpsInvoked();
+            return active >= (maxOps == 0 ? Integer.MAX_VALUE : maxOps);
+        }
+    }
+}
@@ -55,6 +55,25 @@ public class DefaultMetadata {
     /** Response timeout in milliseconds */
     public int responseTimeout = 10000;
 
+    /** Maximum number of pooled C-FIND associations to the remote SCP */
+    public int maxAssociations = 2;
+
+    /** Asynchronous operations (C-FINDs in flight) proposed per association; 0 = unlimited */
+    public int maxOpsInvoked = 4;
+
+    /** Idle time in milliseconds before a pooled C-FIND association is released */
+    public long associationIdleTimeout = 30000;
+
+    /** Number of per-series IMAGE-level C-FINDs issued concurrently when building a manifest */
+    public int seriesQueryParallelism = 4;
+
+    /**
+     * Query all instances of a study with one IMAGE-level C-FIND without a Series Instance UID
+     * key, instead of one query per series. Only for a PACS that supports such queries;
+     * series missing from the result are still queried one by one.
+     */
+    public boolean studyLevelInstanceQuery = false;
+
     public DefaultMetadata withPatientIdIssuerOid(String oid) {
         this.patientIdIssuerOid = oid;
         return this;
@@ -115,6 +134,31 @@ public class DefaultMetadata {
         return this;
     }
 
+    public DefaultMetadata withMaxAssociations(int maxAssociations) {
+        this.maxAssociations = maxAssociations;
+        return this;
+    }
+
+    public DefaultMetadata withMaxOpsInvoked(int maxOpsInvoked) {
+        this.maxOpsInvoked = maxOpsInvoked;
+        return this;
+    }
+
+    public DefaultMetadata withAssociationIdleTimeout(long timeout) {
+        this.associationIdleTimeout = timeout;
+        return this;
+    }
+
+    public DefaultMetadata withSeriesQueryParallelism(int parallelism) {
+        this.seriesQueryParallelism = parallelism;
+        return this;
+    }
+
+    public DefaultMetadata withStudyLevelInstanceQuery(boolean studyLevelInstanceQuery) {
+        this.studyLevelInstanceQuery = studyLevelInstanceQuery;
+        return this;
+    }
+
     public DefaultMetadata withPlacerOrderNumber(String placerOrderNumber) {
         this.placerOrderNumber = placerOrderNumber;
         return this;
@@ -49,6 +49,10 @@ public class KOSSCUManifestCreator extends SCUManifestCreator {
         super(defaults);
     }
 
+    public KOSSCUManifestCreator(DefaultMetadata defaults, CFindService cFindService) {
+        super(defaults, cFindService);
+    }
+
     /**
      * Creates a KOS manifest by querying the PACS for study/series/instance information.
      *
@@ -85,21 +89,8 @@ public class KOSSCUManifestCreator extends SCUManifestCreator {
             throw new IOException("No series found for study: " + studyInstanceUid);
         }
 
-        // Step 3: For each series, query instances
-        List<SeriesData> allSeries = new java.util.ArrayList<>();
-
-        for (Attributes seriesAttrs : seriesResult.getMatches()) {
-            String seriesInstanceUid = seriesAttrs.getString(Tag.SeriesInstanceUID);
-
-            CFindResult instanceResult = findInstances(studyInstanceUid, seriesInstanceUid);
-
-            if (instanceResult.isSuccess() && !instanceResult.getMatches().isEmpty()) {
-                SeriesData sd = new SeriesData();
-                sd.seriesAttrs = seriesAttrs;
-                sd.instances = instanceResult.getMatches();
-                allSeries.add(sd);
-            }
-        }
+        // Step 3: Query the instances of all series (concurrently)
+        List<SeriesData> allSeries = findAllSeriesInstances(studyInstanceUid, seriesResult.getMatches());
 
         if (allSeries.isEmpty()) {
             throw new IOException("No instances found for study: " + studyInstanceUid);
@@ -65,10 +65,7 @@ class MADOContentBuilder {
         String studyModality = getStudyModality();
 
         // TID 2010 requires Key Object Description (113012, DCM) as first item
-        Attributes keyObjDesc = createTextItem(DicomConstants.RELATIONSHIP_CONTAINS,
-             CodeConstants.CODE_KOS_DESCRIPTION, CodeConstants.SCHEME_DCM,
-            CodeConstants.MEANING_KOS_DESCRIPTION, "Manifest with Description");
-        contentSeq.add(keyObjDesc);
+        contentSeq.add(buildKeyObjectDescription());
 
         // Add root-level IMAGE references (required by KOS SOP Class for standard viewers)
         addRootLevelImageReferences(contentSeq);
@@ -80,6 +77,15 @@ class MADOContentBuilder {
         return contentSeq;
     }
 
+    /**
+     * Builds the Key Object Description TEXT item that opens the root content.
+     */
+    Attributes buildKeyObjectDescription() {
+        return createTextItem(DicomConstants.RELATIONSHIP_CONTAINS,
+            CodeConstants.CODE_KOS_DESCRIPTION, CodeConstants.SCHEME_DCM,
+            CodeConstants.MEANING_KOS_DESCRIPTION, "Manifest with Description");
+    }
+
     private String getStudyModality() {
         return !allSeries.isEmpty()
             ? allSeries.get(0).seriesAttrs.getString(Tag.Modality, "CT")
@@ -88,11 +94,7 @@ class MADOContentBuilder {
 
 
     private Attributes buildImageLibraryContainer(String studyModality) {
-        Attributes libContainer = new Attributes();
-        libContainer.setString(Tag.RelationshipType, VR.CS, DicomConstants.RELATIONSHIP_CONTAINS);
-        libContainer.setString(Tag.ValueType, VR.CS, "CONTAINER");
-        libContainer.newSequence(Tag.ConceptNameCodeSequence, 1)
-            .add(code(CodeConstants.CODE_IMAGE_LIBRARY, CodeConstants.SCHEME_DCM, CodeConstants.MEANING_IMAGE_LIBRARY));
+        Attributes libContainer = newImageLibraryContainer();
 
         Sequence libContent = libContainer.newSequence(Tag.ContentSequence, 50);
 
@@ -105,7 +107,26 @@ class MADOContentBuilder {
         return libContainer;
     }
 
+    /**
+     * Creates the Image Library CONTAINER item without its ContentSequence.
+     */
+    Attributes newImageLibraryContainer() {
+        Attributes libContainer = new Attributes();
+        libContainer.setString(Tag.RelationshipType, VR.CS, DicomConstants.RELATIONSHIP_CONTAINS);
+        libContainer.setString(Tag.ValueType, VR.CS, "CONTAINER");
+        libContainer.newSequence(Tag.ConceptNameCodeSequence, 1)
+            .add(code(CodeConstants.CODE_IMAGE_LIBRARY, CodeConstants.SCHEME_DCM, CodeConstants.MEANING_IMAGE_LIBRARY));
+        return libContainer;
+    }
+
     private void addImageLibraryContext(Sequence libContent, String studyModality) {
+        addImageLibraryContext(libContent, studyModality, allSeries.size());
+    }
+
+    /**
+     * Adds the study-level context items of the Image Library, for a study of {@code seriesCount} series.
+     */
+    void addImageLibraryContext(Sequence libContent, String studyModality, int seriesCount) {
         libContent.add(createCodeItem("HAS ACQ CONTEXT", CodeConstants.CODE_MODALITY, CodeConstants.SCHEME_DCM,
             CodeConstants.MEANING_MODALITY, code(studyModality, CodeConstants.SCHEME_DCM, studyModality)));
 
@@ -116,7 +137,7 @@ class MADOContentBuilder {
         // Number of Study Related Series (MADOTEMP009, 99IHE) - R+ per CP-2595
         // Units: {series} UCUM per DICOM NUM item requirement
         libContent.add(createNumericItem("HAS ACQ CONTEXT", CodeConstants.CODE_NUM_STUDY_RELATED_SERIES,
-            CodeConstants.SCHEME_99IHE, CodeConstants.MEANING_NUM_STUDY_RELATED_SERIES, allSeries.size(),
+            CodeConstants.SCHEME_99IHE, CodeConstants.MEANING_NUM_STUDY_RELATED_SERIES, seriesCount,
             "{series}", "UCUM", "series"));
     }
 
@@ -127,7 +148,10 @@ class MADOContentBuilder {
         }
     }
 
-    private Attributes buildSeriesGroup(SeriesData sd, int seriesNumber) {
+    /**
+     * Builds the Image Library Group of one series (TID 1601/1602).
+     */
+    Attributes buildSeriesGroup(SeriesData sd, int seriesNumber) {
         Attributes group = new Attributes();
         group.setString(Tag.RelationshipType, VR.CS, DicomConstants.RELATIONSHIP_CONTAINS);
         group.setString(Tag.ValueType, VR.CS, "CONTAINER");
@@ -389,10 +413,7 @@ class MADOContentBuilder {
         String studyModality = getStudyModality();
 
         // TID 2010 requires Key Object Description (113012, DCM) as first item
-        Attributes keyObjDesc = createTextItem(DicomConstants.RELATIONSHIP_CONTAINS,
-            CodeConstants.CODE_KOS_DESCRIPTION, CodeConstants.SCHEME_DCM,
-            CodeConstants.MEANING_KOS_DESCRIPTION, "Manifest with Description");
-        contentSeq.add(keyObjDesc);
+        contentSeq.add(buildKeyObjectDescription());
 
         // Add root-level IMAGE references (required by KOS SOP Class for standard viewers)
         // These are direct children of root with CONTAINS -> IMAGE
@@ -420,7 +441,7 @@ class MADOContentBuilder {
      * Builds a root-level IMAGE reference for TID 2010.
      * This is a simple IMAGE item without nested ContentSequence.
      */
-    private Attributes buildRootImageReference(Attributes instAttrs) {
+    Attributes buildRootImageReference(Attributes instAttrs) {
         Attributes imageItem = new Attributes();
         imageItem.setString(Tag.RelationshipType, VR.CS, DicomConstants.RELATIONSHIP_CONTAINS);
         imageItem.setString(Tag.ValueType, VR.CS, "IMAGE");
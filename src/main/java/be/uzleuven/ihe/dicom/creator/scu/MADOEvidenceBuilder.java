@@ -73,7 +73,10 @@ class MADOEvidenceBuilder {
         return evidenceSeq;
     }
 
-    private Attributes buildSeriesItem(SeriesData sd) {
+    /**
+     * Builds the ReferencedSeriesSequence item of one series, instances sorted by InstanceNumber.
+     */
+    Attributes buildSeriesItem(SeriesData sd) {
         Attributes seriesItem = new Attributes();
         String serUID = sd.seriesAttrs.getString(Tag.SeriesInstanceUID);
         String normalizedSerUID = normalizeUidNoLeadingZeros(serUID);
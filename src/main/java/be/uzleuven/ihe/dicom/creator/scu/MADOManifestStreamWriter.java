@@ -0,0 +1,303 @@
+package be.uzleuven.ihe.dicom.creator.scu;
+
+import be.uzleuven.ihe.dicom.creator.model.MADOOptions;
+import be.uzleuven.ihe.dicom.creator.scu.streaming.ManifestStreamWriter;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Streams a MADO manifest as DICOM Part-10 to an {@link OutputStream} during the SCU
+ * study/series/instance traversal, without building the manifest {@link Attributes} tree.
+ *
+ * Only the instances of the open series are held in memory. When a series is closed, its
+ * ReferencedSeriesSequence item is written to the evidence sequence right away. Its root IMAGE
+ * references and Image Library group follow the evidence in tag order, so they are encoded at the
+ * same time into two temporary spool files and appended when the study is closed. All sequences
+ * and items use undefined length, so nothing needs to be measured up front.
+ *
+ * The output has the same content as {@link MADOSCUManifestCreator#createManifest}. One writer
+ * holds one study. {@link #close()} closes the output stream; closing without
+ * {@link #closeStudy()}, or after {@link #abortStudy()}, abandons the manifest and leaves the
+ * output truncated.
+ */
+public class MADOManifestStreamWriter implements ManifestStreamWriter {
+
+    private final OutputStream out;
+    private final DefaultMetadata defaults;
+    private final MADOOptions madoOptions;
+
+    /** Parent of every encoded item, so strings are written in the manifest's character set */
+    private final Attributes charsetScope = new Attributes();
+    private Sequence scopedItems;
+
+    private DicomOutputStream dos;
+    private Attributes header;
+    private String normalizedStudyInstanceUID;
+    private MADOEvidenceBuilder evidenceBuilder;
+    private MADOContentBuilder contentBuilder;
+
+    private Path rootReferencesSpool;
+    private Path imageLibrarySpool;
+    private DicomOutputStream rootReferences;
+    private DicomOutputStream imageLibrary;
+
+    private SeriesData currentSeries;
+    private String studyModality;
+    private int seriesCount = 0;
+    private boolean studyOpen = false;
+    private boolean studyWritten = false;
+
+    public MADOManifestStreamWriter(OutputStream out, DefaultMetadata defaults, MADOOptions madoOptions) {
+        this.out = out;
+        this.defaults = defaults;
+        this.madoOptions = madoOptions != null ? madoOptions : new MADOOptions();
+    }
+
+    @Override
+    public void openStudy(Attributes studyAttrs) throws IOException {
+        if (studyOpen || studyWritten) {
+            throw new IOException("A MADO stream holds exactly one study");
+        }
+        boolean extended = madoOptions.isIncludeExtendedInstanceMetadata();
+
+        MADOHeaderConfigBuilder headerBuilder = new MADOHeaderConfigBuilder(studyAttrs, defaults);
+        header = MADOSCUManifestCreator.buildMADOHeader(headerBuilder, defaults);
+        normalizedStudyInstanceUID = headerBuilder.getNormalizedStudyInstanceUID();
+        evidenceBuilder = new MADOEvidenceBuilder(defaults, normalizedStudyInstanceUID,
+            Collections.emptyList(), extended);
+        contentBuilder = new MADOContentBuilder(defaults, normalizedStudyInstanceUID,
+            studyAttrs.getString(Tag.StudyDate, ""), studyAttrs.getString(Tag.StudyTime, ""),
+            Collections.emptyList(), extended);
+
+        String[] charset = header.getStrings(Tag.SpecificCharacterSet);
+        if (charset != null) {
+            charsetScope.setString(Tag.SpecificCharacterSet, VR.CS, charset);
+        }
+        scopedItems = charsetScope.newSequence(Tag.ContentSequence, 1);
+
+        rootReferencesSpool = Files.createTempFile("mado-root-refs-", ".dcm");
+        imageLibrarySpool = Files.createTempFile("mado-image-library-", ".dcm");
+        rootReferences = spool(rootReferencesSpool);
+        imageLibrary = spool(imageLibrarySpool);
+
+        dos = new DicomOutputStream(new BufferedOutputStream(out, 64 * 1024), UID.ExplicitVRLittleEndian);
+        dos.writeFileMetaInformation(header.createFileMetaInformation(UID.ExplicitVRLittleEndian));
+        writeElements(dos, range(header, 0, Tag.CurrentRequestedProcedureEvidenceSequence));
+
+        // Evidence: one study item whose ReferencedSeriesSequence is filled series by series
+        dos.writeHeader(Tag.CurrentRequestedProcedureEvidenceSequence, VR.SQ, -1);
+        dos.writeHeader(Tag.Item, null, -1);
+        dos.writeHeader(Tag.ReferencedSeriesSequence, VR.SQ, -1);
+        studyOpen = true;
+    }
+
+    @Override
+    public void openSeries(Attributes seriesAttrs) throws IOException {
+        requireStudyOpen();
+        if (currentSeries != null) {
+            closeSeries();
+        }
+        currentSeries = new SeriesData();
+        currentSeries.seriesAttrs = seriesAttrs;
+        currentSeries.instances = new ArrayList<>();
+    }
+
+    @Override
+    public void writeInstance(Attributes instanceAttrs) throws IOException {
+        requireStudyOpen();
+        if (currentSeries == null) {
+            throw new IOException("writeInstance called without openSeries");
+        }
+        currentSeries.instances.add(instanceAttrs);
+    }
+
+    @Override
+    public void closeSeries() throws IOException {
+        SeriesData sd = currentSeries;
+        currentSeries = null;
+        // Series without instances are left out, as in createManifest
+        if (sd == null || sd.instances.isEmpty()) {
+            return;
+        }
+
+        if (studyModality == null) {
+            studyModality = sd.seriesAttrs.getString(Tag.Modality, "CT");
+        }
+        seriesCount++;
+
+        writeItem(dos, evidenceBuilder.buildSeriesItem(sd));
+        for (Attributes instAttrs : sd.instances) {
+            writeItem(rootReferences, contentBuilder.buildRootImageReference(instAttrs));
+        }
+        writeItem(imageLibrary, contentBuilder.buildSeriesGroup(sd, seriesCount));
+    }
+
+    @Override
+    public void closeStudy() throws IOException {
+        if (!studyOpen) {
+            return;
+        }
+        closeSeries();
+        if (seriesCount == 0) {
+            throw new IOException("No instances found for study: " + normalizedStudyInstanceUID);
+        }
+
+        // End of ReferencedSeriesSequence; StudyInstanceUID (0020,000D) follows it within the study item
+        dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+        Attributes studyItemTail = new Attributes(1);
+        studyItemTail.setString(Tag.StudyInstanceUID, VR.UI, normalizedStudyInstanceUID);
+        writeElements(dos, studyItemTail);
+        dos.writeHeader(Tag.ItemDelimitationItem, null, 0);
+        dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+
+        writeElements(dos, range(header, Tag.CurrentRequestedProcedureEvidenceSequence + 1, Tag.ContentSequence));
+
+        // Root content: Key Object Description, root IMAGE references, Image Library
+        dos.writeHeader(Tag.ContentSequence, VR.SQ, -1);
+        writeItem(dos, contentBuilder.buildKeyObjectDescription());
+        appendSpool(rootReferences, rootReferencesSpool);
+
+        dos.writeHeader(Tag.Item, null, -1);
+        writeElements(dos, contentBuilder.newImageLibraryContainer());
+        dos.writeHeader(Tag.ContentSequence, VR.SQ, -1);
+        contentBuilder.addImageLibraryContext(scopedItems, studyModality, seriesCount);
+        writeScopedItems(dos);
+        appendSpool(imageLibrary, imageLibrarySpool);
+        dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+        dos.writeHeader(Tag.ItemDelimitationItem, null, 0);
+        dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+
+        writeElements(dos, range(header, Tag.ContentSequence + 1, 0xFFFFFFFF));
+        dos.flush();
+
+        studyOpen = false;
+        studyWritten = true;
+        deleteSpools();
+    }
+
+    /**
+     * Abandon the manifest: nothing more is written and the spool files are removed.
+     */
+    @Override
+    public void abortStudy() throws IOException {
+        studyOpen = false;
+        currentSeries = null;
+        deleteSpools();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deleteSpools();
+        } finally {
+            if (dos != null) {
+                dos.close();
+                dos = null;
+            } else {
+                out.close();
+            }
+        }
+    }
+
+    private void requireStudyOpen() throws IOException {
+        if (!studyOpen) {
+            throw new IOException("No open study");
+        }
+    }
+
+    // ============================================================================
+    // Encoding
+    // ============================================================================
+
+    /**
+     * Write an item with undefined length.
+     */
+    private void writeItem(DicomOutputStream target, Attributes item) throws IOException {
+        scopedItems.add(item);
+        writeScopedItems(target);
+    }
+
+    /**
+     * Write all items currently held by the charset scope, then release them.
+     */
+    private void writeScopedItems(DicomOutputStream target) throws IOException {
+        try {
+            for (Attributes item : scopedItems) {
+                target.writeHeader(Tag.Item, null, -1);
+                item.writeTo(target);
+                target.writeHeader(Tag.ItemDelimitationItem, null, 0);
+            }
+        } finally {
+            scopedItems.clear();
+        }
+    }
+
+    /**
+     * Write the elements of {@code attrs} into the enclosing dataset or item.
+     */
+    private void writeElements(DicomOutputStream target, Attributes attrs) throws IOException {
+        scopedItems.add(attrs);
+        try {
+            attrs.writeTo(target);
+        } finally {
+            scopedItems.clear();
+        }
+    }
+
+    /**
+     * Copy of the elements of {@code attrs} with a tag in [fromTag, toTag), compared unsigned.
+     */
+    private static Attributes range(Attributes attrs, int fromTag, int toTag) {
+        Attributes part = new Attributes(attrs);
+        for (int tag : attrs.tags()) {
+            if (Integer.compareUnsigned(tag, fromTag) < 0 || Integer.compareUnsigned(tag, toTag) >= 0) {
+                part.remove(tag);
+            }
+        }
+        return part;
+    }
+
+    private static DicomOutputStream spool(Path file) throws IOException {
+        return new DicomOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024),
+            UID.ExplicitVRLittleEndian);
+    }
+
+    private void appendSpool(DicomOutputStream spool, Path file) throws IOException {
+        spool.close();
+        Files.copy(file, dos);
+    }
+
+    private void deleteSpools() throws IOException {
+        try {
+            if (rootReferences != null) {
+                rootReferences.close();
+            }
+            if (imageLibrary != null) {
+                imageLibrary.close();
+            }
+        } finally {
+            rootReferences = null;
+            imageLibrary = null;
+            if (rootReferencesSpool != null) {
+                Files.deleteIfExists(rootReferencesSpool);
+                rootReferencesSpool = null;
+            }
+            if (imageLibrarySpool != null) {
+                Files.deleteIfExists(imageLibrarySpool);
+                imageLibrarySpool = null;
+            }
+        }
+    }
+}
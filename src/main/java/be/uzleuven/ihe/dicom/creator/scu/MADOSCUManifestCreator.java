@@ -4,6 +4,7 @@ import org.dcm4che3.data.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import static be.uzleuven.ihe.dicom.creator.utils.DicomCreatorUtils.*;
 import static be.uzleuven.ihe.dicom.constants.CodeConstants.*;
@@ -56,6 +57,11 @@ public class MADOSCUManifestCreator extends SCUManifestCreator {
         this.madoOptions = madoOptions != null ? madoOptions : new MADOOptions();
     }
 
+    public MADOSCUManifestCreator(DefaultMetadata defaults, MADOOptions madoOptions, CFindService cFindService) {
+        super(defaults, cFindService);
+        this.madoOptions = madoOptions != null ? madoOptions : new MADOOptions();
+    }
+
     /**
      * Creates a MADO manifest by querying the PACS for study/series/instance information.
      *
@@ -84,21 +90,8 @@ public class MADOSCUManifestCreator extends SCUManifestCreator {
             throw new IOException("No series found for study: " + studyInstanceUid);
         }
 
-        // Step 3: For each series, query instances
-        java.util.List<SeriesData> allSeries = new java.util.ArrayList<>();
-
-        for (Attributes seriesAttrs : seriesResult.getMatches()) {
-            String seriesInstanceUid = seriesAttrs.getString(Tag.SeriesInstanceUID);
-
-            CFindResult instanceResult = findInstances(studyInstanceUid, seriesInstanceUid);
-
-            if (instanceResult.isSuccess() && !instanceResult.getMatches().isEmpty()) {
-                SeriesData sd = new SeriesData();
-                sd.seriesAttrs = seriesAttrs;
-                sd.instances = instanceResult.getMatches();
-                allSeries.add(sd);
-            }
-        }
+        // Step 3: Query the instances of all series (concurrently)
+        java.util.List<SeriesData> allSeries = findAllSeriesInstances(studyInstanceUid, seriesResult.getMatches());
 
         if (allSeries.isEmpty()) {
             throw new IOException("No instances found for study: " + studyInstanceUid);
@@ -114,17 +107,44 @@ public class MADOSCUManifestCreator extends SCUManifestCreator {
      * Implements IHE RAD MADO profile with TID 1600 Image Library.
      */
     private Attributes buildMADOManifest(Attributes studyAttrs, java.util.List<SeriesData> allSeries) {
-        Attributes mado = new Attributes();
-
         // Build header configuration using builder
         MADOHeaderConfigBuilder headerBuilder = new MADOHeaderConfigBuilder(studyAttrs, defaults);
-        HeaderConfig config = headerBuilder.buildHeaderConfig();
+        Attributes mado = buildMADOHeader(headerBuilder, defaults);
 
         String normalizedStudyInstanceUID = headerBuilder.getNormalizedStudyInstanceUID();
-        String accessionNumber = headerBuilder.getAccessionNumber();
         String studyDate = studyAttrs.getString(Tag.StudyDate, "");
         String studyTime = studyAttrs.getString(Tag.StudyTime, "");
 
+        // Evidence Sequence
+        // NOTE: dcm4che does not allow the same Attributes item to be contained by multiple Sequences.
+        // The previous implementation built the evidence sequence on a temporary Attributes, then
+        // addAll()'d the items into the real dataset, which can trigger:
+        //   "Item already contained by Sequence".
+        // Build directly on the target dataset instead.
+        MADOEvidenceBuilder evidenceBuilder = new MADOEvidenceBuilder(defaults, normalizedStudyInstanceUID,
+            allSeries, madoOptions.isIncludeExtendedInstanceMetadata());
+        evidenceBuilder.populateEvidenceSequence(mado);
+
+
+        // SR Document Content Module with TID 1600 Image Library
+        MADOContentBuilder contentBuilder = new MADOContentBuilder(defaults, normalizedStudyInstanceUID,
+            studyDate, studyTime, allSeries, madoOptions.isIncludeExtendedInstanceMetadata());
+        contentBuilder.populateContentSequence(mado);
+
+        return mado;
+    }
+
+    /**
+     * Builds the MADO header: all modules and SR root attributes, without the evidence and content
+     * sequences. Shared with {@link MADOManifestStreamWriter}.
+     */
+    static Attributes buildMADOHeader(MADOHeaderConfigBuilder headerBuilder, DefaultMetadata defaults) {
+        Attributes mado = new Attributes();
+        HeaderConfig config = headerBuilder.buildHeaderConfig();
+
+        String normalizedStudyInstanceUID = headerBuilder.getNormalizedStudyInstanceUID();
+        String accessionNumber = headerBuilder.getAccessionNumber();
+
         // Populate all common modules using utility
         ManifestHeaderUtils.populateSOPCommonModule(mado, config);
         ManifestHeaderUtils.populatePatientModule(mado, config);
@@ -144,26 +164,10 @@ public class MADOSCUManifestCreator extends SCUManifestCreator {
         // SR root content item attributes
         configureSRRootAttributes(mado);
 
-        // Evidence Sequence
-        // NOTE: dcm4che does not allow the same Attributes item to be contained by multiple Sequences.
-        // The previous implementation built the evidence sequence on a temporary Attributes, then
-        // addAll()'d the items into the real dataset, which can trigger:
-        //   "Item already contained by Sequence".
-        // Build directly on the target dataset instead.
-        MADOEvidenceBuilder evidenceBuilder = new MADOEvidenceBuilder(defaults, normalizedStudyInstanceUID,
-            allSeries, madoOptions.isIncludeExtendedInstanceMetadata());
-        evidenceBuilder.populateEvidenceSequence(mado);
-
-
-        // SR Document Content Module with TID 1600 Image Library
-        MADOContentBuilder contentBuilder = new MADOContentBuilder(defaults, normalizedStudyInstanceUID,
-            studyDate, studyTime, allSeries, madoOptions.isIncludeExtendedInstanceMetadata());
-        contentBuilder.populateContentSequence(mado);
-
         return mado;
     }
 
-    private void configureSRRootAttributes(Attributes mado) {
+    private static void configureSRRootAttributes(Attributes mado) {
         mado.setString(Tag.ValueType, VR.CS, "CONTAINER");
         mado.setString(Tag.ContinuityOfContent, VR.CS, be.uzleuven.ihe.dicom.constants.DicomConstants.CONTINUITY_SEPARATE);
 
@@ -182,6 +186,22 @@ public class MADOSCUManifestCreator extends SCUManifestCreator {
     }
 
 
+    /**
+     * Streams a MADO manifest as DICOM Part-10 to {@code out} while the series are queried,
+     * holding the instances of one series in memory at a time (see {@link MADOManifestStreamWriter}).
+     * Unlike {@link #createManifest}, series are queried one after the other.
+     *
+     * @param studyInstanceUid The Study Instance UID to create a manifest for
+     * @param patientId The Patient ID (can be null)
+     * @param out Destination; closed when done. Holds a truncated manifest if an exception is thrown.
+     * @throws IOException if C-FIND queries or writing fail
+     */
+    public void streamManifest(String studyInstanceUid, String patientId, OutputStream out) throws IOException {
+        try (MADOManifestStreamWriter writer = new MADOManifestStreamWriter(out, defaults, madoOptions)) {
+            streamStudy(studyInstanceUid, patientId, writer);
+        }
+    }
+
     /**
      * Saves the manifest to a DICOM file.
      */
@@ -6,6 +6,10 @@ import org.dcm4che3.data.VR;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static be.uzleuven.ihe.dicom.creator.utils.DicomCreatorUtils.writeDicomFile;
 import be.uzleuven.ihe.dicom.creator.scu.streaming.ManifestStreamWriter;
@@ -15,10 +19,11 @@ import be.uzleuven.ihe.dicom.creator.scu.streaming.ManifestStreamWriter;
  * Provides C-FIND functionality to query DICOM archives and retrieve metadata
  * that can be used to construct KOS or MADO manifests.
  */
-public abstract class SCUManifestCreator {
+public abstract class SCUManifestCreator implements AutoCloseable {
 
     protected final DefaultMetadata defaults;
     private final CFindService cFindService;
+    private final boolean ownsCFindService;
 
     public SCUManifestCreator() {
         this(new DefaultMetadata());
@@ -27,6 +32,16 @@ public abstract class SCUManifestCreator {
     public SCUManifestCreator(DefaultMetadata defaults) {
         this.defaults = defaults;
         this.cFindService = new CFindService(defaults);
+        this.ownsCFindService = true;
+    }
+
+    /**
+     * Use a shared (pooled) C-FIND client. The caller keeps ownership and closes it.
+     */
+    public SCUManifestCreator(DefaultMetadata defaults, CFindService cFindService) {
+        this.defaults = defaults;
+        this.cFindService = cFindService;
+        this.ownsCFindService = false;
     }
 
     /**
@@ -68,6 +83,70 @@ public abstract class SCUManifestCreator {
         return cFindService.performCFind(keys);
     }
 
+    /**
+     * Query the instances of all given series and group them per series.
+     *
+     * The per-series IMAGE-level C-FINDs run concurrently ({@link DefaultMetadata#seriesQueryParallelism}),
+     * so a study with many series costs roughly one round trip instead of one per series. With
+     * {@link DefaultMetadata#studyLevelInstanceQuery} a single study-wide IMAGE-level query is tried
+     * first; series it does not cover are then queried individually.
+     *
+     * @param studyInstanceUid The Study Instance UID
+     * @param seriesMatches Series-level C-FIND matches of the study
+     * @return Series with at least one instance, in the order of {@code seriesMatches}
+     * @throws IOException if a C-FIND fails
+     */
+    protected List<SeriesData> findAllSeriesInstances(String studyInstanceUid, List<Attributes> seriesMatches) throws IOException {
+        Map<String, List<Attributes>> instancesBySeries = new LinkedHashMap<>();
+
+        if (defaults.studyLevelInstanceQuery) {
+            try {
+                CFindResult studyWide = cFindService.performCFind(CFindQueryBuilder.buildInstanceQuery(studyInstanceUid, null));
+                for (Attributes inst : studyWide.getMatches()) {
+                    String seriesUid = inst.getString(Tag.SeriesInstanceUID);
+                    if (seriesUid != null) {
+                        instancesBySeries.computeIfAbsent(seriesUid, k -> new ArrayList<>()).add(inst);
+                    }
+                }
+            } catch (IOException e) {
+                // PACS does not support it; fall back to one query per series
+                instancesBySeries.clear();
+            }
+        }
+
+        // Fan out the remaining series
+        List<Attributes> missing = new ArrayList<>();
+        List<Attributes> queries = new ArrayList<>();
+        for (Attributes seriesAttrs : seriesMatches) {
+            String seriesUid = seriesAttrs.getString(Tag.SeriesInstanceUID);
+            if (!instancesBySeries.containsKey(seriesUid)) {
+                missing.add(seriesAttrs);
+                queries.add(CFindQueryBuilder.buildInstanceQuery(studyInstanceUid, seriesUid));
+            }
+        }
+        if (!queries.isEmpty()) {
+            List<CFindResult> results = cFindService.performCFinds(queries, defaults.seriesQueryParallelism);
+            for (int i = 0; i < missing.size(); i++) {
+                CFindResult instanceResult = results.get(i);
+                if (instanceResult.isSuccess()) {
+                    instancesBySeries.put(missing.get(i).getString(Tag.SeriesInstanceUID), instanceResult.getMatches());
+                }
+            }
+        }
+
+        List<SeriesData> allSeries = new ArrayList<>();
+        for (Attributes seriesAttrs : seriesMatches) {
+            List<Attributes> instances = instancesBySeries.get(seriesAttrs.getString(Tag.SeriesInstanceUID));
+            if (instances != null && !instances.isEmpty()) {
+                SeriesData sd = new SeriesData();
+                sd.seriesAttrs = seriesAttrs;
+                sd.instances = instances;
+                allSeries.add(sd);
+            }
+        }
+        return allSeries;
+    }
+
     /**
      * Public/CLI-friendly entrypoint for performing an arbitrary C-FIND with custom keys.
      * This is intentionally a thin wrapper around the internal implementation so higher-level
@@ -78,6 +157,16 @@ public abstract class SCUManifestCreator {
         return cFindService.performCFind(keys);
     }
 
+    /**
+     * Release the C-FIND associations, unless the C-FIND client was passed in by the caller.
+     */
+    @Override
+    public void close() {
+        if (ownsCFindService) {
+            cFindService.close();
+        }
+    }
+
     /**
      * Apply default metadata to attributes that are missing from C-FIND response.
      * Subclasses should call this to ensure compliance with IHE requirements.
@@ -117,7 +206,21 @@ public abstract class SCUManifestCreator {
         Attributes studyAttrs = studyResult.getMatches().get(0);
         applyDefaults(studyAttrs);
         writer.openStudy(studyAttrs);
+        try {
+            streamSeries(studyInstanceUid, writer);
+            writer.closeStudy();
+        } catch (IOException | RuntimeException e) {
+            // Don't leave the study open: a shared writer would refuse the next one
+            try {
+                writer.abortStudy();
+            } catch (IOException | RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
 
+    private void streamSeries(String studyInstanceUid, ManifestStreamWriter writer) throws IOException {
         // Step 2: Query series
         CFindResult seriesResult = findSeries(studyInstanceUid, null);
         if (!seriesResult.isSuccess() || seriesResult.getMatches().isEmpty()) {
@@ -150,7 +253,5 @@ public abstract class SCUManifestCreator {
 
             writer.closeSeries();
         }
-
-        writer.closeStudy();
     }
 }
@@ -0,0 +1,247 @@
+package be.uzleuven.ihe.dicom.creator.scu.cli;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Progress journal of a date-range crawl, so an interrupted crawl can resume (--resume)
+ * instead of re-querying the PACS from the begin date.
+ *
+ * The journal records:
+ * <ul>
+ *   <li>the cursor: every window before it was discovered and all its studies are written or failed</li>
+ *   <li>the current (adaptive) window size</li>
+ *   <li>studies already written in windows at or after the cursor, so they are skipped on resume</li>
+ *   <li>failed studies with their patient ID, accession number and study date, which are retried
+ *       first on resume</li>
+ * </ul>
+ * Windows are discovered ahead of manifest writing (see {@link CrawlEngine}); the cursor only moves
+ * past a window once all its studies are done, which keeps resume correct with concurrent workers.
+ * The file is rewritten atomically (temp file + rename) on every change.
+ */
+public class CrawlCheckpoint {
+
+    private final Path file;
+    private final LocalDate begin;
+    private final LocalDate end;
+
+    private LocalDate cursor;
+    private int windowDays;
+    private final Set<String> completed = new LinkedHashSet<>();
+    private final Map<String, StudyDescriptor> failed = new LinkedHashMap<>();
+    /** Discovered windows at or after the cursor that are not done yet, oldest first */
+    private final Deque<Window> openWindows = new ArrayDeque<>();
+
+    private CrawlCheckpoint(Path file, LocalDate begin, LocalDate end, int windowDays) {
+        this.file = file;
+        this.begin = begin;
+        this.end = end;
+        this.cursor = begin;
+        this.windowDays = windowDays;
+    }
+
+    /**
+     * Start a new crawl, replacing any existing journal.
+     */
+    public static CrawlCheckpoint start(File file, LocalDate begin, LocalDate end, int windowDays) throws IOException {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file.toPath(), begin, end, windowDays);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * Continue the crawl recorded in {@code file}, or start a new one if there is no journal.
+     *
+     * @throws IllegalArgumentException if the journal belongs to a different date range
+     */
+    public static CrawlCheckpoint resume(File file, LocalDate begin, LocalDate end, int windowDays) throws IOException {
+        if (!file.exists()) {
+            System.out.println("No checkpoint at " + file.getAbsolutePath() + ", starting a new crawl");
+            return start(file, begin, end, windowDays);
+        }
+
+        Properties p = new Properties();
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        if (!begin.toString().equals(p.getProperty("begin")) || !end.toString().equals(p.getProperty("end"))) {
+            throw new IllegalArgumentException("Checkpoint " + file.getAbsolutePath() + " is for "
+                + p.getProperty("begin") + ".." + p.getProperty("end") + ", not " + begin + ".." + end);
+        }
+
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file.toPath(), begin, end, windowDays);
+        checkpoint.cursor = LocalDate.parse(p.getProperty("cursor", begin.toString()));
+        try {
+            checkpoint.windowDays = Integer.parseInt(p.getProperty("windowDays", Integer.toString(windowDays)));
+        } catch (NumberFormatException e) {
+            // keep the requested window size
+        }
+        split(p.getProperty("completed"), checkpoint.completed);
+        Set<String> failedUids = new LinkedHashSet<>();
+        split(p.getProperty("failed"), failedUids);
+        for (String uid : failedUids) {
+            // Journals of older versions only have the UID
+            checkpoint.failed.put(uid, new StudyDescriptor(uid, p.getProperty("failed." + uid + ".patientId"),
+                p.getProperty("failed." + uid + ".accessionNumber"), p.getProperty("failed." + uid + ".studyDate")));
+        }
+
+        System.out.println("Resuming crawl at " + checkpoint.cursor + " (" + checkpoint.completed.size()
+            + " studies already written ahead of it, " + checkpoint.failed.size() + " failed studies to retry)");
+        return checkpoint;
+    }
+
+    /**
+     * First date that still has to be queried.
+     */
+    public synchronized LocalDate getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Window size to continue with.
+     */
+    public synchronized int getWindowDays() {
+        return windowDays;
+    }
+
+    /**
+     * Failed studies of earlier runs, to retry.
+     */
+    public synchronized List<StudyDescriptor> getFailed() {
+        return new ArrayList<>(failed.values());
+    }
+
+    /**
+     * The study was already written by an earlier run.
+     */
+    public synchronized boolean isCompleted(String studyInstanceUID) {
+        return completed.contains(studyInstanceUID);
+    }
+
+    /**
+     * Record a queried window before its studies are emitted.
+     *
+     * @param studies all studies matched in the window
+     * @param emitted the studies that will be emitted (not written by an earlier run)
+     * @param partial the window is only partly emitted (result limit reached); it is queried again on resume
+     * @param nextWindowDays adaptive size of the next window
+     */
+    public synchronized void windowDiscovered(LocalDate windowEnd, Collection<String> studies,
+                                              Collection<String> emitted, boolean partial,
+                                              int nextWindowDays) throws IOException {
+        openWindows.addLast(new Window(windowEnd, studies, emitted, partial));
+        windowDays = nextWindowDays;
+        advance();
+        save();
+    }
+
+    public synchronized void studyCompleted(String studyInstanceUID) throws IOException {
+        if (failed.remove(studyInstanceUID) != null | resolve(studyInstanceUID, true)) {
+            advance();
+            save();
+        }
+    }
+
+    public synchronized void studyFailed(StudyDescriptor study) throws IOException {
+        resolve(study.getStudyInstanceUID(), false);
+        failed.put(study.getStudyInstanceUID(), study);
+        advance();
+        save();
+    }
+
+    /**
+     * Mark a study of an open window as done.
+     */
+    private boolean resolve(String studyInstanceUID, boolean success) {
+        for (Window w : openWindows) {
+            if (w.pending.remove(studyInstanceUID)) {
+                if (success) {
+                    completed.add(studyInstanceUID);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the cursor past leading windows whose studies are all done, and forget their studies.
+     */
+    private void advance() {
+        while (!openWindows.isEmpty() && openWindows.peekFirst().isDone()) {
+            Window w = openWindows.removeFirst();
+            completed.removeAll(w.studies);
+            cursor = w.end.plusDays(1);
+        }
+    }
+
+    private void save() throws IOException {
+        Properties p = new Properties();
+        p.setProperty("begin", begin.toString());
+        p.setProperty("end", end.toString());
+        p.setProperty("cursor", cursor.toString());
+        p.setProperty("windowDays", Integer.toString(windowDays));
+        p.setProperty("completed", String.join(",", completed));
+        p.setProperty("failed", String.join(",", failed.keySet()));
+        for (StudyDescriptor s : failed.values()) {
+            setIfPresent(p, "failed." + s.getStudyInstanceUID() + ".patientId", s.getPatientId());
+            setIfPresent(p, "failed." + s.getStudyInstanceUID() + ".accessionNumber", s.getAccessionNumber());
+            setIfPresent(p, "failed." + s.getStudyInstanceUID() + ".studyDate", s.getStudyDate());
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp.toFile()), StandardCharsets.UTF_8)) {
+            p.store(w, "DICOMPolice crawl checkpoint");
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void setIfPresent(Properties p, String key, String value) {
+        if (value != null) {
+            p.setProperty(key, value);
+        }
+    }
+
+    private static void split(String value, Set<String> target) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        for (String uid : value.split(",")) {
+            if (!uid.isEmpty()) {
+                target.add(uid);
+            }
+        }
+    }
+
+    private static class Window {
+        final LocalDate end;
+        final Set<String> studies;
+        final Set<String> pending;
+        final boolean partial;
+
+        Window(LocalDate end, Collection<String> studies, Collection<String> emitted, boolean partial) {
+            this.end = end;
+            this.studies = new HashSet<>(studies);
+            this.pending = new HashSet<>(emitted);
+            this.partial = partial;
+        }
+
+        boolean isDone() {
+            return !partial && pending.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package be.uzleuven.ihe.dicom.creator.scu.cli;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent crawl engine: study discovery feeds a bounded queue, N workers build manifests in
+ * parallel, and a single output stage writes the results.
+ *
+ * Backpressure:
+ * <ul>
+ *   <li>Discovery blocks when the queue is full, so a long date-range crawl never holds more than
+ *       {@code queueCapacity} pending studies</li>
+ *   <li>In ordered mode, a worker does not start a study more than {@code queueCapacity} positions
+ *       ahead of the output, so a lagging writer (or one slow study) bounds the buffered results</li>
+ * </ul>
+ * Ordered mode writes results in discovery order; unordered mode writes them as they complete.
+ * Either way {@link StudyProcessor#write} is never called concurrently.
+ *
+ * A failing study is counted and reported, and the crawl continues. An Error (e.g. out of memory)
+ * stops discovery, fails the remaining queued studies without building them and is rethrown by
+ * {@link #run}.
+ */
+public class CrawlEngine {
+
+    /**
+     * Emits discovered studies, e.g. {@link StudyQueryService#resolveStudiesStreaming}.
+     */
+    public interface StudySource {
+        void forEach(Consumer<StudyDescriptor> onStudy) throws IOException;
+    }
+
+    /**
+     * Work for one study, split into a parallel and a serialized part.
+     */
+    public interface StudyProcessor<R> {
+
+        /** Build the result of a study. Called concurrently from worker threads. */
+        R build(StudyDescriptor study) throws Exception;
+
+        /** Write a built result. Called by one thread at a time. */
+        void write(StudyDescriptor study, R result) throws Exception;
+
+        /** Number of instances in a built result, for the throughput report. */
+        int instanceCount(R result);
+
+        /** A study failed to build or write. Called by one thread at a time, like {@link #write}. */
+        default void failed(StudyDescriptor study, Exception failure) {
+        }
+    }
+
+    /** How often idle workers check whether discovery has finished */
+    private static final long POLL_MILLIS = 100;
+
+    private final int workers;
+    private final int queueCapacity;
+    private final boolean ordered;
+
+    public CrawlEngine(int workers, int queueCapacity, boolean ordered) {
+        this.workers = Math.max(1, workers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.ordered = ordered;
+    }
+
+    /**
+     * Crawl all studies of {@code source}. Returns when every discovered study was written or failed.
+     *
+     * @throws IOException if discovery fails; studies discovered so far are still completed
+     * @throws Error if building or writing a study threw one; the crawl is aborted
+     */
+    public <R> Report run(StudySource source, StudyProcessor<R> processor) throws IOException {
+        Run<R> run = new Run<>(processor);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "crawl-worker-" + run.threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.submit(run::work);
+        }
+
+        IOException discoveryFailure = null;
+        try {
+            source.forEach(study -> run.enqueue(study));
+        } catch (IOException e) {
+            discoveryFailure = e;
+        } catch (DiscoveryInterrupted e) {
+            discoveryFailure = new InterruptedIOException("Crawl interrupted");
+        } catch (CrawlAborted e) {
+            // The cause is rethrown by finish()
+        } finally {
+            run.finish(pool);
+        }
+
+        if (discoveryFailure != null) {
+            throw discoveryFailure;
+        }
+        return run.report();
+    }
+
+    // ============================================================================
+    // Run state
+    // ============================================================================
+
+    private static class Task {
+        final long sequence;
+        final StudyDescriptor study;
+
+        Task(long sequence, StudyDescriptor study) {
+            this.sequence = sequence;
+            this.study = study;
+        }
+    }
+
+    private static class Built<R> {
+        final StudyDescriptor study;
+        final R result;
+        final Exception failure;
+
+        Built(StudyDescriptor study, R result, Exception failure) {
+            this.study = study;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    private static class DiscoveryInterrupted extends RuntimeException {
+        DiscoveryInterrupted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class CrawlAborted extends RuntimeException {
+        CrawlAborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private class Run<R> {
+        final StudyProcessor<R> processor;
+        final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicInteger threadCount = new AtomicInteger();
+        final long startNanos = System.nanoTime();
+
+        long discovered = 0;
+        volatile boolean discoveryDone = false;
+        /** First Error thrown by a study; stops the crawl */
+        final AtomicReference<Throwable> fatal = new AtomicReference<>();
+
+        // Output stage, guarded by "this"
+        final Map<Long, Built<R>> pending = new HashMap<>();
+        long nextToWrite = 0;
+
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong instances = new AtomicLong();
+        final List<Long> studyMillis = Collections.synchronizedList(new ArrayList<>());
+
+        Run(StudyProcessor<R> processor) {
+            this.processor = processor;
+        }
+
+        void enqueue(StudyDescriptor study) {
+            if (fatal.get() != null) {
+                throw new CrawlAborted();
+            }
+            try {
+                queue.put(new Task(discovered++, study));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DiscoveryInterrupted();
+            }
+        }
+
+        /**
+         * Let the workers drain the queue and wait for them. Rethrows the Error that aborted the crawl.
+         */
+        void finish(ExecutorService pool) {
+            // Workers exit once discovery is done and the queue is empty; nothing here blocks on the queue
+            discoveryDone = true;
+            pool.shutdown();
+            try {
+                while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    if (fatal.get() != null) {
+                        // Aborted: do not wait for studies still being built
+                        pool.shutdownNow();
+                        pool.awaitTermination(1, TimeUnit.MINUTES);
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+            }
+
+            Throwable failure = fatal.get();
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Crawl aborted", failure);
+            }
+        }
+
+        void work() {
+            try {
+                while (true) {
+                    Task task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (task == null) {
+                        // discoveryDone is read first: once it is set, no study is added any more
+                        if (discoveryDone && queue.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (ordered) {
+                        awaitWindow(task.sequence);
+                    }
+
+                    long start = System.nanoTime();
+                    Built<R> built = null;
+                    try {
+                        if (fatal.get() == null) {
+                            built = new Built<>(task.study, processor.build(task.study), null);
+                            studyMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        }
+                    } catch (Exception e) {
+                        built = new Built<>(task.study, null, e);
+                    } catch (Throwable t) {
+                        fatal.compareAndSet(null, t);
+                    } finally {
+                        // Always complete, so the ordered output never waits for this sequence number
+                        complete(task.sequence, built != null ? built
+                                : new Built<>(task.study, null, new IOException("Crawl aborted")));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Ordered mode: wait until the output is within the window of this study.
+         */
+        synchronized void awaitWindow(long sequence) throws InterruptedException {
+            while (sequence >= nextToWrite + queueCapacity) {
+                wait();
+            }
+        }
+
+        synchronized void complete(long sequence, Built<R> built) {
+            if (!ordered) {
+                write(built);
+                return;
+            }
+            pending.put(sequence, built);
+            Built<R> next;
+            while ((next = pending.remove(nextToWrite)) != null) {
+                write(next);
+                nextToWrite++;
+            }
+            notifyAll();
+        }
+
+        private void write(Built<R> built) {
+            Exception failure = built.failure;
+            if (failure == null) {
+                try {
+                    processor.write(built.study, built.result);
+                    instances.addAndGet(processor.instanceCount(built.result));
+                    ok.incrementAndGet();
+                    return;
+                } catch (Exception e) {
+                    failure = e;
+                } catch (Throwable t) {
+                    fatal.compareAndSet(null, t);
+                    failure = new IOException("Crawl aborted", t);
+                }
+            }
+            failed.incrementAndGet();
+            System.err.println("Failed for StudyInstanceUID=" + built.study.getStudyInstanceUID() + ": " + failure.getMessage());
+            try {
+                processor.failed(built.study, failure);
+            } catch (Exception e) {
+                // Must not stop the output stage: later studies still have to be written
+                System.err.println("Could not record failure of StudyInstanceUID=" + built.study.getStudyInstanceUID() + ": " + e.getMessage());
+            } catch (Throwable t) {
+                fatal.compareAndSet(null, t);
+            }
+        }
+
+        Report report() {
+            List<Long> times;
+            synchronized (studyMillis) {
+                times = new ArrayList<>(studyMillis);
+            }
+            Collections.sort(times);
+            long p95 = times.isEmpty() ? 0 : times.get((int) Math.ceil(times.size() * 0.95) - 1);
+            return new Report(discovered, ok.get(), failed.get(), instances.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), p95, workers);
+        }
+    }
+
+    // ============================================================================
+    // Report
+    // ============================================================================
+
+    /**
+     * Outcome and throughput of a crawl.
+     */
+    public static class Report {
+        private final long matched;
+        private final int ok;
+        private final int failed;
+        private final long instances;
+        private final long elapsedMillis;
+        private final long p95StudyMillis;
+        private final int workers;
+
+        Report(long matched, int ok, int failed, long instances, long elapsedMillis, long p95StudyMillis,
+               int workers) {
+            this.matched = matched;
+            this.ok = ok;
+            this.failed = failed;
+            this.instances = instances;
+            this.elapsedMillis = elapsedMillis;
+            this.p95StudyMillis = p95StudyMillis;
+            this.workers = workers;
+        }
+
+        public long getMatched() {
+            return matched;
+        }
+
+        public int getOk() {
+            return ok;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * 95th percentile of the build time of successful studies.
+         */
+        public long getP95StudyMillis() {
+            return p95StudyMillis;
+        }
+
+        public double getStudiesPerSecond() {
+            return elapsedMillis == 0 ? 0 : (ok + failed) * 1000.0 / elapsedMillis;
+        }
+
+        public double getInstancesPerSecond() {
+            return elapsedMillis == 0 ? 0 : instances * 1000.0 / elapsedMillis;
+        }
+
+        public void print(PrintStream out) {
+            out.println(String.format(Locale.ROOT,
+                "Throughput: %d studies, %d instances in %.1f s with %d workers -> %.2f studies/s, %.1f instances/s, p95 per study %d ms",
+                ok + failed, instances, elapsedMillis / 1000.0, workers,
+                getStudiesPerSecond(), getInstancesPerSecond(), p95StudyMillis));
+        }
+    }
+}
@@ -10,17 +10,24 @@ public class OutputOptions {
     private final String outPattern;
     private final boolean overwrite;
     private final StreamingMode streamingMode;
+    private final boolean gzip;
 
     public OutputOptions(File outFile, File outDir, String outPattern, boolean overwrite) {
         this(outFile, outDir, outPattern, overwrite, StreamingMode.DICOM);
     }
 
     public OutputOptions(File outFile, File outDir, String outPattern, boolean overwrite, StreamingMode streamingMode) {
+        this(outFile, outDir, outPattern, overwrite, streamingMode, false);
+    }
+
+    public OutputOptions(File outFile, File outDir, String outPattern, boolean overwrite, StreamingMode streamingMode,
+                         boolean gzip) {
         this.outFile = outFile;
         this.outDir = outDir;
         this.outPattern = outPattern;
         this.overwrite = overwrite;
         this.streamingMode = streamingMode == null ? StreamingMode.DICOM : streamingMode;
+        this.gzip = gzip;
     }
 
     public File getOutFile() {
@@ -42,4 +49,11 @@ public class OutputOptions {
     public StreamingMode getStreamingMode() {
         return streamingMode;
     }
+
+    /**
+     * Gzip-compress NDJSON output.
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
 }
@@ -21,7 +21,8 @@ public class QueryCriteria {
     // optional crawl mode: iterate StudyDate from beginDate to endDate (inclusive) in windows
     private final LocalDate beginDate; // ISO date
     private final LocalDate endDate;   // ISO date
-    private final int windowDays;      // 1..7
+    private final int windowDays;      // 1..31
+    private final int matchLimit;      // PACS C-FIND match limit, 0 = unknown (fixed windows)
 
     private QueryCriteria(Builder b) {
         this.accessionNumber = b.accessionNumber;
@@ -31,6 +32,7 @@ public class QueryCriteria {
         this.beginDate = b.beginDate;
         this.endDate = b.endDate;
         this.windowDays = b.windowDays;
+        this.matchLimit = b.matchLimit;
     }
 
     public String getAccessionNumber() {
@@ -61,6 +63,14 @@ public class QueryCriteria {
         return windowDays;
     }
 
+    /**
+     * Maximum number of matches the PACS returns for one C-FIND. When set, date-range crawls
+     * adapt their window size to it; 0 keeps windows at {@link #getWindowDays()}.
+     */
+    public int getMatchLimit() {
+        return matchLimit;
+    }
+
     public boolean isCrawlByDateRange() {
         return beginDate != null || endDate != null;
     }
@@ -88,6 +98,9 @@ public class QueryCriteria {
             if (windowDays < 1 || windowDays > 31) {
                 throw new IllegalArgumentException("--window-days must be between 1 and 31 (inclusive)");
             }
+            if (matchLimit < 0) {
+                throw new IllegalArgumentException("--match-limit must be >= 0");
+            }
 
             // avoid ambiguous combinations that might surprise users
             if ((studyInstanceUID != null && !studyInstanceUID.trim().isEmpty())
@@ -112,6 +125,7 @@ public class QueryCriteria {
         private LocalDate beginDate;
         private LocalDate endDate;
         private int windowDays = 7;
+        private int matchLimit = 0;
 
         public Builder accessionNumber(String accessionNumber) {
             this.accessionNumber = accessionNumber;
@@ -152,6 +166,11 @@ public class QueryCriteria {
             return this;
         }
 
+        public Builder matchLimit(int matchLimit) {
+            this.matchLimit = matchLimit;
+            return this;
+        }
+
         public QueryCriteria build() {
             return new QueryCriteria(this);
         }
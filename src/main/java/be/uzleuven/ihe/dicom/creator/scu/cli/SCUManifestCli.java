@@ -1,15 +1,23 @@
 package be.uzleuven.ihe.dicom.creator.scu.cli;
 
+import be.uzleuven.ihe.dicom.creator.scu.CFindService;
 import be.uzleuven.ihe.dicom.creator.scu.KOSSCUManifestCreator;
+import be.uzleuven.ihe.dicom.creator.scu.MADOManifestStreamWriter;
 import be.uzleuven.ihe.dicom.creator.scu.MADOSCUManifestCreator;
 import be.uzleuven.ihe.dicom.creator.scu.SCUManifestCreator;
+import be.uzleuven.ihe.dicom.creator.scu.streaming.BufferedStudyStreamWriter;
+import be.uzleuven.ihe.dicom.creator.scu.streaming.ColumnarManifestStreamWriter;
+import be.uzleuven.ihe.dicom.creator.scu.streaming.ManifestStreamWriter;
 import be.uzleuven.ihe.dicom.creator.scu.streaming.NdjsonManifestStreamWriter;
 import be.uzleuven.ihe.dicom.creator.scu.streaming.StreamingMode;
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -47,6 +55,17 @@ public class SCUManifestCli {
         if (options.getType() == null) {
             throw new IllegalArgumentException("Missing required --type kos|mado");
         }
+        if (options.getStreamingMode() == StreamingMode.DICOM_STREAM && options.getType() != ManifestType.MADO) {
+            throw new IllegalArgumentException("--stream dicom-stream requires --type mado");
+        }
+        if (options.isResume()) {
+            if (options.getBeginDate() == null || options.getEndDate() == null) {
+                throw new IllegalArgumentException("--resume requires a date range crawl (--begin-date/--end-date)");
+            }
+            if (options.getStreamingMode() == StreamingMode.COLUMNAR || options.getOutFile() != null) {
+                throw new IllegalArgumentException("--resume requires one output file per study (not --stream columnar or --out <file>)");
+            }
+        }
 
         // Build query criteria
         QueryCriteria.Builder cb = QueryCriteria.builder()
@@ -54,37 +73,42 @@ public class SCUManifestCli {
             .studyInstanceUID(options.getStudyUid())
             .beginDate(options.getBeginDate())
             .endDate(options.getEndDate())
-            .windowDays(options.getWindowDays());
+            .windowDays(options.getWindowDays())
+            .matchLimit(options.getMatchLimit());
         for (String pid : options.getPatientIds()) cb.addPatientId(pid);
         for (String d : options.getStudyDates()) cb.addStudyDate(d);
         QueryCriteria criteria = cb.build();
         criteria.validate();
 
-        // Build output options
+        // Build output options. A resumed crawl replaces the outputs of studies that did not complete.
         OutputOptions outputOptions = new OutputOptions(
             options.getOutFile(),
             options.getOutDir(),
             options.getOutPattern(),
-            options.isOverwrite(),
-            options.getStreamingMode()
+            options.isOverwrite() || options.isResume(),
+            options.getStreamingMode(),
+            options.isGzip()
         );
 
-        // Resolve studies + write incrementally
-        SCUManifestCreator resolver = new KOSSCUManifestCreator(options.getDefaults());
-        StudyQueryService queryService = new StudyQueryService(resolver);
-
         if (outputOptions.getOutDir() != null && !outputOptions.getOutDir().exists()) {
             if (!outputOptions.getOutDir().mkdirs()) {
                 throw new IOException("Failed to create out dir: " + outputOptions.getOutDir().getAbsolutePath());
             }
         }
 
-        // Build + write manifests
-        SCUManifestCreator creator = (options.getType() == ManifestType.KOS)
-            ? new KOSSCUManifestCreator(options.getDefaults())
-            : new MADOSCUManifestCreator(options.getDefaults());
+        // One pooled C-FIND client for resolving studies and building manifests
+        try (CFindService cFindService = new CFindService(options.getDefaults())) {
+            // Resolve studies + write incrementally
+            SCUManifestCreator resolver = new KOSSCUManifestCreator(options.getDefaults(), cFindService);
+            StudyQueryService queryService = new StudyQueryService(resolver);
+
+            // Build + write manifests
+            SCUManifestCreator creator = (options.getType() == ManifestType.KOS)
+                ? new KOSSCUManifestCreator(options.getDefaults(), cFindService)
+                : new MADOSCUManifestCreator(options.getDefaults(), null, cFindService);
 
-        return executeManifestCreation(creator, queryService, criteria, options, outputOptions);
+            return executeManifestCreation(creator, queryService, criteria, options, outputOptions);
+        }
     }
 
     private static int executeManifestCreation(
@@ -94,53 +118,327 @@ public class SCUManifestCli {
             SCUManifestOptions options,
             OutputOptions outputOptions) throws Exception {
 
-        final AtomicInteger ok = new AtomicInteger();
-        final AtomicInteger failed = new AtomicInteger();
         final AtomicInteger matched = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+
+        // Columnar output: one file for all studies of the crawl
+        ColumnarManifestStreamWriter crawlWriter = null;
+        if (outputOptions.getStreamingMode() == StreamingMode.COLUMNAR) {
+            File out = resolveColumnarOutputFile(outputOptions, options);
+            ensureWritable(out, outputOptions.isOverwrite());
+            crawlWriter = new ColumnarManifestStreamWriter(out, outputOptions.isOverwrite());
+        }
 
-        queryService.resolveStudiesStreaming(criteria, options.getMaxResults(), s -> {
-            int m = matched.incrementAndGet();
-            try {
-                if (outputOptions.getOutFile() != null && m != 1) {
-                    throw new IllegalArgumentException("--out requires exactly 1 matched study, but matched " + m);
-                }
+        // Date-range crawls with one output per study keep a checkpoint journal, for --resume
+        final CrawlCheckpoint checkpoint = openCheckpoint(criteria, options, outputOptions);
 
-                if (outputOptions.getStreamingMode() == StreamingMode.NDJSON) {
-                    File out = resolveOutputFile(outputOptions, options.getType(), s, null);
-                    ensureWritable(out, outputOptions.isOverwrite());
+        // Columnar studies are buffered whole until written: a window of one study per worker
+        // keeps at most --workers studies in memory, in ordered and unordered mode
+        int queueSize = options.getQueueSize();
+        if (crawlWriter != null && queueSize > options.getWorkers()) {
+            queueSize = options.getWorkers();
+            System.out.println("Columnar output: queue size limited to " + queueSize + " (--workers) to bound buffered studies");
+        }
+        CrawlEngine engine = new CrawlEngine(options.getWorkers(), queueSize, options.isOrdered());
+        CrawlEngine.Report report;
+        try {
+            CrawlEngine.StudySource source = onStudy -> queryService.resolveStudiesStreaming(
+                criteria, options.getMaxResults(), checkpoint, s -> {
+                    int m = matched.incrementAndGet();
+                    if (outputOptions.getOutFile() != null && outputOptions.getStreamingMode() != StreamingMode.COLUMNAR
+                            && m != 1) {
+                        rejected.incrementAndGet();
+                        System.err.println("Failed for StudyInstanceUID=" + s.getStudyInstanceUID()
+                            + ": --out requires exactly 1 matched study, but matched " + m);
+                        return;
+                    }
+                    onStudy.accept(s);
+                });
+            CrawlEngine.StudyProcessor<?> processor = studyProcessor(creator, options, outputOptions, crawlWriter);
+            if (checkpoint != null) {
+                processor = checkpointed(processor, checkpoint);
+            }
+            report = engine.run(source, processor);
+        } finally {
+            if (crawlWriter != null) {
+                crawlWriter.close();
+                System.out.println("Wrote " + options.getType() + " columnar crawl (" + crawlWriter.getRowCount()
+                    + " instances) -> " + crawlWriter.getOutputFile().getAbsolutePath());
+            }
+        }
 
-                    try (NdjsonManifestStreamWriter writer = new NdjsonManifestStreamWriter(out, outputOptions.isOverwrite())) {
-                        creator.streamStudy(s.getStudyInstanceUID(), s.getPatientId(), writer);
+        if (matched.get() == 0 && !options.isResume()) {
+            System.err.println("No studies matched criteria.");
+            return 3;
+        }
+
+        int failed = report.getFailed() + rejected.get();
+        System.out.println("Done. matched=" + matched.get() + " ok=" + report.getOk() + " failed=" + failed);
+        report.print(System.out);
+        return failed == 0 ? 0 : 4;
+    }
+
+    /**
+     * Per-study work of the crawl for the selected output mode. C-FINDs (and per-study files)
+     * run on the crawl workers; writing to shared output and console reporting is serialized.
+     */
+    private static CrawlEngine.StudyProcessor<?> studyProcessor(SCUManifestCreator creator, SCUManifestOptions options,
+                                                                OutputOptions outputOptions,
+                                                                ColumnarManifestStreamWriter crawlWriter) {
+        ManifestType type = options.getType();
+        switch (outputOptions.getStreamingMode()) {
+            case COLUMNAR:
+                // Query into memory in parallel, append to the single crawl file one study at a time
+                return new CrawlEngine.StudyProcessor<BufferedStudyStreamWriter>() {
+                    @Override
+                    public BufferedStudyStreamWriter build(StudyDescriptor s) throws Exception {
+                        BufferedStudyStreamWriter study = new BufferedStudyStreamWriter();
+                        creator.streamStudy(s.getStudyInstanceUID(), s.getPatientId(), study);
+                        return study;
                     }
 
-                    System.out.println("Wrote " + options.getType() + " stream -> " + out.getAbsolutePath());
-                } else {
-                    Attributes manifest = creator.createManifest(s.getStudyInstanceUID(), s.getPatientId());
-                    File out = resolveOutputFile(outputOptions, options.getType(), s, manifest);
-                    ensureWritable(out, outputOptions.isOverwrite());
+                    @Override
+                    public void write(StudyDescriptor s, BufferedStudyStreamWriter study) throws Exception {
+                        study.replayTo(crawlWriter);
+                    }
 
-                    creator.saveToFile(manifest, out);
+                    @Override
+                    public int instanceCount(BufferedStudyStreamWriter study) {
+                        return study.getInstanceCount();
+                    }
+                };
+
+            case NDJSON:
+            case DICOM_STREAM:
+                // Each study streams to its own file on the worker
+                return new CrawlEngine.StudyProcessor<StreamedStudy>() {
+                    @Override
+                    public StreamedStudy build(StudyDescriptor s) throws Exception {
+                        return streamStudyToFile(creator, options, outputOptions, s);
+                    }
+
+                    @Override
+                    public void write(StudyDescriptor s, StreamedStudy study) {
+                        System.out.println("Wrote " + type + " stream -> " + study.file.getAbsolutePath());
+                    }
+
+                    @Override
+                    public int instanceCount(StreamedStudy study) {
+                        return study.instances;
+                    }
+                };
+
+            default:
+                // Build the manifest on the worker, write the file in the output stage
+                return new CrawlEngine.StudyProcessor<Attributes>() {
+                    @Override
+                    public Attributes build(StudyDescriptor s) throws Exception {
+                        return creator.createManifest(s.getStudyInstanceUID(), s.getPatientId());
+                    }
+
+                    @Override
+                    public void write(StudyDescriptor s, Attributes manifest) throws Exception {
+                        File out = resolveOutputFile(outputOptions, type, s, manifest);
+                        ensureWritable(out, outputOptions.isOverwrite());
+
+                        creator.saveToFile(manifest, out);
+
+                        String sop = manifest.getString(Tag.SOPInstanceUID);
+                        System.out.println("Wrote " + type + " -> " + out.getAbsolutePath() + (sop != null ? (" (SOPInstanceUID=" + sop + ")") : ""));
+                    }
+
+                    @Override
+                    public int instanceCount(Attributes manifest) {
+                        return countReferencedInstances(manifest);
+                    }
+                };
+        }
+    }
+
+    /**
+     * Checkpoint of a date-range crawl with one output per study, or null if the crawl is not checkpointed.
+     */
+    private static CrawlCheckpoint openCheckpoint(QueryCriteria criteria, SCUManifestOptions options,
+                                                  OutputOptions outputOptions) throws IOException {
+        if (!criteria.isCrawlByDateRange() || outputOptions.getStreamingMode() == StreamingMode.COLUMNAR
+                || outputOptions.getOutFile() != null) {
+            return null;
+        }
+        File checkpointFile = resolveCheckpointFile(outputOptions, options);
+        CrawlCheckpoint checkpoint = options.isResume()
+            ? CrawlCheckpoint.resume(checkpointFile, criteria.getBeginDate(), criteria.getEndDate(), criteria.getWindowDays())
+            : CrawlCheckpoint.start(checkpointFile, criteria.getBeginDate(), criteria.getEndDate(), criteria.getWindowDays());
+        System.out.println("Checkpoint -> " + checkpointFile.getAbsolutePath());
+        return checkpoint;
+    }
 
-                    String sop = manifest.getString(Tag.SOPInstanceUID);
-                    System.out.println("Wrote " + options.getType() + " -> " + out.getAbsolutePath() + (sop != null ? (" (SOPInstanceUID=" + sop + ")") : ""));
+    /**
+     * Records written and failed studies in the crawl checkpoint.
+     */
+    private static <R> CrawlEngine.StudyProcessor<R> checkpointed(CrawlEngine.StudyProcessor<R> processor,
+                                                                  CrawlCheckpoint checkpoint) {
+        return new CrawlEngine.StudyProcessor<R>() {
+            @Override
+            public R build(StudyDescriptor s) throws Exception {
+                return processor.build(s);
+            }
+
+            @Override
+            public void write(StudyDescriptor s, R result) throws Exception {
+                processor.write(s, result);
+                checkpoint.studyCompleted(s.getStudyInstanceUID());
+            }
+
+            @Override
+            public int instanceCount(R result) {
+                return processor.instanceCount(result);
+            }
+
+            @Override
+            public void failed(StudyDescriptor s, Exception failure) {
+                processor.failed(s, failure);
+                try {
+                    checkpoint.studyFailed(s);
+                } catch (IOException e) {
+                    System.err.println("Failed to update checkpoint: " + e.getMessage());
                 }
+            }
+        };
+    }
 
-                ok.incrementAndGet();
-            } catch (Exception e) {
-                failed.incrementAndGet();
-                System.err.println("Failed for StudyInstanceUID=" + s.getStudyInstanceUID() + ": " + e.getMessage());
+    /**
+     * Stream one study to its own NDJSON or MADO Part-10 file.
+     */
+    private static StreamedStudy streamStudyToFile(SCUManifestCreator creator, SCUManifestOptions options,
+                                                   OutputOptions outputOptions, StudyDescriptor s) throws Exception {
+        File out = resolveOutputFile(outputOptions, options.getType(), s, null);
+        ensureWritable(out, outputOptions.isOverwrite());
+
+        if (outputOptions.getStreamingMode() == StreamingMode.NDJSON) {
+            try (CountingStreamWriter writer = new CountingStreamWriter(new NdjsonManifestStreamWriter(out,
+                    outputOptions.isOverwrite(), outputOptions.isGzip()))) {
+                creator.streamStudy(s.getStudyInstanceUID(), s.getPatientId(), writer);
+                return new StreamedStudy(out, writer.instances);
             }
-        });
+        }
 
-        if (matched.get() == 0) {
-            System.err.println("No studies matched criteria.");
-            return 3;
+        try (CountingStreamWriter writer = new CountingStreamWriter(new MADOManifestStreamWriter(
+                new FileOutputStream(out), options.getDefaults(), null))) {
+            creator.streamStudy(s.getStudyInstanceUID(), s.getPatientId(), writer);
+            return new StreamedStudy(out, writer.instances);
+        } catch (IOException | RuntimeException e) {
+            // Don't leave a truncated manifest behind
+            Files.deleteIfExists(out.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Number of instances in the evidence sequence of a KOS/MADO manifest.
+     */
+    private static int countReferencedInstances(Attributes manifest) {
+        int count = 0;
+        Sequence evidence = manifest.getSequence(Tag.CurrentRequestedProcedureEvidenceSequence);
+        if (evidence == null) {
+            return 0;
+        }
+        for (Attributes studyItem : evidence) {
+            Sequence seriesSeq = studyItem.getSequence(Tag.ReferencedSeriesSequence);
+            if (seriesSeq == null) {
+                continue;
+            }
+            for (Attributes seriesItem : seriesSeq) {
+                Sequence sopSeq = seriesItem.getSequence(Tag.ReferencedSOPSequence);
+                count += sopSeq != null ? sopSeq.size() : 0;
+            }
+        }
+        return count;
+    }
+
+    private static class StreamedStudy {
+        final File file;
+        final int instances;
+
+        StreamedStudy(File file, int instances) {
+            this.file = file;
+            this.instances = instances;
+        }
+    }
+
+    /**
+     * Counts the instances passed on to a per-study writer.
+     */
+    private static class CountingStreamWriter implements ManifestStreamWriter {
+        private final ManifestStreamWriter target;
+        int instances = 0;
+
+        CountingStreamWriter(ManifestStreamWriter target) {
+            this.target = target;
+        }
+
+        @Override
+        public void openStudy(Attributes studyAttrs) throws IOException {
+            target.openStudy(studyAttrs);
+        }
+
+        @Override
+        public void openSeries(Attributes seriesAttrs) throws IOException {
+            target.openSeries(seriesAttrs);
+        }
+
+        @Override
+        public void writeInstance(Attributes instanceAttrs) throws IOException {
+            target.writeInstance(instanceAttrs);
+            instances++;
+        }
+
+        @Override
+        public void closeSeries() throws IOException {
+            target.closeSeries();
+        }
+
+        @Override
+        public void closeStudy() throws IOException {
+            target.closeStudy();
+        }
+
+        @Override
+        public void abortStudy() throws IOException {
+            target.abortStudy();
         }
 
-        System.out.println("Done. matched=" + matched.get() + " ok=" + ok.get() + " failed=" + failed.get());
-        return failed.get() == 0 ? 0 : 4;
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
     }
 
+    /**
+     * Output file of a columnar crawl: --out, or {type}_crawl[_{begin}_{end}].dpcol in the output directory.
+     */
+    private static File resolveColumnarOutputFile(OutputOptions o, SCUManifestOptions options) {
+        if (o.getOutFile() != null) {
+            return o.getOutFile();
+        }
+        String name = options.getType().name().toLowerCase() + "_crawl";
+        if (options.getBeginDate() != null && options.getEndDate() != null) {
+            name += "_" + options.getBeginDate() + "_" + options.getEndDate();
+        }
+        return new File(o.getOutDir(), name + ".dpcol");
+    }
+
+
+    /**
+     * Checkpoint journal of a date-range crawl: --checkpoint, or .crawl_{type}_{begin}_{end}.checkpoint
+     * in the output directory.
+     */
+    private static File resolveCheckpointFile(OutputOptions o, SCUManifestOptions options) {
+        if (options.getCheckpointFile() != null) {
+            return options.getCheckpointFile();
+        }
+        return new File(o.getOutDir(), ".crawl_" + options.getType().name().toLowerCase() + "_"
+            + options.getBeginDate() + "_" + options.getEndDate() + ".checkpoint");
+    }
 
     private static File resolveOutputFile(OutputOptions o, ManifestType type, StudyDescriptor s, Attributes manifest) {
         if (o.getOutFile() != null) {
@@ -172,6 +470,9 @@ public class SCUManifestCli {
         if (o.getStreamingMode() == StreamingMode.NDJSON && name.toLowerCase().endsWith(".dcm")) {
             name = name.substring(0, name.length() - 4) + ".ndjson";
         }
+        if (o.getStreamingMode() == StreamingMode.NDJSON && o.isGzip() && !name.toLowerCase().endsWith(".gz")) {
+            name = name + ".gz";
+        }
 
         return new File(o.getOutDir(), name);
     }
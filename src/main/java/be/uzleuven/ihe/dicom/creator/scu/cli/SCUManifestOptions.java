@@ -24,6 +24,9 @@ public class SCUManifestOptions {
     private LocalDate beginDate;
     private LocalDate endDate;
     private int windowDays = 7;
+    private int matchLimit = 0;
+    private boolean resume = false;
+    private File checkpointFile;
 
     // Output options
     private File outFile;
@@ -32,6 +35,12 @@ public class SCUManifestOptions {
     private boolean overwrite = false;
     private int maxResults = 100;
     private StreamingMode streamingMode = StreamingMode.DICOM;
+    private boolean gzip = false;
+
+    // Crawl engine
+    private int workers = 4;
+    private int queueSize = 32;
+    private boolean ordered = true;
 
     public ManifestType getType() {
         return type;
@@ -148,5 +157,78 @@ public class SCUManifestOptions {
     public void setStreamingMode(StreamingMode streamingMode) {
         this.streamingMode = streamingMode;
     }
-}
 
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Number of studies built concurrently.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Discovered studies buffered ahead of the workers (and, when ordered, ahead of the output).
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Write results in discovery order.
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * C-FIND match limit of the PACS; date-range crawls adapt their window size to it (0 = fixed windows).
+     */
+    public int getMatchLimit() {
+        return matchLimit;
+    }
+
+    public void setMatchLimit(int matchLimit) {
+        this.matchLimit = matchLimit;
+    }
+
+    /**
+     * Continue a date-range crawl from its checkpoint.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Checkpoint journal of a date-range crawl; null = default file in the output directory.
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+}
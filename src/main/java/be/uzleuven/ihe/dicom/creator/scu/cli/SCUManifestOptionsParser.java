@@ -101,6 +101,15 @@ public class SCUManifestOptionsParser extends ArgumentParser {
                 case "--window-days":
                     options.setWindowDays(requireIntValue(args, ++i, arg));
                     break;
+                case "--match-limit":
+                    options.setMatchLimit(requirePositive(requireIntValue(args, ++i, arg), arg));
+                    break;
+                case "--resume":
+                    options.setResume(true);
+                    break;
+                case "--checkpoint":
+                    options.setCheckpointFile(new File(requireValue(args, ++i, arg)));
+                    break;
 
                 // Output options
                 case "--out":
@@ -121,6 +130,20 @@ public class SCUManifestOptionsParser extends ArgumentParser {
                 case "--stream":
                     parseStreamingMode(args, ++i, arg, options);
                     break;
+                case "--gzip":
+                    options.setGzip(true);
+                    break;
+
+                // Crawl engine
+                case "--workers":
+                    options.setWorkers(requirePositive(requireIntValue(args, ++i, arg), arg));
+                    break;
+                case "--queue-size":
+                    options.setQueueSize(requirePositive(requireIntValue(args, ++i, arg), arg));
+                    break;
+                case "--unordered":
+                    options.setOrdered(false);
+                    break;
 
                 default:
                     throw new IllegalArgumentException("Unknown argument: " + arg + " (use --help)");
@@ -150,7 +173,7 @@ public class SCUManifestOptionsParser extends ArgumentParser {
     }
 
     /**
-     * Parse --stream option (dicom|ndjson).
+     * Parse --stream option (dicom|ndjson|dicom-stream|columnar).
      */
     private static void parseStreamingMode(String[] args, int index, String flag, SCUManifestOptions options) {
         String value = requireValue(args, index, flag);
@@ -158,9 +181,20 @@ public class SCUManifestOptionsParser extends ArgumentParser {
             options.setStreamingMode(StreamingMode.DICOM);
         } else if ("ndjson".equalsIgnoreCase(value)) {
             options.setStreamingMode(StreamingMode.NDJSON);
+        } else if ("dicom-stream".equalsIgnoreCase(value)) {
+            options.setStreamingMode(StreamingMode.DICOM_STREAM);
+        } else if ("columnar".equalsIgnoreCase(value)) {
+            options.setStreamingMode(StreamingMode.COLUMNAR);
         } else {
-            throw new IllegalArgumentException("Invalid --stream value: " + value + " (expected dicom|ndjson)");
+            throw new IllegalArgumentException("Invalid --stream value: " + value + " (expected dicom|ndjson|dicom-stream|columnar)");
+        }
+    }
+
+    private static int requirePositive(int value, String flag) {
+        if (value < 1) {
+            throw new IllegalArgumentException(flag + " must be at least 1");
         }
+        return value;
     }
 
     /**
@@ -188,7 +222,10 @@ public class SCUManifestOptionsParser extends ArgumentParser {
         System.out.println("Crawler (crawl entire PACS by StudyDate range):");
         System.out.println("  --begin-date <YYYY-MM-DD>   ISO date");
         System.out.println("  --end-date <YYYY-MM-DD>     ISO date");
-        System.out.println("  --window-days <1..7>        Query window size (default=7)");
+        System.out.println("  --window-days <1..31>       Query window size (default=7)");
+        System.out.println("  --match-limit <N>           C-FIND match limit of the PACS: windows near it are split, sparse ones grow");
+        System.out.println("  --checkpoint <file>         Progress journal (default=<out-dir>/.crawl_{type}_{begin}_{end}.checkpoint)");
+        System.out.println("  --resume                    Continue an interrupted crawl from its checkpoint, retrying failed studies");
         System.out.println("  (date range crawling can't be combined with other criteria)");
         System.out.println();
         System.out.println("Output:");
@@ -199,7 +236,18 @@ public class SCUManifestOptionsParser extends ArgumentParser {
         System.out.println("      tokens: {type} {studyuid} {patientid} {accession} {sopuid}");
         System.out.println("  --overwrite                Allow overwriting existing files");
         System.out.println("  --max-results <N>          Safety limit for broad queries (default=100)");
-        System.out.println("  --stream dicom|ndjson      DICOM=build full manifest in memory (default). NDJSON=stream results to disk per instance.\n");
+        System.out.println("  --stream dicom|ndjson|dicom-stream|columnar");
+        System.out.println("                             DICOM=build full manifest in memory (default). NDJSON=stream results to disk per instance.");
+        System.out.println("                             DICOM-STREAM=write the MADO file while querying, one series in memory (--type mado only).");
+        System.out.println("                             COLUMNAR=one compressed columnar file (.dpcol) for all matched studies;");
+        System.out.println("                             each study is held in memory until written, at most --workers at a time.");
+        System.out.println("  --gzip                     Gzip-compress NDJSON output (.ndjson.gz)\n");
+
+        System.out.println("Crawl engine:");
+        System.out.println("  --workers <N>              Studies built concurrently (default=4)");
+        System.out.println("  --queue-size <N>           Studies buffered ahead of the workers/output (default=32, at most --workers with columnar)");
+        System.out.println("  --unordered                Write results as they complete instead of in discovery order");
+        System.out.println("  A throughput report (studies/s, instances/s, p95 per study) is printed at the end.\n");
 
         System.out.println("IHE/XDS-I metadata defaults (optional):");
         System.out.println("  --patient-issuer-oid <OID>        (alias: --issuer)");
@@ -23,6 +23,7 @@ import java.util.function.Consumer;
 public class StudyQueryService {
 
     private static final DateTimeFormatter DICOM_DA = DateTimeFormatter.BASIC_ISO_DATE; // YYYYMMDD
+    private static final int MAX_WINDOW_DAYS = 31;
 
     private final SCUManifestCreator creator;
 
@@ -63,6 +64,16 @@ public class StudyQueryService {
      * long-running crawls.
      */
     public void resolveStudiesStreaming(QueryCriteria criteria, int maxResults, Consumer<StudyDescriptor> onStudy) throws IOException {
+        resolveStudiesStreaming(criteria, maxResults, null, onStudy);
+    }
+
+    /**
+     * Like {@link #resolveStudiesStreaming(QueryCriteria, int, Consumer)}, recording the progress of a date-range
+     * crawl in {@code checkpoint} (may be null). A resumed checkpoint continues at its cursor, skips studies it
+     * already wrote and re-emits the studies that failed. Other criteria ignore the checkpoint.
+     */
+    public void resolveStudiesStreaming(QueryCriteria criteria, int maxResults, CrawlCheckpoint checkpoint,
+                                        Consumer<StudyDescriptor> onStudy) throws IOException {
         criteria.validate();
         if (onStudy == null) {
             throw new IllegalArgumentException("onStudy consumer is required");
@@ -70,7 +81,8 @@ public class StudyQueryService {
 
         // Crawl mode: from beginDate to endDate inclusive, using StudyDate range queries
         if (criteria.isCrawlByDateRange()) {
-            streamStudiesByStudyDateRange(criteria.getBeginDate(), criteria.getEndDate(), criteria.getWindowDays(), maxResults, onStudy);
+            streamStudiesByStudyDateRange(criteria.getBeginDate(), criteria.getEndDate(), criteria.getWindowDays(),
+                criteria.getMatchLimit(), maxResults, checkpoint, onStudy);
             return;
         }
 
@@ -166,18 +178,35 @@ public class StudyQueryService {
         return out;
     }
 
-    private void streamStudiesByStudyDateRange(LocalDate begin, LocalDate end, int windowDays, int maxResults, Consumer<StudyDescriptor> onStudy) throws IOException {
+    private void streamStudiesByStudyDateRange(LocalDate begin, LocalDate end, int windowDays, int matchLimit,
+                                               int maxResults, CrawlCheckpoint checkpoint,
+                                               Consumer<StudyDescriptor> onStudy) throws IOException {
         if (begin == null || end == null) {
             throw new IllegalArgumentException("begin/end required");
         }
-        if (windowDays < 1 || windowDays > 31) {
-            throw new IllegalArgumentException("windowDays must be 1..31");
+        if (windowDays < 1 || windowDays > MAX_WINDOW_DAYS) {
+            throw new IllegalArgumentException("windowDays must be 1.." + MAX_WINDOW_DAYS);
         }
 
         Set<String> seen = new LinkedHashSet<>();
         int emitted = 0;
 
         LocalDate cursor = begin;
+        if (checkpoint != null) {
+            cursor = checkpoint.getCursor();
+            windowDays = Math.max(1, Math.min(MAX_WINDOW_DAYS, checkpoint.getWindowDays()));
+
+            // Retry studies that failed in an earlier run first
+            for (StudyDescriptor failed : checkpoint.getFailed()) {
+                seen.add(failed.getStudyInstanceUID());
+                onStudy.accept(failed);
+                emitted++;
+                if (maxResults > 0 && emitted >= maxResults) {
+                    return;
+                }
+            }
+        }
+
         while (!cursor.isAfter(end)) {
             LocalDate windowEnd = cursor.plusDays(windowDays - 1L);
             if (windowEnd.isAfter(end)) {
@@ -190,6 +219,22 @@ public class StudyQueryService {
             keys.setString(Tag.StudyDate, VR.DA, range);
 
             List<Attributes> matches = creatorCFind(keys);
+
+            // The PACS probably truncated the result at its match limit: query a smaller window
+            if (matchLimit > 0 && matches.size() >= matchLimit) {
+                if (windowDays > 1) {
+                    windowDays = Math.max(1, windowDays / 2);
+                    continue;
+                }
+                System.err.println("WARNING: StudyDate " + range + " returned " + matches.size()
+                    + " matches (--match-limit " + matchLimit + "); studies of this day may be missing");
+            }
+            int nextWindowDays = nextWindowDays(windowDays, matches.size(), matchLimit);
+
+            // Decide what to emit before emitting, so the checkpoint knows the window before any study completes
+            List<String> windowUids = new ArrayList<>();
+            List<StudyDescriptor> toEmit = new ArrayList<>();
+            boolean partial = false;
             for (Attributes a : matches) {
                 String uid = a.getString(Tag.StudyInstanceUID);
                 if (uid == null || uid.trim().isEmpty()) {
@@ -198,22 +243,58 @@ public class StudyQueryService {
                 if (!seen.add(uid)) {
                     continue;
                 }
+                windowUids.add(uid);
+                if (checkpoint != null && checkpoint.isCompleted(uid)) {
+                    continue;
+                }
+                if (maxResults > 0 && emitted + toEmit.size() >= maxResults) {
+                    partial = true;
+                    continue;
+                }
 
-                onStudy.accept(new StudyDescriptor(
+                toEmit.add(new StudyDescriptor(
                     uid,
                     a.getString(Tag.PatientID),
                     a.getString(Tag.AccessionNumber),
                     a.getString(Tag.StudyDate)
                 ));
+            }
 
-                emitted++;
-                if (maxResults > 0 && emitted >= maxResults) {
-                    return;
+            if (checkpoint != null) {
+                List<String> emittedUids = new ArrayList<>();
+                for (StudyDescriptor d : toEmit) {
+                    emittedUids.add(d.getStudyInstanceUID());
                 }
+                checkpoint.windowDiscovered(windowEnd, windowUids, emittedUids, partial, nextWindowDays);
+            }
+            for (StudyDescriptor d : toEmit) {
+                onStudy.accept(d);
+            }
+            emitted += toEmit.size();
+            if (maxResults > 0 && emitted >= maxResults) {
+                return;
             }
 
             cursor = windowEnd.plusDays(1);
+            windowDays = nextWindowDays;
+        }
+    }
+
+    /**
+     * Adaptive window size: shrink windows whose result came close to the match limit of the PACS,
+     * grow sparse ones. Without a match limit the window size stays fixed.
+     */
+    private static int nextWindowDays(int windowDays, int matches, int matchLimit) {
+        if (matchLimit <= 0) {
+            return windowDays;
+        }
+        if (matches >= matchLimit * 3L / 4) {
+            return Math.max(1, windowDays / 2);
+        }
+        if (matches < matchLimit / 4) {
+            return Math.min(MAX_WINDOW_DAYS, windowDays * 2);
         }
+        return windowDays;
     }
 
     private String toDicomDa(LocalDate d) {
@@ -0,0 +1,98 @@
+package be.uzleuven.ihe.dicom.creator.scu.streaming;
+
+import org.dcm4che3.data.Attributes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the traversal of one study in memory and replays it into another writer later.
+ *
+ * Lets several studies be queried concurrently while a single-threaded writer (such as the
+ * columnar crawl file) receives them one complete study at a time. A study that fails while
+ * being queried never reaches the target writer.
+ *
+ * The whole study is held in memory until it is replayed, so callers bound how many recordings
+ * exist at once (the crawl CLI limits its queue to one study per worker in columnar mode).
+ */
+public class BufferedStudyStreamWriter implements ManifestStreamWriter {
+
+    private static final int OPEN_STUDY = 0;
+    private static final int OPEN_SERIES = 1;
+    private static final int INSTANCE = 2;
+    private static final int CLOSE_SERIES = 3;
+    private static final int CLOSE_STUDY = 4;
+
+    private final List<Event> events = new ArrayList<>();
+    private int instanceCount = 0;
+
+    @Override
+    public void openStudy(Attributes studyAttrs) throws IOException {
+        events.add(new Event(OPEN_STUDY, studyAttrs));
+    }
+
+    @Override
+    public void openSeries(Attributes seriesAttrs) throws IOException {
+        events.add(new Event(OPEN_SERIES, seriesAttrs));
+    }
+
+    @Override
+    public void writeInstance(Attributes instanceAttrs) throws IOException {
+        events.add(new Event(INSTANCE, instanceAttrs));
+        instanceCount++;
+    }
+
+    @Override
+    public void closeSeries() throws IOException {
+        events.add(new Event(CLOSE_SERIES, null));
+    }
+
+    @Override
+    public void closeStudy() throws IOException {
+        events.add(new Event(CLOSE_STUDY, null));
+    }
+
+    /**
+     * Drop the recording, so a study that failed while being queried is never replayed.
+     */
+    @Override
+    public void abortStudy() {
+        events.clear();
+        instanceCount = 0;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release; the recording stays available for replay
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * Replay the recorded calls, in order, into {@code target}. Does not close the target.
+     */
+    public void replayTo(ManifestStreamWriter target) throws IOException {
+        for (Event e : events) {
+            switch (e.type) {
+                case OPEN_STUDY: target.openStudy(e.attrs); break;
+                case OPEN_SERIES: target.openSeries(e.attrs); break;
+                case INSTANCE: target.writeInstance(e.attrs); break;
+                case CLOSE_SERIES: target.closeSeries(); break;
+                default: target.closeStudy();
+            }
+        }
+    }
+
+    private static class Event {
+        final int type;
+        final Attributes attrs;
+
+        Event(int type, Attributes attrs) {
+            this.type = type;
+            this.attrs = attrs;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package be.uzleuven.ihe.dicom.creator.scu.streaming;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads files written by {@link ColumnarManifestStreamWriter} row by row.
+ * One row group is decoded at a time.
+ * Example:
+ * <pre>
+ * try (ColumnarManifestReader reader = new ColumnarManifestReader(file)) {
+ *     int sop = reader.getColumnNames().indexOf("sopInstanceUID");
+ *     for (String[] row; (row = reader.next()) != null; ) {
+ *         System.out.println(row[sop]);
+ *     }
+ * }
+ * </pre>
+ */
+public class ColumnarManifestReader implements Closeable {
+
+    private final InputStream in;
+    private final List<String> columnNames = new ArrayList<>();
+    private final byte[] kinds;
+
+    /** Dictionary since the last reset; index 0 is null */
+    private final List<String> dictionary = new ArrayList<>(Collections.singletonList(null));
+
+    private int[][] codes;
+    private String[] sopSuffixes;
+    private int rows = 0;
+    private int next = 0;
+    private boolean end = false;
+
+    public ColumnarManifestReader(File file) throws IOException {
+        this.in = new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 64 * 1024), 64 * 1024);
+        try {
+            byte[] magic = readFully(ColumnarManifestStreamWriter.MAGIC.length);
+            if (!Arrays.equals(magic, ColumnarManifestStreamWriter.MAGIC)) {
+                throw new IOException("Not a columnar manifest file: " + file.getAbsolutePath());
+            }
+            int version = readByte();
+            if (version != ColumnarManifestStreamWriter.VERSION) {
+                throw new IOException("Unsupported columnar manifest version: " + version);
+            }
+            int columnCount = (int) readVarLong();
+            kinds = new byte[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                columnNames.add(readString());
+                kinds[c] = (byte) readByte();
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(columnNames);
+    }
+
+    /**
+     * Next row, values in the order of {@link #getColumnNames()} (integers as text, absent values
+     * as null), or null at the end of the file.
+     */
+    public String[] next() throws IOException {
+        if (next == rows) {
+            if (end || !readRowGroup()) {
+                return null;
+            }
+        }
+        int r = next++;
+        String[] row = new String[kinds.length];
+        for (int c = 0; c < kinds.length; c++) {
+            int code = codes[c][r];
+            switch (kinds[c]) {
+                case ColumnarManifestStreamWriter.KIND_INT:
+                    row[c] = code == 0 ? null : Long.toString(unzigzag(code));
+                    break;
+                case ColumnarManifestStreamWriter.KIND_UID:
+                    String suffix = sopSuffixes[r];
+                    if (code == 0) {
+                        row[c] = suffix.isEmpty() ? null : suffix;
+                    } else {
+                        row[c] = dictionary.get(code) + '.' + suffix;
+                    }
+                    break;
+                default:
+                    row[c] = dictionary.get(code);
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readRowGroup() throws IOException {
+        int marker = readByte();
+        if (marker == 0) {
+            end = true;
+            return false;
+        }
+        if (marker == 2) {
+            // Dictionary reset
+            dictionary.clear();
+            dictionary.add(null);
+        } else if (marker != 1) {
+            throw new IOException("Malformed columnar manifest file: row group marker " + marker);
+        }
+        rows = (int) readVarLong();
+        next = 0;
+        int entries = (int) readVarLong();
+        for (int i = 0; i < entries; i++) {
+            dictionary.add(readString());
+        }
+
+        if (codes == null || codes[0].length < rows) {
+            codes = new int[kinds.length][rows];
+            sopSuffixes = new String[rows];
+        }
+        for (int c = 0; c < kinds.length; c++) {
+            for (int r = 0; r < rows; r++) {
+                // Integer columns keep the encoded value (0 = absent), decoded in next()
+                codes[c][r] = (int) readVarLong();
+            }
+            if (kinds[c] == ColumnarManifestStreamWriter.KIND_UID) {
+                for (int r = 0; r < rows; r++) {
+                    sopSuffixes[r] = readString();
+                }
+            }
+        }
+        return rows > 0 || readRowGroup();
+    }
+
+    private static long unzigzag(int encoded) {
+        long z = (encoded & 0xFFFFFFFFL) - 1;
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated columnar manifest file");
+        }
+        return b;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private String readString() throws IOException {
+        return new String(readFully((int) readVarLong()), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readFully(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int off = 0;
+        while (off < length) {
+            int n = in.read(bytes, off, length - off);
+            if (n < 0) {
+                throw new EOFException("Truncated columnar manifest file");
+            }
+            off += n;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,366 @@
+package be.uzleuven.ihe.dicom.creator.scu.streaming;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Columnar writer for bulk crawls: every study of a crawl goes into one compact file.
+ *
+ * Rows are instances, denormalized with the attributes of their study and series (the same
+ * fields as {@link NdjsonManifestStreamWriter}). Rows are buffered in row groups of
+ * {@value #ROW_GROUP_SIZE} and written column by column:
+ * <ul>
+ *   <li>String columns are dictionary encoded against a shared dictionary; a row group
+ *       carries the dictionary entries it introduces. Once the dictionary holds
+ *       {@value #MAX_DICTIONARY_ENTRIES} entries it is reset, and the next row group starts a
+ *       new one</li>
+ *   <li>SOP Instance UIDs are split at their last '.' into a dictionary encoded prefix and a suffix</li>
+ *   <li>Integer columns are zigzag varints</li>
+ * </ul>
+ * The file is gzip compressed, which turns the repetitive dictionary index columns into a small
+ * fraction of a byte per row. Memory use is one row group plus the (bounded) dictionary.
+ *
+ * Layout, inside the gzip stream (varints are unsigned LEB128, strings are varint length + UTF-8):
+ * <pre>
+ * "DPCOL" version(byte) columnCount(varint) {name(string) kind(byte)}*
+ * row group:  1(byte) rows(varint) newEntries(varint) {entry(string)}* {column values}*
+ * row group after a dictionary reset: 2(byte), then as above
+ * end:        0(byte) totalRows(varint)
+ * </pre>
+ * Column values per kind: {@code D} = rows dictionary indices (0 = null);
+ * {@code U} = rows prefix indices (0 = no prefix) followed by rows suffix strings;
+ * {@code I} = rows values, 0 = absent, otherwise zigzag(value) + 1.
+ * {@link ColumnarManifestReader} reads the format back.
+ *
+ * The file is complete once {@link #close()} has written the end marker. The gzip stream is
+ * sync-flushed after every row group, so the row groups written so far stay readable if a crawl
+ * stops without closing the file. {@link #abortStudy()} drops the rows of the failed study that
+ * are still buffered; rows already written in an earlier row group remain.
+ */
+public class ColumnarManifestStreamWriter implements ManifestStreamWriter {
+
+    static final byte[] MAGIC = "DPCOL".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    static final byte KIND_DICTIONARY = 'D';
+    static final byte KIND_UID = 'U';
+    static final byte KIND_INT = 'I';
+
+    static final int ROW_GROUP_SIZE = 8192;
+
+    /** Dictionary size that triggers a reset after the current row group */
+    static final int MAX_DICTIONARY_ENTRIES = 1 << 20;
+
+    private static final String[] COLUMN_NAMES = {
+        "studyInstanceUID", "patientID", "patientName", "studyDate", "studyTime", "accessionNumber",
+        "studyDescription",
+        "seriesInstanceUID", "modality", "seriesNumber", "seriesDescription", "seriesDate", "seriesTime",
+        "sopClassUID", "sopInstanceUID", "instanceNumber", "numberOfFrames", "rows", "columns"
+    };
+    private static final int[] STUDY_TAGS = {
+        Tag.StudyInstanceUID, Tag.PatientID, Tag.PatientName, Tag.StudyDate, Tag.StudyTime,
+        Tag.AccessionNumber, Tag.StudyDescription
+    };
+    private static final int[] SERIES_TAGS = {
+        Tag.SeriesInstanceUID, Tag.Modality, Tag.SeriesNumber, Tag.SeriesDescription, Tag.SeriesDate,
+        Tag.SeriesTime
+    };
+    private static final int[] INT_TAGS = {
+        Tag.InstanceNumber, Tag.NumberOfFrames, Tag.Rows, Tag.Columns
+    };
+
+    private static final int SERIES_COLUMN = STUDY_TAGS.length;
+    private static final int SOP_CLASS_COLUMN = SERIES_COLUMN + SERIES_TAGS.length;
+    private static final int SOP_INSTANCE_COLUMN = SOP_CLASS_COLUMN + 1;
+    private static final int INT_COLUMN = SOP_INSTANCE_COLUMN + 1;
+
+    private static final int ABSENT = Integer.MIN_VALUE;
+
+    private final File outputFile;
+    private final boolean overwrite;
+
+    private OutputStream out;
+
+    /** Dictionary since the last reset; index 0 is null */
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> newEntries = new ArrayList<>();
+    private boolean dictionaryReset = false;
+
+    /** Values of the open study and series, re-interned after a dictionary reset */
+    private final String[] studyValues = new String[STUDY_TAGS.length];
+    private final String[] seriesValues = new String[SERIES_TAGS.length];
+    private final int[] studyCodes = new int[STUDY_TAGS.length];
+    private final int[] seriesCodes = new int[SERIES_TAGS.length];
+
+    /** Current row group: per column one code per row (dictionary index or int value) */
+    private final int[][] codes = new int[COLUMN_NAMES.length][ROW_GROUP_SIZE];
+    private final String[] sopSuffixes = new String[ROW_GROUP_SIZE];
+    private int rowCount = 0;
+    private long totalRows = 0;
+    /** First row of the open study in the current row group */
+    private int studyStartRow = 0;
+
+    private boolean studyOpen = false;
+    private boolean seriesOpen = false;
+
+    public ColumnarManifestStreamWriter(File outputFile, boolean overwrite) {
+        this.outputFile = outputFile;
+        this.overwrite = overwrite;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * Number of instance rows written so far.
+     */
+    public long getRowCount() {
+        return totalRows + rowCount;
+    }
+
+    @Override
+    public void openStudy(Attributes studyAttrs) throws IOException {
+        ensureOpen();
+        if (studyOpen) {
+            throw new IOException("Study already open");
+        }
+        studyOpen = true;
+        studyStartRow = rowCount;
+        for (int i = 0; i < STUDY_TAGS.length; i++) {
+            studyValues[i] = studyAttrs.getString(STUDY_TAGS[i]);
+            studyCodes[i] = intern(studyValues[i]);
+        }
+    }
+
+    @Override
+    public void openSeries(Attributes seriesAttrs) throws IOException {
+        requireStudyOpen();
+        seriesOpen = true;
+        for (int i = 0; i < SERIES_TAGS.length; i++) {
+            seriesValues[i] = seriesAttrs.getString(SERIES_TAGS[i]);
+            seriesCodes[i] = intern(seriesValues[i]);
+        }
+    }
+
+    @Override
+    public void writeInstance(Attributes instanceAttrs) throws IOException {
+        requireStudyOpen();
+        if (!seriesOpen) {
+            throw new IOException("writeInstance called without openSeries");
+        }
+
+        int row = rowCount;
+        for (int i = 0; i < studyCodes.length; i++) {
+            codes[i][row] = studyCodes[i];
+        }
+        for (int i = 0; i < seriesCodes.length; i++) {
+            codes[SERIES_COLUMN + i][row] = seriesCodes[i];
+        }
+        codes[SOP_CLASS_COLUMN][row] = intern(instanceAttrs.getString(Tag.SOPClassUID));
+
+        String sopInstanceUid = instanceAttrs.getString(Tag.SOPInstanceUID);
+        int dot = sopInstanceUid != null ? sopInstanceUid.lastIndexOf('.') : -1;
+        if (dot <= 0) {
+            codes[SOP_INSTANCE_COLUMN][row] = 0;
+            sopSuffixes[row] = sopInstanceUid;
+        } else {
+            codes[SOP_INSTANCE_COLUMN][row] = intern(sopInstanceUid.substring(0, dot));
+            sopSuffixes[row] = sopInstanceUid.substring(dot + 1);
+        }
+
+        for (int i = 0; i < INT_TAGS.length; i++) {
+            codes[INT_COLUMN + i][row] = parseInt(instanceAttrs.getString(INT_TAGS[i]));
+        }
+
+        if (++rowCount == ROW_GROUP_SIZE) {
+            writeRowGroup();
+        }
+    }
+
+    @Override
+    public void closeSeries() throws IOException {
+        seriesOpen = false;
+    }
+
+    @Override
+    public void closeStudy() throws IOException {
+        seriesOpen = false;
+        studyOpen = false;
+    }
+
+    @Override
+    public void abortStudy() throws IOException {
+        if (!studyOpen) {
+            return;
+        }
+        for (int r = studyStartRow; r < rowCount; r++) {
+            sopSuffixes[r] = null;
+        }
+        rowCount = studyStartRow;
+        closeStudy();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            closeStudy();
+            writeRowGroup();
+            out.write(0);
+            writeVarLong(totalRows);
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out != null) return;
+
+        if (outputFile.exists() && !overwrite) {
+            throw new IOException("Output exists (use --overwrite): " + outputFile.getAbsolutePath());
+        }
+        File parent = outputFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            if (!parent.mkdirs()) {
+                throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+            }
+        }
+
+        // syncFlush: flushing after a row group makes it readable without the gzip trailer
+        out = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(outputFile, false), 64 * 1024, true),
+            64 * 1024);
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarLong(COLUMN_NAMES.length);
+        for (int c = 0; c < COLUMN_NAMES.length; c++) {
+            writeString(COLUMN_NAMES[c]);
+            out.write(kind(c));
+        }
+    }
+
+    private void requireStudyOpen() throws IOException {
+        if (!studyOpen) {
+            throw new IOException("No open study");
+        }
+    }
+
+    private static byte kind(int column) {
+        if (column == SOP_INSTANCE_COLUMN) {
+            return KIND_UID;
+        }
+        return column >= INT_COLUMN ? KIND_INT : KIND_DICTIONARY;
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size() + 1;
+            dictionary.put(value, index);
+            newEntries.add(value);
+        }
+        return index;
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) {
+            return ABSENT;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return ABSENT;
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        out.write(dictionaryReset ? 2 : 1);
+        dictionaryReset = false;
+        writeVarLong(rowCount);
+        writeVarLong(newEntries.size());
+        for (String entry : newEntries) {
+            writeString(entry);
+        }
+        newEntries.clear();
+
+        for (int c = 0; c < COLUMN_NAMES.length; c++) {
+            int[] column = codes[c];
+            if (kind(c) == KIND_INT) {
+                for (int r = 0; r < rowCount; r++) {
+                    int v = column[r];
+                    writeVarLong(v == ABSENT ? 0 : ((((long) v) << 1) ^ (((long) v) >> 63)) + 1);
+                }
+            } else {
+                for (int r = 0; r < rowCount; r++) {
+                    writeVarLong(column[r]);
+                }
+            }
+            if (c == SOP_INSTANCE_COLUMN) {
+                for (int r = 0; r < rowCount; r++) {
+                    writeString(sopSuffixes[r] != null ? sopSuffixes[r] : "");
+                    sopSuffixes[r] = null;
+                }
+            }
+        }
+
+        totalRows += rowCount;
+        rowCount = 0;
+        studyStartRow = 0;
+        out.flush();
+
+        if (dictionary.size() >= MAX_DICTIONARY_ENTRIES) {
+            resetDictionary();
+        }
+    }
+
+    /**
+     * Start a new dictionary, so a long crawl doesn't keep every distinct value in memory.
+     * The open study and series are interned again, their codes go into the next row group.
+     */
+    private void resetDictionary() {
+        dictionary.clear();
+        newEntries.clear();
+        dictionaryReset = true;
+        if (studyOpen) {
+            for (int i = 0; i < studyValues.length; i++) {
+                studyCodes[i] = intern(studyValues[i]);
+            }
+        }
+        if (seriesOpen) {
+            for (int i = 0; i < seriesValues.length; i++) {
+                seriesCodes[i] = intern(seriesValues[i]);
+            }
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -21,6 +21,15 @@ public interface ManifestStreamWriter extends Closeable {
 
     void closeStudy() throws IOException;
 
+    /**
+     * Abandon the open study after a failure, instead of {@link #closeStudy()}.
+     * The default ends the study like closeStudy(); writers that can drop or mark a partial
+     * study override it. Does nothing without an open study.
+     */
+    default void abortStudy() throws IOException {
+        closeStudy();
+    }
+
     @Override
     void close() throws IOException;
 }
@@ -5,24 +5,37 @@ import org.dcm4che3.data.Tag;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * NDJSON writer for huge PACS crawls.
  * Writes one JSON object per line with a lightweight schema.
  * This keeps memory usage near-constant.
+ * Optionally gzip-compressed; lines are then flushed per study instead of per line,
+ * so the compressor can work on larger blocks. The gzip stream is sync-flushed, so every
+ * completed study is readable even if the crawl stops before the file is closed.
+ *
+ * A study ends with a {@code studyEnd} line, or with {@code studyAborted} when it failed
+ * halfway; the lines of an aborted study are incomplete.
  */
 public class NdjsonManifestStreamWriter implements be.uzleuven.ihe.dicom.creator.scu.streaming.ManifestStreamWriter {
 
     private final File outputFile;
     private final boolean overwrite;
+    private final boolean gzip;
 
     private BufferedWriter w;
     private boolean studyOpen = false;
     private boolean seriesOpen = false;
 
     public NdjsonManifestStreamWriter(File outputFile, boolean overwrite) {
+        this(outputFile, overwrite, false);
+    }
+
+    public NdjsonManifestStreamWriter(File outputFile, boolean overwrite, boolean gzip) {
         this.outputFile = outputFile;
         this.overwrite = overwrite;
+        this.gzip = gzip;
     }
 
     public File getOutputFile() {
@@ -104,6 +117,16 @@ public class NdjsonManifestStreamWriter implements be.uzleuven.ihe.dicom.creator
             closeSeries();
         }
         writeLine(obj("type", "studyEnd"));
+        w.flush();
+        studyOpen = false;
+    }
+
+    @Override
+    public void abortStudy() throws IOException {
+        if (!studyOpen) return;
+        seriesOpen = false;
+        writeLine(obj("type", "studyAborted"));
+        w.flush();
         studyOpen = false;
     }
 
@@ -133,7 +156,12 @@ public class NdjsonManifestStreamWriter implements be.uzleuven.ihe.dicom.creator
             }
         }
 
-        w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile, false), StandardCharsets.UTF_8));
+        OutputStream out = new FileOutputStream(outputFile, false);
+        if (gzip) {
+            // syncFlush: flush() pushes the compressed study out instead of leaving it in the deflater
+            out = new GZIPOutputStream(out, 64 * 1024, true);
+        }
+        w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
     }
 
     private void requireStudyOpen() throws IOException {
@@ -145,7 +173,9 @@ public class NdjsonManifestStreamWriter implements be.uzleuven.ihe.dicom.creator
     private void writeLine(String s) throws IOException {
         w.write(s);
         w.newLine();
-        w.flush(); // deliberate: keep progress durable during huge crawls
+        if (!gzip) {
+            w.flush(); // deliberate: keep progress durable during huge crawls
+        }
     }
 
     private static String safe(String s) {
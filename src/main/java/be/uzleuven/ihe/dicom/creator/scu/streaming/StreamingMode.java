@@ -5,6 +5,12 @@ public enum StreamingMode {
     DICOM,
 
     /** Low-memory streaming output: one NDJSON file per study. */
-    NDJSON
+    NDJSON,
+
+    /** Low-memory MADO output: DICOM Part-10 written while series are queried, one series in memory. */
+    DICOM_STREAM,
+
+    /** Bulk crawl output: one compressed columnar file for all studies (see ColumnarManifestStreamWriter). */
+    COLUMNAR
 }
 
@@ -47,11 +47,22 @@ import be.uzleuven.ihe.dicom.validator.validation.Part10FileValidator;
 import be.uzleuven.ihe.dicom.validator.validation.iod.IODValidatorFactory;
 import be.uzleuven.ihe.dicom.validator.cli.CLIVerifyOptions;
 import be.uzleuven.ihe.dicom.validator.cli.CLIVerifyParser;
+import be.uzleuven.ihe.dicom.validator.cli.VerifySummary;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Command-line interface for DICOM IOD validation.
@@ -80,48 +91,139 @@ public class CLIDICOMVerify {
 
     private static int processFiles(CLIVerifyOptions options) {
         int exitCode = 0;
+        VerifySummary summary = new VerifySummary(options.getProfile(), options.getThreads());
 
+        // Expand the arguments into the files to validate; missing paths are reported as errors
+        List<File> files = new ArrayList<>();
+        int index = 0;
         for (String filePath : options.getFiles()) {
             File file = new File(filePath);
 
             if (!file.exists()) {
                 System.err.println("Error: File not found: " + filePath);
+                summary.add(notValidated(index++, filePath, "File not found"));
                 exitCode = 1;
                 continue;
             }
 
+            if (file.isDirectory() && options.isRecursive()) {
+                try (Stream<Path> paths = Files.walk(file.toPath())) {
+                    paths.filter(Files::isRegularFile).sorted().forEach(p -> files.add(p.toFile()));
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Error: Cannot read directory " + filePath + ": " + e.getMessage());
+                    summary.add(notValidated(index++, filePath, "Cannot read directory: " + e.getMessage()));
+                    exitCode = 1;
+                }
+                continue;
+            }
+
             if (!file.isFile()) {
-                System.err.println("Error: Not a file: " + filePath);
+                System.err.println("Error: Not a file: " + filePath + (file.isDirectory() ? " (use --recursive)" : ""));
+                summary.add(notValidated(index++, filePath, "Not a file"));
                 exitCode = 1;
                 continue;
             }
 
+            files.add(file);
+        }
+
+        long start = System.nanoTime();
+        if (options.getThreads() == 1 || files.size() < 2) {
+            for (File file : files) {
+                verify(index++, file, options, summary);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.getThreads(), files.size()));
+            for (File file : files) {
+                int fileIndex = index++;
+                pool.submit(() -> verify(fileIndex, file, options, summary));
+            }
+            pool.shutdown();
             try {
-                int result = validateFile(file, options.isVerbose(), options.isNewFormat(), options.getProfile());
-                if (result != 0) {
-                    exitCode = result;
-                }
-            } catch (Exception e) {
-                System.err.println("Error validating file " + filePath + ": " + e.getMessage());
-                if (options.isVerbose()) {
-                    e.printStackTrace(System.err);
+                while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // keep waiting for the files in progress
                 }
-                exitCode = 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                System.err.println("Error: Validation interrupted");
+                return 1;
+            }
+        }
+        summary.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (summary.count(VerifySummary.Status.PASSED) != summary.getFiles().size()) {
+            exitCode = 1;
+        }
+
+        boolean reports = options.getJsonReport() != null || options.getJunitReport() != null;
+        if (summary.getFiles().size() > 1 || reports) {
+            summary.printSummary(System.out);
+        }
+        try {
+            if (options.getJsonReport() != null) {
+                summary.writeJson(options.getJsonReport());
+                System.out.println("JSON report: " + options.getJsonReport().getAbsolutePath());
+            }
+            if (options.getJunitReport() != null) {
+                summary.writeJUnit(options.getJunitReport());
+                System.out.println("JUnit report: " + options.getJunitReport().getAbsolutePath());
             }
+        } catch (IOException e) {
+            System.err.println("Error writing report: " + e.getMessage());
+            exitCode = 1;
         }
 
         return exitCode;
     }
 
-    private static int validateFile(File file, boolean verbose, boolean newFormat, String profile)
+    /**
+     * Validate one file, buffering its console output so concurrent files are not interleaved.
+     */
+    private static void verify(int index, File file, CLIVerifyOptions options, VerifySummary summary) {
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outBuffer, true, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(errBuffer, true, StandardCharsets.UTF_8);
+
+        VerifySummary.FileReport report = new VerifySummary.FileReport(index, file.getPath());
+        long start = System.nanoTime();
+        try {
+            validateFile(file, options.isVerbose(), options.isNewFormat(), options.getProfile(), out, err, report);
+        } catch (Exception e) {
+            err.println("Error validating file " + file.getPath() + ": " + e.getMessage());
+            if (options.isVerbose()) {
+                e.printStackTrace(err);
+            }
+            report.error(e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        }
+        report.setMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        summary.add(report);
+
+        synchronized (CLIDICOMVerify.class) {
+            System.out.print(outBuffer.toString(StandardCharsets.UTF_8));
+            System.out.flush();
+            System.err.print(errBuffer.toString(StandardCharsets.UTF_8));
+            System.err.flush();
+        }
+    }
+
+    private static VerifySummary.FileReport notValidated(int index, String path, String reason) {
+        VerifySummary.FileReport report = new VerifySummary.FileReport(index, path);
+        report.error(reason);
+        return report;
+    }
+
+    private static int validateFile(File file, boolean verbose, boolean newFormat, String profile,
+                                    PrintStream out, PrintStream err, VerifySummary.FileReport report)
             throws IOException {
 
-        System.out.println("\n" + repeat('=', 80));
-        System.out.println("Validating: " + file.getAbsolutePath());
-        System.out.println(repeat('=', 80));
+        out.println("\n" + repeat('=', 80));
+        out.println("Validating: " + file.getAbsolutePath());
+        out.println(repeat('=', 80));
 
         if (profile != null) {
-            System.out.println("Profile: " + profile);
+            out.println("Profile: " + profile);
         }
 
         // Phase 1: Validate DICOM Part 10 File Format (before parsing)
@@ -129,19 +231,20 @@ public class CLIDICOMVerify {
         Part10FileValidator.validatePart10FileFormat(file, fileFormatResult, "Part10FileFormat");
 
         if (!fileFormatResult.isValid()) {
-            System.out.println("\n✗ DICOM PART 10 FILE FORMAT VALIDATION FAILED");
-            System.out.println("\nErrors:");
+            report.record(fileFormatResult);
+            out.println("\n✗ DICOM PART 10 FILE FORMAT VALIDATION FAILED");
+            out.println("\nErrors:");
             for (ValidationResult.ValidationMessage msg : fileFormatResult.getErrors()) {
-                System.out.println("  " + formatMessage(msg, newFormat));
+                out.println("  " + formatMessage(msg, newFormat));
             }
             return 1;
         }
 
         if (verbose) {
-            System.out.println("\n✓ DICOM Part 10 File Format: Valid");
+            out.println("\n✓ DICOM Part 10 File Format: Valid");
             for (ValidationResult.ValidationMessage msg : fileFormatResult.getMessages()) {
                 if (msg.getSeverity() == ValidationResult.Severity.INFO) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
         }
@@ -159,7 +262,7 @@ public class CLIDICOMVerify {
             for (ValidationResult.ValidationMessage msg : fileFormatResult.getMessages()) {
                 if (msg.getSeverity() == ValidationResult.Severity.INFO ||
                     msg.getSeverity() == ValidationResult.Severity.WARNING) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
         }
@@ -169,28 +272,30 @@ public class CLIDICOMVerify {
         String sopInstanceUID = dataset.getString(Tag.SOPInstanceUID);
         String modality = dataset.getString(Tag.Modality);
 
-        System.out.println("\nDICOM Object Information:");
-        System.out.println("  SOP Class UID:     " + (sopClassUID != null ? sopClassUID : "N/A"));
-        System.out.println("  SOP Instance UID:  " + (sopInstanceUID != null ? sopInstanceUID : "N/A"));
-        System.out.println("  Modality:          " + (modality != null ? modality : "N/A"));
+        out.println("\nDICOM Object Information:");
+        out.println("  SOP Class UID:     " + (sopClassUID != null ? sopClassUID : "N/A"));
+        out.println("  SOP Instance UID:  " + (sopInstanceUID != null ? sopInstanceUID : "N/A"));
+        out.println("  Modality:          " + (modality != null ? modality : "N/A"));
 
         // Select appropriate validator with profile awareness
         IODValidator validator = IODValidatorFactory.selectValidator(dataset, profile);
 
         if (validator == null) {
-            System.err.println("\nError: No validator found for SOP Class UID: " + sopClassUID);
+            err.println("\nError: No validator found for SOP Class UID: " + sopClassUID);
+            report.error("No validator found for SOP Class UID: " + sopClassUID);
             return 1;
         }
 
-        System.out.println("  IOD Type:          " + validator.getIODName());
+        out.println("  IOD Type:          " + validator.getIODName());
+        report.setIod(validator.getIODName());
 
         if (validator.isRetired()) {
-            System.out.println("  WARNING: This IOD is retired");
+            out.println("  WARNING: This IOD is retired");
         }
 
         // Perform validation
-        System.out.println("\nValidation Results:");
-        System.out.println(repeat('-', 80));
+        out.println("\nValidation Results:");
+        out.println(repeat('-', 80));
 
         ValidationResult result;
         if (validator instanceof be.uzleuven.ihe.dicom.validator.validation.iod.AbstractIODValidator) {
@@ -205,34 +310,36 @@ public class CLIDICOMVerify {
             result = validator.validate(dataset, verbose, profile);
         }
 
+        report.record(result);
+
         // Display results
         if (result.isValid()) {
-            System.out.println("\n✓ VALIDATION PASSED");
+            out.println("\n✓ VALIDATION PASSED");
 
             if (verbose && !result.getMessages().isEmpty()) {
-                System.out.println("\nInformation messages:");
+                out.println("\nInformation messages:");
                 for (ValidationResult.ValidationMessage msg : result.getMessages()) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
 
             return 0;
         } else {
-            System.out.println("\n✗ VALIDATION FAILED");
+            out.println("\n✗ VALIDATION FAILED");
 
             // Display errors
             if (!result.getErrors().isEmpty()) {
-                System.out.println("\nErrors (" + result.getErrors().size() + "): ");
+                out.println("\nErrors (" + result.getErrors().size() + "): ");
                 for (ValidationResult.ValidationMessage msg : result.getErrors()) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
 
             // Display warnings
             if (!result.getWarnings().isEmpty()) {
-                System.out.println("\nWarnings (" + result.getWarnings().size() + "): ");
+                out.println("\nWarnings (" + result.getWarnings().size() + "): ");
                 for (ValidationResult.ValidationMessage msg : result.getWarnings()) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
 
@@ -245,9 +352,9 @@ public class CLIDICOMVerify {
             }
 
             if (verbose && !infoMessages.isEmpty()) {
-                System.out.println("\nInformation:");
+                out.println("\nInformation:");
                 for (ValidationResult.ValidationMessage msg : infoMessages) {
-                    System.out.println("  " + formatMessage(msg, newFormat));
+                    out.println("  " + formatMessage(msg, newFormat));
                 }
             }
 
@@ -1,5 +1,6 @@
 package be.uzleuven.ihe.dicom.validator.cli;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +12,10 @@ public class CLIVerifyOptions {
     private boolean verbose = false;
     private boolean newFormat = false;
     private String profile = null;
+    private int threads = 1;
+    private boolean recursive = false;
+    private File jsonReport = null;
+    private File junitReport = null;
     private final List<String> files = new ArrayList<>();
 
     public boolean isShowHelp() {
@@ -45,6 +50,44 @@ public class CLIVerifyOptions {
         this.profile = profile;
     }
 
+    /**
+     * Number of files validated concurrently.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Validate all files below directory arguments.
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public File getJsonReport() {
+        return jsonReport;
+    }
+
+    public void setJsonReport(File jsonReport) {
+        this.jsonReport = jsonReport;
+    }
+
+    public File getJunitReport() {
+        return junitReport;
+    }
+
+    public void setJunitReport(File junitReport) {
+        this.junitReport = junitReport;
+    }
+
     public List<String> getFiles() {
         return files;
     }
@@ -2,6 +2,8 @@ package be.uzleuven.ihe.dicom.validator.cli;
 
 import be.uzleuven.ihe.dicom.commons.cli.ArgumentParser;
 
+import java.io.File;
+
 /**
  * Parser for CLIDICOMVerify command-line arguments.
  * Extends ArgumentParser for common CLI utilities.
@@ -31,6 +33,18 @@ public class CLIVerifyParser extends ArgumentParser {
                 options.setProfile(arg.substring("--profile=".length()));
             } else if ("--profile".equals(arg)) {
                 options.setProfile(requireValue(args, ++i, arg));
+            } else if ("-j".equals(arg) || "--parallel".equals(arg)) {
+                int threads = requireIntValue(args, ++i, arg);
+                if (threads < 1) {
+                    throw new IllegalArgumentException(arg + " must be at least 1");
+                }
+                options.setThreads(threads);
+            } else if ("-r".equals(arg) || "--recursive".equals(arg)) {
+                options.setRecursive(true);
+            } else if ("--json-report".equals(arg)) {
+                options.setJsonReport(new File(requireValue(args, ++i, arg)));
+            } else if ("--junit-report".equals(arg)) {
+                options.setJunitReport(new File(requireValue(args, ++i, arg)));
             } else if (arg.startsWith("-")) {
                 throw new IllegalArgumentException("Unknown option: " + arg);
             } else {
@@ -45,7 +59,7 @@ public class CLIVerifyParser extends ArgumentParser {
      * Print help message for CLIDICOMVerify.
      */
     public static void printHelp() {
-        System.out.println("Usage: CLIDICOMVerify [options] <dicom-file> [<dicom-file> ...]");
+        System.out.println("Usage: CLIDICOMVerify [options] <dicom-file|dir> [<dicom-file|dir> ...]");
         System.out.println();
         System.out.println("Options:");
         System.out.println("  -h, --help           Display this help message");
@@ -54,12 +68,17 @@ public class CLIVerifyParser extends ArgumentParser {
         System.out.println("      --profile <name> Validation profile:");
         System.out.println("                         IHEXDSIManifest - XDS-I.b KOS Manifest");
         System.out.println("                         IHEMADO         - MADO Manifest with Description");
+        System.out.println("  -r, --recursive      Validate all files below directory arguments");
+        System.out.println("  -j, --parallel <N>   Validate N files concurrently (default 1); output stays grouped per file");
+        System.out.println("      --json-report <file>   Write a JSON summary (per-file status/timing, errors per rule)");
+        System.out.println("      --junit-report <file>  Write a JUnit XML summary (one test case per file)");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  CLIDICOMVerify kos.dcm");
         System.out.println("  CLIDICOMVerify -v kos.dcm");
         System.out.println("  CLIDICOMVerify --profile IHEXDSIManifest kos.dcm");
         System.out.println("  CLIDICOMVerify --profile IHEMADO mado_manifest.dcm");
+        System.out.println("  CLIDICOMVerify -r -j 8 --junit-report verify.xml vendor_drop/");
         System.out.println();
         System.out.println("Exit codes:");
         System.out.println("  0 - All validations passed");
@@ -0,0 +1,321 @@
+package be.uzleuven.ihe.dicom.validator.cli;
+
+import be.uzleuven.ihe.dicom.validator.model.ValidationResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Machine-readable summary of a CLIDICOMVerify run: per-file status and timing, plus a histogram
+ * of errors per rule over all files. Written as JSON (--json-report) and/or JUnit XML (--junit-report),
+ * so a vendor drop can be regression-checked in CI.
+ *
+ * Errors are grouped by their requirement ID (e.g. V-STR-01) when the message carries one, otherwise
+ * by the message with UIDs and numbers masked, so the same check on different files counts as one rule.
+ */
+public class VerifySummary {
+
+    private static final Pattern RULE_ID = Pattern.compile("\\b[VR]-[A-Z]+-\\d+[a-z]?\\b");
+    private static final Pattern UID = Pattern.compile("\\b\\d+(\\.\\d+){2,}\\b");
+    private static final Pattern NUMBER = Pattern.compile("(?<![0-9A-Fa-f(,])\\b\\d+\\b(?![0-9A-Fa-f]*[,)])");
+
+    public enum Status { PASSED, FAILED, ERROR }
+
+    private final String profile;
+    private final int threads;
+    private final List<FileReport> files = new ArrayList<>();
+    private long elapsedMillis;
+
+    public VerifySummary(String profile, int threads) {
+        this.profile = profile;
+        this.threads = threads;
+    }
+
+    public synchronized void add(FileReport report) {
+        files.add(report);
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Reports in input order.
+     */
+    public synchronized List<FileReport> getFiles() {
+        List<FileReport> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingInt(f -> f.index));
+        return sorted;
+    }
+
+    public int count(Status status) {
+        int n = 0;
+        for (FileReport f : getFiles()) {
+            if (f.status == status) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Number of errors per rule over all files, most frequent first.
+     */
+    public Map<String, Integer> ruleHistogram() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (FileReport f : getFiles()) {
+            for (String message : f.errorMessages) {
+                counts.merge(ruleKey(message), 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> b.getValue().equals(a.getValue())
+            ? a.getKey().compareTo(b.getKey()) : b.getValue() - a.getValue());
+        Map<String, Integer> histogram = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : entries) {
+            histogram.put(e.getKey(), e.getValue());
+        }
+        return histogram;
+    }
+
+    static String ruleKey(String message) {
+        Matcher m = RULE_ID.matcher(message);
+        if (m.find()) {
+            return m.group();
+        }
+        String key = UID.matcher(message).replaceAll("<uid>");
+        return NUMBER.matcher(key).replaceAll("#");
+    }
+
+    // ============================================================================
+    // Console
+    // ============================================================================
+
+    public void printSummary(PrintStream out) {
+        List<FileReport> reports = getFiles();
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        out.println();
+        out.println("Summary: " + reports.size() + " file(s), " + count(Status.PASSED) + " passed, "
+            + count(Status.FAILED) + " failed, " + count(Status.ERROR) + " error(s)");
+        out.println(String.format(Locale.ROOT, "Elapsed: %.1f s with %d thread(s) (%.1f files/s)",
+            elapsedMillis / 1000.0, threads, reports.size() / seconds));
+
+        Map<String, Integer> histogram = ruleHistogram();
+        if (!histogram.isEmpty()) {
+            out.println("Errors per rule:");
+            int shown = 0;
+            for (Map.Entry<String, Integer> e : histogram.entrySet()) {
+                if (shown++ == 20) {
+                    out.println("  ... " + (histogram.size() - 20) + " more rule(s), see the JSON report");
+                    break;
+                }
+                out.println(String.format(Locale.ROOT, "  %6d  %s", e.getValue(), e.getKey()));
+            }
+        }
+    }
+
+    // ============================================================================
+    // JSON
+    // ============================================================================
+
+    public void writeJson(File file) throws IOException {
+        List<FileReport> reports = getFiles();
+        try (Writer w = open(file)) {
+            w.write("{\n");
+            w.write("  \"profile\": " + str(profile) + ",\n");
+            w.write("  \"threads\": " + threads + ",\n");
+            w.write("  \"files\": " + reports.size() + ",\n");
+            w.write("  \"passed\": " + count(Status.PASSED) + ",\n");
+            w.write("  \"failed\": " + count(Status.FAILED) + ",\n");
+            w.write("  \"errors\": " + count(Status.ERROR) + ",\n");
+            w.write("  \"elapsedMillis\": " + elapsedMillis + ",\n");
+
+            w.write("  \"ruleHistogram\": {");
+            String sep = "\n";
+            for (Map.Entry<String, Integer> e : ruleHistogram().entrySet()) {
+                w.write(sep + "    " + str(e.getKey()) + ": " + e.getValue());
+                sep = ",\n";
+            }
+            w.write(sep.equals("\n") ? "},\n" : "\n  },\n");
+
+            w.write("  \"results\": [");
+            sep = "\n";
+            for (FileReport f : reports) {
+                w.write(sep + "    {\"file\": " + str(f.path)
+                    + ", \"status\": " + str(f.status.name().toLowerCase(Locale.ROOT))
+                    + ", \"millis\": " + f.millis
+                    + ", \"iod\": " + str(f.iod)
+                    + ", \"errorCount\": " + f.errorMessages.size()
+                    + ", \"warningCount\": " + f.warningCount
+                    + ", \"errors\": [");
+                for (int i = 0; i < f.errorMessages.size(); i++) {
+                    w.write((i == 0 ? "" : ", ") + str(f.errorMessages.get(i)));
+                }
+                w.write("]}");
+                sep = ",\n";
+            }
+            w.write(sep.equals("\n") ? "]\n" : "\n  ]\n");
+            w.write("}\n");
+        }
+    }
+
+    private static String str(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '"': sb.append("\\\""); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // ============================================================================
+    // JUnit XML
+    // ============================================================================
+
+    /**
+     * One test case per file: validation errors are failures, files that could not be validated are errors.
+     */
+    public void writeJUnit(File file) throws IOException {
+        List<FileReport> reports = getFiles();
+        try (Writer w = open(file)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            w.write("<testsuite name=\"CLIDICOMVerify" + (profile != null ? "." + xml(profile) : "") + "\""
+                + " tests=\"" + reports.size() + "\""
+                + " failures=\"" + count(Status.FAILED) + "\""
+                + " errors=\"" + count(Status.ERROR) + "\""
+                + " time=\"" + seconds(elapsedMillis) + "\">\n");
+            for (FileReport f : reports) {
+                w.write("  <testcase classname=\"" + xml(f.iod != null ? f.iod : "DICOM") + "\""
+                    + " name=\"" + xml(f.path) + "\" time=\"" + seconds(f.millis) + "\"");
+                if (f.status == Status.PASSED) {
+                    w.write("/>\n");
+                    continue;
+                }
+                w.write(">\n");
+                String element = f.status == Status.FAILED ? "failure" : "error";
+                String message = f.status == Status.FAILED
+                    ? f.errorMessages.size() + " validation error(s)"
+                    : (f.errorMessages.isEmpty() ? "Validation error" : f.errorMessages.get(0));
+                w.write("    <" + element + " message=\"" + xml(message) + "\">");
+                for (String error : f.errorMessages) {
+                    w.write(xml(error) + "\n");
+                }
+                w.write("</" + element + ">\n");
+                w.write("  </testcase>\n");
+            }
+            w.write("</testsuite>\n");
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static String xml(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                default:
+                    // XML 1.0 does not allow most control characters
+                    if (c >= 0x20 || c == '\n' || c == '\r' || c == '\t') {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Writer open(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    // ============================================================================
+    // Per file
+    // ============================================================================
+
+    /**
+     * Outcome of one file.
+     */
+    public static class FileReport {
+        private final int index;
+        private final String path;
+        private Status status = Status.PASSED;
+        private long millis;
+        private String iod;
+        private int warningCount;
+        private final List<String> errorMessages = new ArrayList<>();
+
+        public FileReport(int index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        /**
+         * Add the errors and warnings of a validation phase.
+         */
+        public void record(ValidationResult result) {
+            for (ValidationResult.ValidationMessage msg : result.getErrors()) {
+                errorMessages.add(msg.getMessage());
+            }
+            warningCount += result.getWarnings().size();
+            if (!result.isValid() && status == Status.PASSED) {
+                status = Status.FAILED;
+            }
+        }
+
+        /**
+         * The file could not be validated.
+         */
+        public void error(String message) {
+            status = Status.ERROR;
+            errorMessages.add(message);
+        }
+
+        public void setIod(String iod) {
+            this.iod = iod;
+        }
+
+        public void setMillis(long millis) {
+            this.millis = millis;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
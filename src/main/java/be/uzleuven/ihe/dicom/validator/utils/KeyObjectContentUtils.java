@@ -48,12 +48,7 @@ public class KeyObjectContentUtils {
             return;
         }
 
-        boolean hasReference = false;
-        for (Attributes item : root) {
-            hasReference |= containsAnyReferenceItem(item);
-        }
-
-        if (!hasReference) {
+        if (!ManifestIndex.of(dataset).hasReferenceItem()) {
             result.addError(ValidationMessages.KOS_NO_REFERENCES, modulePath);
         }
 
@@ -64,21 +59,6 @@ public class KeyObjectContentUtils {
         validateKeyObjectDescriptionCardinality(dataset, result, modulePath);
     }
 
-    private static boolean containsAnyReferenceItem(Attributes item) {
-        if (item == null) return false;
-        String vt = item.getString(Tag.ValueType);
-        if (DicomConstants.VALUE_TYPE_IMAGE.equals(vt) || DicomConstants.VALUE_TYPE_COMPOSITE.equals(vt) || DicomConstants.VALUE_TYPE_WAVEFORM.equals(vt)) {
-            return true;
-        }
-        Sequence nested = item.getSequence(Tag.ContentSequence);
-        if (nested != null) {
-            for (Attributes child : nested) {
-                if (containsAnyReferenceItem(child)) return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Validate KOS content for a specific profile.
      * Today this is used to support MADO, which extends TID 2010 with TID 1600/16XX where additional
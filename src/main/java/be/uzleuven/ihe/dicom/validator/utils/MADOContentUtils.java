@@ -1,6 +1,5 @@
 package be.uzleuven.ihe.dicom.validator.utils;
 
-import be.uzleuven.ihe.dicom.constants.CodeConstants;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
@@ -26,62 +25,12 @@ public final class MADOContentUtils {
      */
     public static Set<String> collectReferencedInstancesFromContent(Attributes dataset) {
         Set<String> referencedUIDs = new HashSet<>();
-
-        Sequence contentSeq = dataset.getSequence(Tag.ContentSequence);
-        if (contentSeq == null || contentSeq.isEmpty()) {
-            return referencedUIDs;
-        }
-
-        // Recursively traverse content tree
-        for (Attributes item : contentSeq) {
-            collectReferencesRecursive(item, referencedUIDs);
-        }
-
-        return referencedUIDs;
-    }
-
-    private static void collectReferencesRecursive(Attributes item, Set<String> referencedUIDs) {
-        String valueType = item.getString(Tag.ValueType);
-
-        // IMAGE and COMPOSITE value types contain references
-        if (DicomConstants.VALUE_TYPE_IMAGE.equals(valueType) || DicomConstants.VALUE_TYPE_COMPOSITE.equals(valueType)) {
-            Sequence refSOPSeq = item.getSequence(Tag.ReferencedSOPSequence);
-            if (refSOPSeq != null) {
-                for (Attributes refSOP : refSOPSeq) {
-                    String sopInstanceUID = refSOP.getString(Tag.ReferencedSOPInstanceUID);
-                    if (sopInstanceUID != null && !sopInstanceUID.trim().isEmpty()) {
-                        referencedUIDs.add(sopInstanceUID);
-                    }
-                }
-            }
-        }
-
-        // Check for UIDREF value type (used for SOP Instance UID content items in TID 1600)
-        if (DicomConstants.VALUE_TYPE_UIDREF.equals(valueType)) {
-            String uid = item.getString(Tag.UID);
-            if (uid != null && !uid.trim().isEmpty()) {
-                // In CP-2595, SOP Instance UIDs are conveyed via ReferencedSOPSequence,
-                // not as UIDREF content items. This legacy path is kept for backward compatibility.
-                Sequence conceptSeq = item.getSequence(Tag.ConceptNameCodeSequence);
-                if (conceptSeq != null && !conceptSeq.isEmpty()) {
-                    Attributes concept = conceptSeq.get(0);
-                    String codeValue = concept.getString(Tag.CodeValue);
-                    @SuppressWarnings("deprecation")
-                    String sopInstanceUidCode = CodeConstants.CODE_SOP_INSTANCE_UID;
-                    if (sopInstanceUidCode.equals(codeValue)) {
-                        referencedUIDs.add(uid);
-                    }
-                }
-            }
-        }
-
-        // Recurse into nested content
-        Sequence contentSeq = item.getSequence(Tag.ContentSequence);
-        if (contentSeq != null && !contentSeq.isEmpty()) {
-            for (Attributes nestedItem : contentSeq) {
-                collectReferencesRecursive(nestedItem, referencedUIDs);
+        for (String uid : ManifestIndex.of(dataset).getImageCompositeInstanceUIDs()) {
+            if (!uid.trim().isEmpty()) {
+                referencedUIDs.add(uid);
             }
         }
+        return referencedUIDs;
     }
 
     /**
@@ -1,7 +1,5 @@
 package be.uzleuven.ihe.dicom.validator.utils;
 
-import be.uzleuven.ihe.dicom.constants.CodeConstants;
-import be.uzleuven.ihe.dicom.constants.DicomConstants;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
@@ -103,7 +101,7 @@ public final class MADOProfileUtils {
             return MADOApproach.UNKNOWN;
         }
 
-        if (hasImageLibrary(contentSeq)) {
+        if (ManifestIndex.of(dataset).hasImageLibrary()) {
             if (verbose) {
                 result.addInfo("Detected TID 1600 Image Library (111028, DCM) in content tree", modulePath);
             }
@@ -127,34 +125,6 @@ public final class MADOProfileUtils {
         return MADOApproach.UNKNOWN;
     }
 
-    /**
-     * Check if ContentSequence contains Image Library (111028, DCM).
-     */
-    private static boolean hasImageLibrary(Sequence contentSeq) {
-        for (Attributes item : contentSeq) {
-            String valueType = item.getString(Tag.ValueType);
-            if (DicomConstants.VALUE_TYPE_CONTAINER.equals(valueType)) {
-                Sequence conceptSeq = item.getSequence(Tag.ConceptNameCodeSequence);
-                if (conceptSeq != null && !conceptSeq.isEmpty()) {
-                    Attributes concept = conceptSeq.get(0);
-                    String codeValue = concept.getString(Tag.CodeValue);
-                    String codingScheme = concept.getString(Tag.CodingSchemeDesignator);
-
-                    if (CodeConstants.CODE_IMAGE_LIBRARY.equals(codeValue) && CodeConstants.SCHEME_DCM.equals(codingScheme)) {
-                        return true;  // Found Image Library
-                    }
-                }
-            }
-
-            // Recursively check nested content
-            Sequence nestedContent = item.getSequence(Tag.ContentSequence);
-            if (nestedContent != null && hasImageLibrary(nestedContent)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Check if Evidence sequence has Appendix B extended attributes.
      * Look for Modality (0008,0060) or Retrieve Location UID (0040,E011) in ReferencedSeriesSequence.
@@ -181,24 +151,9 @@ public final class MADOProfileUtils {
      * KOS content must use by-value relationships only.
      */
     private static void validateNoByReferenceContent(Attributes dataset, ValidationResult result, String modulePath) {
-        Sequence contentSeq = dataset.getSequence(Tag.ContentSequence);
-        if (contentSeq != null) {
-            checkByReferenceRecursive(contentSeq, result, modulePath + ".ContentSequence");
-        }
-    }
-
-    private static void checkByReferenceRecursive(Sequence seq, ValidationResult result, String path) {
-        for (int i = 0; i < seq.size(); i++) {
-            Attributes item = seq.get(i);
-            String itemPath = path + "[" + i + "]";
-            // ReferencedContentItemIdentifier (0040,DB73) indicates by-reference
-            if (item.contains(Tag.ReferencedContentItemIdentifier)) {
-                result.addError(String.format(ValidationMessages.MADO_BY_REFERENCE_CONTENT_FORBIDDEN, itemPath), itemPath);
-            }
-            Sequence nested = item.getSequence(Tag.ContentSequence);
-            if (nested != null) {
-                checkByReferenceRecursive(nested, result, itemPath + ".ContentSequence");
-            }
+        for (ManifestIndex.ContentNode node : ManifestIndex.of(dataset).getByReferenceNodes()) {
+            String itemPath = node.dottedPath(modulePath);
+            result.addError(String.format(ValidationMessages.MADO_BY_REFERENCE_CONTENT_FORBIDDEN, itemPath), itemPath);
         }
     }
 
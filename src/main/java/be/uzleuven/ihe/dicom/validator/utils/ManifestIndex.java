@@ -0,0 +1,363 @@
+package be.uzleuven.ihe.dicom.validator.utils;
+
+import be.uzleuven.ihe.dicom.constants.CodeConstants;
+import be.uzleuven.ihe.dicom.constants.DicomConstants;
+import be.uzleuven.ihe.dicom.validator.validation.iod.AbstractIODValidator;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of a manifest (KOS / MADO), built in a single pass over the
+ * CurrentRequestedProcedureEvidenceSequence and the SR ContentSequence tree.
+ *
+ * Several validators need the same facts (evidence UID sets, content references, the Image Library
+ * container, by-reference items, ...). Instead of each walking the tree again, the IOD validator opens
+ * a scope for the validation run:
+ * <pre>
+ * try (ManifestIndex.Scope scope = ManifestIndex.open(dataset)) {
+ *     ... validators call ManifestIndex.of(dataset) ...
+ * }
+ * </pre>
+ * {@link #of(Attributes)} returns the index of the open scope when it is for the same dataset,
+ * and builds a fresh one otherwise, so helpers also work when called outside a validation run.
+ * The index assumes the dataset is not modified while the scope is open.
+ *
+ * UID lists hold the values as read from the dataset, untrimmed and in document order, so each
+ * caller applies its own matching rules and builds its sets in the order it always did.
+ */
+public final class ManifestIndex {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final Attributes dataset;
+
+    // Evidence
+    private final List<String> evidenceInstanceUIDs = new ArrayList<>();
+    private int evidenceStudyCount;
+    private int evidenceSeriesCount;
+    private int evidenceInstanceCount;
+
+    // Content tree
+    private final List<String> contentInstanceUIDs = new ArrayList<>();
+    private final List<String> imageCompositeInstanceUIDs = new ArrayList<>();
+    private final List<ContentNode> referenceNodes = new ArrayList<>();
+    private final List<ContentNode> byReferenceNodes = new ArrayList<>();
+    private final Map<String, List<ContentNode>> nodesByConceptName = new HashMap<>();
+    private boolean hasReferenceItem;
+
+    private ManifestIndex(Attributes dataset) {
+        this.dataset = dataset;
+        indexEvidence();
+        Sequence root = dataset.getSequence(Tag.ContentSequence);
+        if (root != null) {
+            for (int i = 0; i < root.size(); i++) {
+                indexContent(new ContentNode(root.get(i), null, i));
+            }
+        }
+    }
+
+    /**
+     * Index of {@code dataset}: the one of the open scope if it covers this dataset, else a new one.
+     */
+    public static ManifestIndex of(Attributes dataset) {
+        Scope scope = CURRENT.get();
+        if (scope != null && scope.index.dataset == dataset) {
+            return scope.index;
+        }
+        return new ManifestIndex(dataset);
+    }
+
+    /**
+     * Index {@code dataset} for the current thread until the returned scope is closed.
+     * Nested opens for the same dataset reuse the outer index; only the outermost close releases it.
+     */
+    public static Scope open(Attributes dataset) {
+        Scope current = CURRENT.get();
+        if (current != null && current.index.dataset == dataset) {
+            return new Scope(current.index, null, false);
+        }
+        Scope scope = new Scope(new ManifestIndex(dataset), current, true);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    // ============================================================================
+    // Evidence
+    // ============================================================================
+
+    /**
+     * ReferencedSOPInstanceUIDs of the Evidence sequence (non-null, as read), in Evidence order.
+     */
+    public List<String> getEvidenceInstanceUIDs() {
+        return Collections.unmodifiableList(evidenceInstanceUIDs);
+    }
+
+    public int getEvidenceStudyCount() {
+        return evidenceStudyCount;
+    }
+
+    public int getEvidenceSeriesCount() {
+        return evidenceSeriesCount;
+    }
+
+    /**
+     * Number of ReferencedSOPSequence items in Evidence (including items without a UID).
+     */
+    public int getEvidenceInstanceCount() {
+        return evidenceInstanceCount;
+    }
+
+    // ============================================================================
+    // Content tree
+    // ============================================================================
+
+    /**
+     * ReferencedSOPInstanceUIDs (non-null, as read) of any content item with a ReferencedSOPSequence,
+     * depth-first in document order.
+     */
+    public List<String> getContentInstanceUIDs() {
+        return Collections.unmodifiableList(contentInstanceUIDs);
+    }
+
+    /**
+     * Instance UIDs (non-null, as read) referenced by IMAGE/COMPOSITE items, plus legacy UIDREF
+     * (SOP Instance UID) items, depth-first in document order.
+     */
+    public List<String> getImageCompositeInstanceUIDs() {
+        return Collections.unmodifiableList(imageCompositeInstanceUIDs);
+    }
+
+    /**
+     * IMAGE and COMPOSITE content items, depth-first in document order.
+     */
+    public List<ContentNode> getReferenceNodes() {
+        return Collections.unmodifiableList(referenceNodes);
+    }
+
+    /**
+     * Content items that carry a ReferencedContentItemIdentifier (by-reference relationship).
+     */
+    public List<ContentNode> getByReferenceNodes() {
+        return Collections.unmodifiableList(byReferenceNodes);
+    }
+
+    /**
+     * True if the tree has at least one IMAGE, COMPOSITE or WAVEFORM item.
+     */
+    public boolean hasReferenceItem() {
+        return hasReferenceItem;
+    }
+
+    /**
+     * Content items whose Concept Name is (codeValue, codingSchemeDesignator), in document order.
+     */
+    public List<ContentNode> findByConceptName(String codeValue, String codingSchemeDesignator) {
+        List<ContentNode> nodes = nodesByConceptName.get(conceptKey(codeValue, codingSchemeDesignator));
+        return nodes == null ? Collections.emptyList() : Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * True if the tree has a TID 1600 Image Library CONTAINER (111028, DCM) at any depth.
+     */
+    public boolean hasImageLibrary() {
+        for (ContentNode node : findByConceptName(CodeConstants.CODE_IMAGE_LIBRARY, CodeConstants.SCHEME_DCM)) {
+            if (DicomConstants.VALUE_TYPE_CONTAINER.equals(node.getValueType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ============================================================================
+    // Traversal
+    // ============================================================================
+
+    private void indexEvidence() {
+        Sequence evidenceSeq = dataset.getSequence(Tag.CurrentRequestedProcedureEvidenceSequence);
+        if (evidenceSeq == null) {
+            return;
+        }
+        evidenceStudyCount = evidenceSeq.size();
+        for (Attributes studyItem : evidenceSeq) {
+            Sequence seriesSeq = studyItem.getSequence(Tag.ReferencedSeriesSequence);
+            if (seriesSeq == null) {
+                continue;
+            }
+            evidenceSeriesCount += seriesSeq.size();
+            for (Attributes seriesItem : seriesSeq) {
+                Sequence sopSeq = seriesItem.getSequence(Tag.ReferencedSOPSequence);
+                if (sopSeq == null) {
+                    continue;
+                }
+                evidenceInstanceCount += sopSeq.size();
+                for (Attributes sopItem : sopSeq) {
+                    String uid = sopItem.getString(Tag.ReferencedSOPInstanceUID);
+                    if (uid != null) {
+                        evidenceInstanceUIDs.add(uid);
+                    }
+                }
+            }
+        }
+    }
+
+    private void indexContent(ContentNode node) {
+        Attributes item = node.item;
+        String valueType = node.getValueType();
+        boolean imageOrComposite = DicomConstants.VALUE_TYPE_IMAGE.equals(valueType)
+                || DicomConstants.VALUE_TYPE_COMPOSITE.equals(valueType);
+
+        if (imageOrComposite) {
+            referenceNodes.add(node);
+        }
+        if (imageOrComposite || DicomConstants.VALUE_TYPE_WAVEFORM.equals(valueType)) {
+            hasReferenceItem = true;
+        }
+        if (item.contains(Tag.ReferencedContentItemIdentifier)) {
+            byReferenceNodes.add(node);
+        }
+
+        Sequence refSOPSeq = item.getSequence(Tag.ReferencedSOPSequence);
+        if (refSOPSeq != null) {
+            for (Attributes refSOP : refSOPSeq) {
+                String uid = refSOP.getString(Tag.ReferencedSOPInstanceUID);
+                if (uid != null) {
+                    contentInstanceUIDs.add(uid);
+                    if (imageOrComposite) {
+                        imageCompositeInstanceUIDs.add(uid);
+                    }
+                }
+            }
+        }
+
+        Attributes concept = SRContentTreeUtils.firstItem(item.getSequence(Tag.ConceptNameCodeSequence));
+        if (concept != null) {
+            String codeValue = concept.getString(Tag.CodeValue);
+            String scheme = concept.getString(Tag.CodingSchemeDesignator);
+            nodesByConceptName.computeIfAbsent(conceptKey(codeValue, scheme), k -> new ArrayList<>()).add(node);
+
+            // Legacy: SOP Instance UID conveyed as a UIDREF item instead of a ReferencedSOPSequence (pre CP-2595)
+            @SuppressWarnings("deprecation")
+            String sopInstanceUidCode = CodeConstants.CODE_SOP_INSTANCE_UID;
+            if (DicomConstants.VALUE_TYPE_UIDREF.equals(valueType) && sopInstanceUidCode.equals(codeValue)) {
+                String uid = item.getString(Tag.UID);
+                if (uid != null) {
+                    imageCompositeInstanceUIDs.add(uid);
+                }
+            }
+        }
+
+        Sequence nested = item.getSequence(Tag.ContentSequence);
+        if (nested != null) {
+            for (int i = 0; i < nested.size(); i++) {
+                indexContent(new ContentNode(nested.get(i), node, i));
+            }
+        }
+    }
+
+    private static String conceptKey(String codeValue, String codingSchemeDesignator) {
+        return codeValue + "^" + codingSchemeDesignator;
+    }
+
+    // ============================================================================
+    // Nodes and scope
+    // ============================================================================
+
+    /**
+     * A content item with its position in the tree.
+     */
+    public static final class ContentNode {
+        private final Attributes item;
+        private final ContentNode parent;
+        private final int index;
+
+        private ContentNode(Attributes item, ContentNode parent, int index) {
+            this.item = item;
+            this.parent = parent;
+            this.index = index;
+        }
+
+        public Attributes getItem() {
+            return item;
+        }
+
+        public ContentNode getParent() {
+            return parent;
+        }
+
+        /**
+         * 0-based position in the parent's ContentSequence.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 0-based position of the top-level ancestor in the dataset's ContentSequence.
+         */
+        public int getRootIndex() {
+            ContentNode node = this;
+            while (node.parent != null) {
+                node = node.parent;
+            }
+            return node.index;
+        }
+
+        public String getValueType() {
+            return item.getString(Tag.ValueType);
+        }
+
+        /**
+         * Path in the validator's notation, e.g. "module > ContentSequence[1] > ContentSequence[3]".
+         */
+        public String buildPath(AbstractIODValidator ctx, String modulePath) {
+            String parentPath = parent == null ? modulePath : parent.buildPath(ctx, modulePath);
+            return ctx.buildPath(parentPath, "ContentSequence", index);
+        }
+
+        /**
+         * Path with 0-based indexes, e.g. "module.ContentSequence[0].ContentSequence[2]".
+         */
+        public String dottedPath(String modulePath) {
+            String parentPath = parent == null ? modulePath : parent.dottedPath(modulePath);
+            return parentPath + ".ContentSequence[" + index + "]";
+        }
+    }
+
+    /**
+     * Keeps an index available to {@link #of(Attributes)} on this thread until closed.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ManifestIndex index;
+        private final Scope previous;
+        private final boolean owner;
+
+        private Scope(ManifestIndex index, Scope previous, boolean owner) {
+            this.index = index;
+            this.previous = previous;
+            this.owner = owner;
+        }
+
+        public ManifestIndex getIndex() {
+            return index;
+        }
+
+        @Override
+        public void close() {
+            if (!owner) {
+                return;
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import be.uzleuven.ihe.dicom.constants.DicomConstants;
 import be.uzleuven.ihe.dicom.constants.ValidationMessages;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -43,6 +44,11 @@ public class SRReferenceUtils {
         Sequence root = dataset.getSequence(Tag.ContentSequence);
         if (root == null) return scan;
 
+        // IMAGE/COMPOSITE items come from the shared index, depth-first in document order, so
+        // findings are reported in the same order as a recursive walk of each top-level item.
+        List<ManifestIndex.ContentNode> refNodes = ManifestIndex.of(dataset).getReferenceNodes();
+        int next = 0;
+
         for (int i = 0; i < root.size(); i++) {
             Attributes item = root.get(i);
             String itemPath = ctx.buildPath(modulePath, "ContentSequence", i);
@@ -53,82 +59,64 @@ public class SRReferenceUtils {
                 result.addError(String.format(ValidationMessages.SR_RELATIONSHIP_TYPE_MUST_BE_CONTAINS, rel), itemPath);
             }
 
-            scanSRReferencesRecursive(item, itemPath, selfSOPInstanceUID, scan, result, ctx, allowDuplicateReferencedSOPInstanceUIDs);
+            while (next < refNodes.size() && refNodes.get(next).getRootIndex() == i) {
+                ManifestIndex.ContentNode node = refNodes.get(next++);
+                checkReferenceItem(node.getItem(), node.buildPath(ctx, modulePath), selfSOPInstanceUID, scan, result, ctx, allowDuplicateReferencedSOPInstanceUIDs);
+            }
         }
 
         return scan;
     }
 
-    private static void scanSRReferencesRecursive(Attributes item,
-                                          String itemPath,
-                                          String selfSOPInstanceUID,
-                                          SRRefScan scan,
-                                          ValidationResult result,
-                                          AbstractIODValidator ctx,
-                                          boolean allowDuplicateReferencedSOPInstanceUIDs) {
+    private static void checkReferenceItem(Attributes item,
+                                           String itemPath,
+                                           String selfSOPInstanceUID,
+                                           SRRefScan scan,
+                                           ValidationResult result,
+                                           AbstractIODValidator ctx,
+                                           boolean allowDuplicateReferencedSOPInstanceUIDs) {
 
         String valueType = item.getString(Tag.ValueType);
-        if (DicomConstants.VALUE_TYPE_IMAGE.equals(valueType) || DicomConstants.VALUE_TYPE_COMPOSITE.equals(valueType)) {
-            Sequence refSeq = item.getSequence(Tag.ReferencedSOPSequence);
-            if (refSeq == null || refSeq.isEmpty()) {
-                result.addError(valueType + " content item must include a non-empty ReferencedSOPSequence", itemPath);
-            } else {
-                for (int r = 0; r < refSeq.size(); r++) {
-                    Attributes ref = refSeq.get(r);
-                    String refPath = ctx.buildPath(itemPath, "ReferencedSOPSequence", r);
+        Sequence refSeq = item.getSequence(Tag.ReferencedSOPSequence);
+        if (refSeq == null || refSeq.isEmpty()) {
+            result.addError(valueType + " content item must include a non-empty ReferencedSOPSequence", itemPath);
+            return;
+        }
 
-                    String sopInst = ref.getString(Tag.ReferencedSOPInstanceUID);
+        for (int r = 0; r < refSeq.size(); r++) {
+            Attributes ref = refSeq.get(r);
+            String refPath = ctx.buildPath(itemPath, "ReferencedSOPSequence", r);
 
-                    if (ref.getString(Tag.ReferencedSOPClassUID) != null) {
-                        ctx.checkUID(ref, Tag.ReferencedSOPClassUID, "ReferencedSOPClassUID", result, refPath);
-                    }
-                    if (sopInst != null) {
-                        ctx.checkUID(ref, Tag.ReferencedSOPInstanceUID, "ReferencedSOPInstanceUID", result, refPath);
-                    }
+            String sopInst = ref.getString(Tag.ReferencedSOPInstanceUID);
+
+            if (ref.getString(Tag.ReferencedSOPClassUID) != null) {
+                ctx.checkUID(ref, Tag.ReferencedSOPClassUID, "ReferencedSOPClassUID", result, refPath);
+            }
+            if (sopInst != null) {
+                ctx.checkUID(ref, Tag.ReferencedSOPInstanceUID, "ReferencedSOPInstanceUID", result, refPath);
+            }
 
-                    if (sopInst != null && !sopInst.trim().isEmpty()) {
-                        String uid = sopInst.trim();
+            if (sopInst != null && !sopInst.trim().isEmpty()) {
+                String uid = sopInst.trim();
 
-                        if (selfSOPInstanceUID != null && selfSOPInstanceUID.equals(uid)) {
-                            result.addError(ValidationMessages.SR_SELF_REFERENCE_FORBIDDEN, refPath);
-                        }
+                if (selfSOPInstanceUID != null && selfSOPInstanceUID.equals(uid)) {
+                    result.addError(ValidationMessages.SR_SELF_REFERENCE_FORBIDDEN, refPath);
+                }
 
-                        if (!scan.referencedSOPInstanceUIDs.add(uid)) {
-                            if (!allowDuplicateReferencedSOPInstanceUIDs) {
-                                result.addError(String.format(ValidationMessages.SR_DUPLICATE_REFERENCE, uid), refPath);
-                            }
-                        }
+                if (!scan.referencedSOPInstanceUIDs.add(uid)) {
+                    if (!allowDuplicateReferencedSOPInstanceUIDs) {
+                        result.addError(String.format(ValidationMessages.SR_DUPLICATE_REFERENCE, uid), refPath);
                     }
                 }
             }
         }
-
-        Sequence nested = item.getSequence(Tag.ContentSequence);
-        if (nested != null) {
-            for (int i = 0; i < nested.size(); i++) {
-                Attributes child = nested.get(i);
-                scanSRReferencesRecursive(child, ctx.buildPath(itemPath, "ContentSequence", i), selfSOPInstanceUID, scan, result, ctx, allowDuplicateReferencedSOPInstanceUIDs);
-            }
-        }
     }
 
     public static Set<String> collectReferencedSOPInstanceUIDsFromEvidence(Attributes dataset) {
         Set<String> uids = new HashSet<>();
-        Sequence evidence = dataset.getSequence(Tag.CurrentRequestedProcedureEvidenceSequence);
-        if (evidence == null) return uids;
-
-        for (Attributes studyItem : evidence) {
-            Sequence seriesSeq = studyItem.getSequence(Tag.ReferencedSeriesSequence);
-            if (seriesSeq == null) continue;
-            for (Attributes seriesItem : seriesSeq) {
-                Sequence sopSeq = seriesItem.getSequence(Tag.ReferencedSOPSequence);
-                if (sopSeq == null) continue;
-                for (Attributes sopItem : sopSeq) {
-                    String uid = sopItem.getString(Tag.ReferencedSOPInstanceUID);
-                    if (uid != null && !uid.trim().isEmpty()) {
-                        uids.add(uid.trim());
-                    }
-                }
+        for (String uid : ManifestIndex.of(dataset).getEvidenceInstanceUIDs()) {
+            if (!uid.trim().isEmpty()) {
+                uids.add(uid.trim());
             }
         }
         return uids;
@@ -3,8 +3,10 @@ package be.uzleuven.ihe.dicom.validator.validation;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import be.uzleuven.ihe.dicom.validator.model.ValidationResult;
+import be.uzleuven.ihe.dicom.validator.utils.ManifestIndex;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -20,12 +22,11 @@ public class EvidenceOrphanValidator {
      * but not in the evidence list used by XDS consumers for retrieval.
      */
     public static void validateNoOrphanReferences(Attributes dataset, ValidationResult result, String path) {
-        // Collect all SOP Instance UIDs from Evidence Sequence
-        Set<String> evidenceInstanceUIDs = collectEvidenceInstanceUIDs(dataset);
+        ManifestIndex index = ManifestIndex.of(dataset);
 
-        // Collect all SOP Instance UIDs from Content Sequence
-        Set<String> contentInstanceUIDs = new HashSet<>();
-        collectContentInstanceUIDs(dataset, contentInstanceUIDs);
+        // SOP Instance UIDs from Evidence Sequence and from Content Sequence
+        Set<String> evidenceInstanceUIDs = nonEmpty(index.getEvidenceInstanceUIDs());
+        Set<String> contentInstanceUIDs = nonEmpty(index.getContentInstanceUIDs());
 
         if (contentInstanceUIDs.isEmpty()) {
             result.addInfo("No instance references found in ContentSequence", path);
@@ -57,67 +58,16 @@ public class EvidenceOrphanValidator {
         }
     }
 
-    /**
-     * Collect all SOP Instance UIDs from CurrentRequestedProcedureEvidenceSequence.
-     */
-    private static Set<String> collectEvidenceInstanceUIDs(Attributes dataset) {
+    private static Set<String> nonEmpty(List<String> uids) {
         Set<String> instanceUIDs = new HashSet<>();
-
-        org.dcm4che3.data.Sequence evidenceSeq = dataset.getSequence(Tag.CurrentRequestedProcedureEvidenceSequence);
-        if (evidenceSeq == null) {
-            return instanceUIDs;
-        }
-
-        for (Attributes studyItem : evidenceSeq) {
-            org.dcm4che3.data.Sequence seriesSeq = studyItem.getSequence(Tag.ReferencedSeriesSequence);
-            if (seriesSeq == null) {
-                continue;
-            }
-
-            for (Attributes seriesItem : seriesSeq) {
-                org.dcm4che3.data.Sequence sopSeq = seriesItem.getSequence(Tag.ReferencedSOPSequence);
-                if (sopSeq == null) {
-                    continue;
-                }
-
-                for (Attributes sopItem : sopSeq) {
-                    String instanceUID = sopItem.getString(Tag.ReferencedSOPInstanceUID);
-                    if (instanceUID != null && !instanceUID.isEmpty()) {
-                        instanceUIDs.add(instanceUID);
-                    }
-                }
+        for (String uid : uids) {
+            if (!uid.isEmpty()) {
+                instanceUIDs.add(uid);
             }
         }
-
         return instanceUIDs;
     }
 
-    /**
-     * Recursively collect all SOP Instance UIDs from ContentSequence.
-     */
-    private static void collectContentInstanceUIDs(Attributes dataset, Set<String> instanceUIDs) {
-        org.dcm4che3.data.Sequence contentSeq = dataset.getSequence(Tag.ContentSequence);
-        if (contentSeq == null) {
-            return;
-        }
-
-        for (Attributes contentItem : contentSeq) {
-            // Check for Referenced SOP Sequence
-            org.dcm4che3.data.Sequence refSOPSeq = contentItem.getSequence(Tag.ReferencedSOPSequence);
-            if (refSOPSeq != null) {
-                for (Attributes sopItem : refSOPSeq) {
-                    String instanceUID = sopItem.getString(Tag.ReferencedSOPInstanceUID);
-                    if (instanceUID != null && !instanceUID.isEmpty()) {
-                        instanceUIDs.add(instanceUID);
-                    }
-                }
-            }
-
-            // Recurse into nested content
-            collectContentInstanceUIDs(contentItem, instanceUIDs);
-        }
-    }
-
     /**
      * Provide detailed report of evidence structure.
      */
@@ -128,25 +78,10 @@ public class EvidenceOrphanValidator {
             return;
         }
 
-        int totalStudies = evidenceSeq.size();
-        int totalSeries = 0;
-        int totalInstances = 0;
-
-        for (Attributes studyItem : evidenceSeq) {
-            org.dcm4che3.data.Sequence seriesSeq = studyItem.getSequence(Tag.ReferencedSeriesSequence);
-
-            if (seriesSeq != null) {
-                totalSeries += seriesSeq.size();
-
-                for (Attributes seriesItem : seriesSeq) {
-                    org.dcm4che3.data.Sequence sopSeq = seriesItem.getSequence(Tag.ReferencedSOPSequence);
-
-                    if (sopSeq != null) {
-                        totalInstances += sopSeq.size();
-                    }
-                }
-            }
-        }
+        ManifestIndex index = ManifestIndex.of(dataset);
+        int totalStudies = index.getEvidenceStudyCount();
+        int totalSeries = index.getEvidenceSeriesCount();
+        int totalInstances = index.getEvidenceInstanceCount();
 
         result.addInfo(String.format("Evidence structure: %d study(ies), %d series, %d instance(s)",
                                     totalStudies, totalSeries, totalInstances), path);
@@ -1,6 +1,7 @@
 package be.uzleuven.ihe.dicom.validator.validation.iod;
 
 import be.uzleuven.ihe.dicom.validator.model.ValidationResult;
+import be.uzleuven.ihe.dicom.validator.utils.ManifestIndex;
 import be.uzleuven.ihe.dicom.validator.validation.AdvancedEncodingValidator;
 import be.uzleuven.ihe.dicom.validator.validation.TimezoneValidator;
 import be.uzleuven.ihe.dicom.validator.validation.AdvancedStructureValidator;
@@ -35,6 +36,13 @@ public class KeyObjectSelectionValidator extends AbstractIODValidator {
 
     @Override
     public ValidationResult validate(Attributes dataset, boolean verbose) {
+        // One traversal of Evidence and the content tree, shared by the validators of this run
+        try (ManifestIndex.Scope ignored = ManifestIndex.open(dataset)) {
+            return validateIndexed(dataset, verbose);
+        }
+    }
+
+    private ValidationResult validateIndexed(Attributes dataset, boolean verbose) {
         ValidationResult result = new ValidationResult();
 
         if (verbose) {
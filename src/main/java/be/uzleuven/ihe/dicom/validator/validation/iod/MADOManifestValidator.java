@@ -6,6 +6,7 @@ import be.uzleuven.ihe.dicom.constants.ValidationMessages;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
+import be.uzleuven.ihe.dicom.validator.utils.ManifestIndex;
 import be.uzleuven.ihe.dicom.validator.utils.MADOProfileUtils;
 import be.uzleuven.ihe.dicom.validator.model.ValidationResult;
 import be.uzleuven.ihe.dicom.validator.validation.MADOComplianceChecker;
@@ -65,6 +66,13 @@ public class MADOManifestValidator extends KeyObjectSelectionValidator {
 
     @Override
     public ValidationResult validate(Attributes dataset, boolean verbose) {
+        // The KOS base validation and the MADO profile checks share one index of this manifest
+        try (ManifestIndex.Scope ignored = ManifestIndex.open(dataset)) {
+            return validateIndexed(dataset, verbose);
+        }
+    }
+
+    private ValidationResult validateIndexed(Attributes dataset, boolean verbose) {
         ValidationResult result = new ValidationResult();
 
         if (verbose) {
@@ -51,6 +51,15 @@ public class MHDConfiguration {
     private int remotePort = 4242;
     private int connectTimeout = 5000;
     private int responseTimeout = 10000;
+    private int cfindMaxAssociations = 2;
+    private int cfindMaxOpsInvoked = 4;
+    private long cfindIdleTimeout = 30000;
+    private int cfindSeriesParallelism = 4;
+    private boolean cfindStudyLevelInstanceQuery = false;
+
+    // Cache of generated MADO manifests (DICOM bytes + FHIR Bundle), keyed by Study Instance UID
+    private long manifestCacheMaxMegabytes = 128;
+    private long manifestCacheTtlMinutes = 10;
 
     // Document Responder settings (MADO IG R4 format codes)
     private String formatCode = "urn:ihe:rad:MADO:fhir-manifest:2026";
@@ -266,6 +275,62 @@ public class MHDConfiguration {
         this.classCodeSystem = classCodeSystem;
     }
 
+    public int getCfindMaxAssociations() {
+        return cfindMaxAssociations;
+    }
+
+    public void setCfindMaxAssociations(int cfindMaxAssociations) {
+        this.cfindMaxAssociations = cfindMaxAssociations;
+    }
+
+    public int getCfindMaxOpsInvoked() {
+        return cfindMaxOpsInvoked;
+    }
+
+    public void setCfindMaxOpsInvoked(int cfindMaxOpsInvoked) {
+        this.cfindMaxOpsInvoked = cfindMaxOpsInvoked;
+    }
+
+    public long getCfindIdleTimeout() {
+        return cfindIdleTimeout;
+    }
+
+    public void setCfindIdleTimeout(long cfindIdleTimeout) {
+        this.cfindIdleTimeout = cfindIdleTimeout;
+    }
+
+    public int getCfindSeriesParallelism() {
+        return cfindSeriesParallelism;
+    }
+
+    public void setCfindSeriesParallelism(int cfindSeriesParallelism) {
+        this.cfindSeriesParallelism = cfindSeriesParallelism;
+    }
+
+    public boolean isCfindStudyLevelInstanceQuery() {
+        return cfindStudyLevelInstanceQuery;
+    }
+
+    public void setCfindStudyLevelInstanceQuery(boolean cfindStudyLevelInstanceQuery) {
+        this.cfindStudyLevelInstanceQuery = cfindStudyLevelInstanceQuery;
+    }
+
+    public long getManifestCacheMaxMegabytes() {
+        return manifestCacheMaxMegabytes;
+    }
+
+    public void setManifestCacheMaxMegabytes(long manifestCacheMaxMegabytes) {
+        this.manifestCacheMaxMegabytes = manifestCacheMaxMegabytes;
+    }
+
+    public long getManifestCacheTtlMinutes() {
+        return manifestCacheTtlMinutes;
+    }
+
+    public void setManifestCacheTtlMinutes(long manifestCacheTtlMinutes) {
+        this.manifestCacheTtlMinutes = manifestCacheTtlMinutes;
+    }
+
     public boolean isIncludeExtendedInstanceMetadata() {
         return includeExtendedInstanceMetadata;
     }
@@ -308,6 +373,11 @@ public class MHDConfiguration {
                 .withRemoteHost(remoteHost)
                 .withRemotePort(remotePort)
                 .withConnectTimeout(connectTimeout)
-                .withResponseTimeout(responseTimeout);
+                .withResponseTimeout(responseTimeout)
+                .withMaxAssociations(cfindMaxAssociations)
+                .withMaxOpsInvoked(cfindMaxOpsInvoked)
+                .withAssociationIdleTimeout(cfindIdleTimeout)
+                .withSeriesQueryParallelism(cfindSeriesParallelism)
+                .withStudyLevelInstanceQuery(cfindStudyLevelInstanceQuery);
     }
 }
@@ -1,5 +1,6 @@
 package be.uzleuven.ihe.service.MHD.dicom;
 
+import be.uzleuven.ihe.dicom.convertor.fhir.MADOToFHIRConverter;
 import be.uzleuven.ihe.dicom.creator.scu.CFindResult;
 import be.uzleuven.ihe.dicom.creator.scu.CFindService;
 import be.uzleuven.ihe.dicom.creator.scu.DefaultMetadata;
@@ -7,18 +8,33 @@ import be.uzleuven.ihe.dicom.creator.scu.MADOSCUManifestCreator;
 import be.uzleuven.ihe.dicom.creator.scu.MetadataApplier;
 import be.uzleuven.ihe.dicom.creator.model.MADOOptions;
 import be.uzleuven.ihe.service.MHD.config.MHDConfiguration;
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
+import ca.uhn.fhir.parser.IParser;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static be.uzleuven.ihe.singletons.HAPI.FHIR_R5_CONTEXT;
 
 /**
  * DICOM Backend Service for MHD Document Responder.
@@ -33,6 +49,12 @@ public class DicomBackendService {
     private final CFindService cFindService;
     private final DefaultMetadata defaultMetadata;
     private final boolean includeExtendedInstanceMetadata;
+    private final MADOToFHIRConverter madoToFhirConverter = new MADOToFHIRConverter();
+
+    // Generated manifests by Study Instance UID, weighted by size
+    private final SegmentedLruCache<String, GeneratedManifest> manifestCache;
+    // Manifest generations in progress, so concurrent readers of a study share one C-FIND run
+    private final Map<String, CompletableFuture<GeneratedManifest>> inFlightManifests = new ConcurrentHashMap<>();
 
     @Autowired
     public DicomBackendService(MHDConfiguration config) {
@@ -40,6 +62,10 @@ public class DicomBackendService {
         this.defaultMetadata = config.toDefaultMetadata();
         this.cFindService = new CFindService(defaultMetadata);
         this.includeExtendedInstanceMetadata = config.isIncludeExtendedInstanceMetadata();
+        this.manifestCache = new SegmentedLruCache<>(
+                Math.max(0, config.getManifestCacheMaxMegabytes()) * 1024L * 1024L,
+                TimeUnit.MINUTES.toMillis(config.getManifestCacheTtlMinutes()),
+                GeneratedManifest::weight);
 
         // DEBUG: Log configuration value
         System.out.println("===========================================");
@@ -48,6 +74,14 @@ public class DicomBackendService {
         System.out.println("===========================================");
     }
 
+    /**
+     * Release the pooled C-FIND associations.
+     */
+    @PreDestroy
+    public void shutdown() {
+        cFindService.close();
+    }
+
     /**
      * Search for studies based on various criteria.
      *
@@ -148,10 +182,116 @@ public class DicomBackendService {
 
         System.out.println("DEBUG createMADOManifest: MADOOptions.isIncludeExtendedInstanceMetadata() = " + options.isIncludeExtendedInstanceMetadata());
 
-        MADOSCUManifestCreator creator = new MADOSCUManifestCreator(defaultMetadata, options);
+        MADOSCUManifestCreator creator = new MADOSCUManifestCreator(defaultMetadata, options, cFindService);
         return creator.createManifest(studyInstanceUid, patientId);
     }
 
+    /**
+     * Get the MADO manifest of a study from the cache, generating it on a miss.
+     *
+     * A cached manifest is reused while the study fingerprint (series/instance counts from
+     * the study-level C-FIND) is unchanged, so reading the DocumentReference, the Binary and
+     * the Bundle of a study runs the series/instance C-FINDs only once.
+     *
+     * @param study Study attributes from {@link #getStudyMetadata(String)}
+     * @return The cached or newly generated manifest
+     * @throws IOException if manifest creation fails
+     */
+    public GeneratedManifest getOrCreateManifest(Attributes study) throws IOException {
+        String studyInstanceUid = study.getString(Tag.StudyInstanceUID);
+        String fingerprint = studyFingerprint(study);
+
+        GeneratedManifest cached = manifestCache.get(studyInstanceUid);
+        if (cached != null && Objects.equals(cached.getFingerprint(), fingerprint)) {
+            return cached;
+        }
+
+        CompletableFuture<GeneratedManifest> generation = new CompletableFuture<>();
+        CompletableFuture<GeneratedManifest> shared = inFlightManifests.putIfAbsent(studyInstanceUid, generation);
+        if (shared == null) {
+            try {
+                byte[] bytes = createMADOManifestAsBytes(studyInstanceUid, study.getString(Tag.PatientID));
+                GeneratedManifest manifest = new GeneratedManifest(studyInstanceUid, fingerprint, bytes);
+                manifestCache.put(studyInstanceUid, manifest);
+                generation.complete(manifest);
+            } catch (Throwable t) {
+                generation.completeExceptionally(t);
+            } finally {
+                inFlightManifests.remove(studyInstanceUid, generation);
+            }
+            shared = generation;
+        } else {
+            LOG.debug("Joining in-flight manifest generation for study {}", studyInstanceUid);
+        }
+        return awaitManifest(studyInstanceUid, shared);
+    }
+
+    /**
+     * Get the FHIR R5 Bundle (JSON) of a study's MADO manifest, converting the cached DICOM
+     * manifest once and keeping the result with it.
+     *
+     * @param study Study attributes from {@link #getStudyMetadata(String)}
+     * @return The Bundle serialized as JSON
+     * @throws IOException if manifest creation or conversion fails
+     */
+    public String getOrCreateFhirBundleJson(Attributes study) throws IOException {
+        GeneratedManifest manifest = getOrCreateManifest(study);
+        String json = manifest.getFhirBundleJson();
+        if (json == null) {
+            Attributes manifestAttrs;
+            try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(manifest.getDicomBytes()))) {
+                manifestAttrs = dis.readDataset();
+            }
+
+            // Convert DICOM KOS -> FHIR R5 Bundle
+            org.hl7.fhir.r5.model.Bundle r5Bundle = madoToFhirConverter.convert(manifestAttrs);
+
+            IParser r5Parser = FHIR_R5_CONTEXT.newJsonParser();
+            r5Parser.setPrettyPrint(false);
+            r5Parser.setOverrideResourceIdWithBundleEntryFullUrl(false);
+            json = r5Parser.encodeResourceToString(r5Bundle);
+            manifest.setFhirBundleJson(json);
+        }
+        return json;
+    }
+
+    /**
+     * Series/instance counts of the study, or null if the PACS did not return them
+     * (the manifest is then reused until it expires).
+     */
+    private static String studyFingerprint(Attributes study) {
+        String series = study.getString(Tag.NumberOfStudyRelatedSeries);
+        String instances = study.getString(Tag.NumberOfStudyRelatedInstances);
+        if (series == null && instances == null) {
+            return null;
+        }
+        return series + "/" + instances;
+    }
+
+    private static GeneratedManifest awaitManifest(String studyInstanceUid,
+                                                   CompletableFuture<GeneratedManifest> generation) throws IOException {
+        try {
+            return generation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating manifest for study " + studyInstanceUid);
+        } catch (CancellationException e) {
+            throw new IOException("Manifest generation cancelled for study " + studyInstanceUid, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     /**
      * Create a MADO manifest and return it as bytes (DICOM Part 10 file).
      *
@@ -0,0 +1,83 @@
+package be.uzleuven.ihe.service.MHD.dicom;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A MADO manifest generated from C-FIND results, as cached by {@link DicomBackendService}.
+ *
+ * Holds the DICOM Part-10 bytes with their size and SHA-256 hash (computed once, reused for
+ * DocumentReference attachments), and the FHIR Bundle conversion once it has been requested.
+ */
+public class GeneratedManifest {
+
+    private final String studyInstanceUid;
+    private final String fingerprint;
+    private final byte[] dicomBytes;
+    private final byte[] sha256;
+    private volatile String fhirBundleJson;
+
+    GeneratedManifest(String studyInstanceUid, String fingerprint, byte[] dicomBytes) {
+        this.studyInstanceUid = studyInstanceUid;
+        this.fingerprint = fingerprint;
+        this.dicomBytes = dicomBytes;
+        this.sha256 = sha256(dicomBytes);
+    }
+
+    public String getStudyInstanceUid() {
+        return studyInstanceUid;
+    }
+
+    /**
+     * Study fingerprint the manifest was generated for (series/instance counts).
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * DICOM Part-10 bytes. Shared; do not modify.
+     */
+    public byte[] getDicomBytes() {
+        return dicomBytes;
+    }
+
+    public int getSize() {
+        return dicomBytes.length;
+    }
+
+    /**
+     * SHA-256 of the DICOM bytes, or null if the digest is unavailable.
+     */
+    public byte[] getSha256() {
+        return sha256;
+    }
+
+    /**
+     * FHIR R5 Bundle JSON of the manifest, or null if not converted yet.
+     */
+    String getFhirBundleJson() {
+        return fhirBundleJson;
+    }
+
+    void setFhirBundleJson(String fhirBundleJson) {
+        this.fhirBundleJson = fhirBundleJson;
+    }
+
+    /**
+     * Approximate heap footprint, used as cache weight. Reserves room for the FHIR Bundle
+     * (roughly twice the DICOM size as UTF-16 JSON), which is usually converted later.
+     */
+    long weight() {
+        return 3L * dicomBytes.length + 256;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 should always be available
+            return null;
+        }
+    }
+}
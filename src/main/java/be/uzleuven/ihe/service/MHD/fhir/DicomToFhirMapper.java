@@ -1,6 +1,7 @@
 package be.uzleuven.ihe.service.MHD.fhir;
 
 import be.uzleuven.ihe.service.MHD.config.MHDConfiguration;
+import be.uzleuven.ihe.service.MHD.dicom.GeneratedManifest;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.hl7.fhir.r4.model.*;
@@ -75,6 +76,23 @@ public class DicomToFhirMapper {
         }
     }
 
+    /**
+     * Same as {@link #mapStudyToDocumentReference(Attributes, MHDConfiguration, byte[])}, taking
+     * the attachment size and hash from a cached manifest instead of hashing its bytes again.
+     */
+    public static DocumentReference mapManifestToDocumentReference(Attributes study, MHDConfiguration config,
+                                                                     GeneratedManifest manifest) {
+        DocumentReference docRef = mapStudyToDocumentReference(study, config, null);
+        if (manifest != null && manifest.getSize() > 0) {
+            Attachment attachment = docRef.getContentFirstRep().getAttachment();
+            attachment.setSize(manifest.getSize());
+            if (manifest.getSha256() != null) {
+                attachment.setHash(manifest.getSha256());
+            }
+        }
+        return docRef;
+    }
+
     /**
      * Map DICOM study attributes to a FHIR DocumentReference for a FHIR MADO manifest.
      * Implements MADO IG R4 MadoFhirDocumentReference profile.
@@ -8,7 +8,6 @@ import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.IdType;
@@ -61,16 +60,14 @@ public class BinaryProvider implements IResourceProvider {
                 throw new ResourceNotFoundException("Binary not found for ID: " + id.getIdPart());
             }
 
-            String patientId = study.getString(Tag.PatientID);
-
-            // Generate the MADO manifest
-            byte[] manifestBytes = dicomService.createMADOManifestAsBytes(studyInstanceUid, patientId);
+            // Generate the MADO manifest (or reuse the cached one)
+            byte[] manifestBytes = dicomService.getOrCreateManifest(study).getDicomBytes();
 
             if (manifestBytes == null || manifestBytes.length == 0) {
                 throw new InternalErrorException("Failed to generate MADO manifest");
             }
 
-            LOG.info("Generated MADO manifest for study {}, size: {} bytes", studyInstanceUid, manifestBytes.length);
+            LOG.info("Serving MADO manifest for study {}, size: {} bytes", studyInstanceUid, manifestBytes.length);
 
             // Create and return the Binary resource (its ID already includes .dcm)
             return DicomToFhirMapper.createBinaryResource(studyInstanceUid, manifestBytes);
@@ -1,6 +1,5 @@
 package be.uzleuven.ihe.service.MHD.fhir.provider;
 
-import be.uzleuven.ihe.dicom.convertor.fhir.MADOToFHIRConverter;
 import be.uzleuven.ihe.service.MHD.config.MHDConfiguration;
 import be.uzleuven.ihe.service.MHD.dicom.DicomBackendService;
 import be.uzleuven.ihe.service.MHD.fhir.DicomToFhirMapper;
@@ -12,7 +11,6 @@ import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
@@ -23,12 +21,10 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 
-import static be.uzleuven.ihe.singletons.HAPI.FHIR_R5_CONTEXT;
-
 /**
  * HAPI FHIR Resource Provider for Bundle.
  * Serves the FHIR MADO manifest Bundle by converting the DICOM KOS manifest
- * to FHIR on the fly.
+ * to FHIR (once per study; the result is cached with the manifest).
  *
  * The Bundle ID is the base64-encoded Study Instance UID (same as the
  * FHIR DocumentReference content URL points to).
@@ -40,7 +36,6 @@ public class BundleProvider implements IResourceProvider {
     private static final FhirContext FHIR_R4_CONTEXT = FhirContext.forR4();
 
     private final DicomBackendService dicomService;
-    private final MADOToFHIRConverter madoToFhirConverter = new MADOToFHIRConverter();
 
     @Autowired
     public BundleProvider(DicomBackendService dicomService, MHDConfiguration config) {
@@ -72,22 +67,9 @@ public class BundleProvider implements IResourceProvider {
                 throw new ResourceNotFoundException("Bundle not found for ID: " + id.getIdPart());
             }
 
-            String patientId = study.getString(Tag.PatientID);
-
-            // Generate the DICOM MADO manifest (KOS)
-            Attributes manifestAttrs = dicomService.createMADOManifest(studyInstanceUid, patientId);
-            if (manifestAttrs == null) {
-                throw new InternalErrorException("Failed to generate MADO manifest");
-            }
-
-            // Convert DICOM KOS → FHIR R5 Bundle
-            org.hl7.fhir.r5.model.Bundle r5Bundle = madoToFhirConverter.convert(manifestAttrs);
-
-            // Serialize R5 Bundle to JSON
-            IParser r5Parser = FHIR_R5_CONTEXT.newJsonParser();
-            r5Parser.setPrettyPrint(false);
-            r5Parser.setOverrideResourceIdWithBundleEntryFullUrl(false);
-            String bundleJson = r5Parser.encodeResourceToString(r5Bundle);
+            // DICOM MADO manifest (KOS) converted to a FHIR R5 Bundle, serialized to JSON;
+            // generated and converted once per study, then served from the manifest cache
+            String bundleJson = dicomService.getOrCreateFhirBundleJson(study);
 
             // Parse as R4 Bundle (R5 → R4 is compatible for document Bundles)
             IParser r4Parser = FHIR_R4_CONTEXT.newJsonParser();
@@ -96,7 +78,7 @@ public class BundleProvider implements IResourceProvider {
             // Set the ID to match the request
             r4Bundle.setId(id.getIdPart());
 
-            LOG.info("Generated FHIR MADO Bundle for study {}", studyInstanceUid);
+            LOG.info("Serving FHIR MADO Bundle for study {}", studyInstanceUid);
             return r4Bundle;
 
         } catch (ResourceNotFoundException e) {
@@ -2,6 +2,7 @@ package be.uzleuven.ihe.service.MHD.fhir.provider;
 
 import be.uzleuven.ihe.service.MHD.config.MHDConfiguration;
 import be.uzleuven.ihe.service.MHD.dicom.DicomBackendService;
+import be.uzleuven.ihe.service.MHD.dicom.GeneratedManifest;
 import be.uzleuven.ihe.service.MHD.fhir.DicomToFhirMapper;
 import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -69,11 +70,10 @@ public class DocumentReferenceProvider implements IResourceProvider {
                 throw new ResourceNotFoundException("DocumentReference not found for ID: " + id.getIdPart());
             }
 
-            // Generate manifest to get size/hash
-            byte[] manifestBytes = dicomService.createMADOManifestAsBytes(studyInstanceUid,
-                study.getString(Tag.PatientID));
+            // Generated (or cached) manifest provides size/hash
+            GeneratedManifest manifest = dicomService.getOrCreateManifest(study);
 
-            return DicomToFhirMapper.mapStudyToDocumentReference(study, config, manifestBytes);
+            return DicomToFhirMapper.mapManifestToDocumentReference(study, config, manifest);
 
         } catch (IOException e) {
             LOG.error("Error reading DocumentReference", e);
@@ -127,9 +127,8 @@ public class DocumentReferenceProvider implements IResourceProvider {
                         try {
                             Attributes study = dicomService.getStudyMetadata(studyInstanceUidForId);
                             if (study != null) {
-                                byte[] manifestBytes = dicomService.createMADOManifestAsBytes(
-                                    studyInstanceUidForId, study.getString(Tag.PatientID));
-                                idResults.add(DicomToFhirMapper.mapStudyToDocumentReference(study, config, manifestBytes));
+                                GeneratedManifest manifest = dicomService.getOrCreateManifest(study);
+                                idResults.add(DicomToFhirMapper.mapManifestToDocumentReference(study, config, manifest));
                             }
                         } catch (Exception e) {
                             LOG.warn("Error resolving DocumentReference by _id {}: {}", rawId, e.getMessage());
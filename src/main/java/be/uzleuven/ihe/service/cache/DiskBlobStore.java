@@ -0,0 +1,482 @@
+package be.uzleuven.ihe.service.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU store of blobs on disk, used as the disk tier of the caches.
+ *
+ * Each blob is stored as one file named after its key plus the store's suffix; keys are
+ * UID-like (digits and dots). Files are written to a temporary name and atomically renamed, so the directory
+ * itself is the index: on startup it is scanned, partial writes are discarded and
+ * the LRU order is rebuilt from file modification times.
+ *
+ * Reads memory-map the file, so serving a cached blob does not copy it into
+ * a heap array and large CT/MR payloads stay out of the old generation. A mapping is only
+ * released when its buffer is garbage collected, and Windows refuses to delete or replace a
+ * mapped file until then; there, files are read through a plain stream instead, so eviction
+ * and rewrites keep working.
+ *
+ * The index lock is never held during file I/O: evicted entries leave the index under the
+ * lock and their files are deleted afterwards, so a put never stalls concurrent reads.
+ */
+public class DiskBlobStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskBlobStore.class);
+
+    private static final String PART_SUFFIX = ".part";
+
+    /** Memory-map reads, except on Windows where a mapped file can't be deleted */
+    private static final boolean MAP_FILES =
+            !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    /** Key -> file size, in access order. Guarded by {@code this}. */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long currentSizeBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    private final String name;
+    private final String fileSuffix;
+    private final long minFileBytes;
+
+    private volatile boolean enabled = false;
+    private volatile Path directory;
+    private volatile long maxSizeBytes = 5L * 1024 * 1024 * 1024; // 5GB default
+
+    /**
+     * @param name Name used in log messages
+     * @param fileSuffix Suffix of the blob files, e.g. ".dcm"
+     * @param minFileBytes Files found on startup that are smaller than this are deleted as damaged
+     */
+    public DiskBlobStore(String name, String fileSuffix, long minFileBytes) {
+        this.name = name;
+        this.fileSuffix = fileSuffix;
+        this.minFileBytes = minFileBytes;
+    }
+
+    /**
+     * Configure the disk tier and rebuild the index from the files already on disk.
+     */
+    public synchronized void configure(String directory, long maxSizeMB, boolean enabled) {
+        this.enabled = enabled;
+        this.maxSizeBytes = maxSizeMB * 1024 * 1024;
+        index.clear();
+        currentSizeBytes = 0;
+
+        if (!enabled) {
+            LOG.info("{} disk cache disabled", name);
+            return;
+        }
+
+        try {
+            this.directory = Paths.get(directory).toAbsolutePath();
+            Files.createDirectories(this.directory);
+            rebuildIndex();
+            deleteFiles(evictToMaxSize());
+            LOG.info("{} disk cache configured: dir={}, entries={}, size={}/{} MB",
+                    name, this.directory, index.size(),
+                    currentSizeBytes / (1024 * 1024), maxSizeMB);
+        } catch (IOException e) {
+            LOG.error("{} disk cache disabled, cannot use directory {}: {}", name, directory, e.getMessage());
+            this.enabled = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Memory-map a stored blob. Where files are not mapped (Windows) the file is read
+     * into a heap buffer instead.
+     *
+     * @return Read-only buffer over the file, or null if not stored
+     */
+    public ByteBuffer getMapped(String key) {
+        Path file = lookup(key);
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer;
+            if (MAP_FILES) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    // The mapping stays valid after the channel is closed
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } else {
+                buffer = ByteBuffer.wrap(Files.readAllBytes(file)).asReadOnlyBuffer();
+            }
+            hits.incrementAndGet();
+            return buffer;
+        } catch (IOException e) {
+            readFailed(key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Open a stored blob as a stream over its memory-mapped file, or over a plain file
+     * stream where files are not mapped (Windows). The caller closes the stream.
+     *
+     * @return Stream positioned at the start of the file, or null if not stored
+     */
+    public InputStream openStream(String key) {
+        if (MAP_FILES) {
+            ByteBuffer buffer = getMapped(key);
+            return buffer != null ? new ByteBufferInputStream(buffer) : null;
+        }
+
+        Path file = lookup(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+            hits.incrementAndGet();
+            return in;
+        } catch (IOException e) {
+            readFailed(key, e);
+            return null;
+        }
+    }
+
+    /**
+     * File of a stored blob, or null (counted as a miss) if it is not in the index.
+     */
+    private Path lookup(String key) {
+        if (!enabled || !isSafeKey(key)) {
+            return null;
+        }
+        synchronized (this) {
+            if (index.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        return fileFor(key);
+    }
+
+    private void readFailed(String key, IOException e) {
+        if (e instanceof NoSuchFileException) {
+            dropFromIndex(key);
+        } else {
+            LOG.warn("{} disk cache read failed for {}: {}", name, key, e.getMessage());
+        }
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Store a blob.
+     */
+    public void put(String key, byte[] data) {
+        if (!enabled || data == null || !isSafeKey(key) || data.length > maxSizeBytes) {
+            return;
+        }
+
+        Path file = fileFor(key);
+        Path part = directory.resolve(key + PART_SUFFIX + "." + Thread.currentThread().getId());
+        try {
+            Files.write(part, data);
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("{} disk cache write failed for {}: {}", name, key, e.getMessage());
+            deleteQuietly(part);
+            return;
+        }
+
+        register(key, data.length);
+        LOG.debug("{} disk cache stored {} ({} bytes)", name, key, data.length);
+    }
+
+    /**
+     * Store a blob by copying an already written file.
+     */
+    public void put(String key, Path source) {
+        store(key, source, false);
+    }
+
+    /**
+     * Store a blob by moving a file the caller owns, e.g. a spool file.
+     * Within one file system this is a rename; a file from {@link #createSpoolFile(String)} always is.
+     * A stream already open on {@code source} keeps reading the moved file.
+     *
+     * @return true if the file was moved into the cache; otherwise it is left where it was
+     */
+    public boolean move(String key, Path source) {
+        return store(key, source, true);
+    }
+
+    /**
+     * New empty temporary file, in the cache directory when the cache is enabled so that
+     * {@link #move(String, Path)} is a rename. Leftovers are removed on the next startup.
+     */
+    public Path createSpoolFile(String prefix) throws IOException {
+        Path dir = directory;
+        if (enabled && dir != null) {
+            return Files.createTempFile(dir, prefix, PART_SUFFIX);
+        }
+        return Files.createTempFile(prefix, PART_SUFFIX);
+    }
+
+    private boolean store(String key, Path source, boolean move) {
+        if (!enabled || source == null || !isSafeKey(key)) {
+            return false;
+        }
+
+        Path file = fileFor(key);
+        Path part = directory.resolve(key + PART_SUFFIX + "." + Thread.currentThread().getId());
+        long size;
+        try {
+            size = Files.size(source);
+            if (size > maxSizeBytes) {
+                return false;
+            }
+            if (move) {
+                try {
+                    Files.move(source, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    // Other file system: copy to a temporary name first, so readers never see a partial file
+                    Files.move(source, part, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } else {
+                Files.copy(source, part, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            LOG.warn("{} disk cache write failed for {}: {}", name, key, e.getMessage());
+            deleteQuietly(part);
+            return false;
+        }
+
+        register(key, size);
+        LOG.debug("{} disk cache stored {} ({} bytes)", name, key, size);
+        return true;
+    }
+
+    /**
+     * Remove all stored files.
+     */
+    public void clear() {
+        List<Path> files = new ArrayList<>();
+        synchronized (this) {
+            for (String uid : index.keySet()) {
+                files.add(fileFor(uid));
+            }
+            index.clear();
+            currentSizeBytes = 0;
+        }
+        deleteFiles(files);
+        LOG.info("{} disk cache cleared", name);
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return currentSizeBytes;
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        long hitCount = hits.get();
+        long requests = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", index.size());
+            stats.put("sizeBytes", currentSizeBytes);
+        }
+        stats.put("maxSizeBytes", maxSizeBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", String.format("%.2f%%", requests == 0 ? 0.0 : hitCount * 100.0 / requests));
+        return stats;
+    }
+
+    // Internals
+
+    private void rebuildIndex() throws IOException {
+        List<Map.Entry<Path, BasicFileAttributes>> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                String name = path.getFileName().toString();
+                if (name.contains(PART_SUFFIX)) {
+                    // Interrupted write from a previous run
+                    deleteQuietly(path);
+                } else if (name.endsWith(fileSuffix)) {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attrs.size() < minFileBytes) {
+                        deleteQuietly(path);
+                    } else {
+                        files.add(Map.entry(path, attrs));
+                    }
+                }
+            }
+        }
+
+        // Oldest first, so the least recently written files are evicted first
+        files.sort(Comparator.comparing(e -> e.getValue().lastModifiedTime()));
+        for (Map.Entry<Path, BasicFileAttributes> e : files) {
+            String name = e.getKey().getFileName().toString();
+            index.put(name.substring(0, name.length() - fileSuffix.length()), e.getValue().size());
+            currentSizeBytes += e.getValue().size();
+        }
+    }
+
+    private void register(String key, long size) {
+        List<Path> evicted;
+        synchronized (this) {
+            Long old = index.put(key, size);
+            if (old != null) {
+                currentSizeBytes -= old;
+            }
+            currentSizeBytes += size;
+            evicted = evictToMaxSize();
+        }
+        deleteFiles(evicted);
+    }
+
+    /**
+     * Remove entries from the index until it fits; called under the lock.
+     *
+     * @return Files of the evicted entries, for the caller to delete after releasing the lock
+     */
+    private List<Path> evictToMaxSize() {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (currentSizeBytes > maxSizeBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            currentSizeBytes -= eldest.getValue();
+            evicted.add(fileFor(eldest.getKey()));
+            evictions.incrementAndGet();
+            LOG.debug("{} disk cache evicted {}", name, eldest.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * Delete evicted files. An entry written again in the meantime may lose its new file; the
+     * next read then misses and drops it from the index.
+     */
+    private static void deleteFiles(List<Path> files) {
+        for (Path file : files) {
+            deleteQuietly(file);
+        }
+    }
+
+    private synchronized void dropFromIndex(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            currentSizeBytes -= size;
+        }
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key + fileSuffix);
+    }
+
+    /**
+     * UIDs only contain digits and dots; reject anything else so a key can never escape the directory.
+     */
+    private static boolean isSafeKey(String key) {
+        if (key == null || key.isEmpty() || key.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * InputStream view over a ByteBuffer, without copying the buffer contents.
+     */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
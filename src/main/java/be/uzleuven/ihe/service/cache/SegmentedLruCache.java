@@ -0,0 +1,569 @@
+package be.uzleuven.ihe.service.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weight-bounded, lock-striped cache with segmented LRU (SLRU) eviction.
+ *
+ * Keys are hashed onto a fixed number of segments, each guarded by its own lock.
+ * Every segment keeps two access-ordered queues: new entries enter <i>probation</i>
+ * and are promoted to <i>protected</i> on their second hit, so a one-off scan
+ * (e.g. a single large study retrieve) cannot flush the frequently used entries.
+ *
+ * The total weight is tracked atomically across segments and the configured
+ * maximum is a hard bound: after every insert the cache evicts the globally
+ * least recently used probation entry (falling back to protected entries)
+ * until the total fits. Victim selection only peeks at the head of each
+ * segment's queue, so eviction is O(segments) instead of O(entries).
+ * An optional entry-count bound is enforced the same way.
+ *
+ * Expired entries are dropped when read, or in bulk by {@link #cleanUp()}, which
+ * owners should call periodically so entries that are never read again do not
+ * linger until they are pushed out by size.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class SegmentedLruCache<K, V> {
+
+    /** Default number of lock stripes. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /** Share of each segment's weight reserved for the protected queue. */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * Computes the weight of a cached value (e.g. its size in bytes).
+     */
+    @FunctionalInterface
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    /**
+     * Notified after an entry has left the cache. Invoked outside of any segment lock.
+     */
+    @FunctionalInterface
+    public interface RemovalListener<K, V> {
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    /**
+     * Why an entry was removed from the cache.
+     */
+    public enum RemovalCause {
+        /** Removed by {@link #remove(Object)} or {@link #clear()}. */
+        EXPLICIT,
+        /** Replaced by a newer value for the same key. */
+        REPLACED,
+        /** Older than the configured time-to-live. */
+        EXPIRED,
+        /** Evicted to keep the total weight within the maximum. */
+        SIZE
+    }
+
+    private final Segment<K, V>[] segments;
+    private final Weigher<V> weigher;
+    private final AtomicLong totalWeight = new AtomicLong();
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private volatile long maxWeight;
+    private volatile long maxEntries = Long.MAX_VALUE;
+    private volatile long ttlMillis;
+    private volatile RemovalListener<K, V> removalListener;
+
+    public SegmentedLruCache(long maxWeight, long ttlMillis, Weigher<V> weigher) {
+        this(DEFAULT_SEGMENTS, maxWeight, ttlMillis, weigher);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(int segmentCount, long maxWeight, long ttlMillis, Weigher<V> weigher) {
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("segmentCount must be positive");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>();
+        }
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Get a value, or null if absent or expired. Counts as a hit or miss.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        Node<K, V> expired = null;
+        V value = null;
+
+        segment.lock.lock();
+        try {
+            Node<K, V> node = segment.peekNode(key);
+            if (node != null) {
+                if (isExpired(node)) {
+                    segment.unlink(node);
+                    totalWeight.addAndGet(-node.weight);
+                    entryCount.decrementAndGet();
+                    expired = node;
+                } else {
+                    node.accessTick = accessClock.incrementAndGet();
+                    segment.recordHit(node, protectedCapacity());
+                    value = node.value;
+                }
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        if (expired != null) {
+            expirations.increment();
+            notifyRemoval(expired, RemovalCause.EXPIRED);
+        }
+        return null;
+    }
+
+    /**
+     * Get a value without touching recency or hit/miss counters.
+     */
+    public V peek(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Node<K, V> node = segment.peekNode(key);
+            return node == null || isExpired(node) ? null : node.value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Insert or replace a value, then evict until the maximum weight is honored.
+     *
+     * @return false if the value alone is heavier than the maximum and was not cached
+     */
+    public boolean put(K key, V value) {
+        long weight = weigher.weigh(value);
+        if (weight > maxWeight) {
+            return false;
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        Node<K, V> node = new Node<>(key, value, weight, System.currentTimeMillis(),
+                accessClock.incrementAndGet());
+        Node<K, V> replaced;
+
+        segment.lock.lock();
+        try {
+            replaced = segment.peekNode(key);
+            if (replaced != null) {
+                segment.unlink(replaced);
+                totalWeight.addAndGet(-replaced.weight);
+                entryCount.decrementAndGet();
+            }
+            segment.addProbation(node);
+            totalWeight.addAndGet(weight);
+            entryCount.incrementAndGet();
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (replaced != null) {
+            notifyRemoval(replaced, RemovalCause.REPLACED);
+        }
+        evictToMaxWeight();
+        return true;
+    }
+
+    /**
+     * Remove a single entry.
+     */
+    public V remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        Node<K, V> node;
+        segment.lock.lock();
+        try {
+            node = segment.peekNode(key);
+            if (node != null) {
+                segment.unlink(node);
+                totalWeight.addAndGet(-node.weight);
+                entryCount.decrementAndGet();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (node == null) {
+            return null;
+        }
+        notifyRemoval(node, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    /**
+     * Remove all entries. Statistics are kept.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            List<Node<K, V>> removed;
+            segment.lock.lock();
+            try {
+                removed = segment.drain();
+                for (Node<K, V> node : removed) {
+                    totalWeight.addAndGet(-node.weight);
+                }
+                entryCount.addAndGet(-removed.size());
+            } finally {
+                segment.lock.unlock();
+            }
+            for (Node<K, V> node : removed) {
+                notifyRemoval(node, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * Remove all expired entries.
+     *
+     * @return The number of entries removed
+     */
+    public int cleanUp() {
+        if (ttlMillis <= 0) {
+            return 0;
+        }
+        int removedCount = 0;
+        for (Segment<K, V> segment : segments) {
+            List<Node<K, V>> removed = new ArrayList<>();
+            segment.lock.lock();
+            try {
+                for (Node<K, V> node : segment.index.values()) {
+                    if (isExpired(node)) {
+                        removed.add(node);
+                    }
+                }
+                for (Node<K, V> node : removed) {
+                    segment.unlink(node);
+                    totalWeight.addAndGet(-node.weight);
+                }
+                entryCount.addAndGet(-removed.size());
+            } finally {
+                segment.lock.unlock();
+            }
+            for (Node<K, V> node : removed) {
+                expirations.increment();
+                notifyRemoval(node, RemovalCause.EXPIRED);
+            }
+            removedCount += removed.size();
+        }
+        return removedCount;
+    }
+
+    /**
+     * Snapshot of the live (non-expired) values, in no particular order.
+     * Does not touch recency or hit/miss counters.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                for (Node<K, V> node : segment.index.values()) {
+                    if (!isExpired(node)) {
+                        values.add(node.value);
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Change the maximum total weight, evicting immediately if the cache is now over budget.
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evictToMaxWeight();
+    }
+
+    /**
+     * Change the maximum number of entries (unbounded by default), evicting immediately if needed.
+     */
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries <= 0 ? Long.MAX_VALUE : maxEntries;
+        evictToMaxWeight();
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long weightedSize() {
+        return totalWeight.get();
+    }
+
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, entryCount.get());
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Counters and bounds as a map, for monitoring endpoints.
+     */
+    public Map<String, Object> statsSnapshot() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size());
+        stats.put("weightedSize", weightedSize());
+        stats.put("maxWeight", maxWeight);
+        stats.put("maxEntries", maxEntries == Long.MAX_VALUE ? -1 : maxEntries);
+        stats.put("ttlMillis", ttlMillis);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("hitRate", String.format("%.2f%%", requests == 0 ? 0.0 : hitCount * 100.0 / requests));
+        return stats;
+    }
+
+    // ============================================================================
+    // Eviction
+    // ============================================================================
+
+    private void evictToMaxWeight() {
+        while (totalWeight.get() > maxWeight || entryCount.get() > maxEntries) {
+            Node<K, V> victim = evictOne();
+            if (victim == null) {
+                return;
+            }
+            evictions.increment();
+            notifyRemoval(victim, RemovalCause.SIZE);
+        }
+    }
+
+    /**
+     * Evict the least recently used entry, preferring probation over protected.
+     * Only the head of each segment queue is inspected.
+     */
+    private Node<K, V> evictOne() {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Segment<K, V> target = null;
+            boolean fromProbation = false;
+            long oldestTick = Long.MAX_VALUE;
+
+            for (Segment<K, V> segment : segments) {
+                segment.lock.lock();
+                try {
+                    Node<K, V> head = segment.probationHead();
+                    if (head != null) {
+                        if (!fromProbation || head.accessTick < oldestTick) {
+                            target = segment;
+                            oldestTick = head.accessTick;
+                            fromProbation = true;
+                        }
+                    } else if (!fromProbation) {
+                        head = segment.protectedHead();
+                        if (head != null && head.accessTick < oldestTick) {
+                            target = segment;
+                            oldestTick = head.accessTick;
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+
+            if (target == null) {
+                return null;
+            }
+
+            target.lock.lock();
+            try {
+                Node<K, V> victim = target.probationHead();
+                if (victim == null) {
+                    victim = target.protectedHead();
+                }
+                if (victim != null) {
+                    target.unlink(victim);
+                    totalWeight.addAndGet(-victim.weight);
+                    entryCount.decrementAndGet();
+                    return victim;
+                }
+            } finally {
+                target.lock.unlock();
+            }
+            // Segment emptied concurrently; pick again
+        }
+        return null;
+    }
+
+    private long protectedCapacity() {
+        return (long) (maxWeight * PROTECTED_RATIO / segments.length);
+    }
+
+    private boolean isExpired(Node<K, V> node) {
+        return ttlMillis > 0 && System.currentTimeMillis() - node.createdAt > ttlMillis;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[Math.floorMod(h, segments.length)];
+    }
+
+    private void notifyRemoval(Node<K, V> node, RemovalCause cause) {
+        RemovalListener<K, V> listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(node.key, node.value, cause);
+        }
+    }
+
+    // ============================================================================
+    // Internals
+    // ============================================================================
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        final long createdAt;
+        volatile long accessTick;
+        boolean inProtected;
+
+        Node(K key, V value, long weight, long createdAt, long accessTick) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.createdAt = createdAt;
+            this.accessTick = accessTick;
+        }
+    }
+
+    /**
+     * One lock stripe. All methods must be called with {@link #lock} held.
+     */
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<K, Node<K, V>> index = new HashMap<>();
+        final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<K, Node<K, V>> protectedQueue = new LinkedHashMap<>(16, 0.75f, true);
+        long protectedWeight;
+
+        /** Lookup that leaves the access order untouched. */
+        Node<K, V> peekNode(K key) {
+            return index.get(key);
+        }
+
+        void addProbation(Node<K, V> node) {
+            node.inProtected = false;
+            probation.put(node.key, node);
+            index.put(node.key, node);
+        }
+
+        /** Promote a probation hit; demote the protected tail when it outgrows its share. */
+        void recordHit(Node<K, V> node, long protectedCapacity) {
+            if (node.inProtected) {
+                protectedQueue.get(node.key);
+                return;
+            }
+            probation.get(node.key);
+            probation.remove(node.key);
+            node.inProtected = true;
+            protectedQueue.put(node.key, node);
+            protectedWeight += node.weight;
+
+            while (protectedWeight > protectedCapacity && protectedQueue.size() > 1) {
+                Node<K, V> demoted = protectedHead();
+                protectedQueue.remove(demoted.key);
+                protectedWeight -= demoted.weight;
+                addProbation(demoted);
+            }
+        }
+
+        void unlink(Node<K, V> node) {
+            index.remove(node.key);
+            if (node.inProtected) {
+                protectedQueue.remove(node.key);
+                protectedWeight -= node.weight;
+            } else {
+                probation.remove(node.key);
+            }
+        }
+
+        Node<K, V> probationHead() {
+            return first(probation);
+        }
+
+        Node<K, V> protectedHead() {
+            return first(protectedQueue);
+        }
+
+        List<Node<K, V>> drain() {
+            List<Node<K, V>> removed = new ArrayList<>(probation.size() + protectedQueue.size());
+            removed.addAll(probation.values());
+            removed.addAll(protectedQueue.values());
+            probation.clear();
+            protectedQueue.clear();
+            index.clear();
+            protectedWeight = 0;
+            return removed;
+        }
+
+        private static <K, V> Node<K, V> first(Map<K, Node<K, V>> queue) {
+            Iterator<Node<K, V>> it = queue.values().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+}
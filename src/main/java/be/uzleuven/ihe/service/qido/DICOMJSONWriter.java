@@ -0,0 +1,309 @@
+package be.uzleuven.ihe.service.qido;
+
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService.InstanceMetadata;
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService.SeriesMetadata;
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService.StudyMetadata;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.util.TagUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming DICOM JSON (PS3.18 Annex F) writer for QIDO-RS results.
+ *
+ * Writes study, series and instance metadata directly with a Jackson generator, without building
+ * Attributes and nested maps first. The output is the same as
+ * {@code DICOMJSONConverter.toJSON(metadata.toAttributes(), includeFields)}.
+ *
+ * Without includefield, the UTF-8 fragment of each object is kept and reused, so a repeated query only
+ * concatenates bytes: on the cached study and series, and in a byte-bounded cache for instances. A
+ * fragment is dropped when the object changes (e.g. the Retrieve URL rewrite of proxy mode).
+ */
+public class DICOMJSONWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private DICOMJSONWriter() {
+        // Utility class - no instantiation
+    }
+
+    /**
+     * DICOM JSON object of a study.
+     *
+     * @param includeFields Set of tags to include (null = include all)
+     */
+    public static byte[] study(StudyMetadata study, Set<Integer> includeFields) {
+        String retrieveURL = study.retrieveURL;
+        if (includeFields == null) {
+            byte[] cached = study.getJsonFragment(retrieveURL);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] json = write(includeFields, out -> {
+            // Ascending tag order, like Attributes.tags()
+            out.string(Tag.StudyDate, "DA", study.studyDate);
+            out.string(Tag.StudyTime, "TM", study.studyTime);
+            out.string(Tag.AccessionNumber, "SH", study.accessionNumber);
+            out.string(Tag.ModalitiesInStudy, "CS", study.modalitiesInStudy);
+            out.string(Tag.InstitutionName, "LO", study.institutionName);
+            out.personName(Tag.ReferringPhysicianName, study.referringPhysicianName);
+            out.string(Tag.StudyDescription, "LO", study.studyDescription);
+            out.url(Tag.RetrieveURL, retrieveURL);
+            out.personName(Tag.PatientName, study.patientName);
+            out.string(Tag.PatientID, "LO", study.patientId);
+            out.string(Tag.PatientBirthDate, "DA", study.patientBirthDate);
+            out.string(Tag.PatientSex, "CS", study.patientSex);
+            out.string(Tag.StudyInstanceUID, "UI", study.studyInstanceUID);
+            out.string(Tag.StudyID, "SH", study.studyID);
+            out.integer(Tag.NumberOfStudyRelatedSeries, "IS", study.numberOfStudyRelatedSeries);
+            out.integer(Tag.NumberOfStudyRelatedInstances, "IS", study.numberOfStudyRelatedInstances);
+        });
+
+        if (includeFields == null) {
+            study.setJsonFragment(retrieveURL, json);
+        }
+        return json;
+    }
+
+    /**
+     * DICOM JSON object of a series.
+     *
+     * @param includeFields Set of tags to include (null = include all)
+     */
+    public static byte[] series(SeriesMetadata series, Set<Integer> includeFields) {
+        String retrieveURL = series.retrieveURL;
+        if (includeFields == null) {
+            byte[] cached = series.getJsonFragment(retrieveURL);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] json = write(includeFields, out -> {
+            out.string(Tag.Modality, "CS", series.modality);
+            out.string(Tag.SeriesDescription, "LO", series.seriesDescription);
+            out.url(Tag.RetrieveURL, retrieveURL);
+            out.string(Tag.StudyInstanceUID, "UI", series.studyInstanceUID);
+            out.string(Tag.SeriesInstanceUID, "UI", series.seriesInstanceUID);
+            out.integerString(Tag.SeriesNumber, series.seriesNumber);
+            out.integer(Tag.NumberOfSeriesRelatedInstances, "IS", series.instances.size());
+        });
+
+        if (includeFields == null) {
+            series.setJsonFragment(retrieveURL, json);
+        }
+        return json;
+    }
+
+    /**
+     * DICOM JSON object of an instance.
+     *
+     * @param includeFields Set of tags to include (null = include all)
+     */
+    public static byte[] instance(InstanceMetadata instance, Set<Integer> includeFields) {
+        if (includeFields == null) {
+            byte[] cached = instance.getJsonFragment();
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] json = write(includeFields, out -> {
+            out.string(Tag.SOPClassUID, "UI", instance.getSopClassUID());
+            out.string(Tag.SOPInstanceUID, "UI", instance.getSopInstanceUID());
+            out.url(Tag.RetrieveURL, instance.getRetrieveURL());
+            out.string(Tag.StudyInstanceUID, "UI", instance.getStudyInstanceUID());
+            out.string(Tag.SeriesInstanceUID, "UI", instance.getSeriesInstanceUID());
+            out.integerString(Tag.InstanceNumber, instance.getInstanceNumber());
+            out.integerString(Tag.NumberOfFrames, instance.getNumberOfFrames());
+            out.unsignedShort(Tag.Rows, instance.getRows());
+            out.unsignedShort(Tag.Columns, instance.getColumns());
+        });
+
+        if (includeFields == null) {
+            instance.setJsonFragment(json);
+        }
+        return json;
+    }
+
+    /**
+     * Write objects as a DICOM JSON array.
+     */
+    public static void writeArray(List<byte[]> objects, OutputStream out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < objects.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(objects.get(i));
+        }
+        out.write(']');
+    }
+
+    // ============================================================================
+    // Elements
+    // ============================================================================
+
+    private interface Body {
+        void write(Elements out) throws IOException;
+    }
+
+    private static byte[] write(Set<Integer> includeFields, Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(bytes, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            body.write(new Elements(gen, includeFields));
+            gen.writeEndObject();
+        } catch (IOException e) {
+            // Writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes elements the way DICOMJSONConverter renders the Attributes built by toAttributes():
+     * absent or empty values are left out, multi-valued strings are split on '\',
+     * IS values become numbers when they parse.
+     */
+    private static final class Elements {
+        private final JsonGenerator gen;
+        private final Set<Integer> includeFields;
+
+        Elements(JsonGenerator gen, Set<Integer> includeFields) {
+            this.gen = gen;
+            this.includeFields = includeFields;
+        }
+
+        private boolean start(int tag, String vr, String value) throws IOException {
+            return value != null && !value.isEmpty() && start(tag, vr);
+        }
+
+        private boolean start(int tag, String vr) throws IOException {
+            if (includeFields != null && !includeFields.contains(tag)) {
+                return false;
+            }
+            gen.writeFieldName(TagUtils.toHexString(tag));
+            gen.writeStartObject();
+            gen.writeStringField("vr", vr);
+            return true;
+        }
+
+        void string(int tag, String vr, String value) throws IOException {
+            if (!start(tag, vr, value)) {
+                return;
+            }
+            boolean open = false;
+            for (String s : value.split("\\\\")) {
+                s = s.trim();
+                if (s.isEmpty()) {
+                    continue;
+                }
+                if (!open) {
+                    gen.writeArrayFieldStart("Value");
+                    open = true;
+                }
+                gen.writeString(s);
+            }
+            end(open);
+        }
+
+        void url(int tag, String value) throws IOException {
+            if (!start(tag, "UR", value)) {
+                return;
+            }
+            String s = value.trim();
+            if (!s.isEmpty()) {
+                gen.writeArrayFieldStart("Value");
+                gen.writeString(s);
+            }
+            end(!s.isEmpty());
+        }
+
+        void personName(int tag, String value) throws IOException {
+            if (!start(tag, "PN", value)) {
+                return;
+            }
+            boolean open = false;
+            for (String s : value.split("\\\\")) {
+                s = s.trim();
+                if (s.isEmpty()) {
+                    continue;
+                }
+                if (!open) {
+                    gen.writeArrayFieldStart("Value");
+                    open = true;
+                }
+                gen.writeStartObject();
+                gen.writeStringField("Alphabetic", s);
+                gen.writeEndObject();
+            }
+            end(open);
+        }
+
+        void integer(int tag, String vr, int value) throws IOException {
+            if (!start(tag, vr)) {
+                return;
+            }
+            gen.writeArrayFieldStart("Value");
+            gen.writeNumber(value);
+            end(true);
+        }
+
+        void integerString(int tag, String value) throws IOException {
+            if (!start(tag, "IS", value)) {
+                return;
+            }
+            boolean open = false;
+            for (String s : value.split("\\\\")) {
+                if (s.trim().isEmpty()) {
+                    continue;
+                }
+                if (!open) {
+                    gen.writeArrayFieldStart("Value");
+                    open = true;
+                }
+                try {
+                    gen.writeNumber(Integer.parseInt(s.trim()));
+                } catch (NumberFormatException e) {
+                    // Keep as string if parsing fails
+                    gen.writeString(s);
+                }
+            }
+            end(open);
+        }
+
+        void unsignedShort(int tag, String value) throws IOException {
+            if (!start(tag, "US", value)) {
+                return;
+            }
+            int parsed;
+            try {
+                parsed = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                end(false);
+                return;
+            }
+            gen.writeArrayFieldStart("Value");
+            gen.writeNumber(parsed);
+            end(true);
+        }
+
+        private void end(boolean valueOpen) throws IOException {
+            if (valueOpen) {
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+    }
+}
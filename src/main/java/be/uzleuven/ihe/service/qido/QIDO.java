@@ -8,6 +8,8 @@ package be.uzleuven.ihe.service.qido;
  * - {@link QIDOConfiguration}: Configuration properties for the service
  * - {@link QIDOUtils}: Utilities for parsing query parameters to DICOM Attributes
  * - {@link DICOMJSONConverter}: Converter for DICOM Attributes to JSON format
+ * - {@link DICOMJSONWriter}: Streaming DICOM JSON writer for study/series/instance metadata
+ * - {@link QIDOQueryCache}: Short-lived cache of matched studies per normalized query
  *
  * Endpoints provided:
  * - GET /dicomweb/studies - Search for studies
@@ -37,6 +37,24 @@ public class QIDOConfiguration {
      */
     private boolean wadoProxyEnabled = false;
 
+    /** Connect timeout to a remote WADO-RS server in proxy mode */
+    private int wadoProxyConnectTimeoutSeconds = 10;
+
+    /**
+     * Time to wait for a remote WADO-RS server to start answering in proxy mode.
+     * The body is then streamed to the client without a total time limit.
+     */
+    private int wadoProxyResponseTimeoutSeconds = 60;
+
+    /**
+     * Seconds the matched studies of a search are kept, so paging through the result
+     * (or changing includefield) does not search MHD again. 0 disables the query cache.
+     */
+    private int queryCacheTtlSeconds = 30;
+
+    /** Maximum number of StudyInstanceUIDs held by the query cache over all cached searches */
+    private long queryCacheMaxStudyUids = 100_000;
+
     // Getters and Setters
 
     public String getBaseUrl() {
@@ -94,5 +112,36 @@ public class QIDOConfiguration {
     public void setWadoProxyEnabled(boolean wadoProxyEnabled) {
         this.wadoProxyEnabled = wadoProxyEnabled;
     }
-}
 
+    public int getWadoProxyConnectTimeoutSeconds() {
+        return wadoProxyConnectTimeoutSeconds;
+    }
+
+    public void setWadoProxyConnectTimeoutSeconds(int wadoProxyConnectTimeoutSeconds) {
+        this.wadoProxyConnectTimeoutSeconds = wadoProxyConnectTimeoutSeconds;
+    }
+
+    public int getWadoProxyResponseTimeoutSeconds() {
+        return wadoProxyResponseTimeoutSeconds;
+    }
+
+    public void setWadoProxyResponseTimeoutSeconds(int wadoProxyResponseTimeoutSeconds) {
+        this.wadoProxyResponseTimeoutSeconds = wadoProxyResponseTimeoutSeconds;
+    }
+
+    public int getQueryCacheTtlSeconds() {
+        return queryCacheTtlSeconds;
+    }
+
+    public void setQueryCacheTtlSeconds(int queryCacheTtlSeconds) {
+        this.queryCacheTtlSeconds = queryCacheTtlSeconds;
+    }
+
+    public long getQueryCacheMaxStudyUids() {
+        return queryCacheMaxStudyUids;
+    }
+
+    public void setQueryCacheMaxStudyUids(long queryCacheMaxStudyUids) {
+        this.queryCacheMaxStudyUids = queryCacheMaxStudyUids;
+    }
+}
@@ -0,0 +1,75 @@
+package be.uzleuven.ihe.service.qido;
+
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Short-lived cache of QIDO-RS study query results.
+ *
+ * A viewer paging through a worklist, or changing includefield, repeats the same query with
+ * another offset. Each query would otherwise cost a new MHD DocumentReference search. The
+ * matched StudyInstanceUIDs are kept by normalized query (see {@link QIDOUtils#normalizeQueryKeys})
+ * for a few seconds, so only the studies of the requested page are fetched.
+ *
+ * The cache is bounded by the total number of cached study UIDs.
+ */
+@Component
+public class QIDOQueryCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QIDOQueryCache.class);
+
+    /** Expired entries are swept every this many puts */
+    private static final int SWEEP_INTERVAL = 64;
+
+    private final SegmentedLruCache<String, List<String>> results;
+    private final AtomicInteger puts = new AtomicInteger();
+    private final boolean enabled;
+
+    public QIDOQueryCache(QIDOConfiguration configuration) {
+        long ttlMillis = configuration.getQueryCacheTtlSeconds() * 1000L;
+        long maxStudyUIDs = configuration.getQueryCacheMaxStudyUids();
+        this.enabled = ttlMillis > 0 && maxStudyUIDs > 0;
+        this.results = new SegmentedLruCache<>(Math.max(1, maxStudyUIDs), Math.max(1, ttlMillis),
+                uids -> uids.size() + 1L);
+
+        LOG.info("QIDO query cache configured: enabled={}, ttl={}s, maxStudyUIDs={}",
+                enabled, configuration.getQueryCacheTtlSeconds(), maxStudyUIDs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Matched StudyInstanceUIDs of a query, in match order, or null if not cached (or expired).
+     */
+    public List<String> get(String queryKey) {
+        return enabled ? results.get(queryKey) : null;
+    }
+
+    /**
+     * Store the matched StudyInstanceUIDs of a query.
+     */
+    public void put(String queryKey, List<String> studyUIDs) {
+        if (!enabled) {
+            return;
+        }
+        results.put(queryKey, Collections.unmodifiableList(studyUIDs));
+        if (puts.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            results.cleanUp();
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> stats = results.statsSnapshot();
+        stats.put("enabled", enabled);
+        return stats;
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.*;
@@ -44,14 +45,17 @@ public class QIDORestController implements DisposableBean {
 
     private final MHDBackedMetadataService metadataService;
     private final QIDOConfiguration configuration;
+    private final QIDOQueryCache queryCache;
 
     // Thread pool for parallel MADO downloads (10 concurrent downloads)
     private final ExecutorService madoDownloadExecutor;
 
     @Autowired
-    public QIDORestController(MHDBackedMetadataService metadataService, QIDOConfiguration configuration) {
+    public QIDORestController(MHDBackedMetadataService metadataService, QIDOConfiguration configuration,
+                              QIDOQueryCache queryCache) {
         this.metadataService = metadataService;
         this.configuration = configuration;
+        this.queryCache = queryCache;
         this.madoDownloadExecutor = Executors.newFixedThreadPool(10);
 
         LOG.info("QIDO-RS Controller initialized:");
@@ -88,7 +92,7 @@ public class QIDORestController implements DisposableBean {
      * - fuzzymatching: Enable fuzzy matching for Patient Name
      */
     @GetMapping(value = "/studies", produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchStudies(
+    public ResponseEntity<StreamingResponseBody> searchStudies(
             @RequestParam MultiValueMap<String, String> allParams) {
 
         LOG.info("QIDO-RS SearchForStudies: {}", allParams);
@@ -97,18 +101,18 @@ public class QIDORestController implements DisposableBean {
             // Parse query parameters to DICOM Attributes
             Attributes queryKeys = QIDOUtils.parseQueryParams(allParams);
 
-            // Query MHD backend
-            List<StudyMetadata> studies = metadataService.findStudies(queryKeys);
+            // Query MHD backend (or reuse the result of the same query for another page)
+            List<String> studyUIDs = findStudyUIDs(queryKeys, QIDOUtils.parseFuzzyMatching(allParams));
 
-            LOG.info("Found {} matching studies", studies.size());
+            LOG.info("Found {} matching studies", studyUIDs.size());
 
             // Apply pagination
             int offset = QIDOUtils.parseOffset(allParams);
             int limit = QIDOUtils.parseLimit(allParams, configuration.getDefaultLimit(), configuration.getMaxLimit());
-            studies = applyPagination(studies, offset, limit);
+            studyUIDs = applyPagination(studyUIDs, offset, limit);
 
-            // Fetch full metadata (with Retrieve URLs) in parallel
-            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studies);
+            // Fetch full metadata (with Retrieve URLs) of the visible page in parallel
+            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studyUIDs);
 
             // Rewrite URLs to local proxy if proxy mode is enabled
             if (configuration.isWadoProxyEnabled()) {
@@ -124,9 +128,9 @@ public class QIDORestController implements DisposableBean {
             // Parse includefield parameter
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = fullStudies.stream()
-                    .map(study -> DICOMJSONConverter.toJSON(study.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = fullStudies.stream()
+                    .map(study -> DICOMJSONWriter.study(study, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, fullStudies.size(), offset, limit);
@@ -149,7 +153,7 @@ public class QIDORestController implements DisposableBean {
      * - includefield, limit, offset
      */
     @GetMapping(value = "/studies/{studyUID}/series", produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchSeries(
+    public ResponseEntity<StreamingResponseBody> searchSeries(
             @PathVariable("studyUID") String studyUID,
             @RequestParam MultiValueMap<String, String> allParams) {
 
@@ -181,9 +185,9 @@ public class QIDORestController implements DisposableBean {
             // Parse includefield parameter
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = seriesList.stream()
-                    .map(series -> DICOMJSONConverter.toJSON(series.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = seriesList.stream()
+                    .map(series -> DICOMJSONWriter.series(series, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, seriesList.size(), offset, limit);
@@ -207,7 +211,7 @@ public class QIDORestController implements DisposableBean {
      */
     @GetMapping(value = "/studies/{studyUID}/series/{seriesUID}/instances",
                 produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchInstances(
+    public ResponseEntity<StreamingResponseBody> searchInstances(
             @PathVariable("studyUID") String studyUID,
             @PathVariable("seriesUID") String seriesUID,
             @RequestParam MultiValueMap<String, String> allParams) {
@@ -242,9 +246,9 @@ public class QIDORestController implements DisposableBean {
             // Parse includefield parameter
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = instances.stream()
-                    .map(instance -> DICOMJSONConverter.toJSON(instance.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = instances.stream()
+                    .map(instance -> DICOMJSONWriter.instance(instance, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, instances.size(), offset, limit);
@@ -264,7 +268,7 @@ public class QIDORestController implements DisposableBean {
      * GET /series
      */
     @GetMapping(value = "/series", produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchAllSeries(
+    public ResponseEntity<StreamingResponseBody> searchAllSeries(
             @RequestParam MultiValueMap<String, String> allParams) {
 
         LOG.info("QIDO-RS SearchForAllSeries: {}", allParams);
@@ -272,10 +276,10 @@ public class QIDORestController implements DisposableBean {
         try {
             // First find matching studies
             Attributes queryKeys = QIDOUtils.parseQueryParams(allParams);
-            List<StudyMetadata> studies = metadataService.findStudies(queryKeys);
+            List<String> studyUIDs = findStudyUIDs(queryKeys, QIDOUtils.parseFuzzyMatching(allParams));
 
             // Fetch full metadata in parallel for all studies
-            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studies);
+            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studyUIDs);
 
             // Rewrite URLs to local proxy if proxy mode is enabled
             if (configuration.isWadoProxyEnabled()) {
@@ -300,7 +304,7 @@ public class QIDORestController implements DisposableBean {
                 }
             }
 
-            LOG.info("Found {} matching series across {} studies", allSeries.size(), studies.size());
+            LOG.info("Found {} matching series across {} studies", allSeries.size(), studyUIDs.size());
 
             // Apply pagination
             int offset = QIDOUtils.parseOffset(allParams);
@@ -310,9 +314,9 @@ public class QIDORestController implements DisposableBean {
             // Parse includefield parameter
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = allSeries.stream()
-                    .map(series -> DICOMJSONConverter.toJSON(series.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = allSeries.stream()
+                    .map(series -> DICOMJSONWriter.series(series, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, allSeries.size(), offset, limit);
@@ -329,7 +333,7 @@ public class QIDORestController implements DisposableBean {
      */
     @GetMapping(value = "/studies/{studyUID}/instances",
                 produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchStudyInstances(
+    public ResponseEntity<StreamingResponseBody> searchStudyInstances(
             @PathVariable("studyUID") String studyUID,
             @RequestParam MultiValueMap<String, String> allParams) {
 
@@ -350,7 +354,7 @@ public class QIDORestController implements DisposableBean {
                 LOG.info("WADO Proxy mode is ENABLED - rewriting instance URLs to: {}", configuration.getBaseUrl());
                 for (InstanceMetadata instance : instances) {
                     instance.rewriteUrlsToProxy(configuration.getBaseUrl(),
-                            instance.studyInstanceUID, instance.seriesInstanceUID);
+                            instance.getStudyInstanceUID(), instance.getSeriesInstanceUID());
                 }
             }
 
@@ -363,9 +367,9 @@ public class QIDORestController implements DisposableBean {
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
             // Convert to DICOM JSON with Retrieve URLs from MADO manifest
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = instances.stream()
-                    .map(instance -> DICOMJSONConverter.toJSON(instance.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = instances.stream()
+                    .map(instance -> DICOMJSONWriter.instance(instance, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, instances.size(), offset, limit);
@@ -381,7 +385,7 @@ public class QIDORestController implements DisposableBean {
      * GET /instances
      */
     @GetMapping(value = "/instances", produces = {DICOM_JSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<List<Map<String, Object>>> searchAllInstances(
+    public ResponseEntity<StreamingResponseBody> searchAllInstances(
             @RequestParam MultiValueMap<String, String> allParams) {
 
         LOG.info("QIDO-RS SearchForAllInstances: {}", allParams);
@@ -389,10 +393,10 @@ public class QIDORestController implements DisposableBean {
         try {
             // First find matching studies
             Attributes queryKeys = QIDOUtils.parseQueryParams(allParams);
-            List<StudyMetadata> studies = metadataService.findStudies(queryKeys);
+            List<String> studyUIDs = findStudyUIDs(queryKeys, QIDOUtils.parseFuzzyMatching(allParams));
 
             // Fetch full metadata in parallel for all studies
-            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studies);
+            List<StudyMetadata> fullStudies = fetchStudiesInParallel(studyUIDs);
 
             // Rewrite URLs to local proxy if proxy mode is enabled
             if (configuration.isWadoProxyEnabled()) {
@@ -411,7 +415,7 @@ public class QIDORestController implements DisposableBean {
                         for (InstanceMetadata instance : series.instances) {
                             // Apply SOP Class UID filter if specified
                             if (sopClassFilter == null || sopClassFilter.isEmpty() ||
-                                sopClassFilter.equals("*") || sopClassFilter.equals(instance.sopClassUID)) {
+                                sopClassFilter.equals("*") || sopClassFilter.equals(instance.getSopClassUID())) {
                                 allInstances.add(instance);
                             }
                         }
@@ -419,7 +423,7 @@ public class QIDORestController implements DisposableBean {
                 }
             }
 
-            LOG.info("Found {} matching instances across {} studies", allInstances.size(), studies.size());
+            LOG.info("Found {} matching instances across {} studies", allInstances.size(), studyUIDs.size());
 
             // Apply pagination
             int offset = QIDOUtils.parseOffset(allParams);
@@ -429,9 +433,9 @@ public class QIDORestController implements DisposableBean {
             // Parse includefield parameter
             Set<Integer> includeFields = QIDOUtils.parseIncludeFields(allParams);
 
-            // Convert to DICOM JSON (Retrieve URLs are now in toAttributes())
-            List<Map<String, Object>> response = allInstances.stream()
-                    .map(instance -> DICOMJSONConverter.toJSON(instance.toAttributes(), includeFields))
+            // Write DICOM JSON (cached fragments are reused when all fields are returned)
+            List<byte[]> response = allInstances.stream()
+                    .map(instance -> DICOMJSONWriter.instance(instance, includeFields))
                     .collect(Collectors.toList());
 
             return buildResponse(response, allInstances.size(), offset, limit);
@@ -442,32 +446,62 @@ public class QIDORestController implements DisposableBean {
         }
     }
 
+    /**
+     * Hit-rate counters of the study query cache.
+     * GET /dicomweb/query-cache/stats
+     */
+    @GetMapping("/query-cache/stats")
+    public ResponseEntity<Map<String, Object>> getQueryCacheStats() {
+        return ResponseEntity.ok(queryCache.statsSnapshot());
+    }
+
     // ============================================================================
     // Helper Methods
     // ============================================================================
 
+    /**
+     * StudyInstanceUIDs matching the query keys, in match order.
+     * Served from the query cache when the same query ran recently, so paging does not search MHD again.
+     */
+    private List<String> findStudyUIDs(Attributes queryKeys, boolean fuzzyMatching) throws IOException {
+        String cacheKey = QIDOUtils.normalizeQueryKeys(queryKeys, fuzzyMatching);
+        List<String> cached = queryCache.get(cacheKey);
+        if (cached != null) {
+            LOG.debug("Query cache hit: {}", cacheKey);
+            return cached;
+        }
+
+        List<StudyMetadata> studies = metadataService.findStudies(queryKeys);
+        List<String> studyUIDs = new ArrayList<>(studies.size());
+        for (StudyMetadata study : studies) {
+            studyUIDs.add(study.studyInstanceUID);
+        }
+        queryCache.put(cacheKey, studyUIDs);
+        return studyUIDs;
+    }
+
     /**
      * Fetch study metadata in parallel for multiple studies.
      * Downloads up to 10 MADO files concurrently.
      *
-     * @param studies List of studies to fetch metadata for
+     * @param studyUIDs StudyInstanceUIDs to fetch metadata for
      * @return List of full study metadata (preserving order)
      */
-    private List<StudyMetadata> fetchStudiesInParallel(List<StudyMetadata> studies) {
-        if (studies.isEmpty()) {
-            return studies;
+    private List<StudyMetadata> fetchStudiesInParallel(List<String> studyUIDs) {
+        if (studyUIDs.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        LOG.info("Fetching {} MADO files in parallel (max 10 concurrent downloads)", studies.size());
+        LOG.info("Fetching {} MADO files in parallel (max 10 concurrent downloads)", studyUIDs.size());
 
         // Create tasks for each study
-        List<CompletableFuture<StudyMetadata>> futures = studies.stream()
-                .map(study -> CompletableFuture.supplyAsync(() -> {
+        List<CompletableFuture<StudyMetadata>> futures = studyUIDs.stream()
+                .map(studyUID -> CompletableFuture.supplyAsync(() -> {
                     try {
-                        LOG.debug("Fetching MADO for study: {}", study.studyInstanceUID);
-                        return metadataService.getOrFetchStudyMetadata(study.studyInstanceUID);
+                        LOG.debug("Fetching MADO for study: {}", studyUID);
+                        return metadataService.getOrFetchStudyMetadata(studyUID);
                     } catch (IOException e) {
-                        LOG.warn("Failed to fetch metadata for study {}: {}", study.studyInstanceUID, e.getMessage());
+                        LOG.warn("Failed to fetch metadata for study {}: {}", studyUID, e.getMessage());
                         return null;
                     }
                 }, madoDownloadExecutor))
@@ -498,7 +532,7 @@ public class QIDORestController implements DisposableBean {
             }
         }
 
-        LOG.info("Successfully fetched {} out of {} MADO files", results.size(), studies.size());
+        LOG.info("Successfully fetched {} out of {} MADO files", results.size(), studyUIDs.size());
         return results;
     }
 
@@ -517,17 +551,18 @@ public class QIDORestController implements DisposableBean {
     /**
      * Build the response with appropriate headers.
      */
-    private ResponseEntity<List<Map<String, Object>>> buildResponse(
-            List<Map<String, Object>> data, int totalSize, int offset, int limit) {
+    private ResponseEntity<StreamingResponseBody> buildResponse(
+            List<byte[]> data, int totalSize, int offset, int limit) {
 
-        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(DICOM_JSON_MEDIA_TYPE));
 
         // Add warning header if results were limited
         if (limit > 0 && offset + limit < totalSize) {
             responseBuilder.header("Warning", "299 " + configuration.getBaseUrl() + " \"The number of results exceeded the limit\"");
         }
 
-        return responseBuilder.body(data);
+        return responseBuilder.body(out -> DICOMJSONWriter.writeArray(data, out));
     }
 }
 
@@ -138,6 +138,39 @@ public class QIDOUtils {
         return attrs;
     }
 
+    /**
+     * Canonical form of parsed query keys, so equivalent queries share one cache entry.
+     *
+     * Keys are listed in tag order with trimmed values; runs of '*' collapse to one, and a key
+     * whose value is only '*' matches anything and is left out. The result does not depend on
+     * includefield, limit or offset.
+     *
+     * @param keys Query keys from {@link #parseQueryParams}
+     * @param fuzzyMatching Whether fuzzy matching was requested
+     * @return Normalized query, e.g. "00080061=CT|00100020=123"
+     */
+    public static String normalizeQueryKeys(Attributes keys, boolean fuzzyMatching) {
+        StringBuilder sb = new StringBuilder();
+        for (int tag : keys.tags()) {
+            String value = keys.getString(tag);
+            if (value == null) {
+                continue;
+            }
+            value = value.trim().replaceAll("\\*{2,}", "*");
+            if (value.isEmpty() || value.equals("*")) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(TagUtils.toHexString(tag)).append('=').append(value);
+        }
+        if (fuzzyMatching) {
+            sb.append("|fuzzy");
+        }
+        return sb.toString();
+    }
+
     /**
      * Parse a key string to a DICOM tag.
      * Supports both 8-digit hex format (00100020) and keyword format (PatientID).
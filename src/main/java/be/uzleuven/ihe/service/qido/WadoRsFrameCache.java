@@ -0,0 +1,412 @@
+package be.uzleuven.ihe.service.qido;
+
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
+import be.uzleuven.ihe.service.cache.DiskBlobStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of frames retrieved through the WADO-RS proxy.
+ *
+ * Scrolling through a stack requests the same frames over and over, from one viewer and across
+ * users. Frames are kept by study/series/instance/frame/Accept in a heap tier (segmented LRU)
+ * and optionally in a disk tier behind it. An entry older than the freshness window is not
+ * dropped but revalidated upstream with its ETag / Last-Modified, so an unchanged frame costs a
+ * 304 instead of a new transfer.
+ *
+ * Neighbouring frames can be prefetched on a small bounded pool; prefetches that do not fit in
+ * its queue are dropped, so prefetching never delays viewer requests.
+ *
+ * The key does not identify the caller, so the proxy only uses the cache for requests without
+ * credentials, and never stores responses marked private or no-store.
+ */
+@Component
+public class WadoRsFrameCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WadoRsFrameCache.class);
+
+    private static final int DISK_FORMAT = 0x46524D31; // "FRM1"
+    /** Smallest valid frame file: format, five empty strings and storedAt */
+    private static final long DISK_MIN_BYTES = 4 + 5 * 2 + 8;
+    private static final int PREFETCH_QUEUE = 256;
+
+    private final SegmentedLruCache<String, CachedFrame> heap =
+            new SegmentedLruCache<>(256L * 1024 * 1024, 0, frame -> frame.body.length);
+
+    private volatile DiskBlobStore disk;
+    private volatile boolean enabled = false;
+    private volatile int maxEntryBytes = 8 * 1024 * 1024;
+    private volatile long freshMillis = 300_000;
+    private volatile int prefetchFrames = 4;
+
+    private final ThreadPoolExecutor prefetchPool;
+    private final Set<String> prefetching = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder prefetched = new LongAdder();
+
+    public WadoRsFrameCache() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.prefetchPool = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PREFETCH_QUEUE), r -> {
+                    Thread t = new Thread(r, "frame-prefetch-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.prefetchPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Configure cache settings.
+     */
+    public void configure(boolean enabled, long maxSizeMB, long maxEntrySizeKB, long freshSeconds, int prefetchFrames,
+                          boolean diskEnabled, String diskDirectory, long diskMaxSizeMB) {
+        this.enabled = enabled;
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, maxEntrySizeKB) * 1024);
+        this.freshMillis = freshSeconds * 1000;
+        this.prefetchFrames = Math.max(0, prefetchFrames);
+        heap.setMaxWeight(maxSizeMB * 1024 * 1024);
+
+        if (enabled && diskEnabled) {
+            DiskBlobStore diskTier = new DiskBlobStore("Frame", ".frame", DISK_MIN_BYTES);
+            diskTier.configure(diskDirectory, diskMaxSizeMB, true);
+            this.disk = diskTier.isEnabled() ? diskTier : null;
+        } else {
+            this.disk = null;
+        }
+
+        LOG.info("Frame cache configured: enabled={}, maxSize={}MB, maxEntrySize={}KB, fresh={}s, prefetch={}, disk={}",
+                enabled, maxSizeMB, maxEntrySizeKB, freshSeconds, this.prefetchFrames, this.disk != null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPrefetchFrames() {
+        return prefetchFrames;
+    }
+
+    /**
+     * Largest frame that is cached; larger frames are streamed through.
+     */
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Whether a response with this Cache-Control header may be stored in a shared cache.
+     */
+    public static boolean isStorable(String cacheControl) {
+        if (cacheControl == null) {
+            return true;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String name = directive.trim().toLowerCase(Locale.ROOT);
+            int eq = name.indexOf('=');
+            if (eq >= 0) {
+                name = name.substring(0, eq).trim();
+            }
+            if (name.equals("private") || name.equals("no-store")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cache key of a frame: the same frame in another transfer syntax or media type is another entry.
+     */
+    public static String key(String studyUID, String seriesUID, String instanceUID, int frame, String accept) {
+        return studyUID + "/" + seriesUID + "/" + instanceUID + "/" + frame + "|" + (accept == null ? "" : accept.trim());
+    }
+
+    /**
+     * Cached frame from the heap tier, or else from the disk tier (promoted to heap), or null.
+     * The frame may be stale; see {@link #isFresh}.
+     */
+    public CachedFrame get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        CachedFrame frame = heap.get(key);
+        if (frame == null && disk != null) {
+            frame = readFromDisk(key);
+            if (frame != null) {
+                diskHits.increment();
+                heap.put(key, frame);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Store a frame fetched from upstream.
+     */
+    public void put(String key, CachedFrame frame) {
+        if (!enabled || frame == null || frame.body.length > maxEntryBytes) {
+            return;
+        }
+        heap.put(key, frame);
+        writeToDisk(key, frame);
+    }
+
+    public boolean isFresh(CachedFrame frame) {
+        return System.currentTimeMillis() - frame.storedAt < freshMillis;
+    }
+
+    /**
+     * Upstream confirmed a stale entry (304): keep it, fresh again. The disk copy is rewritten
+     * too, so a frame promoted from disk after heap eviction is not revalidated again.
+     */
+    public CachedFrame renew(String key, CachedFrame frame) {
+        CachedFrame renewed = new CachedFrame(frame.body, frame.contentType, frame.etag, frame.upstreamEtag,
+                frame.lastModified, System.currentTimeMillis());
+        heap.put(key, renewed);
+        writeToDisk(key, renewed);
+        return renewed;
+    }
+
+    /**
+     * Run {@code loader} in the background unless the frame is cached or already being prefetched.
+     */
+    public void prefetch(String key, Runnable loader) {
+        if (!enabled || heap.peek(key) != null || !prefetching.add(key)) {
+            return;
+        }
+        try {
+            prefetchPool.execute(() -> {
+                try {
+                    loader.run();
+                    prefetched.increment();
+                } catch (RuntimeException e) {
+                    LOG.debug("Frame prefetch failed for {}: {}", key, e.getMessage());
+                } finally {
+                    prefetching.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Queue full: skip this prefetch, the viewer request will fetch the frame if needed
+            prefetching.remove(key);
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordRevalidated() {
+        revalidated.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordNotModified() {
+        notModified.increment();
+    }
+
+    /**
+     * Clear all cache entries.
+     */
+    public void clear() {
+        heap.clear();
+        DiskBlobStore diskTier = disk;
+        if (diskTier != null) {
+            diskTier.clear();
+        }
+        LOG.info("Frame cache cleared");
+    }
+
+    /**
+     * Hit-rate counters of the frame cache.
+     */
+    public Map<String, Object> statsSnapshot() {
+        long h = hits.sum();
+        long r = revalidated.sum();
+        long m = misses.sum();
+        long total = h + r + m;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", h);
+        stats.put("revalidated", r);
+        stats.put("misses", m);
+        stats.put("hitRate", String.format("%.2f%%", total == 0 ? 0.0 : (h + r) * 100.0 / total));
+        stats.put("diskHits", diskHits.sum());
+        stats.put("notModifiedToClient", notModified.sum());
+        stats.put("prefetched", prefetched.sum());
+        stats.put("heap", heap.statsSnapshot());
+        DiskBlobStore diskTier = disk;
+        if (diskTier != null) {
+            stats.put("disk", diskTier.statsSnapshot());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchPool.shutdownNow();
+    }
+
+    // Disk tier
+
+    private void writeToDisk(String key, CachedFrame frame) {
+        DiskBlobStore diskTier = disk;
+        if (diskTier != null) {
+            diskTier.put(diskKey(key), serialize(key, frame));
+        }
+    }
+
+    private CachedFrame readFromDisk(String key) {
+        try (InputStream in = disk.openStream(diskKey(key))) {
+            if (in == null) {
+                return null;
+            }
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != DISK_FORMAT || !key.equals(data.readUTF())) {
+                return null;
+            }
+            String contentType = emptyToNull(data.readUTF());
+            String etag = data.readUTF();
+            String upstreamEtag = emptyToNull(data.readUTF());
+            String lastModified = emptyToNull(data.readUTF());
+            long storedAt = data.readLong();
+            byte[] body = data.readAllBytes();
+            return new CachedFrame(body, contentType, etag, upstreamEtag, lastModified, storedAt);
+        } catch (IOException e) {
+            LOG.debug("Unreadable disk-cached frame {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] serialize(String key, CachedFrame frame) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(frame.body.length + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(DISK_FORMAT);
+            out.writeUTF(key);
+            out.writeUTF(nullToEmpty(frame.contentType));
+            out.writeUTF(frame.etag);
+            out.writeUTF(nullToEmpty(frame.upstreamEtag));
+            out.writeUTF(nullToEmpty(frame.lastModified));
+            out.writeLong(frame.storedAt);
+            out.write(frame.body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The disk tier only accepts UID-like names (digits and dots): use 128 bits of the key's hash.
+     * The full key is stored in the file and checked on read.
+     */
+    private static String diskKey(String key) {
+        ByteBuffer hash = ByteBuffer.wrap(sha256(key.getBytes(StandardCharsets.UTF_8)));
+        return Long.toUnsignedString(hash.getLong()) + "." + Long.toUnsignedString(hash.getLong());
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    /**
+     * A frame response body with the headers needed to serve and revalidate it.
+     */
+    public static class CachedFrame {
+        final byte[] body;
+        final String contentType;
+        /** ETag sent to clients: the upstream one, or a hash of the body if upstream has none */
+        final String etag;
+        final String upstreamEtag;
+        final String lastModified;
+        final long storedAt;
+
+        CachedFrame(byte[] body, String contentType, String etag, String upstreamEtag,
+                    String lastModified, long storedAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.upstreamEtag = upstreamEtag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Frame fetched just now.
+         */
+        static CachedFrame fetched(byte[] body, String contentType, String upstreamEtag, String lastModified) {
+            String etag = upstreamEtag;
+            if (etag == null) {
+                StringBuilder hex = new StringBuilder("\"");
+                byte[] hash = sha256(body);
+                for (int i = 0; i < 16; i++) {
+                    hex.append(String.format("%02x", hash[i]));
+                }
+                etag = hex.append('"').toString();
+            }
+            return new CachedFrame(body, contentType, etag, upstreamEtag, lastModified, System.currentTimeMillis());
+        }
+
+        /**
+         * Whether an If-None-Match header value matches this frame (weak comparison, RFC 9110).
+         */
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            String own = stripWeak(etag);
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || stripWeak(tag).equals(own)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String stripWeak(String tag) {
+            return tag.startsWith("W/") ? tag.substring(2) : tag;
+        }
+    }
+}
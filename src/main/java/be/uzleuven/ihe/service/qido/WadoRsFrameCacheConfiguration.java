@@ -0,0 +1,110 @@
+package be.uzleuven.ihe.service.qido;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Configuration for the frame cache of the WADO-RS proxy.
+ */
+@Component
+@ConfigurationProperties(prefix = "qido.rs.frame-cache")
+public class WadoRsFrameCacheConfiguration {
+
+    /** Off by default: only requests without credentials are cached, see WadoRsFrameCache */
+    private boolean enabled = false;
+    private long maxSizeMb = 256;
+
+    /** Larger frames are streamed through without being cached */
+    private long maxEntrySizeKb = 8192;
+
+    /** Seconds a cached frame is served without asking upstream; after that it is revalidated */
+    private long freshSeconds = 300;
+
+    /** Number of following frames of the same instance to prefetch when a frame is requested */
+    private int prefetchFrames = 4;
+
+    /** Disk tier behind the heap cache */
+    private boolean diskEnabled = false;
+    private String diskDirectory = "frame-cache";
+    private long diskMaxSizeMb = 2048;
+
+    @Autowired
+    private WadoRsFrameCache frameCache;
+
+    @PostConstruct
+    public void init() {
+        if (frameCache != null) {
+            frameCache.configure(enabled, maxSizeMb, maxEntrySizeKb, freshSeconds, prefetchFrames,
+                    diskEnabled, diskDirectory, diskMaxSizeMb);
+        }
+    }
+
+    // Getters and setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxSizeMb() {
+        return maxSizeMb;
+    }
+
+    public void setMaxSizeMb(long maxSizeMb) {
+        this.maxSizeMb = maxSizeMb;
+    }
+
+    public long getMaxEntrySizeKb() {
+        return maxEntrySizeKb;
+    }
+
+    public void setMaxEntrySizeKb(long maxEntrySizeKb) {
+        this.maxEntrySizeKb = maxEntrySizeKb;
+    }
+
+    public long getFreshSeconds() {
+        return freshSeconds;
+    }
+
+    public void setFreshSeconds(long freshSeconds) {
+        this.freshSeconds = freshSeconds;
+    }
+
+    public int getPrefetchFrames() {
+        return prefetchFrames;
+    }
+
+    public void setPrefetchFrames(int prefetchFrames) {
+        this.prefetchFrames = prefetchFrames;
+    }
+
+    public boolean isDiskEnabled() {
+        return diskEnabled;
+    }
+
+    public void setDiskEnabled(boolean diskEnabled) {
+        this.diskEnabled = diskEnabled;
+    }
+
+    public String getDiskDirectory() {
+        return diskDirectory;
+    }
+
+    public void setDiskDirectory(String diskDirectory) {
+        this.diskDirectory = diskDirectory;
+    }
+
+    public long getDiskMaxSizeMb() {
+        return diskMaxSizeMb;
+    }
+
+    public void setDiskMaxSizeMb(long diskMaxSizeMb) {
+        this.diskMaxSizeMb = diskMaxSizeMb;
+    }
+}
@@ -1,22 +1,50 @@
 package be.uzleuven.ihe.service.qido;
 
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService;
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService.SeriesMetadata;
+import be.uzleuven.ihe.service.scp.MHDBackedMetadataService.StudyMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import static be.uzleuven.ihe.service.utils.StreamingResponses.textResponse;
 
 /**
  * WADO-RS Proxy Controller.
  *
  * Proxies WADO-RS requests to remote servers based on Study Instance UID.
  * Only active when qido.rs.wado-proxy-enabled=true.
+ * Responses are streamed from the remote server to the client, never buffered whole.
  *
  * Handles all WADO-RS endpoints:
  * - GET /dicomweb/studies/{studyUID}
@@ -30,15 +58,43 @@ public class WadoRsProxyController {
 
     private static final Logger LOG = LoggerFactory.getLogger(WadoRsProxyController.class);
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** Headers that belong to a single connection; not forwarded in either direction */
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "host", "connection", "keep-alive", "transfer-encoding", "te", "trailer",
+            "upgrade", "expect", "proxy-authorization", "proxy-authenticate", "proxy-connection");
+
+    /** Not copied to upstream requests: hop-by-hop, plus Content-Length, which the JDK client refuses */
+    private static final Set<String> REQUEST_SKIPPED_HEADERS;
+    /** Also dropped on cached frame requests: the cache answers conditional requests itself */
+    private static final Set<String> FRAME_SKIPPED_HEADERS;
+    static {
+        Set<String> skipped = new HashSet<>(HOP_BY_HOP_HEADERS);
+        skipped.add("content-length");
+        REQUEST_SKIPPED_HEADERS = Collections.unmodifiableSet(new HashSet<>(skipped));
+        skipped.addAll(Arrays.asList("if-none-match", "if-modified-since", "if-match", "if-unmodified-since",
+                "if-range", "range"));
+        FRAME_SKIPPED_HEADERS = Collections.unmodifiableSet(skipped);
+    }
+
+    private static final Pattern SINGLE_FRAME = Pattern.compile("\\d{1,9}");
+
     private final WadoRsProxyRegistry registry;
     private final QIDOConfiguration configuration;
-    private final RestTemplate restTemplate;
+    private final WadoRsFrameCache frameCache;
+    private final MHDBackedMetadataService metadataService;
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    /** Frames being fetched upstream, shared by viewer requests and prefetches of the same key */
+    private final Map<String, CompletableFuture<WadoRsFrameCache.CachedFrame>> framesInFlight = new ConcurrentHashMap<>();
 
     @Autowired
-    public WadoRsProxyController(WadoRsProxyRegistry registry, QIDOConfiguration configuration) {
+    public WadoRsProxyController(WadoRsProxyRegistry registry, QIDOConfiguration configuration,
+                                 WadoRsFrameCache frameCache, MHDBackedMetadataService metadataService) {
         this.registry = registry;
         this.configuration = configuration;
-        this.restTemplate = new RestTemplate();
+        this.frameCache = frameCache;
+        this.metadataService = metadataService;
     }
 
     /**
@@ -46,10 +102,10 @@ public class WadoRsProxyController {
      * GET /dicomweb/studies/{studyUID}
      */
     @GetMapping("/studies/{studyUID}")
-    public ResponseEntity<byte[]> proxyStudyRequest(
+    public ResponseEntity<StreamingResponseBody> proxyStudyRequest(
             @PathVariable("studyUID") String studyUID,
             @RequestParam MultiValueMap<String, String> params,
-            @RequestHeader Map<String, String> headers) throws IOException {
+            @RequestHeader Map<String, String> headers) {
 
         return proxyRequest(studyUID, "/studies/" + studyUID, params, headers);
     }
@@ -59,11 +115,11 @@ public class WadoRsProxyController {
      * GET /dicomweb/studies/{studyUID}/series/{seriesUID}
      */
     @GetMapping("/studies/{studyUID}/series/{seriesUID}")
-    public ResponseEntity<byte[]> proxySeriesRequest(
+    public ResponseEntity<StreamingResponseBody> proxySeriesRequest(
             @PathVariable("studyUID") String studyUID,
             @PathVariable("seriesUID") String seriesUID,
             @RequestParam MultiValueMap<String, String> params,
-            @RequestHeader Map<String, String> headers) throws IOException {
+            @RequestHeader Map<String, String> headers) {
 
         String wadoPath = "/studies/" + studyUID + "/series/" + seriesUID;
         return proxyRequest(studyUID, wadoPath, params, headers);
@@ -74,12 +130,12 @@ public class WadoRsProxyController {
      * GET /dicomweb/studies/{studyUID}/series/{seriesUID}/instances/{instanceUID}
      */
     @GetMapping("/studies/{studyUID}/series/{seriesUID}/instances/{instanceUID}")
-    public ResponseEntity<byte[]> proxyInstanceRequest(
+    public ResponseEntity<StreamingResponseBody> proxyInstanceRequest(
             @PathVariable("studyUID") String studyUID,
             @PathVariable("seriesUID") String seriesUID,
             @PathVariable("instanceUID") String instanceUID,
             @RequestParam MultiValueMap<String, String> params,
-            @RequestHeader Map<String, String> headers) throws IOException {
+            @RequestHeader Map<String, String> headers) {
 
         String wadoPath = "/studies/" + studyUID + "/series/" + seriesUID + "/instances/" + instanceUID;
         return proxyRequest(studyUID, wadoPath, params, headers);
@@ -90,27 +146,329 @@ public class WadoRsProxyController {
      * GET /dicomweb/studies/{studyUID}/series/{seriesUID}/instances/{instanceUID}/frames/{frameNumber}
      */
     @GetMapping("/studies/{studyUID}/series/{seriesUID}/instances/{instanceUID}/frames/{frameNumber}")
-    public ResponseEntity<byte[]> proxyFrameRequest(
+    public ResponseEntity<StreamingResponseBody> proxyFrameRequest(
             @PathVariable("studyUID") String studyUID,
             @PathVariable("seriesUID") String seriesUID,
             @PathVariable("instanceUID") String instanceUID,
             @PathVariable("frameNumber") String frameNumber,
             @RequestParam MultiValueMap<String, String> params,
-            @RequestHeader Map<String, String> headers) throws IOException {
+            @RequestHeader Map<String, String> headers) {
+
+        // Single frames without extra parameters or byte ranges are served from the frame cache.
+        // The cache is shared, so requests carrying credentials always go upstream.
+        if (frameCache.isEnabled() && SINGLE_FRAME.matcher(frameNumber).matches()
+                && (params == null || params.isEmpty()) && header(headers, HttpHeaders.RANGE) == null
+                && header(headers, HttpHeaders.AUTHORIZATION) == null && header(headers, HttpHeaders.COOKIE) == null) {
+            return proxyCachedFrame(studyUID, seriesUID, instanceUID, Integer.parseInt(frameNumber), headers);
+        }
 
         String wadoPath = "/studies/" + studyUID + "/series/" + seriesUID +
                           "/instances/" + instanceUID + "/frames/" + frameNumber;
         return proxyRequest(studyUID, wadoPath, params, headers);
     }
 
+    /**
+     * Hit-rate counters of the frame cache.
+     * GET /dicomweb/proxy/frame-cache/stats
+     */
+    @GetMapping("/proxy/frame-cache/stats")
+    public ResponseEntity<Map<String, Object>> getFrameCacheStats() {
+        return ResponseEntity.ok(frameCache.statsSnapshot());
+    }
+
+    /**
+     * Serve one frame through the frame cache.
+     *
+     * A fresh cached frame is answered locally; a stale one is revalidated upstream with its
+     * validators; otherwise the frame is fetched and cached. Clients sending a matching
+     * If-None-Match get a 304. Afterwards the following frames of the instance are prefetched,
+     * up to its NumberOfFrames. Responses that may not be cached are streamed through.
+     */
+    private ResponseEntity<StreamingResponseBody> proxyCachedFrame(
+            String studyUID, String seriesUID, String instanceUID, int frameNumber,
+            Map<String, String> requestHeaders) {
+
+        if (!configuration.isWadoProxyEnabled()) {
+            LOG.warn("WADO-RS proxy request received but proxy mode is disabled");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        String baseUrl = registry.getWadoBaseUrl(studyUID);
+        if (baseUrl == null) {
+            LOG.error("Study {} not registered in WADO-RS proxy registry", studyUID);
+            return textResponse(HttpStatus.NOT_FOUND, "Study not found in proxy registry: " + studyUID);
+        }
+
+        String instancePath = "/studies/" + studyUID + "/series/" + seriesUID + "/instances/" + instanceUID;
+        String accept = header(requestHeaders, HttpHeaders.ACCEPT);
+
+        WadoRsFrameCache.CachedFrame frame;
+        try {
+            frame = loadFrame(studyUID, seriesUID, instanceUID, frameNumber, accept,
+                    registry.buildRemoteUrl(studyUID, instancePath + "/frames/" + frameNumber),
+                    baseUrl, requestHeaders, true);
+        } catch (UpstreamResponse e) {
+            // Not cacheable (error status, private, too large): forward as received
+            HttpResponse<InputStream> response = e.response;
+            byte[] prefix = e.prefix;
+            HttpHeaders responseHeaders = new HttpHeaders();
+            response.headers().map().forEach((name, values) -> {
+                if (!name.startsWith(":") && !HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    responseHeaders.addAll(name, values);
+                }
+            });
+            closeOnCompletion(response.body());
+            return ResponseEntity.status(response.statusCode()).headers(responseHeaders).body(out -> {
+                try (InputStream in = response.body()) {
+                    out.write(prefix);
+                    in.transferTo(out);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return textResponse(HttpStatus.BAD_GATEWAY, "Proxy error: interrupted");
+        } catch (Exception e) {
+            LOG.error("Error proxying WADO-RS frame request for {}: {}", instancePath, e.getMessage(), e);
+            return textResponse(HttpStatus.BAD_GATEWAY, "Proxy error: " + e.getMessage());
+        }
+
+        int lastPrefetch = Math.min(frameNumber + frameCache.getPrefetchFrames(),
+                numberOfFrames(studyUID, seriesUID, instanceUID));
+        for (int next = frameNumber + 1; next <= lastPrefetch; next++) {
+            int prefetchFrame = next;
+            String remoteUrl = registry.buildRemoteUrl(studyUID, instancePath + "/frames/" + prefetchFrame);
+            frameCache.prefetch(WadoRsFrameCache.key(studyUID, seriesUID, instanceUID, prefetchFrame, accept), () -> {
+                try {
+                    loadFrame(studyUID, seriesUID, instanceUID, prefetchFrame, accept, remoteUrl,
+                            baseUrl, requestHeaders, false);
+                } catch (UpstreamResponse e) {
+                    // Not available or not cacheable
+                    e.discard();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        boolean notModified = frame.matches(header(requestHeaders, HttpHeaders.IF_NONE_MATCH));
+        ResponseEntity.BodyBuilder ok;
+        if (notModified) {
+            frameCache.recordNotModified();
+            ok = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+        } else {
+            ok = ResponseEntity.ok().contentLength(frame.body.length);
+            if (frame.contentType != null) {
+                ok.header(HttpHeaders.CONTENT_TYPE, frame.contentType);
+            }
+        }
+        ok.header(HttpHeaders.ETAG, frame.etag);
+        // The cached representation depends on the transfer syntax asked for
+        ok.header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (frame.lastModified != null) {
+            ok.header(HttpHeaders.LAST_MODIFIED, frame.lastModified);
+        }
+        if (notModified) {
+            return ok.build();
+        }
+        byte[] body = frame.body;
+        return ok.body(out -> out.write(body));
+    }
+
+    /**
+     * Cached frame, revalidated or fetched upstream as needed.
+     *
+     * Only one upstream request per frame is in flight: concurrent viewer requests and prefetches
+     * of the same frame wait for it and share its result. An answer that is not cached (error
+     * status, private, too large) cannot be shared, so waiters then send their own request.
+     *
+     * @param viewer true for a viewer request (counted in the hit rate), false for a prefetch
+     * @throws UpstreamResponse if upstream answered with a status other than 200 / 304
+     */
+    private WadoRsFrameCache.CachedFrame loadFrame(String studyUID, String seriesUID, String instanceUID,
+                                                   int frameNumber, String accept, String remoteUrl,
+                                                   String baseUrl, Map<String, String> requestHeaders,
+                                                   boolean viewer)
+            throws UpstreamResponse, IOException, InterruptedException {
+
+        String key = WadoRsFrameCache.key(studyUID, seriesUID, instanceUID, frameNumber, accept);
+        WadoRsFrameCache.CachedFrame cached = frameCache.get(key);
+        if (cached != null && frameCache.isFresh(cached)) {
+            if (viewer) {
+                frameCache.recordHit();
+            }
+            return cached;
+        }
+
+        CompletableFuture<WadoRsFrameCache.CachedFrame> fetch = new CompletableFuture<>();
+        CompletableFuture<WadoRsFrameCache.CachedFrame> inFlight = framesInFlight.putIfAbsent(key, fetch);
+        if (inFlight != null) {
+            try {
+                WadoRsFrameCache.CachedFrame shared = inFlight.get();
+                if (viewer) {
+                    frameCache.recordHit();
+                }
+                return shared;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (!(e.getCause() instanceof UpstreamResponse)) {
+                    throw new IOException("Frame fetch failed: " + e.getCause().getMessage(), e.getCause());
+                }
+                // Not cacheable: the response belongs to the other caller, fetch our own
+                return fetchFrame(key, cached, remoteUrl, baseUrl, requestHeaders, viewer);
+            }
+        }
+
+        try {
+            WadoRsFrameCache.CachedFrame frame = fetchFrame(key, cached, remoteUrl, baseUrl, requestHeaders, viewer);
+            fetch.complete(frame);
+            return frame;
+        } catch (Throwable e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            framesInFlight.remove(key, fetch);
+        }
+    }
+
+    /**
+     * Fetch a frame upstream, conditionally if a stale copy is cached, and cache the result.
+     */
+    private WadoRsFrameCache.CachedFrame fetchFrame(String key, WadoRsFrameCache.CachedFrame cached,
+                                                    String remoteUrl, String baseUrl,
+                                                    Map<String, String> requestHeaders, boolean viewer)
+            throws UpstreamResponse, IOException, InterruptedException {
+
+        // Conditional headers of the client concern our copy, not the upstream one
+        HttpRequest.Builder builder = upstreamRequest(remoteUrl, requestHeaders, FRAME_SKIPPED_HEADERS);
+        if (cached != null && cached.upstreamEtag != null) {
+            builder.header(HttpHeaders.IF_NONE_MATCH, cached.upstreamEtag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            builder.header(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+        }
+
+        HttpResponse<InputStream> response = clientFor(baseUrl).send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        if (response.statusCode() == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+            response.body().close();
+            if (viewer) {
+                frameCache.recordRevalidated();
+            }
+            return frameCache.renew(key, cached);
+        }
+        if (response.statusCode() != HttpStatus.OK.value()
+                || !WadoRsFrameCache.isStorable(response.headers().firstValue(HttpHeaders.CACHE_CONTROL).orElse(null))) {
+            throw new UpstreamResponse(response, new byte[0]);
+        }
+
+        // Only buffer frames up to the entry size limit; larger ones are streamed through
+        int maxBytes = frameCache.getMaxEntryBytes();
+        if (response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1) > maxBytes) {
+            throw new UpstreamResponse(response, new byte[0]);
+        }
+        byte[] body;
+        try {
+            body = response.body().readNBytes(maxBytes + 1);
+        } catch (IOException e) {
+            response.body().close();
+            throw e;
+        }
+        if (body.length > maxBytes) {
+            throw new UpstreamResponse(response, body);
+        }
+        response.body().close();
+
+        if (viewer) {
+            frameCache.recordMiss();
+        }
+        WadoRsFrameCache.CachedFrame frame = WadoRsFrameCache.CachedFrame.fetched(body,
+                response.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse(null),
+                response.headers().firstValue(HttpHeaders.ETAG).orElse(null),
+                response.headers().firstValue(HttpHeaders.LAST_MODIFIED).orElse(null));
+        frameCache.put(key, frame);
+        return frame;
+    }
+
+    /**
+     * Request header value, matching the name case-insensitively.
+     */
+    private static String header(Map<String, String> headers, String name) {
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * NumberOfFrames of a cached instance; 1 if unknown, so nothing is prefetched for it.
+     */
+    private int numberOfFrames(String studyUID, String seriesUID, String instanceUID) {
+        StudyMetadata study = metadataService.peekStudyMetadata(studyUID);
+        if (study == null) {
+            return 1;
+        }
+        for (SeriesMetadata series : study.series) {
+            if (!seriesUID.equals(series.seriesInstanceUID)) {
+                continue;
+            }
+            int index = series.indexOfInstance(instanceUID);
+            if (index < 0) {
+                return 1;
+            }
+            try {
+                String frames = series.instances.get(index).getNumberOfFrames();
+                return frames != null ? Integer.parseInt(frames.trim()) : 1;
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Upstream answer to a frame request that is not cached. The body is still open;
+     * {@code prefix} holds the part of it that was already read.
+     */
+    private static class UpstreamResponse extends Exception {
+        final transient HttpResponse<InputStream> response;
+        final byte[] prefix;
+
+        UpstreamResponse(HttpResponse<InputStream> response, byte[] prefix) {
+            super("Upstream status " + response.statusCode(), null, false, false);
+            this.response = response;
+            this.prefix = prefix;
+        }
+
+        void discard() {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
     /**
      * Common proxy logic for all WADO-RS requests.
+     *
+     * The upstream response is streamed: status and headers are forwarded as soon as they arrive and
+     * the body is copied in chunks, so a study retrieve never sits in heap. Range requests are passed
+     * through (Range / If-Range in, 206 + Content-Range out). If the viewer disconnects, the write
+     * fails and closing the upstream stream aborts the upstream transfer.
      */
-    private ResponseEntity<byte[]> proxyRequest(
+    private ResponseEntity<StreamingResponseBody> proxyRequest(
             String studyUID,
             String wadoPath,
             MultiValueMap<String, String> params,
-            Map<String, String> requestHeaders) throws IOException {
+            Map<String, String> requestHeaders) {
 
         // Check if proxy mode is enabled
         if (!configuration.isWadoProxyEnabled()) {
@@ -121,11 +479,11 @@ public class WadoRsProxyController {
         LOG.info("WADO-RS proxy request: {} for study {}", wadoPath, studyUID);
 
         // Get remote URL from registry
+        String baseUrl = registry.getWadoBaseUrl(studyUID);
         String remoteUrl = registry.buildRemoteUrl(studyUID, wadoPath);
         if (remoteUrl == null) {
             LOG.error("Study {} not registered in WADO-RS proxy registry", studyUID);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(("Study not found in proxy registry: " + studyUID).getBytes());
+            return textResponse(HttpStatus.NOT_FOUND, "Study not found in proxy registry: " + studyUID);
         }
 
         // Add query parameters if present
@@ -147,56 +505,120 @@ public class WadoRsProxyController {
         LOG.info("Proxying to: {}", remoteUrl);
 
         try {
-            // Build request headers
-            HttpHeaders headers = new HttpHeaders();
-
-            // Copy relevant headers from original request
-            if (requestHeaders != null) {
-                requestHeaders.forEach((name, value) -> {
-                    // Skip host and other connection-specific headers
-                    if (!name.equalsIgnoreCase("host") &&
-                        !name.equalsIgnoreCase("connection") &&
-                        !name.equalsIgnoreCase("content-length")) {
-                        headers.add(name, value);
-                    }
-                });
-            }
-
-            // Ensure Accept header for DICOM
-            if (!headers.containsKey(HttpHeaders.ACCEPT)) {
-                headers.setAccept(java.util.Arrays.asList(
-                    MediaType.parseMediaType("multipart/related;type=\"application/dicom\""),
-                    MediaType.parseMediaType("application/dicom"),
-                    MediaType.APPLICATION_OCTET_STREAM
-                ));
-            }
+            // Copy relevant headers from original request (including Range / If-Range)
+            HttpRequest.Builder builder = upstreamRequest(remoteUrl, requestHeaders, REQUEST_SKIPPED_HEADERS);
 
-            // Make the proxied request
-            HttpEntity<Void> entity = new HttpEntity<>(headers);
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                    URI.create(remoteUrl),
-                    HttpMethod.GET,
-                    entity,
-                    byte[].class
-            );
+            // Returns once the upstream status line and headers are in; the body is read while streaming
+            HttpResponse<InputStream> response = clientFor(baseUrl)
+                    .send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
 
-            LOG.info("Proxied response: {} bytes, status: {}",
-                    response.getBody() != null ? response.getBody().length : 0,
-                    response.getStatusCode());
+            LOG.info("Proxied response status: {}, content-length: {}", response.statusCode(),
+                    response.headers().firstValue(HttpHeaders.CONTENT_LENGTH).orElse("chunked"));
 
-            // Forward the response
+            // Forward the response headers, without the ones that describe the upstream connection
             HttpHeaders responseHeaders = new HttpHeaders();
-            responseHeaders.putAll(response.getHeaders());
+            response.headers().map().forEach((name, values) -> {
+                if (!name.startsWith(":") && !HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    responseHeaders.addAll(name, values);
+                }
+            });
+
+            closeOnCompletion(response.body());
+            String target = remoteUrl;
+            StreamingResponseBody body = out -> {
+                long bytes = 0;
+                try (InputStream in = response.body()) {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                        bytes += n;
+                        // Pass on what arrived instead of waiting for the servlet buffer to fill
+                        if (in.available() == 0) {
+                            out.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    LOG.info("WADO-RS proxy transfer from {} aborted after {} bytes: {}", target, bytes, e.getMessage());
+                    throw e;
+                }
+                LOG.debug("Streamed {} bytes from {}", bytes, target);
+            };
 
-            return ResponseEntity.status(response.getStatusCode())
+            return ResponseEntity.status(response.statusCode())
                     .headers(responseHeaders)
-                    .body(response.getBody());
+                    .body(body);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return textResponse(HttpStatus.BAD_GATEWAY, "Proxy error: interrupted");
         } catch (Exception e) {
             LOG.error("Error proxying WADO-RS request to {}: {}", remoteUrl, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                    .body(("Proxy error: " + e.getMessage()).getBytes());
+            return textResponse(HttpStatus.BAD_GATEWAY, "Proxy error: " + e.getMessage());
         }
     }
-}
 
+    /**
+     * Close an upstream body when the async request ends, also if the StreamingResponseBody never ran
+     * (async timeout or error before the task started). Closing after the body ran is a no-op.
+     */
+    private static void closeOnCompletion(InputStream upstream) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return;
+        }
+        WebAsyncUtils.getAsyncManager(((ServletRequestAttributes) attributes).getRequest())
+                .registerCallableInterceptor(WadoRsProxyController.class.getName() + ".upstream",
+                        new CallableProcessingInterceptor() {
+                            @Override
+                            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                                try {
+                                    upstream.close();
+                                } catch (IOException e) {
+                                    // nothing to do
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * GET request to the remote server with the client's headers, minus those in {@code skip}.
+     */
+    private HttpRequest.Builder upstreamRequest(String remoteUrl, Map<String, String> requestHeaders, Set<String> skip) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(remoteUrl))
+                .timeout(Duration.ofSeconds(configuration.getWadoProxyResponseTimeoutSeconds()))
+                .GET();
+
+        boolean hasAccept = false;
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                String name = header.getKey();
+                if (skip.contains(name.toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                builder.header(name, header.getValue());
+                hasAccept |= name.equalsIgnoreCase(HttpHeaders.ACCEPT);
+            }
+        }
+
+        // Ensure Accept header for DICOM
+        if (!hasAccept) {
+            builder.header(HttpHeaders.ACCEPT,
+                    "multipart/related;type=\"application/dicom\", application/dicom, application/octet-stream");
+        }
+        return builder;
+    }
+
+    /**
+     * One client per upstream base URL. Each client keeps its own pool of keep-alive connections,
+     * so consecutive series and frame retrieves of a viewer reuse the connection to that server.
+     */
+    private HttpClient clientFor(String baseUrl) {
+        return clients.computeIfAbsent(baseUrl, url -> HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(configuration.getWadoProxyConnectTimeoutSeconds()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+}
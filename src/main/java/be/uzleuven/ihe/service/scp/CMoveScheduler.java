@@ -0,0 +1,304 @@
+package be.uzleuven.ihe.service.scp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared scheduler for all C-MOVE work on this node.
+ *
+ * Every C-MOVE request opens a {@link Session}. Instance tasks (download + C-STORE)
+ * are queued per session and dispatched in round-robin order, so two workstations
+ * pulling at the same time get an equal share instead of the first one monopolizing
+ * the threads. Dispatch also honors:
+ * <ul>
+ *   <li>a global limit on concurrent WADO-RS downloads</li>
+ *   <li>a global limit on concurrent C-STORE operations</li>
+ *   <li>a limit on concurrent C-STOREs per move destination</li>
+ *   <li>per-request limits ({@code maxParallelDownloads}, {@code maxParallelStores})</li>
+ * </ul>
+ * Series groups are coordinated separately, so a coordinator waiting for its instance
+ * tasks can never starve the threads that run them.
+ *
+ * Instance tasks run on an unbounded executor, but the dispatcher takes a download permit
+ * before handing a task over, so it never holds more threads than permits. Series coordinators
+ * spend most of their time waiting, so on platform threads they run on a fixed pool of
+ * {@code maxConcurrentSeries} threads; with {@code mado.scp.virtual-threads} (Java 21) they get
+ * a virtual thread each and the series semaphore bounds them instead.
+ */
+@Component
+public class CMoveScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CMoveScheduler.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final List<Session> sessions = new ArrayList<>();
+    private final Map<String, Integer> inFlightPerDestination = new HashMap<>();
+    private int cursor = 0;
+    private volatile boolean shutdown = false;
+
+    private final int maxStoresPerDestination;
+    private final Semaphore downloadPermits;
+    private final Semaphore storePermits;
+    private final Semaphore seriesPermits;
+    private final ExecutorService seriesExecutor;
+    private final ExecutorService taskExecutor;
+    private final Thread dispatcher;
+
+    @Autowired
+    public CMoveScheduler(MADOSCPConfiguration config) {
+        boolean virtual = config.isVirtualThreads();
+        this.maxStoresPerDestination = Math.max(1, config.getMaxStoresPerDestination());
+        this.downloadPermits = new Semaphore(Math.max(1, config.getMaxConcurrentDownloads()));
+        this.storePermits = new Semaphore(Math.max(1, config.getMaxConcurrentStores()), true);
+        this.seriesPermits = new Semaphore(Math.max(1, config.getMaxConcurrentSeries()), true);
+        this.seriesExecutor = VirtualThreads.newBoundedExecutor("cmove-series", virtual,
+                Math.max(1, config.getMaxConcurrentSeries()));
+        this.taskExecutor = VirtualThreads.newExecutor("cmove-worker", virtual);
+
+        this.dispatcher = VirtualThreads.factory("cmove-dispatcher", false).newThread(this::dispatchLoop);
+        dispatcher.start();
+
+        LOG.info("C-MOVE scheduler started: downloads={}, stores={}, stores/destination={}, series={}, virtual threads={}",
+                config.getMaxConcurrentDownloads(), config.getMaxConcurrentStores(), maxStoresPerDestination,
+                config.getMaxConcurrentSeries(), virtual && VirtualThreads.isSupported());
+    }
+
+    /**
+     * Register a C-MOVE request with the scheduler.
+     *
+     * @param moveDestination AE Title the request stores to (for the per-destination limit)
+     * @param maxInFlight Maximum number of this request's instance tasks running at once
+     * @param maxStores Maximum number of this request's C-STOREs running at once
+     */
+    public Session openSession(String moveDestination, int maxInFlight, int maxStores) {
+        Session session = new Session(moveDestination, Math.max(1, maxInFlight), Math.max(1, maxStores));
+        lock.lock();
+        try {
+            sessions.add(session);
+        } finally {
+            lock.unlock();
+        }
+        return session;
+    }
+
+    /**
+     * Run a series group coordinator on the shared series pool. Coordinators beyond
+     * {@code maxConcurrentSeries} wait in the pool's queue (platform threads) or on the
+     * series semaphore (virtual threads).
+     */
+    public <T> Future<T> submitSeries(Callable<T> coordinator) {
+        return seriesExecutor.submit(() -> {
+            seriesPermits.acquire();
+            try {
+                return coordinator.call();
+            } finally {
+                seriesPermits.release();
+            }
+        });
+    }
+
+    /**
+     * Snapshot of the scheduler state, for monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            int queued = 0;
+            int running = 0;
+            for (Session s : sessions) {
+                queued += s.queue.size();
+                running += s.inFlight;
+            }
+            stats.put("activeRequests", sessions.size());
+            stats.put("queuedTasks", queued);
+            stats.put("runningTasks", running);
+            stats.put("storesPerDestination", new HashMap<>(inFlightPerDestination));
+        } finally {
+            lock.unlock();
+        }
+        stats.put("availableDownloadPermits", downloadPermits.availablePermits());
+        stats.put("availableStorePermits", storePermits.availablePermits());
+        stats.put("availableSeriesPermits", seriesPermits.availablePermits());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        dispatcher.interrupt();
+        seriesExecutor.shutdownNow();
+        taskExecutor.shutdownNow();
+    }
+
+    // ============================================================================
+    // Dispatch
+    // ============================================================================
+
+    /**
+     * Wait for a download slot, pick the next task and hand it to the task executor.
+     */
+    private void dispatchLoop() {
+        while (!shutdown) {
+            Dispatch dispatch;
+            try {
+                downloadPermits.acquire();
+                try {
+                    dispatch = next();
+                } catch (InterruptedException e) {
+                    downloadPermits.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                taskExecutor.execute(() -> run(dispatch));
+            } catch (RejectedExecutionException e) {
+                ((FutureTask<?>) dispatch.task).cancel(false);
+                finished(dispatch.session);
+            }
+        }
+    }
+
+    private void run(Dispatch dispatch) {
+        try {
+            dispatch.task.run();
+        } catch (Throwable t) {
+            LOG.error("C-MOVE scheduler: task failed: {}", t.getMessage(), t);
+        } finally {
+            finished(dispatch.session);
+        }
+    }
+
+    /**
+     * Take the next runnable task, visiting sessions round-robin.
+     */
+    private Dispatch next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                int size = sessions.size();
+                for (int i = 0; i < size; i++) {
+                    Session s = sessions.get((cursor + i) % size);
+                    if (s.queue.isEmpty() || s.inFlight >= s.maxInFlight
+                            || inFlightPerDestination.getOrDefault(s.moveDestination, 0) >= maxStoresPerDestination) {
+                        continue;
+                    }
+                    cursor = (cursor + i + 1) % size;
+                    s.inFlight++;
+                    inFlightPerDestination.merge(s.moveDestination, 1, Integer::sum);
+                    return new Dispatch(s, s.queue.poll());
+                }
+                workAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished(Session session) {
+        downloadPermits.release();
+        lock.lock();
+        try {
+            session.inFlight--;
+            inFlightPerDestination.computeIfPresent(session.moveDestination,
+                    (k, v) -> v <= 1 ? null : v - 1);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Dispatch {
+        final Session session;
+        final Runnable task;
+
+        Dispatch(Session session, Runnable task) {
+            this.session = session;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Queue of instance tasks belonging to one C-MOVE request.
+     */
+    public class Session implements AutoCloseable {
+        private final String moveDestination;
+        private final int maxInFlight;
+        private final Semaphore sessionStorePermits;
+        private final Deque<Runnable> queue = new ArrayDeque<>();
+        private int inFlight = 0;
+
+        Session(String moveDestination, int maxInFlight, int maxStores) {
+            this.moveDestination = moveDestination;
+            this.maxInFlight = maxInFlight;
+            this.sessionStorePermits = new Semaphore(maxStores, true);
+        }
+
+        /**
+         * Queue an instance task behind this request's earlier tasks.
+         */
+        public <T> Future<T> submit(Callable<T> task) {
+            FutureTask<T> future = new FutureTask<>(task);
+            lock.lock();
+            try {
+                if (!sessions.contains(this)) {
+                    throw new RejectedExecutionException("C-MOVE session already closed");
+                }
+                queue.add(future);
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+            return future;
+        }
+
+        /**
+         * Block until both a request and a global C-STORE slot are free.
+         * Pair with {@link #releaseStore()}.
+         */
+        public void acquireStore() throws InterruptedException {
+            sessionStorePermits.acquire();
+            try {
+                storePermits.acquire();
+            } catch (InterruptedException e) {
+                sessionStorePermits.release();
+                throw e;
+            }
+        }
+
+        public void releaseStore() {
+            storePermits.release();
+            sessionStorePermits.release();
+        }
+
+        /**
+         * Remove the request from the rotation. Tasks still queued are cancelled.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                sessions.remove(this);
+                for (Runnable r : queue) {
+                    ((FutureTask<?>) r).cancel(false);
+                }
+                queue.clear();
+                cursor = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
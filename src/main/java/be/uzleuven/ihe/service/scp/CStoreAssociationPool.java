@@ -0,0 +1,458 @@
+package be.uzleuven.ihe.service.scp;
+
+import org.dcm4che3.data.UID;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of outbound C-STORE associations, keyed by move destination (AE/host/port).
+ *
+ * A new association proposes every SOP Class of the study, each with every common
+ * transfer syntax in its own presentation context, so the destination accepts or
+ * rejects each exact syntax and instances are still sent without transcoding.
+ * Associations are shared by concurrent series (DIMSE requests are multiplexed
+ * with message IDs), kept warm after use and released after an idle timeout.
+ *
+ * All associations are opened from one shared Device instead of a Device per series.
+ * A new association is connected outside the destination lock: the slot is reserved under
+ * the lock and the association registered afterwards, so a slow or unreachable destination
+ * never blocks callers that can reuse an open association. A destination never has more than
+ * its configured number of associations: at the limit, a caller that needs a new one waits for
+ * an association to become idle, and fails after the association timeout.
+ */
+@Component
+public class CStoreAssociationPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CStoreAssociationPool.class);
+
+    /** Highest odd presentation context ID */
+    private static final int MAX_PC_ID = 255;
+
+    /** Transfer syntaxes proposed for every SOP Class, in addition to the ones already seen */
+    private static final List<String> PROPOSED_TRANSFER_SYNTAXES = Arrays.asList(
+            UID.ExplicitVRLittleEndian,
+            UID.ImplicitVRLittleEndian,
+            UID.JPEGLosslessSV1,
+            UID.JPEGLossless,
+            UID.JPEGBaseline8Bit,
+            UID.JPEGExtended12Bit,
+            UID.JPEGLSLossless,
+            UID.JPEG2000Lossless,
+            UID.JPEG2000,
+            UID.RLELossless
+    );
+
+    private final MADOSCPConfiguration config;
+    private final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+    private final ReentrantLock deviceLock = new ReentrantLock();
+
+    private Device device;
+    private ApplicationEntity ae;
+    private ExecutorService executorService;
+    private ScheduledExecutorService scheduledExecutorService;
+
+    @Autowired
+    public CStoreAssociationPool(MADOSCPConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * Borrow an association to the destination that accepted {@code sopClassUID} in
+     * {@code transferSyntax}. Reuses a pooled association when possible, otherwise opens
+     * one proposing all {@code studySopClasses}.
+     *
+     * @return A lease to close when the caller's C-STOREs are done, or null if the
+     *         destination rejected the SOP Class / transfer syntax combination
+     */
+    public Lease acquire(String aeTitle, String host, int port, Set<String> studySopClasses,
+                         String sopClassUID, String transferSyntax) throws Exception {
+        Destination destination = destinations.computeIfAbsent(
+                aeTitle + "@" + host + ":" + port, k -> new Destination(aeTitle, host, port));
+        return destination.acquire(studySopClasses, sopClassUID, transferSyntax);
+    }
+
+    /**
+     * Number of open pooled associations, for monitoring.
+     */
+    public int getOpenAssociationCount() {
+        int count = 0;
+        for (Destination destination : destinations.values()) {
+            count += destination.size();
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deviceLock.lock();
+        try {
+            for (Destination destination : destinations.values()) {
+                destination.closeAll();
+            }
+            destinations.clear();
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+            if (scheduledExecutorService != null) {
+                scheduledExecutorService.shutdownNow();
+            }
+            device = null;
+        } finally {
+            deviceLock.unlock();
+        }
+    }
+
+    /**
+     * Lazily create the shared device and start the idle sweeper.
+     */
+    private ApplicationEntity localAE() {
+        deviceLock.lock();
+        try {
+            return initLocalAE();
+        } finally {
+            deviceLock.unlock();
+        }
+    }
+
+    private ApplicationEntity initLocalAE() {
+        if (device == null) {
+            device = new Device("dicompolice-cmove");
+            Connection conn = new Connection();
+            device.addConnection(conn);
+
+            ae = new ApplicationEntity(config.getAeTitle());
+            device.addApplicationEntity(ae);
+            ae.addConnection(conn);
+
+            executorService = VirtualThreads.newExecutor("cstore-association", config.isVirtualThreads());
+            scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cstore-association-timer");
+                t.setDaemon(true);
+                return t;
+            });
+            device.setExecutor(executorService);
+            device.setScheduledExecutor(scheduledExecutorService);
+
+            long sweepInterval = Math.max(1000, config.getStoreAssociationIdleTimeout() / 2);
+            scheduledExecutorService.scheduleWithFixedDelay(this::closeIdle,
+                    sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        }
+        return ae;
+    }
+
+    private void closeIdle() {
+        long idleTimeout = config.getStoreAssociationIdleTimeout();
+        for (Destination destination : destinations.values()) {
+            destination.closeIdle(idleTimeout);
+        }
+    }
+
+    private static void releaseQuietly(Association as) {
+        try {
+            as.release();
+        } catch (Exception e) {
+            LOG.warn("C-STORE pool: Error releasing association: {}", e.getMessage());
+        }
+    }
+
+    // ============================================================================
+    // Pool internals
+    // ============================================================================
+
+    /**
+     * Borrowed association. Several leases may share the same association.
+     */
+    public class Lease implements AutoCloseable {
+        private final Destination destination;
+        private final PooledAssociation pooled;
+        private boolean closed = false;
+
+        Lease(Destination destination, PooledAssociation pooled) {
+            this.destination = destination;
+            this.pooled = pooled;
+        }
+
+        public Association association() {
+            return pooled.association;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                destination.release(pooled);
+            }
+        }
+    }
+
+    private static class PooledAssociation {
+        final Association association;
+        int leases = 0;
+        long lastReleased = System.currentTimeMillis();
+
+        PooledAssociation(Association association) {
+            this.association = association;
+        }
+
+        boolean isUsable() {
+            return association.isReadyForDataTransfer();
+        }
+
+        boolean accepts(String sopClassUID, String transferSyntax) {
+            return association.getTransferSyntaxesFor(sopClassUID).contains(transferSyntax);
+        }
+    }
+
+    private class Destination {
+        final String aeTitle;
+        final String host;
+        final int port;
+        final List<PooledAssociation> associations = new ArrayList<>();
+        /** SOP Class -> transfer syntaxes seen so far, proposed on every new association */
+        final Map<String, Set<String>> knownContexts = new LinkedHashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        /** Signalled when an association becomes idle, is removed, or a connect finishes */
+        final Condition slotFreed = lock.newCondition();
+        /** Associations being connected; they count against the per-destination limit */
+        int opening = 0;
+
+        Destination(String aeTitle, String host, int port) {
+            this.aeTitle = aeTitle;
+            this.host = host;
+            this.port = port;
+        }
+
+        Lease acquire(Set<String> studySopClasses, String sopClassUID,
+                      String transferSyntax) throws Exception {
+            AAssociateRQ rq;
+            PooledAssociation idle = null;
+            lock.lock();
+            try {
+                int maxPerDestination = Math.max(1, config.getMaxStoreAssociationsPerDestination());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getAssociationTimeout()));
+                while (true) {
+                    associations.removeIf(p -> !p.isUsable());
+
+                    PooledAssociation best = leastLoaded(sopClassUID, transferSyntax);
+                    if (best != null && (best.leases == 0 || associations.size() + opening >= maxPerDestination)) {
+                        return lease(best);
+                    }
+                    if (associations.size() + opening < maxPerDestination) {
+                        break;
+                    }
+                    // At the limit: replace an idle association, or wait for one to become idle
+                    idle = removeOneIdle();
+                    if (idle != null) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IOException("No free association to " + aeTitle + "@" + host + ":" + port
+                                + " within " + config.getAssociationTimeout() + " ms ("
+                                + maxPerDestination + " in use)");
+                    }
+                    // Also wake up periodically to notice associations closed by the peer
+                    slotFreed.await(Math.min(remaining, TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+                }
+
+                knownContexts.computeIfAbsent(sopClassUID, k -> new LinkedHashSet<>()).add(transferSyntax);
+                for (String cuid : studySopClasses) {
+                    knownContexts.computeIfAbsent(cuid, k -> new LinkedHashSet<>());
+                }
+                rq = buildRequest(sopClassUID, transferSyntax);
+                opening++;
+            } finally {
+                lock.unlock();
+            }
+
+            // Network I/O without holding the lock
+            if (idle != null) {
+                releaseQuietly(idle.association);
+            }
+            Association as = null;
+            try {
+                as = connect(rq);
+            } finally {
+                if (as == null) {
+                    lock.lock();
+                    try {
+                        opening--;
+                        slotFreed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+
+            lock.lock();
+            try {
+                opening--;
+                slotFreed.signalAll();
+                PooledAssociation opened = new PooledAssociation(as);
+                if (opened.isUsable()) {
+                    associations.add(opened);
+                    LOG.info("C-STORE pool: Opened association to {}@{}:{} ({} open)",
+                            aeTitle, host, port, associations.size());
+                    if (opened.accepts(sopClassUID, transferSyntax)) {
+                        return lease(opened);
+                    }
+                }
+                // Rejected: fall back to an association that already accepted it, if any
+                PooledAssociation best = leastLoaded(sopClassUID, transferSyntax);
+                return best != null ? lease(best) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Least loaded usable association that already accepted this SOP Class in this syntax.
+         */
+        private PooledAssociation leastLoaded(String sopClassUID, String transferSyntax) {
+            PooledAssociation best = null;
+            for (PooledAssociation p : associations) {
+                if (p.isUsable() && p.accepts(sopClassUID, transferSyntax)
+                        && (best == null || p.leases < best.leases)) {
+                    best = p;
+                }
+            }
+            return best;
+        }
+
+        void release(PooledAssociation pooled) {
+            lock.lock();
+            try {
+                pooled.leases--;
+                pooled.lastReleased = System.currentTimeMillis();
+                if (pooled.leases == 0) {
+                    slotFreed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeIdle(long idleTimeout) {
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                Iterator<PooledAssociation> it = associations.iterator();
+                while (it.hasNext()) {
+                    PooledAssociation p = it.next();
+                    if (!p.isUsable()) {
+                        it.remove();
+                    } else if (p.leases == 0 && now - p.lastReleased > idleTimeout) {
+                        it.remove();
+                        releaseQuietly(p.association);
+                        LOG.debug("C-STORE pool: Released idle association to {}@{}:{}", aeTitle, host, port);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeAll() {
+            lock.lock();
+            try {
+                for (PooledAssociation p : associations) {
+                    if (p.isUsable()) {
+                        releaseQuietly(p.association);
+                    }
+                }
+                associations.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return associations.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Take one unused association out of the pool; the caller releases it.
+         */
+        private PooledAssociation removeOneIdle() {
+            for (PooledAssociation p : associations) {
+                if (p.leases == 0) {
+                    associations.remove(p);
+                    return p;
+                }
+            }
+            return null;
+        }
+
+        private Lease lease(PooledAssociation pooled) {
+            pooled.leases++;
+            return new Lease(this, pooled);
+        }
+
+        /**
+         * Build an association request proposing the required context first, then all known
+         * SOP Classes with every proposed transfer syntax, one syntax per context.
+         * Called under the lock, as it reads the known contexts.
+         */
+        private AAssociateRQ buildRequest(String sopClassUID, String transferSyntax) {
+            AAssociateRQ rq = new AAssociateRQ();
+            rq.setCallingAET(config.getAeTitle());
+            rq.setCalledAET(aeTitle);
+
+            Set<String> proposed = new HashSet<>();
+            int pcid = 1;
+            pcid = propose(rq, pcid, proposed, sopClassUID, transferSyntax);
+            for (Map.Entry<String, Set<String>> e : knownContexts.entrySet()) {
+                for (String ts : e.getValue()) {
+                    pcid = propose(rq, pcid, proposed, e.getKey(), ts);
+                }
+            }
+            for (String ts : PROPOSED_TRANSFER_SYNTAXES) {
+                for (String cuid : knownContexts.keySet()) {
+                    pcid = propose(rq, pcid, proposed, cuid, ts);
+                }
+            }
+
+            LOG.info("C-STORE pool: Proposing {} presentation contexts to {}", proposed.size(), aeTitle);
+            return rq;
+        }
+
+        private Association connect(AAssociateRQ rq) throws Exception {
+            Connection remote = new Connection();
+            remote.setHostname(host);
+            remote.setPort(port);
+            return localAE().connect(remote, rq);
+        }
+
+        private int propose(AAssociateRQ rq, int pcid, Set<String> proposed, String cuid, String ts) {
+            if (pcid > MAX_PC_ID || !proposed.add(cuid + "|" + ts)) {
+                return pcid;
+            }
+            rq.addPresentationContext(new PresentationContext(pcid, cuid, ts));
+            return pcid + 2;
+        }
+    }
+}
@@ -1,32 +1,29 @@
 package be.uzleuven.ihe.service.scp;
 
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
  * Cache for DICOM instance data retrieved from WADO-RS.
  * Reduces repeated downloads of the same instances.
+ *
+ * Backed by a lock-striped segmented LRU so eviction stays O(1) amortized
+ * and the byte budget is honored under parallel C-MOVE downloads.
  */
 @Component
 public class DicomCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(DicomCache.class);
 
-    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-    private final AtomicLong hits = new AtomicLong(0);
-    private final AtomicLong misses = new AtomicLong(0);
-    private final AtomicLong evictions = new AtomicLong(0);
+    private static final long DEFAULT_MAX_SIZE_BYTES = 500L * 1024 * 1024; // 500MB default
+    private static final long DEFAULT_TTL_MILLIS = 300_000; // 5 minutes default
+
+    private final SegmentedLruCache<String, byte[]> cache =
+            new SegmentedLruCache<>(DEFAULT_MAX_SIZE_BYTES, DEFAULT_TTL_MILLIS, data -> data.length);
 
-    private long maxSizeBytes = 500 * 1024 * 1024; // 500MB default
-    private long ttlMillis = 300_000; // 5 minutes default
-    private long currentSizeBytes = 0;
-    private boolean enabled = true;
+    private volatile boolean enabled = true;
 
     /**
      * Get cached DICOM data by SOP Instance UID.
@@ -38,23 +35,7 @@ public class DicomCache {
         if (!enabled) {
             return null;
         }
-
-        CacheEntry entry = cache.get(sopInstanceUID);
-        if (entry == null) {
-            misses.incrementAndGet();
-            return null;
-        }
-
-        // Check if expired
-        if (isExpired(entry)) {
-            remove(sopInstanceUID);
-            misses.incrementAndGet();
-            return null;
-        }
-
-        hits.incrementAndGet();
-        entry.lastAccessed = Instant.now();
-        return entry.data;
+        return cache.get(sopInstanceUID);
     }
 
     /**
@@ -68,33 +49,33 @@ public class DicomCache {
             return;
         }
 
-        // Check if we need to evict entries to make room
-        while (currentSizeBytes + data.length > maxSizeBytes && !cache.isEmpty()) {
-            evictOldest();
-        }
-
-        CacheEntry entry = new CacheEntry(data);
-        CacheEntry old = cache.put(sopInstanceUID, entry);
-
-        if (old != null) {
-            currentSizeBytes -= old.data.length;
+        if (!cache.put(sopInstanceUID, data)) {
+            LOG.debug("Instance {} ({} bytes) exceeds cache size, not cached", sopInstanceUID, data.length);
+            return;
         }
-        currentSizeBytes += data.length;
 
         LOG.debug("Cached instance {} ({} bytes). Cache size: {}/{} MB",
                 sopInstanceUID, data.length,
-                currentSizeBytes / (1024 * 1024),
-                maxSizeBytes / (1024 * 1024));
+                cache.weightedSize() / (1024 * 1024),
+                cache.getMaxWeight() / (1024 * 1024));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Largest instance the cache accepts; heavier ones are never stored.
+     */
+    public long getMaxEntryBytes() {
+        return cache.getMaxWeight();
     }
 
     /**
      * Remove an entry from cache.
      */
     public void remove(String sopInstanceUID) {
-        CacheEntry entry = cache.remove(sopInstanceUID);
-        if (entry != null) {
-            currentSizeBytes -= entry.data.length;
-        }
+        cache.remove(sopInstanceUID);
     }
 
     /**
@@ -102,7 +83,6 @@ public class DicomCache {
      */
     public void clear() {
         cache.clear();
-        currentSizeBytes = 0;
         LOG.info("Cache cleared");
     }
 
@@ -112,11 +92,11 @@ public class DicomCache {
     public CacheStats getStats() {
         return new CacheStats(
                 cache.size(),
-                currentSizeBytes,
-                maxSizeBytes,
-                hits.get(),
-                misses.get(),
-                evictions.get()
+                cache.weightedSize(),
+                cache.getMaxWeight(),
+                cache.hitCount(),
+                cache.missCount(),
+                cache.evictionCount()
         );
     }
 
@@ -124,51 +104,13 @@ public class DicomCache {
      * Configure cache settings.
      */
     public void configure(long maxSizeMB, long ttlMinutes, boolean enabled) {
-        this.maxSizeBytes = maxSizeMB * 1024 * 1024;
-        this.ttlMillis = ttlMinutes * 60 * 1000;
         this.enabled = enabled;
+        cache.setTtlMillis(ttlMinutes * 60 * 1000);
+        // Evicts immediately if over new limit
+        cache.setMaxWeight(maxSizeMB * 1024 * 1024);
 
         LOG.info("Cache configured: enabled={}, maxSize={}MB, ttl={}min",
                 enabled, maxSizeMB, ttlMinutes);
-
-        // Evict if over new limit
-        while (currentSizeBytes > maxSizeBytes && !cache.isEmpty()) {
-            evictOldest();
-        }
-    }
-
-    private boolean isExpired(CacheEntry entry) {
-        return System.currentTimeMillis() - entry.created.toEpochMilli() > ttlMillis;
-    }
-
-    private void evictOldest() {
-        String oldestKey = null;
-        Instant oldestTime = Instant.now();
-
-        for (Map.Entry<String, CacheEntry> e : cache.entrySet()) {
-            if (e.getValue().lastAccessed.isBefore(oldestTime)) {
-                oldestTime = e.getValue().lastAccessed;
-                oldestKey = e.getKey();
-            }
-        }
-
-        if (oldestKey != null) {
-            remove(oldestKey);
-            evictions.incrementAndGet();
-            LOG.debug("Evicted oldest entry: {}", oldestKey);
-        }
-    }
-
-    private static class CacheEntry {
-        final byte[] data;
-        final Instant created;
-        Instant lastAccessed;
-
-        CacheEntry(byte[] data) {
-            this.data = data;
-            this.created = Instant.now();
-            this.lastAccessed = this.created;
-        }
     }
 
     public static class CacheStats {
@@ -21,9 +21,17 @@ public class DicomCacheConfiguration {
     private long maxSizeMb = 500;
     private long ttlMinutes = 5;
 
+    /** Enable the memory-mapped disk tier behind the heap cache */
+    private boolean diskEnabled = false;
+    private String diskDirectory = "dicom-cache";
+    private long diskMaxSizeMb = 5120;
+
     @Autowired
     private DicomCache dicomCache;
 
+    @Autowired
+    private DicomDiskCache dicomDiskCache;
+
     @PostConstruct
     public void init() {
         if (dicomCache != null) {
@@ -31,6 +39,9 @@ public class DicomCacheConfiguration {
             LOG.info("DICOM Cache configured: enabled={}, maxSize={}MB, ttl={}min",
                     enabled, maxSizeMb, ttlMinutes);
         }
+        if (dicomDiskCache != null) {
+            dicomDiskCache.configure(diskDirectory, diskMaxSizeMb, diskEnabled);
+        }
     }
 
     // Getters and setters
@@ -58,5 +69,28 @@ public class DicomCacheConfiguration {
     public void setTtlMinutes(long ttlMinutes) {
         this.ttlMinutes = ttlMinutes;
     }
-}
 
+    public boolean isDiskEnabled() {
+        return diskEnabled;
+    }
+
+    public void setDiskEnabled(boolean diskEnabled) {
+        this.diskEnabled = diskEnabled;
+    }
+
+    public String getDiskDirectory() {
+        return diskDirectory;
+    }
+
+    public void setDiskDirectory(String diskDirectory) {
+        this.diskDirectory = diskDirectory;
+    }
+
+    public long getDiskMaxSizeMb() {
+        return diskMaxSizeMb;
+    }
+
+    public void setDiskMaxSizeMb(long diskMaxSizeMb) {
+        this.diskMaxSizeMb = diskMaxSizeMb;
+    }
+}
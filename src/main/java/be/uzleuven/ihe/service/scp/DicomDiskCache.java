@@ -0,0 +1,112 @@
+package be.uzleuven.ihe.service.scp;
+
+import be.uzleuven.ihe.service.cache.DiskBlobStore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Second, disk-backed tier of the DICOM instance cache.
+ *
+ * Each instance is stored as one Part-10 file named after its SOP Instance UID, in a
+ * {@link DiskBlobStore}: files are written to a temporary name and atomically renamed, and on
+ * startup the directory is scanned to rebuild the LRU order. Files shorter than a Part-10
+ * preamble and prefix are discarded.
+ *
+ * Reads memory-map the file (except on Windows), so serving a cached instance does not copy it
+ * into a heap array and large CT/MR payloads stay out of the old generation.
+ */
+@Component
+public class DicomDiskCache {
+
+    /** 128 byte preamble + "DICM" */
+    private static final long MIN_PART10_BYTES = 132;
+
+    private final DiskBlobStore store = new DiskBlobStore("DICOM", ".dcm", MIN_PART10_BYTES);
+
+    /**
+     * Configure the disk tier and rebuild the index from the files already on disk.
+     */
+    public void configure(String directory, long maxSizeMB, boolean enabled) {
+        store.configure(directory, maxSizeMB, enabled);
+    }
+
+    public boolean isEnabled() {
+        return store.isEnabled();
+    }
+
+    /**
+     * Memory-map a cached instance.
+     *
+     * @param sopInstanceUID SOP Instance UID
+     * @return Read-only buffer over the Part-10 file, or null if not cached
+     */
+    public ByteBuffer getMapped(String sopInstanceUID) {
+        return store.getMapped(sopInstanceUID);
+    }
+
+    /**
+     * Open a cached instance as a stream. The caller closes the stream.
+     *
+     * @return Stream positioned at the start of the Part-10 file, or null if not cached
+     */
+    public InputStream openStream(String sopInstanceUID) {
+        return store.openStream(sopInstanceUID);
+    }
+
+    /**
+     * Store a Part-10 instance on disk.
+     */
+    public void put(String sopInstanceUID, byte[] data) {
+        store.put(sopInstanceUID, data);
+    }
+
+    /**
+     * Store a Part-10 instance on disk by copying an already written file.
+     */
+    public void put(String sopInstanceUID, Path source) {
+        store.put(sopInstanceUID, source);
+    }
+
+    /**
+     * Store a Part-10 instance on disk by moving a file the caller owns, e.g. a spool file.
+     * A stream already open on {@code source} keeps reading the moved file.
+     *
+     * @return true if the file was moved into the cache; otherwise it is left where it was
+     */
+    public boolean move(String sopInstanceUID, Path source) {
+        return store.move(sopInstanceUID, source);
+    }
+
+    /**
+     * New empty temporary file, in the cache directory when the cache is enabled so that
+     * {@link #move(String, Path)} is a rename.
+     */
+    public Path createSpoolFile(String prefix) throws IOException {
+        return store.createSpoolFile(prefix);
+    }
+
+    /**
+     * Remove all cached files.
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * Get disk tier statistics.
+     */
+    public DicomCache.CacheStats getStats() {
+        return new DicomCache.CacheStats(
+                store.getEntryCount(),
+                store.getSizeBytes(),
+                store.getMaxSizeBytes(),
+                store.getHitCount(),
+                store.getMissCount(),
+                store.getEvictionCount()
+        );
+    }
+}
@@ -0,0 +1,351 @@
+package be.uzleuven.ihe.service.scp;
+
+import java.util.*;
+
+/**
+ * Column-oriented storage of the instances of one series.
+ *
+ * Instead of one object with a dozen Strings per instance, every attribute is a column:
+ * <ul>
+ *   <li>SOP Instance UIDs are split at their last '.' into a deduplicated prefix and a short suffix</li>
+ *   <li>SOP Class UIDs are stored as an index into a per-series table</li>
+ *   <li>Instance number, frame count, rows and columns are int arrays</li>
+ *   <li>Study/Series UIDs come from the owning series, and the effective retrieve URL is derived
+ *       from the series URL on demand</li>
+ * </ul>
+ * Elements are {@link MHDBackedMetadataService.InstanceMetadata} views onto a row, created on access.
+ * {@link #add} copies the values of the given instance into a new row.
+ *
+ * Rows are filled by one thread before the series is published. The derived state written while
+ * serving queries (the SOP Instance UID index and the per-row JSON) is safe to fill concurrently.
+ * The per-row JSON lives in the byte-bounded {@link InstanceJsonFragments} cache, not in the columns.
+ */
+final class InstanceColumns extends AbstractList<MHDBackedMetadataService.InstanceMetadata> implements RandomAccess {
+
+    /** Marks a numeric cell that is absent or kept as text */
+    private static final int ABSENT = Integer.MIN_VALUE;
+
+    private static final int INSTANCE_NUMBER = 0;
+    private static final int NUMBER_OF_FRAMES = 1;
+    private static final int ROWS = 2;
+    private static final int COLUMNS = 3;
+
+    /** Series the rows belong to, or null for a detached single instance */
+    private final MHDBackedMetadataService.SeriesMetadata owner;
+    /** Study/Series UIDs of a detached instance */
+    String studyInstanceUID;
+    String seriesInstanceUID;
+
+    private int size = 0;
+
+    // Deduplicated UID strings (SOP Instance UID prefixes and SOP Class UIDs)
+    private final List<String> uidTable = new ArrayList<>();
+    private final Map<String, Integer> uidIndex = new HashMap<>();
+
+    private int[] sopPrefix;
+    private String[] sopSuffix;
+    private int[] sopClass;
+    private final int[][] numbers = new int[4][];
+    /** Numeric cells that do not round-trip through int, keyed by row * 4 + column */
+    private Map<Integer, String> numberText;
+    /** Instance-level Retrieve URLs and explicit effective URLs; rarely present, allocated lazily */
+    private String[] retrieveURL;
+    private String[] effectiveRetrieveURL;
+    /** Key of the rows' serialized DICOM JSON in {@link InstanceJsonFragments} */
+    private final long jsonOwnerId = InstanceJsonFragments.newOwnerId();
+    /** Set once a row's JSON was stored, so filling the rows does not touch the fragment cache */
+    private volatile boolean jsonWritten;
+    /** SOP Instance UID -> row, built on first lookup and published once complete */
+    private volatile Map<String, Integer> rowBySopInstanceUID;
+
+    InstanceColumns(MHDBackedMetadataService.SeriesMetadata owner) {
+        this(owner, 8);
+    }
+
+    InstanceColumns(MHDBackedMetadataService.SeriesMetadata owner, int capacity) {
+        this.owner = owner;
+        allocate(Math.max(1, capacity));
+    }
+
+    @Override
+    public MHDBackedMetadataService.InstanceMetadata get(int index) {
+        Objects.checkIndex(index, size);
+        return new MHDBackedMetadataService.InstanceMetadata(this, index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(MHDBackedMetadataService.InstanceMetadata instance) {
+        copyRow(instance, addRow());
+        return true;
+    }
+
+    /**
+     * Append an empty row and return its index.
+     */
+    int addRow() {
+        if (size == sopSuffix.length) {
+            allocate(size + (size >> 1) + 1);
+        }
+        modCount++;
+        rowBySopInstanceUID = null;
+        return size++;
+    }
+
+    @Override
+    public MHDBackedMetadataService.InstanceMetadata set(int index, MHDBackedMetadataService.InstanceMetadata instance) {
+        Objects.checkIndex(index, size);
+        MHDBackedMetadataService.InstanceMetadata previous = new MHDBackedMetadataService.InstanceMetadata();
+        previous.copyFrom(get(index));
+        copyRow(instance, index);
+        return previous;
+    }
+
+    /**
+     * Row of the given SOP Instance UID, or -1.
+     */
+    int indexOfSopInstanceUID(String sopInstanceUID) {
+        if (sopInstanceUID == null) {
+            return -1;
+        }
+        Map<String, Integer> index = rowBySopInstanceUID;
+        if (index == null) {
+            Map<String, Integer> rows = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                String uid = sopInstanceUID(i);
+                if (uid != null) {
+                    rows.putIfAbsent(uid, i);
+                }
+            }
+            // Only a fully built map is ever visible to other threads
+            index = rows;
+            rowBySopInstanceUID = index;
+        }
+        Integer row = index.get(sopInstanceUID);
+        return row != null ? row : -1;
+    }
+
+    // ============================================================================
+    // Cell access (used by InstanceMetadata)
+    // ============================================================================
+
+    String studyInstanceUID() {
+        return owner != null ? owner.studyInstanceUID : studyInstanceUID;
+    }
+
+    String seriesInstanceUID() {
+        return owner != null ? owner.seriesInstanceUID : seriesInstanceUID;
+    }
+
+    String sopInstanceUID(int row) {
+        String suffix = sopSuffix[row];
+        int prefix = sopPrefix[row];
+        if (prefix < 0) {
+            return suffix;
+        }
+        return uidTable.get(prefix) + '.' + suffix;
+    }
+
+    void setSopInstanceUID(int row, String uid) {
+        rowBySopInstanceUID = null;
+        invalidateJson(row);
+        int dot = uid != null ? uid.lastIndexOf('.') : -1;
+        if (dot <= 0) {
+            sopPrefix[row] = -1;
+            sopSuffix[row] = uid;
+        } else {
+            sopPrefix[row] = intern(uid.substring(0, dot));
+            sopSuffix[row] = uid.substring(dot + 1);
+        }
+    }
+
+    String sopClassUID(int row) {
+        int index = sopClass[row];
+        return index < 0 ? null : uidTable.get(index);
+    }
+
+    void setSopClassUID(int row, String uid) {
+        invalidateJson(row);
+        sopClass[row] = uid == null ? -1 : intern(uid);
+    }
+
+    String number(int row, int column) {
+        int value = numbers[column][row];
+        if (value != ABSENT) {
+            return Integer.toString(value);
+        }
+        return numberText != null ? numberText.get(row * 4 + column) : null;
+    }
+
+    void setNumber(int row, int column, String text) {
+        invalidateJson(row);
+        if (numberText != null) {
+            numberText.remove(row * 4 + column);
+        }
+        numbers[column][row] = ABSENT;
+        if (text == null) {
+            return;
+        }
+        try {
+            int value = Integer.parseInt(text);
+            if (value != ABSENT && Integer.toString(value).equals(text)) {
+                numbers[column][row] = value;
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // keep as text
+        }
+        if (numberText == null) {
+            numberText = new HashMap<>();
+        }
+        numberText.put(row * 4 + column, text);
+    }
+
+    String instanceNumber(int row) {
+        return number(row, INSTANCE_NUMBER);
+    }
+
+    void setInstanceNumber(int row, String value) {
+        setNumber(row, INSTANCE_NUMBER, value);
+    }
+
+    String numberOfFrames(int row) {
+        return number(row, NUMBER_OF_FRAMES);
+    }
+
+    void setNumberOfFrames(int row, String value) {
+        setNumber(row, NUMBER_OF_FRAMES, value);
+    }
+
+    String rows(int row) {
+        return number(row, ROWS);
+    }
+
+    void setRows(int row, String value) {
+        setNumber(row, ROWS, value);
+    }
+
+    String columns(int row) {
+        return number(row, COLUMNS);
+    }
+
+    void setColumns(int row, String value) {
+        setNumber(row, COLUMNS, value);
+    }
+
+    String retrieveURL(int row) {
+        return retrieveURL != null ? retrieveURL[row] : null;
+    }
+
+    void setRetrieveURL(int row, String url) {
+        if (url != null && retrieveURL == null) {
+            retrieveURL = new String[sopSuffix.length];
+        }
+        if (retrieveURL != null && !Objects.equals(retrieveURL[row], url)) {
+            retrieveURL[row] = url;
+            invalidateJson(row);
+        }
+    }
+
+    /**
+     * Explicit effective URL if one was set, otherwise {seriesURL}/instances/{sopInstanceUID}.
+     */
+    String effectiveRetrieveURL(int row) {
+        if (effectiveRetrieveURL != null && effectiveRetrieveURL[row] != null) {
+            return effectiveRetrieveURL[row];
+        }
+        if (owner == null || owner.effectiveRetrieveURL == null || owner.seriesInstanceUID == null) {
+            return null;
+        }
+        String sopInstanceUID = sopInstanceUID(row);
+        if (sopInstanceUID == null) {
+            return null;
+        }
+        return owner.effectiveRetrieveURL.replace(owner.seriesInstanceUID,
+                owner.seriesInstanceUID + "/instances/" + sopInstanceUID);
+    }
+
+    String explicitEffectiveRetrieveURL(int row) {
+        return effectiveRetrieveURL != null ? effectiveRetrieveURL[row] : null;
+    }
+
+    void setEffectiveRetrieveURL(int row, String url) {
+        if (url != null && effectiveRetrieveURL == null) {
+            effectiveRetrieveURL = new String[sopSuffix.length];
+        }
+        if (effectiveRetrieveURL != null && !Objects.equals(effectiveRetrieveURL[row], url)) {
+            effectiveRetrieveURL[row] = url;
+            invalidateJson(row);
+        }
+    }
+
+    byte[] json(int row) {
+        return jsonWritten ? InstanceJsonFragments.get(jsonOwnerId, row) : null;
+    }
+
+    void setJson(int row, byte[] bytes) {
+        jsonWritten = true;
+        InstanceJsonFragments.put(jsonOwnerId, row, bytes);
+    }
+
+    private void invalidateJson(int row) {
+        if (jsonWritten) {
+            InstanceJsonFragments.remove(jsonOwnerId, row);
+        }
+    }
+
+    // ============================================================================
+    // Storage
+    // ============================================================================
+
+    private void copyRow(MHDBackedMetadataService.InstanceMetadata instance, int row) {
+        setSopInstanceUID(row, instance.getSopInstanceUID());
+        setSopClassUID(row, instance.getSopClassUID());
+        setInstanceNumber(row, instance.getInstanceNumber());
+        setNumberOfFrames(row, instance.getNumberOfFrames());
+        setRows(row, instance.getRows());
+        setColumns(row, instance.getColumns());
+        setRetrieveURL(row, instance.getRetrieveURL());
+        setEffectiveRetrieveURL(row, instance.getExplicitEffectiveRetrieveURL());
+        if (owner == null) {
+            studyInstanceUID = instance.getStudyInstanceUID();
+            seriesInstanceUID = instance.getSeriesInstanceUID();
+        }
+    }
+
+    private int intern(String uid) {
+        Integer index = uidIndex.get(uid);
+        if (index == null) {
+            index = uidTable.size();
+            uidTable.add(uid);
+            uidIndex.put(uid, index);
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        sopPrefix = grow(sopPrefix, capacity);
+        sopSuffix = sopSuffix == null ? new String[capacity] : Arrays.copyOf(sopSuffix, capacity);
+        sopClass = grow(sopClass, capacity);
+        for (int c = 0; c < numbers.length; c++) {
+            numbers[c] = grow(numbers[c], capacity);
+        }
+        if (retrieveURL != null) {
+            retrieveURL = Arrays.copyOf(retrieveURL, capacity);
+        }
+        if (effectiveRetrieveURL != null) {
+            effectiveRetrieveURL = Arrays.copyOf(effectiveRetrieveURL, capacity);
+        }
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int old = array == null ? 0 : array.length;
+        int[] grown = array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+        Arrays.fill(grown, old, capacity, ABSENT);
+        return grown;
+    }
+}
@@ -0,0 +1,78 @@
+package be.uzleuven.ihe.service.scp;
+
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialized DICOM JSON of single instances, shared by all cached series and bounded in bytes.
+ *
+ * An instance fragment is 1-2 KB, an order of magnitude more than the columnar row it is written
+ * from, so fragments are not kept on the rows: the metadata cache is bounded by instance count
+ * and would not see them. Entries are keyed by an id of the owning {@link InstanceColumns} and the
+ * row, so an evicted series is not kept reachable by its fragments; they age out on their own.
+ */
+final class InstanceJsonFragments {
+
+    /** Default budget for all instance fragments */
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** Approximate cost of the cache node, key and array header next to the fragment bytes */
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private static final AtomicLong NEXT_OWNER_ID = new AtomicLong();
+
+    private static final SegmentedLruCache<Long, byte[]> CACHE =
+            new SegmentedLruCache<>(DEFAULT_MAX_BYTES, 0, json -> json.length + ENTRY_OVERHEAD_BYTES);
+
+    private InstanceJsonFragments() {
+        // Utility class - no instantiation
+    }
+
+    /**
+     * Apply the configured byte budget and lifetime (normally the metadata cache TTL).
+     */
+    static void configure(long maxBytes, long ttlMillis) {
+        CACHE.setTtlMillis(ttlMillis);
+        CACHE.setMaxWeight(maxBytes);
+    }
+
+    /**
+     * New id for the rows of one {@link InstanceColumns}.
+     */
+    static long newOwnerId() {
+        return NEXT_OWNER_ID.incrementAndGet();
+    }
+
+    static byte[] get(long ownerId, int row) {
+        return CACHE.get(key(ownerId, row));
+    }
+
+    static void put(long ownerId, int row, byte[] json) {
+        CACHE.put(key(ownerId, row), json);
+    }
+
+    static void remove(long ownerId, int row) {
+        CACHE.remove(key(ownerId, row));
+    }
+
+    /**
+     * Drop expired fragments; returns the number removed.
+     */
+    static int cleanUp() {
+        return CACHE.cleanUp();
+    }
+
+    static void clear() {
+        CACHE.clear();
+    }
+
+    static Map<String, Object> statsSnapshot() {
+        return CACHE.statsSnapshot();
+    }
+
+    private static Long key(long ownerId, int row) {
+        return (ownerId << 32) | (row & 0xFFFFFFFFL);
+    }
+}
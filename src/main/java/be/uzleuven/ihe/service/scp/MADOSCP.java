@@ -157,8 +157,10 @@ public class MADOSCP {
 
         ae.setDimseRQHandler(serviceRegistry);
 
-        // Create executor services
-        executorService = Executors.newCachedThreadPool();
+        // Create executor services (one virtual thread per association/DIMSE task if enabled)
+        executorService = config.isVirtualThreads()
+                ? VirtualThreads.newExecutor("dicom-scp", true)
+                : Executors.newCachedThreadPool();
         scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         device.setExecutor(executorService);
         device.setScheduledExecutor(scheduledExecutorService);
@@ -45,12 +45,63 @@ public class MADOSCPConfiguration {
     @Deprecated
     private String madoFilesDirectory = "MADO_FROM_SCU";
 
-    /** Number of parallel downloads from WADO-RS during C-MOVE */
+    /** Keep fetched MADO manifests on disk so the metadata cache survives restarts */
+    private boolean manifestStoreEnabled = true;
+
+    /** Directory of the persistent MADO manifest store (manifests fetched from MHD) */
+    private String manifestStoreDirectory = "mado-manifest-store";
+
+    /** Maximum total size of the manifest store in MB; the least recently used studies are removed first */
+    private long manifestStoreMaxSizeMb = 1024;
+
+    /** Stored manifests not used for this many days are removed */
+    private int manifestStoreMaxAgeDays = 30;
+
+    /** "lazy": use stored manifests on cache misses; "eager": also load them at startup */
+    private String manifestStoreWarmUp = "lazy";
+
+    /** Number of parallel downloads from WADO-RS during C-MOVE (per C-MOVE request) */
     private int maxParallelDownloads = 5;
 
     /** Number of parallel C-STORE operations during C-MOVE */
     private int maxParallelStores = 3;
 
+    /** Total WADO-RS downloads in flight across all C-MOVE requests */
+    private int maxConcurrentDownloads = 16;
+
+    /** Total C-STORE operations in flight across all C-MOVE requests */
+    private int maxConcurrentStores = 12;
+
+    /** C-STORE operations in flight per move destination, across all C-MOVE requests */
+    private int maxStoresPerDestination = 6;
+
+    /** Series groups processed concurrently across all C-MOVE requests */
+    private int maxConcurrentSeries = 8;
+
+    /** Maximum number of studies in the MADO metadata cache */
+    private int metadataCacheMaxStudies = 5000;
+
+    /** Maximum total number of instances across all studies in the MADO metadata cache */
+    private long metadataCacheMaxInstances = 500000;
+
+    /** Time in minutes after which cached MADO metadata is fetched again */
+    private long metadataCacheTtlMinutes = 5;
+
+    /** Maximum size in MB of the serialized instance DICOM JSON kept for QIDO-RS responses */
+    private long metadataJsonCacheMaxMB = 64;
+
+    /** Interval in seconds between sweeps that drop expired cache entries */
+    private long metadataCacheSweepIntervalSeconds = 60;
+
+    /** Run association handling and C-MOVE tasks on virtual threads (requires Java 21) */
+    private boolean virtualThreads = false;
+
+    /** Idle time in milliseconds after which a pooled outbound C-STORE association is released */
+    private long storeAssociationIdleTimeout = 30000;
+
+    /** Maximum number of pooled outbound C-STORE associations per move destination */
+    private int maxStoreAssociationsPerDestination = 2;
+
     // Getters and Setters
 
     public String getAeTitle() {
@@ -148,5 +199,140 @@ public class MADOSCPConfiguration {
     public void setMaxParallelStores(int maxParallelStores) {
         this.maxParallelStores = maxParallelStores;
     }
-}
 
+    public long getStoreAssociationIdleTimeout() {
+        return storeAssociationIdleTimeout;
+    }
+
+    public void setStoreAssociationIdleTimeout(long storeAssociationIdleTimeout) {
+        this.storeAssociationIdleTimeout = storeAssociationIdleTimeout;
+    }
+
+    public int getMaxStoreAssociationsPerDestination() {
+        return maxStoreAssociationsPerDestination;
+    }
+
+    public void setMaxStoreAssociationsPerDestination(int maxStoreAssociationsPerDestination) {
+        this.maxStoreAssociationsPerDestination = maxStoreAssociationsPerDestination;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    public int getMaxConcurrentStores() {
+        return maxConcurrentStores;
+    }
+
+    public void setMaxConcurrentStores(int maxConcurrentStores) {
+        this.maxConcurrentStores = maxConcurrentStores;
+    }
+
+    public int getMaxStoresPerDestination() {
+        return maxStoresPerDestination;
+    }
+
+    public void setMaxStoresPerDestination(int maxStoresPerDestination) {
+        this.maxStoresPerDestination = maxStoresPerDestination;
+    }
+
+    public int getMaxConcurrentSeries() {
+        return maxConcurrentSeries;
+    }
+
+    public void setMaxConcurrentSeries(int maxConcurrentSeries) {
+        this.maxConcurrentSeries = maxConcurrentSeries;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMetadataCacheMaxStudies() {
+        return metadataCacheMaxStudies;
+    }
+
+    public void setMetadataCacheMaxStudies(int metadataCacheMaxStudies) {
+        this.metadataCacheMaxStudies = metadataCacheMaxStudies;
+    }
+
+    public long getMetadataCacheMaxInstances() {
+        return metadataCacheMaxInstances;
+    }
+
+    public void setMetadataCacheMaxInstances(long metadataCacheMaxInstances) {
+        this.metadataCacheMaxInstances = metadataCacheMaxInstances;
+    }
+
+    public long getMetadataJsonCacheMaxMB() {
+        return metadataJsonCacheMaxMB;
+    }
+
+    public void setMetadataJsonCacheMaxMB(long metadataJsonCacheMaxMB) {
+        this.metadataJsonCacheMaxMB = metadataJsonCacheMaxMB;
+    }
+
+    public long getMetadataCacheTtlMinutes() {
+        return metadataCacheTtlMinutes;
+    }
+
+    public void setMetadataCacheTtlMinutes(long metadataCacheTtlMinutes) {
+        this.metadataCacheTtlMinutes = metadataCacheTtlMinutes;
+    }
+
+    public long getMetadataCacheSweepIntervalSeconds() {
+        return metadataCacheSweepIntervalSeconds;
+    }
+
+    public void setMetadataCacheSweepIntervalSeconds(long metadataCacheSweepIntervalSeconds) {
+        this.metadataCacheSweepIntervalSeconds = metadataCacheSweepIntervalSeconds;
+    }
+
+    public boolean isManifestStoreEnabled() {
+        return manifestStoreEnabled;
+    }
+
+    public void setManifestStoreEnabled(boolean manifestStoreEnabled) {
+        this.manifestStoreEnabled = manifestStoreEnabled;
+    }
+
+    public String getManifestStoreDirectory() {
+        return manifestStoreDirectory;
+    }
+
+    public void setManifestStoreDirectory(String manifestStoreDirectory) {
+        this.manifestStoreDirectory = manifestStoreDirectory;
+    }
+
+    public long getManifestStoreMaxSizeMb() {
+        return manifestStoreMaxSizeMb;
+    }
+
+    public void setManifestStoreMaxSizeMb(long manifestStoreMaxSizeMb) {
+        this.manifestStoreMaxSizeMb = manifestStoreMaxSizeMb;
+    }
+
+    public int getManifestStoreMaxAgeDays() {
+        return manifestStoreMaxAgeDays;
+    }
+
+    public void setManifestStoreMaxAgeDays(int manifestStoreMaxAgeDays) {
+        this.manifestStoreMaxAgeDays = manifestStoreMaxAgeDays;
+    }
+
+    public String getManifestStoreWarmUp() {
+        return manifestStoreWarmUp;
+    }
+
+    public void setManifestStoreWarmUp(String manifestStoreWarmUp) {
+        this.manifestStoreWarmUp = manifestStoreWarmUp;
+    }
+}
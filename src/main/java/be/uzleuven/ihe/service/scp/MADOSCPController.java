@@ -17,12 +17,20 @@ public class MADOSCPController {
     private final MADOSCP scpServer;
     private final MADOSCPConfiguration config;
     private final DicomCache dicomCache;
+    private final DicomDiskCache dicomDiskCache;
+    private final CMoveScheduler cMoveScheduler;
+    private final MHDBackedMetadataService metadataService;
 
     @Autowired
-    public MADOSCPController(MADOSCP scpServer, MADOSCPConfiguration config, DicomCache dicomCache) {
+    public MADOSCPController(MADOSCP scpServer, MADOSCPConfiguration config, DicomCache dicomCache,
+                             DicomDiskCache dicomDiskCache, CMoveScheduler cMoveScheduler,
+                             MHDBackedMetadataService metadataService) {
         this.scpServer = scpServer;
         this.config = config;
         this.dicomCache = dicomCache;
+        this.dicomDiskCache = dicomDiskCache;
+        this.cMoveScheduler = cMoveScheduler;
+        this.metadataService = metadataService;
     }
 
     /**
@@ -85,6 +93,14 @@ public class MADOSCPController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Get metadata cache statistics (MADO study metadata and DocumentReferences).
+     */
+    @GetMapping("/cache/metadata/stats")
+    public ResponseEntity<Map<String, Object>> getMetadataCacheStats() {
+        return ResponseEntity.ok(metadataService.getCacheStats());
+    }
+
     /**
      * Get cache statistics.
      */
@@ -106,6 +122,19 @@ public class MADOSCPController {
             stats.put("dicomInstanceCache", dicomCacheStats);
         }
 
+        if (dicomDiskCache != null && dicomDiskCache.isEnabled()) {
+            DicomCache.CacheStats diskStats = dicomDiskCache.getStats();
+            Map<String, Object> diskCacheStats = new HashMap<>();
+            diskCacheStats.put("entries", diskStats.entries);
+            diskCacheStats.put("currentSizeMB", diskStats.currentSizeBytes / (1024 * 1024));
+            diskCacheStats.put("maxSizeMB", diskStats.maxSizeBytes / (1024 * 1024));
+            diskCacheStats.put("hits", diskStats.hits);
+            diskCacheStats.put("misses", diskStats.misses);
+            diskCacheStats.put("evictions", diskStats.evictions);
+            diskCacheStats.put("hitRate", String.format("%.2f%%", diskStats.getHitRate() * 100));
+            stats.put("dicomDiskCache", diskCacheStats);
+        }
+
         return ResponseEntity.ok(stats);
     }
 
@@ -117,6 +146,9 @@ public class MADOSCPController {
         Map<String, Object> response = new HashMap<>();
         if (dicomCache != null) {
             dicomCache.clear();
+            if (dicomDiskCache != null) {
+                dicomDiskCache.clear();
+            }
             response.put("success", true);
             response.put("message", "DICOM instance cache cleared");
         } else {
@@ -126,6 +158,14 @@ public class MADOSCPController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Get the state of the shared C-MOVE scheduler (queued and running tasks).
+     */
+    @GetMapping("/cmove/stats")
+    public ResponseEntity<Map<String, Object>> getCMoveStats() {
+        return ResponseEntity.ok(cMoveScheduler.getStats());
+    }
+
     /**
      * Get current configuration.
      */
@@ -143,6 +183,13 @@ public class MADOSCPController {
         configMap.put("wadoRsBaseUrl", config.getWadoRsBaseUrl());
         configMap.put("maxParallelDownloads", config.getMaxParallelDownloads());
         configMap.put("maxParallelStores", config.getMaxParallelStores());
+        configMap.put("storeAssociationIdleTimeout", config.getStoreAssociationIdleTimeout());
+        configMap.put("maxStoreAssociationsPerDestination", config.getMaxStoreAssociationsPerDestination());
+        configMap.put("maxConcurrentDownloads", config.getMaxConcurrentDownloads());
+        configMap.put("maxConcurrentStores", config.getMaxConcurrentStores());
+        configMap.put("maxStoresPerDestination", config.getMaxStoresPerDestination());
+        configMap.put("maxConcurrentSeries", config.getMaxConcurrentSeries());
+        configMap.put("virtualThreads", config.isVirtualThreads());
         return ResponseEntity.ok(configMap);
     }
 }
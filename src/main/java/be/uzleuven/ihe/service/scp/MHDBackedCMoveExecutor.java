@@ -1,13 +1,12 @@
 package be.uzleuven.ihe.service.scp;
 
+import be.uzleuven.ihe.service.utils.MultipartRelatedReader;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.net.*;
-import org.dcm4che3.net.pdu.AAssociateRQ;
-import org.dcm4che3.net.pdu.PresentationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,9 +15,12 @@ import org.springframework.stereotype.Component;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -37,9 +39,11 @@ public class MHDBackedCMoveExecutor {
     private final MADOSCPConfiguration config;
     private final MHDBackedMetadataService metadataService;
     private final DicomCache dicomCache;
+    private final DicomDiskCache dicomDiskCache;
+    private final CStoreAssociationPool associationPool;
 
-    // Thread pool for parallel downloads and C-STORE operations
-    private final ExecutorService downloadExecutor;
+    // Shared scheduler for downloads and C-STORE operations of all C-MOVE requests
+    private final CMoveScheduler scheduler;
 
     private final int maxParallelDownloads;
     private final int maxParallelStores;
@@ -47,26 +51,24 @@ public class MHDBackedCMoveExecutor {
     @Autowired
     public MHDBackedCMoveExecutor(MADOSCPConfiguration config,
                                    MHDBackedMetadataService metadataService,
-                                   DicomCache dicomCache) {
+                                   DicomCache dicomCache,
+                                   DicomDiskCache dicomDiskCache,
+                                   CStoreAssociationPool associationPool,
+                                   CMoveScheduler scheduler) {
         this.config = config;
         this.metadataService = metadataService;
         this.dicomCache = dicomCache;
+        this.dicomDiskCache = dicomDiskCache;
+        this.associationPool = associationPool;
+        this.scheduler = scheduler;
 
-        // Configure thread pools from config (with defaults)
+        // Per-request limits from config (with defaults); global limits live in the scheduler
         this.maxParallelDownloads = config.getMaxParallelDownloads();
         this.maxParallelStores = config.getMaxParallelStores();
 
-        this.downloadExecutor = Executors.newFixedThreadPool(
-            maxParallelDownloads,
-            r -> {
-                Thread t = new Thread(r, "cmove-download");
-                t.setDaemon(true);
-                return t;
-            }
-        );
-
-        LOG.info("C-MOVE Executor initialized: parallel downloads={}, parallel stores={} (using same pool), cache enabled={}",
-                maxParallelDownloads, maxParallelStores, dicomCache != null);
+        LOG.info("C-MOVE Executor initialized: parallel downloads={}, parallel stores={} (per request), cache enabled={}, disk cache enabled={}",
+                maxParallelDownloads, maxParallelStores, dicomCache != null,
+                dicomDiskCache != null && dicomDiskCache.isEnabled());
     }
 
     // ============================================================================
@@ -106,22 +108,42 @@ public class MHDBackedCMoveExecutor {
     }
 
     /**
-     * Represents a downloaded DICOM instance ready to be sent.
+     * A Part-10 instance opened for streaming, positioned at the start of its dataset.
+     * Closing it releases the underlying cache stream or spool file.
      */
-    private static class DicomInstance {
-        final Attributes attributes;
+    private static class InstanceStream implements Closeable {
         final String sopClassUID;
         final String sopInstanceUID;
         final String seriesInstanceUID;
         final String transferSyntax;
-
-        DicomInstance(Attributes attributes, String sopClassUID,
-                      String sopInstanceUID, String seriesInstanceUID, String transferSyntax) {
-            this.attributes = attributes;
-            this.sopClassUID = sopClassUID;
-            this.sopInstanceUID = sopInstanceUID;
-            this.seriesInstanceUID = seriesInstanceUID;
+        final InputStream dataset;
+        private final Closeable resource;
+        private final ReentrantLock closeLock = new ReentrantLock();
+        private boolean closed = false;
+
+        InstanceStream(RetrievalTask task, String transferSyntax, InputStream dataset, Closeable resource) {
+            this.sopClassUID = task.sopClassUID;
+            this.sopInstanceUID = task.sopInstanceUID;
+            this.seriesInstanceUID = task.seriesInstanceUID;
             this.transferSyntax = transferSyntax;
+            this.dataset = dataset;
+            this.resource = resource;
+        }
+
+        @Override
+        public void close() {
+            // A lock rather than a monitor: closing the HTTP stream must not pin a virtual thread
+            closeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                closeQuietly(dataset);
+                closeQuietly(resource);
+            } finally {
+                closeLock.unlock();
+            }
         }
     }
 
@@ -130,15 +152,13 @@ public class MHDBackedCMoveExecutor {
      */
     private static class RetrievalTask {
         final String wadoRsUrl;
-        final int expectedInstanceCount;
         final String sopInstanceUID;
         final String sopClassUID;
         final String seriesInstanceUID;
 
-        RetrievalTask(String url, int count, String sopInstanceUID,
+        RetrievalTask(String url, String sopInstanceUID,
                       String sopClassUID, String seriesInstanceUID) {
             this.wadoRsUrl = url;
-            this.expectedInstanceCount = count;
             this.sopInstanceUID = sopInstanceUID;
             this.sopClassUID = sopClassUID;
             this.seriesInstanceUID = seriesInstanceUID;
@@ -193,28 +213,46 @@ public class MHDBackedCMoveExecutor {
                     .mapToInt(List::size)
                     .sum();
 
-            LOG.info("C-MOVE: {} instance(s) grouped into {} associations (series/SOPClass combinations) for {}",
-                    result.totalInstances, tasksByAssociation.size(), moveDestination);
+            // All SOP Classes of the retrieve are proposed up front on every pooled association
+            Set<String> studySopClasses = new LinkedHashSet<>();
+            for (AssociationKey key : tasksByAssociation.keySet()) {
+                studySopClasses.add(key.sopClassUID);
+            }
+
+            LOG.info("C-MOVE: {} instance(s) grouped into {} series/SOPClass combinations ({} SOP classes) for {}",
+                    result.totalInstances, tasksByAssociation.size(), studySopClasses.size(), moveDestination);
 
             if (progressCallback != null) {
                 progressCallback.onProgress(result.totalInstances, 0, 0, 0);
             }
 
-            // Process each association group
-            for (Map.Entry<AssociationKey, List<RetrievalTask>> entry : tasksByAssociation.entrySet()) {
-                AssociationKey assocKey = entry.getKey();
-                List<RetrievalTask> tasks = entry.getValue();
-
-                LOG.info("C-MOVE: Processing association for series={}, sopClass={}, instances={}",
-                        assocKey.seriesInstanceUID, assocKey.sopClassUID, tasks.size());
-
-                try {
-                    processAssociationGroup(assocKey, tasks, moveDestination, destHost, destPort,
-                            result, completed, failed, cached, progressCallback);
-                } catch (Exception e) {
-                    LOG.error("C-MOVE: Failed to process association group {}: {}", assocKey, e.getMessage());
-                    failed.addAndGet(tasks.size());
-                    result.addWarning("Failed association group " + assocKey + ": " + e.getMessage());
+            // Process the association groups concurrently; their instance tasks share the
+            // scheduler's global limits fairly with other C-MOVE requests
+            try (CMoveScheduler.Session session = scheduler.openSession(moveDestination, maxParallelDownloads, maxParallelStores)) {
+                Map<AssociationKey, Future<?>> groups = new LinkedHashMap<>();
+                for (Map.Entry<AssociationKey, List<RetrievalTask>> entry : tasksByAssociation.entrySet()) {
+                    AssociationKey assocKey = entry.getKey();
+                    List<RetrievalTask> tasks = entry.getValue();
+
+                    LOG.info("C-MOVE: Processing association for series={}, sopClass={}, instances={}",
+                            assocKey.seriesInstanceUID, assocKey.sopClassUID, tasks.size());
+
+                    groups.put(assocKey, scheduler.submitSeries(() -> {
+                        processAssociationGroup(assocKey, tasks, studySopClasses, moveDestination, destHost, destPort,
+                                session, result, completed, failed, cached, progressCallback);
+                        return null;
+                    }));
+                }
+
+                for (Map.Entry<AssociationKey, Future<?>> group : groups.entrySet()) {
+                    try {
+                        group.getValue().get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        LOG.error("C-MOVE: Failed to process association group {}: {}", group.getKey(), cause.getMessage());
+                        failed.addAndGet(tasksByAssociation.get(group.getKey()).size());
+                        result.addWarning("Failed association group " + group.getKey() + ": " + cause.getMessage());
+                    }
                 }
             }
 
@@ -253,25 +291,24 @@ public class MHDBackedCMoveExecutor {
             // Check if specific instance requested
             if (instanceFilter != null && !instanceFilter.isEmpty() && !instanceFilter.equals("*")) {
                 // Find specific instance
-                for (MHDBackedMetadataService.InstanceMetadata inst : series.instances) {
-                    if (inst.sopInstanceUID.equals(instanceFilter)) {
-                        String url = inst.effectiveRetrieveURL;
-                        RetrievalTask task = new RetrievalTask(url, 1, inst.sopInstanceUID,
-                                inst.sopClassUID, series.seriesInstanceUID);
-
-                        AssociationKey key = new AssociationKey(series.seriesInstanceUID, inst.sopClassUID);
-                        tasksByAssociation.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
-                        break;
-                    }
+                int row = series.indexOfInstance(instanceFilter);
+                if (row >= 0) {
+                    MHDBackedMetadataService.InstanceMetadata inst = series.instances.get(row);
+                    String url = inst.getEffectiveRetrieveURL();
+                    RetrievalTask task = new RetrievalTask(url, inst.getSopInstanceUID(),
+                            inst.getSopClassUID(), series.seriesInstanceUID);
+
+                    AssociationKey key = new AssociationKey(series.seriesInstanceUID, inst.getSopClassUID());
+                    tasksByAssociation.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
                 }
             } else {
                 // Retrieve all instances in series, grouped by SOP Class
                 for (MHDBackedMetadataService.InstanceMetadata inst : series.instances) {
-                    String url = inst.effectiveRetrieveURL;
-                    RetrievalTask task = new RetrievalTask(url, 1, inst.sopInstanceUID,
-                            inst.sopClassUID, series.seriesInstanceUID);
+                    String url = inst.getEffectiveRetrieveURL();
+                    RetrievalTask task = new RetrievalTask(url, inst.getSopInstanceUID(),
+                            inst.getSopClassUID(), series.seriesInstanceUID);
 
-                    AssociationKey key = new AssociationKey(series.seriesInstanceUID, inst.sopClassUID);
+                    AssociationKey key = new AssociationKey(series.seriesInstanceUID, inst.getSopClassUID());
                     tasksByAssociation.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
                 }
             }
@@ -282,73 +319,33 @@ public class MHDBackedCMoveExecutor {
 
     /**
      * Process all instances for one association group (series/SOPClass combination).
-     * STREAMING VERSION: Downloads and C-STOREs happen in parallel pipeline.
-     * Uses a bounded blocking queue to prevent memory bloat.
+     * Every instance is spooled from WADO-RS to a local file (or read from the cache)
+     * before its C-STORE, so a slow upstream never holds a shared association. Only the
+     * first instance is opened before the association, because its transfer syntax
+     * drives the negotiation. Downloads and C-STOREs run as tasks of the request's
+     * scheduler session.
      */
     private void processAssociationGroup(AssociationKey assocKey, List<RetrievalTask> tasks,
-                                         String moveDestination, String destHost, int destPort,
-                                         CMoveResult result, AtomicInteger completed,
+                                         Set<String> studySopClasses, String moveDestination, String destHost, int destPort,
+                                         CMoveScheduler.Session session, CMoveResult result, AtomicInteger completed,
                                          AtomicInteger failed, AtomicInteger cached,
                                          CMoveProgressCallback progressCallback) throws Exception {
 
-        // Bounded queue prevents loading all instances into memory
-        // Size = 2x parallel stores to allow prefetching without bloat
-        int queueSize = maxParallelStores * 2;
-        BlockingQueue<DicomInstance> instanceQueue = new LinkedBlockingQueue<>(queueSize);
-
-        // Poison pill to signal download completion
-        DicomInstance POISON_PILL = new DicomInstance(null, null, null, null, null);
-
-        // Start download producer threads
-        ExecutorService downloadPool = Executors.newFixedThreadPool(
-                Math.min(maxParallelDownloads, tasks.size()));
-
-        AtomicInteger downloadedCount = new AtomicInteger(0);
-
-        for (RetrievalTask task : tasks) {
+        // Open the first retrievable instance to determine transfer syntax for negotiation
+        Iterator<RetrievalTask> pending = tasks.iterator();
+        InstanceStream firstInstance = null;
+        int unavailable = 0;
+        while (firstInstance == null && pending.hasNext()) {
+            RetrievalTask task = pending.next();
             LOG.info("Effectively used (XC-)WADO-RS URL {}", task.wadoRsUrl);
-            downloadPool.submit(() -> {
-                try {
-                    DicomInstance instance = downloadInstance(task, cached);
-                    if (instance != null) {
-                        // Block if queue is full - backpressure!
-                        instanceQueue.put(instance);
-                        downloadedCount.incrementAndGet();
-                        LOG.debug("Downloaded {}/{} for series {}",
-                                downloadedCount.get(), tasks.size(), assocKey.seriesInstanceUID);
-                    } else {
-                        failed.incrementAndGet();
-                    }
-                } catch (Exception e) {
-                    LOG.error("Download failed: {}", e.getMessage());
-                    failed.incrementAndGet();
-                }
-            });
-        }
-
-        // Shutdown download pool and send poison pill when done
-        downloadPool.shutdown();
-        new Thread(() -> {
-            try {
-                downloadPool.awaitTermination(5, TimeUnit.MINUTES);
-                instanceQueue.put(POISON_PILL);
-                LOG.info("All downloads complete for series {}", assocKey.seriesInstanceUID);
-            } catch (InterruptedException e) {
-                LOG.error("Download pool interrupted", e);
+            firstInstance = session.submit(() -> openInstance(task, cached)).get();
+            if (firstInstance == null) {
+                unavailable++;
+                failed.incrementAndGet();
             }
-        }, "download-sentinel").start();
-
-        // Wait for first instance to determine transfer syntax for negotiation
-        LOG.debug("Waiting for first instance to determine transfer syntax...");
-        DicomInstance firstInstance = instanceQueue.poll(60, TimeUnit.SECONDS);
-
-        if (firstInstance == null) {
-            LOG.error("Timeout waiting for first instance in series {}", assocKey.seriesInstanceUID);
-            failed.addAndGet(tasks.size());
-            return;
         }
 
-        if (firstInstance == POISON_PILL) {
+        if (firstInstance == null) {
             LOG.warn("No instances downloaded for series {}", assocKey.seriesInstanceUID);
             return;
         }
@@ -358,289 +355,323 @@ public class MHDBackedCMoveExecutor {
         LOG.info("C-MOVE: Detected original transfer syntax: {} for series {}",
                 originalTransferSyntax, assocKey.seriesInstanceUID);
 
-        // Create association for this series/SOPClass
-        Association as = null;
-        Device device = null;
-        ExecutorService executorService = null;
-        ScheduledExecutorService scheduledExecutorService = null;
+        // Borrow a pooled association to the destination for this series/SOPClass
+        CStoreAssociationPool.Lease lease = null;
 
         try {
-            // Create device and association
-            device = new Device("dicompolice-cmove-" + System.currentTimeMillis());
-            Connection conn = new Connection();
-            device.addConnection(conn);
-
-            ApplicationEntity ae = new ApplicationEntity(config.getAeTitle());
-            device.addApplicationEntity(ae);
-            ae.addConnection(conn);
-
-            executorService = Executors.newSingleThreadExecutor();
-            scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-            device.setExecutor(executorService);
-            device.setScheduledExecutor(scheduledExecutorService);
-
-            Connection remote = new Connection();
-            remote.setHostname(destHost);
-            remote.setPort(destPort);
-
-            AAssociateRQ rq = new AAssociateRQ();
-            rq.setCallingAET(config.getAeTitle());
-            rq.setCalledAET(moveDestination);
-
-            // CRITICAL: Negotiate ONLY the original transfer syntax
-            // This eliminates ALL transcoding overhead
-            LOG.info("C-MOVE: Negotiating ONLY original transfer syntax: {}", originalTransferSyntax);
-            rq.addPresentationContext(new PresentationContext(1, assocKey.sopClassUID,
-                    originalTransferSyntax));
-
-            as = ae.connect(remote, rq);
-
-            // Verify the transfer syntax was accepted
-            // We proposed only ONE presentation context (ID=1) with the exact TS
-            // If the association was accepted, check if it's ready for data transfer
-            if (as != null && !as.isReadyForDataTransfer()) {
+            // Each presentation context carries a single transfer syntax, so a reused or new
+            // association only qualifies if it accepted the ORIGINAL one: no transcoding
+            LOG.info("C-MOVE: Requesting association accepting original transfer syntax: {}", originalTransferSyntax);
+            lease = associationPool.acquire(moveDestination, destHost, destPort, studySopClasses,
+                    assocKey.sopClassUID, originalTransferSyntax);
+
+            if (lease == null) {
                 // Association was rejected or not ready
-                LOG.error("C-MOVE: Association not ready for data transfer!");
+                LOG.error("C-MOVE: No association accepting {} / {}", assocKey.sopClassUID, originalTransferSyntax);
                 LOG.error("C-MOVE: Destination likely rejected transfer syntax {}",
                         originalTransferSyntax);
-                failed.addAndGet(tasks.size());
+                failed.addAndGet(tasks.size() - unavailable);
                 result.addWarning("Destination rejected TS " + originalTransferSyntax + " for series " +
                         assocKey.seriesInstanceUID);
                 return;
             }
+            Association as = lease.association();
 
-            // If we got here, association is ready - our single PC was accepted
+            // If we got here, association is ready and accepted our exact SOP Class / TS
 
             LOG.info("C-MOVE: SUCCESS! Destination accepted {}. Streaming {} instances with ZERO transcoding.",
                     originalTransferSyntax, tasks.size());
             LOG.info("C-MOVE: Streaming {} instances (series={}, sopClass={}, TS={})",
                     tasks.size(), assocKey.seriesInstanceUID, assocKey.sopClassUID, originalTransferSyntax);
 
-            // Consumer: Send instances as they arrive from download queue
-            // Use parallel C-STORE operations (up to maxParallelStores)
-            ExecutorService storePool = Executors.newFixedThreadPool(maxParallelStores);
-            List<Future<?>> storeFutures = new ArrayList<>();
-
-            int sent = 0;
-
-            // First, send the instance we already retrieved (used for TS detection)
-            sent++;
-            final Association association = as;
-            Future<?> firstStoreFuture = storePool.submit(() -> {
-                try {
-                    sendInstanceViaAssociation(association, firstInstance);
-                    completed.incrementAndGet();
-
-                    if (progressCallback != null) {
-                        int remaining = result.totalInstances - completed.get() - failed.get();
-                        progressCallback.onProgress(remaining, completed.get(), failed.get(), 0);
-                    }
-                } catch (Exception e) {
-                    LOG.error("C-MOVE: Failed to send instance {}: {}", firstInstance.sopInstanceUID, e.getMessage());
-                    failed.incrementAndGet();
-                    result.addWarning("Failed to send " + firstInstance.sopInstanceUID + ": " + e.getMessage());
-
-                    if (progressCallback != null) {
-                        int remaining = result.totalInstances - completed.get() - failed.get();
-                        progressCallback.onProgress(remaining, completed.get(), failed.get(), 0);
-                    }
-                }
-            });
-            storeFutures.add(firstStoreFuture);
-
-            // Now consume remaining instances from queue
-            while (true) {
-                DicomInstance instance = instanceQueue.poll(30, TimeUnit.SECONDS);
-
-                if (instance == null) {
-                    LOG.warn("C-MOVE: Timeout waiting for instance in queue");
-                    break;
-                }
-
-                if (instance == POISON_PILL) {
-                    LOG.debug("C-MOVE: Received completion signal");
-                    break;
-                }
-
-                sent++;
-
-                // Submit C-STORE in parallel (non-blocking)
-                Future<?> storeFuture = storePool.submit(() -> {
-                    try {
-                        sendInstanceViaAssociation(association, instance);
-                        completed.incrementAndGet();
-
-                        if (progressCallback != null) {
-                            int remaining = result.totalInstances - completed.get() - failed.get();
-                            progressCallback.onProgress(remaining, completed.get(), failed.get(), 0);
-                        }
-                    } catch (Exception e) {
-                        LOG.error("C-MOVE: Failed to send instance {}: {}", instance.sopInstanceUID, e.getMessage());
+            // Each scheduler task spools one instance and then sends it, so the number of
+            // instances in flight is bounded and none is held in memory
+            List<Future<?>> streams = new ArrayList<>();
+            // The association may be shared with other series: track only our own responses
+            Phaser outstanding = new Phaser(1);
+
+            // First, send the instance we already opened (used for TS detection)
+            final InstanceStream first = firstInstance;
+            streams.add(session.submit(() -> {
+                storeAndReport(session, as, first, originalTransferSyntax, outstanding,
+                        result, completed, failed, progressCallback);
+                return null;
+            }));
+
+            while (pending.hasNext()) {
+                RetrievalTask task = pending.next();
+                LOG.info("Effectively used (XC-)WADO-RS URL {}", task.wadoRsUrl);
+                streams.add(session.submit(() -> {
+                    InstanceStream instance = openInstance(task, cached);
+                    if (instance == null) {
                         failed.incrementAndGet();
-                        result.addWarning("Failed to send " + instance.sopInstanceUID + ": " + e.getMessage());
-
-                        if (progressCallback != null) {
-                            int remaining = result.totalInstances - completed.get() - failed.get();
-                            progressCallback.onProgress(remaining, completed.get(), failed.get(), 0);
-                        }
+                        reportProgress(result, completed, failed, progressCallback);
+                        return null;
                     }
-                });
-
-                storeFutures.add(storeFuture);
+                    storeAndReport(session, as, instance, originalTransferSyntax, outstanding,
+                            result, completed, failed, progressCallback);
+                    return null;
+                }));
             }
 
-            LOG.info("C-MOVE: Sent {} instances, waiting for C-STORE confirmations", sent);
+            LOG.info("C-MOVE: Streaming {} instances, waiting for C-STORE confirmations", streams.size());
 
-            // Wait for all C-STORE operations to complete
-            storePool.shutdown();
-            storePool.awaitTermination(2, TimeUnit.MINUTES);
+            // Wait for all downloads and C-STORE operations to complete
+            for (Future<?> stream : streams) {
+                stream.get();
+            }
 
             // Wait for all responses
-            as.waitForOutstandingRSP();
+            try {
+                outstanding.awaitAdvanceInterruptibly(outstanding.arrive(), 2, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                LOG.warn("C-MOVE: Timeout waiting for C-STORE responses for {}", assocKey);
+            }
 
         } finally {
-            if (as != null) {
-                try {
-                    as.release();
-                    LOG.debug("C-MOVE: Released association for {}", assocKey);
-                } catch (Exception e) {
-                    LOG.warn("C-MOVE: Error releasing association: {}", e.getMessage());
-                }
-            }
-            if (executorService != null) {
-                executorService.shutdown();
+            // No-op if it was already streamed
+            firstInstance.close();
+            if (lease != null) {
+                // Returns the association to the pool; it is released after the idle timeout
+                lease.close();
+                LOG.debug("C-MOVE: Returned association for {}", assocKey);
             }
-            if (scheduledExecutorService != null) {
-                scheduledExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * Send one opened instance and update the counters and progress callback.
+     */
+    private void storeAndReport(CMoveScheduler.Session session, Association as, InstanceStream instance,
+                                String negotiatedTransferSyntax, Phaser outstanding, CMoveResult result, AtomicInteger completed, AtomicInteger failed,
+                                CMoveProgressCallback progressCallback) {
+        try (InstanceStream in = instance) {
+            session.acquireStore();
+            try {
+                sendInstanceViaAssociation(as, in, negotiatedTransferSyntax, outstanding);
+            } finally {
+                session.releaseStore();
             }
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            LOG.error("C-MOVE: Failed to send instance {}: {}", instance.sopInstanceUID, e.getMessage());
+            failed.incrementAndGet();
+            result.addWarning("Failed to send " + instance.sopInstanceUID + ": " + e.getMessage());
+        }
+        reportProgress(result, completed, failed, progressCallback);
+    }
+
+    private void reportProgress(CMoveResult result, AtomicInteger completed, AtomicInteger failed,
+                                CMoveProgressCallback progressCallback) {
+        if (progressCallback != null) {
+            int remaining = result.totalInstances - completed.get() - failed.get();
+            progressCallback.onProgress(remaining, completed.get(), failed.get(), 0);
         }
     }
 
 
     /**
-     * Download a DICOM instance from WADO-RS with caching support.
+     * Open a DICOM instance for streaming, from the caches or WADO-RS.
+     * The File Meta Information is consumed; the returned stream starts at the dataset.
+     * Instances fetched from WADO-RS are completely spooled to a local file first (and added
+     * to the caches), so the C-STORE that reads them never waits on the upstream server.
      */
-    private DicomInstance downloadInstance(RetrievalTask task, AtomicInteger cached) {
+    private InstanceStream openInstance(RetrievalTask task, AtomicInteger cached) {
+        InputStream source = null;
+        Closeable resource = null;
+        boolean fromCache = false;
         try {
             // Try to get from cache first
-            byte[] dicomData = null;
             if (dicomCache != null && task.sopInstanceUID != null) {
-                dicomData = dicomCache.get(task.sopInstanceUID);
+                byte[] dicomData = dicomCache.get(task.sopInstanceUID);
                 if (dicomData != null) {
-                    cached.incrementAndGet();
+                    source = new ByteArrayInputStream(dicomData);
                     LOG.debug("C-MOVE: Retrieved {} from cache", task.sopInstanceUID);
                 }
             }
 
-            // Download from WADO-RS if not cached
-            if (dicomData == null) {
-                LOG.debug("C-MOVE: Downloading from {}", task.wadoRsUrl);
-                List<byte[]> dicomFiles = downloadFromWadoRs(task.wadoRsUrl);
+            // Then the disk tier, read straight from the mapped file
+            if (source == null && dicomDiskCache != null && task.sopInstanceUID != null) {
+                source = dicomDiskCache.openStream(task.sopInstanceUID);
+                if (source != null) {
+                    LOG.debug("C-MOVE: Retrieved {} from disk cache", task.sopInstanceUID);
+                }
+            }
 
-                if (dicomFiles.isEmpty()) {
+            if (source != null) {
+                fromCache = true;
+                cached.incrementAndGet();
+            } else {
+                // Download from WADO-RS if not cached
+                LOG.debug("C-MOVE: Downloading from {}", task.wadoRsUrl);
+                HttpURLConnection conn = openWadoRs(task.wadoRsUrl);
+                InputStream body = conn.getInputStream();
+                resource = body;
+                source = openFirstDicomPart(body, conn.getContentType());
+                if (source == null) {
                     LOG.warn("C-MOVE: No DICOM data received from WADO-RS for {}", task.sopInstanceUID);
+                    closeQuietly(resource);
                     return null;
                 }
-
-                dicomData = dicomFiles.get(0);
-
-                // Cache the downloaded data
-                if (dicomCache != null && task.sopInstanceUID != null) {
-                    dicomCache.put(task.sopInstanceUID, dicomData);
-                }
             }
 
-            // Parse DICOM data
+            byte[] fmiBytes = readFileMetaInformation(source);
             Attributes fmi;
-            Attributes attrs;
-            try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(dicomData))) {
+            try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(fmiBytes))) {
                 fmi = dis.readFileMetaInformation();
-                attrs = dis.readDataset();
             }
-
-            String transferSyntax = fmi != null ? fmi.getString(Tag.TransferSyntaxUID) :
+            String transferSyntax = fmi != null ? fmi.getString(Tag.TransferSyntaxUID, UID.ImplicitVRLittleEndian) :
                     UID.ImplicitVRLittleEndian;
 
-            return new DicomInstance(attrs, task.sopClassUID, task.sopInstanceUID,
-                    task.seriesInstanceUID, transferSyntax);
+            if (fromCache) {
+                return new InstanceStream(task, transferSyntax, source, null);
+            }
+            try {
+                return spool(task, transferSyntax, fmiBytes, source);
+            } finally {
+                closeQuietly(resource);
+            }
 
         } catch (Exception e) {
             LOG.error("C-MOVE: Failed to download instance {}: {}", task.sopInstanceUID, e.getMessage());
+            closeQuietly(source);
+            closeQuietly(resource);
             return null;
         }
     }
 
     /**
-     * Send a DICOM instance using an existing association.
+     * Download the rest of an instance to a temporary file and offer it to both cache tiers.
+     * The heap tier only keeps a copy while the instance fits its maximum size.
+     *
+     * @return The instance, reading its dataset from the spool file; closing it deletes the file
+     *         unless the disk tier took it over
      */
-    private void sendInstanceViaAssociation(Association as, DicomInstance instance) throws Exception {
-        final int[] responseStatus = {-1};
-
-        DataWriter dataWriter = (out, tsuid) -> {
-            try (DicomOutputStream dos = new DicomOutputStream(out, tsuid)) {
-                dos.writeDataset(null, instance.attributes);
-            }
-        };
-
-        as.cstore(instance.sopClassUID, instance.sopInstanceUID, 0, dataWriter,
-                instance.transferSyntax,
-                new DimseRSPHandler(as.nextMessageID()) {
-                    @Override
-                    public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
-                        responseStatus[0] = cmd.getInt(Tag.Status, -1);
-                        if (responseStatus[0] != Status.Success) {
-                            LOG.warn("C-STORE response status for {}: 0x{}",
-                                    instance.sopInstanceUID, Integer.toHexString(responseStatus[0]));
+    private InstanceStream spool(RetrievalTask task, String transferSyntax, byte[] fmiBytes,
+                                 InputStream dataset) throws IOException {
+        Path file = dicomDiskCache != null ? dicomDiskCache.createSpoolFile("cmove-")
+                : Files.createTempFile("cmove-", ".dcm");
+        boolean heapEnabled = dicomCache != null && dicomCache.isEnabled() && task.sopInstanceUID != null;
+        long heapLimit = heapEnabled ? dicomCache.getMaxEntryBytes() : 0;
+        ByteArrayOutputStream heapCopy = heapEnabled && fmiBytes.length <= heapLimit ? new ByteArrayOutputStream() : null;
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), STREAM_BUFFER_SIZE)) {
+                out.write(fmiBytes);
+                if (heapCopy != null) {
+                    heapCopy.write(fmiBytes);
+                }
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int len;
+                while ((len = dataset.read(buffer)) > 0) {
+                    out.write(buffer, 0, len);
+                    if (heapCopy != null) {
+                        if (heapCopy.size() + len > heapLimit) {
+                            // Too large for the heap tier, stop buffering it
+                            heapCopy = null;
+                        } else {
+                            heapCopy.write(buffer, 0, len);
                         }
                     }
-                });
+                }
+            }
 
-        // Note: We don't wait here - waitForOutstandingRSP() is called after all instances are sent
+            if (heapCopy != null) {
+                dicomCache.put(task.sopInstanceUID, heapCopy.toByteArray());
+            }
+            InputStream in = new BufferedInputStream(Files.newInputStream(file), STREAM_BUFFER_SIZE);
+            try {
+                in.skipNBytes(fmiBytes.length);
+            } catch (IOException e) {
+                closeQuietly(in);
+                throw e;
+            }
+            // Hand the spool file to the disk tier instead of writing it twice; the open stream keeps
+            // reading it. If it is not taken, closing the instance deletes it.
+            if (dicomDiskCache != null && task.sopInstanceUID != null) {
+                dicomDiskCache.move(task.sopInstanceUID, file);
+            }
+            return new InstanceStream(task, transferSyntax, in, () -> Files.deleteIfExists(file));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
     }
 
-
     /**
-     * Build WADO-RS URL for a specific instance.
+     * Send a DICOM instance using an existing association.
+     * When the instance is already encoded in the negotiated transfer syntax its dataset
+     * bytes are copied through unchanged; otherwise it is decoded and re-encoded.
      */
-    /*
-    private String buildInstanceUrl(String studyUID,
-                                     MHDBackedMetadataService.SeriesMetadata series,
-                                     MHDBackedMetadataService.InstanceMetadata instance) {
-        // Use instance-level URL if present
-        if (instance.effectiveRetrieveURL != null && !instance.effectiveRetrieveURL.isEmpty()) {
-            return instance.effectiveRetrieveURL;
-        }
+    private void sendInstanceViaAssociation(Association as, InstanceStream instance,
+                                            String negotiatedTransferSyntax, Phaser outstanding) throws Exception {
+        final int[] responseStatus = {-1};
 
-        // Use series URL as base and append instance
-        String baseUrl = series.effectiveRetrieveURL;
-        if (baseUrl != null && !baseUrl.isEmpty()) {
-            return baseUrl + "/instances/" + instance.sopInstanceUID;
+        DataWriter dataWriter;
+        if (instance.transferSyntax.equals(negotiatedTransferSyntax)
+                && !UID.DeflatedExplicitVRLittleEndian.equals(negotiatedTransferSyntax)) {
+            dataWriter = (out, tsuid) -> {
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int len;
+                while ((len = instance.dataset.read(buffer)) > 0) {
+                    out.write(buffer, 0, len);
+                }
+            };
+        } else {
+            if (!isNativeTransferSyntax(instance.transferSyntax) || !isNativeTransferSyntax(negotiatedTransferSyntax)) {
+                throw new IOException("Transfer syntax " + instance.transferSyntax +
+                        " does not match negotiated " + negotiatedTransferSyntax);
+            }
+            Attributes attrs;
+            try (DicomInputStream dis = new DicomInputStream(instance.dataset, instance.transferSyntax)) {
+                attrs = dis.readDataset();
+            }
+            dataWriter = (out, tsuid) -> {
+                try (DicomOutputStream dos = new DicomOutputStream(out, tsuid)) {
+                    dos.writeDataset(null, attrs);
+                }
+            };
         }
 
-        // Fall back to configured base URL
+        outstanding.register();
+        try {
+            as.cstore(instance.sopClassUID, instance.sopInstanceUID, 0, dataWriter,
+                    negotiatedTransferSyntax,
+                    new DimseRSPHandler(as.nextMessageID()) {
+                        @Override
+                        public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+                            super.onDimseRSP(as, cmd, data);
+                            responseStatus[0] = cmd.getInt(Tag.Status, -1);
+                            if (responseStatus[0] != Status.Success) {
+                                LOG.warn("C-STORE response status for {}: 0x{}",
+                                        instance.sopInstanceUID, Integer.toHexString(responseStatus[0]));
+                            }
+                            outstanding.arriveAndDeregister();
+                        }
 
-        return config.getWadoRsBaseUrl() + "/" + studyUID +
-                "/series/" + series.seriesInstanceUID +
-                "/instances/" + instance.sopInstanceUID;
+                        @Override
+                        public void onClose(Association as) {
+                            super.onClose(as);
+                            outstanding.arriveAndDeregister();
+                        }
+                    });
+        } catch (Exception e) {
+            outstanding.arriveAndDeregister();
+            throw e;
+        }
 
+        // Note: We don't wait here - the group awaits its outstanding responses after all instances are sent
     }
 
-     */
-
-
-    private int countTotalInstances(List<RetrievalTask> tasks) {
-        return tasks.stream().mapToInt(t -> t.expectedInstanceCount).sum();
-    }
 
     private static final int MAX_REDIRECTS = 5;
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     /**
-     * Download DICOM files from WADO-RS endpoint.
+     * Open a WADO-RS request and return the connection once a 200 response is received.
      * Follows HTTP 301/302 redirects (including cross-protocol e.g. HTTP→HTTPS).
      */
-    private List<byte[]> downloadFromWadoRs(String wadoUrl) throws IOException {
-        List<byte[]> dicomFiles = new ArrayList<>();
-
+    private HttpURLConnection openWadoRs(String wadoUrl) throws IOException {
         String currentUrl = wadoUrl;
         int redirectCount = 0;
 
@@ -684,237 +715,87 @@ public class MHDBackedCMoveExecutor {
             throw new IOException("WADO-RS too many redirects (>" + MAX_REDIRECTS + ") starting from URL: " + wadoUrl);
         }
 
-        String contentType = conn.getContentType();
-        LOG.debug("WADO-RS Content-Type: {}", contentType);
-
-        try (InputStream is = conn.getInputStream()) {
-            if (contentType != null && contentType.contains("multipart")) {
-                dicomFiles = parseMultipartResponse(is, contentType);
-            } else if (contentType != null && contentType.contains("application/zip")) {
-                dicomFiles = parseZipResponse(is);
-            } else {
-                // Single DICOM file
-                byte[] data = readAllBytes(is);
-                if (data.length > 0 && isDicomData(data)) {
-                    dicomFiles.add(data);
-                }
-            }
-        }
-
-        LOG.debug("WADO-RS returned {} DICOM files", dicomFiles.size());
-        return dicomFiles;
+        LOG.debug("WADO-RS Content-Type: {}", conn.getContentType());
+        return conn;
     }
 
     /**
-     * Parse multipart DICOM response from WADO-RS.
+     * Position a WADO-RS response body at its first DICOM object.
+     * Handles multipart/related, ZIP and single-object responses without buffering them.
+     *
+     * @return Stream over the first Part-10 object, or null if the response holds none
      */
-    private List<byte[]> parseMultipartResponse(InputStream is, String contentType) throws IOException {
-        List<byte[]> parts = new ArrayList<>();
-
-        String boundary = extractBoundary(contentType);
-        if (boundary == null) {
-            LOG.warn("Could not extract boundary from Content-Type: {}", contentType);
-            byte[] data = readAllBytes(is);
-            if (data.length > 0 && isDicomData(data)) {
-                parts.add(data);
-            }
-            return parts;
-        }
-
-        byte[] boundaryBytes = ("--" + boundary).getBytes();
-        byte[] allData = readAllBytes(is);
-
-        int start = 0;
-        while (start < allData.length) {
-            int boundaryStart = indexOf(allData, boundaryBytes, start);
-            if (boundaryStart < 0) break;
-
-            int headersEnd = indexOf(allData, "\r\n\r\n".getBytes(), boundaryStart);
-            if (headersEnd < 0) break;
-
-            int dataStart = headersEnd + 4;
-
-            int nextBoundary = indexOf(allData, boundaryBytes, dataStart);
-            int dataEnd = (nextBoundary > 0) ? nextBoundary - 2 : allData.length;
-
-            if (dataEnd > dataStart) {
-                byte[] partData = new byte[dataEnd - dataStart];
-                System.arraycopy(allData, dataStart, partData, 0, partData.length);
-
-                if (isDicomData(partData)) {
-                    parts.add(partData);
-                }
+    private InputStream openFirstDicomPart(InputStream is, String contentType) throws IOException {
+        if (contentType != null && contentType.contains("multipart")) {
+            String boundary = MultipartRelatedReader.extractBoundary(contentType);
+            if (boundary == null) {
+                LOG.warn("Could not extract boundary from Content-Type: {}", contentType);
+                return is;
             }
-
-            start = nextBoundary > 0 ? nextBoundary : allData.length;
-        }
-
-        return parts;
-    }
-
-    /**
-     * Parse ZIP response from WADO-RS.
-     */
-    private List<byte[]> parseZipResponse(InputStream is) throws IOException {
-        List<byte[]> files = new ArrayList<>();
-
-        try (ZipInputStream zis = new ZipInputStream(is)) {
+            MultipartRelatedReader.Part part = new MultipartRelatedReader(is, boundary).nextPart();
+            return part != null ? part.getBody() : null;
+        } else if (contentType != null && contentType.contains("application/zip")) {
+            ZipInputStream zis = new ZipInputStream(is);
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (!entry.isDirectory()) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    byte[] buffer = new byte[8192];
-                    int len;
-                    while ((len = zis.read(buffer)) > 0) {
-                        baos.write(buffer, 0, len);
-                    }
-                    byte[] data = baos.toByteArray();
-                    if (isDicomData(data)) {
-                        files.add(data);
-                    }
+                    return zis;
                 }
-                zis.closeEntry();
             }
+            return null;
         }
-
-        return files;
+        // Single DICOM file
+        return is;
     }
 
     /**
-     * Send a DICOM file to the move destination using C-STORE.
+     * Read the preamble, DICM prefix and File Meta Information group, leaving the stream
+     * at the first dataset byte. Relies on the mandatory (0002,0000) group length.
+     *
+     * @return The raw bytes read, a valid Part-10 header on its own
      */
-    private void sendToDestination(byte[] dicomData, String destAeTitle,
-                                    String destHost, int destPort) throws Exception {
-        Attributes attrs;
-        Attributes fmi;
-        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(dicomData))) {
-            fmi = dis.readFileMetaInformation();
-            attrs = dis.readDataset();
+    private static byte[] readFileMetaInformation(InputStream in) throws IOException {
+        // Preamble (128) + "DICM" (4) + (0002,0000) UL element (12)
+        byte[] header = in.readNBytes(144);
+        if (header.length < 144 || header[128] != 'D' || header[129] != 'I'
+                || header[130] != 'C' || header[131] != 'M') {
+            throw new IOException("Not a DICOM Part-10 object");
         }
-
-        String sopClassUID = attrs.getString(Tag.SOPClassUID);
-        String sopInstanceUID = attrs.getString(Tag.SOPInstanceUID);
-        String transferSyntax = fmi != null ? fmi.getString(Tag.TransferSyntaxUID) : UID.ImplicitVRLittleEndian;
-
-        if (sopClassUID == null || sopInstanceUID == null) {
-            throw new IOException("Missing SOP Class UID or SOP Instance UID in DICOM data");
+        if (header[132] != 0x02 || header[133] != 0x00 || header[134] != 0x00 || header[135] != 0x00) {
+            throw new IOException("Missing File Meta Information Group Length");
         }
-
-        Device device = new Device("dicompolice-cmove");
-        Connection conn = new Connection();
-        device.addConnection(conn);
-
-        ApplicationEntity ae = new ApplicationEntity(config.getAeTitle());
-        device.addApplicationEntity(ae);
-        ae.addConnection(conn);
-
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-        device.setExecutor(executorService);
-        device.setScheduledExecutor(scheduledExecutorService);
-
-        try {
-            Connection remote = new Connection();
-            remote.setHostname(destHost);
-            remote.setPort(destPort);
-
-            AAssociateRQ rq = new AAssociateRQ();
-            rq.setCallingAET(config.getAeTitle());
-            rq.setCalledAET(destAeTitle);
-
-            rq.addPresentationContext(new PresentationContext(1, sopClassUID, transferSyntax));
-            if (!transferSyntax.equals(UID.ExplicitVRLittleEndian)) {
-                rq.addPresentationContext(new PresentationContext(3, sopClassUID, UID.ExplicitVRLittleEndian));
-            }
-            if (!transferSyntax.equals(UID.ImplicitVRLittleEndian)) {
-                rq.addPresentationContext(new PresentationContext(5, sopClassUID, UID.ImplicitVRLittleEndian));
-            }
-
-            Association as = ae.connect(remote, rq);
-
-            try {
-                final int[] responseStatus = {-1};
-
-                final Attributes datasetToSend = attrs;
-                DataWriter dataWriter = (out, tsuid) -> {
-                    try (DicomOutputStream dos = new DicomOutputStream(out, tsuid)) {
-                        dos.writeDataset(null, datasetToSend);
-                    }
-                };
-
-                as.cstore(sopClassUID, sopInstanceUID, 0, dataWriter, transferSyntax,
-                        new DimseRSPHandler(as.nextMessageID()) {
-                            @Override
-                            public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
-                                responseStatus[0] = cmd.getInt(Tag.Status, -1);
-                                if (responseStatus[0] != Status.Success) {
-                                    LOG.warn("C-STORE response status: 0x{}", Integer.toHexString(responseStatus[0]));
-                                }
-                            }
-                        });
-
-                as.waitForOutstandingRSP();
-
-                if (responseStatus[0] != Status.Success && responseStatus[0] != -1) {
-                    throw new IOException("C-STORE failed with status: 0x" + Integer.toHexString(responseStatus[0]));
-                }
-
-            } finally {
-                as.release();
-            }
-
-        } finally {
-            executorService.shutdown();
-            scheduledExecutorService.shutdown();
+        int groupLength = (header[140] & 0xFF) | (header[141] & 0xFF) << 8
+                | (header[142] & 0xFF) << 16 | (header[143] & 0xFF) << 24;
+        if (groupLength < 0 || groupLength > 64 * 1024) {
+            throw new IOException("Invalid File Meta Information Group Length: " + groupLength);
+        }
+        byte[] rest = in.readNBytes(groupLength);
+        if (rest.length < groupLength) {
+            throw new IOException("Truncated File Meta Information");
         }
+        byte[] fmiBytes = Arrays.copyOf(header, header.length + groupLength);
+        System.arraycopy(rest, 0, fmiBytes, header.length, groupLength);
+        return fmiBytes;
     }
 
     // Utility methods
 
-    private String extractBoundary(String contentType) {
-        if (contentType == null) return null;
-        String[] parts = contentType.split(";");
-        for (String part : parts) {
-            String trimmed = part.trim();
-            if (trimmed.startsWith("boundary=")) {
-                String boundary = trimmed.substring(9);
-                if (boundary.startsWith("\"") && boundary.endsWith("\"")) {
-                    boundary = boundary.substring(1, boundary.length() - 1);
-                }
-                return boundary;
-            }
-        }
-        return null;
-    }
-
-    private int indexOf(byte[] source, byte[] target, int start) {
-        outer:
-        for (int i = start; i <= source.length - target.length; i++) {
-            for (int j = 0; j < target.length; j++) {
-                if (source[i + j] != target[j]) {
-                    continue outer;
-                }
-            }
-            return i;
-        }
-        return -1;
+    private static boolean isNativeTransferSyntax(String tsuid) {
+        return UID.ImplicitVRLittleEndian.equals(tsuid)
+                || UID.ExplicitVRLittleEndian.equals(tsuid)
+                || UID.ExplicitVRBigEndian.equals(tsuid)
+                || UID.DeflatedExplicitVRLittleEndian.equals(tsuid);
     }
 
-    private byte[] readAllBytes(InputStream is) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        int len;
-        while ((len = is.read(buffer)) > 0) {
-            baos.write(buffer, 0, len);
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
         }
-        return baos.toByteArray();
-    }
-
-    private boolean isDicomData(byte[] data) {
-        if (data == null || data.length < 132) {
-            return false;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.debug("Error closing stream: {}", e.getMessage());
         }
-        return data[128] == 'D' && data[129] == 'I' && data[130] == 'C' && data[131] == 'M';
     }
 
     // ============================================================================
@@ -937,7 +818,7 @@ public class MHDBackedCMoveExecutor {
         public int completedInstances;
         public int failedInstances;
         public String errorMessage;
-        public List<String> warnings = new ArrayList<>();
+        public List<String> warnings = Collections.synchronizedList(new ArrayList<>());
 
         public void addWarning(String warning) {
             warnings.add(warning);
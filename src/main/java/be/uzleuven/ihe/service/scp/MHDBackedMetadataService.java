@@ -2,6 +2,7 @@ package be.uzleuven.ihe.service.scp;
 
 import be.uzleuven.ihe.dicom.constants.CodeConstants;
 import be.uzleuven.ihe.dicom.validator.utils.SRContentTreeUtils;
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
 import be.uzleuven.ihe.service.qido.WadoRsProxyRegistry;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
@@ -17,13 +18,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Metadata service backed by MHD queries and MADO file parsing.
@@ -31,7 +34,8 @@ import java.util.concurrent.TimeUnit;
  * This service acts as an MHD Document Consumer:
  * 1. Queries a remote MHD FHIR server (ITI-67) for study-level metadata
  * 2. Retrieves MADO manifests (ITI-68) for detailed series/instance info
- * 3. Caches parsed MADO data for efficient C-FIND responses
+ * 3. Caches parsed MADO data for efficient C-FIND responses (in memory, and on disk
+ *    through {@link MadoManifestStore} so the cache survives restarts)
  * 4. Provides WADO-RS URLs extracted from MADO for C-MOVE operations
  */
 @Service
@@ -41,18 +45,95 @@ public class MHDBackedMetadataService {
 
     private final MHDFhirClient mhdFhirClient;
     private final WadoRsProxyRegistry proxyRegistry;
+    private final MadoManifestStore manifestStore;
 
-    // In-memory cache for parsed MADO data (Study Instance UID -> StudyMetadata)
-    private final Map<String, StudyMetadata> metadataCache = new ConcurrentHashMap<>();
+    // In-memory cache for parsed MADO data (Study Instance UID -> StudyMetadata),
+    // bounded by study count and by total instance count (the weight of a study)
+    private final SegmentedLruCache<String, StudyMetadata> metadataCache;
 
     // Cache expiration time (e.g., 5 minutes)
-    private static final long CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private final long cacheTtlMs;
+
+    // Entries this close to expiry are still served, but refreshed in the background
+    private static final long REFRESH_AHEAD_MS = TimeUnit.MINUTES.toMillis(1);
+    private final long refreshAheadMs;
+
+    // MHD load counters
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+
+    // MHD fetches in progress (Study Instance UID -> shared result), so concurrent misses
+    // for the same study (QIDO, C-FIND, C-MOVE) share one MHD round trip
+    private final Map<String, CompletableFuture<StudyMetadata>> inFlightLoads = new ConcurrentHashMap<>();
+
+    // Background refresh of entries near expiry (stale-while-revalidate) and expiry sweeps
+    private final ScheduledExecutorService refreshExecutor = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "mado-metadata-refresh");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Autowired
     public MHDBackedMetadataService(MHDFhirClient mhdFhirClient,
+                                     MADOSCPConfiguration config,
+                                     MadoManifestStore manifestStore,
                                      @Autowired(required = false) WadoRsProxyRegistry proxyRegistry) {
         this.mhdFhirClient = mhdFhirClient;
         this.proxyRegistry = proxyRegistry;
+        this.manifestStore = manifestStore;
+
+        this.cacheTtlMs = TimeUnit.MINUTES.toMillis(config.getMetadataCacheTtlMinutes());
+        this.refreshAheadMs = Math.min(REFRESH_AHEAD_MS, cacheTtlMs / 5);
+        this.metadataCache = new SegmentedLruCache<>(config.getMetadataCacheMaxInstances(), cacheTtlMs,
+                MHDBackedMetadataService::countInstances);
+        metadataCache.setMaxEntries(config.getMetadataCacheMaxStudies());
+        InstanceJsonFragments.configure(config.getMetadataJsonCacheMaxMB() * 1024 * 1024, cacheTtlMs);
+
+        long sweepInterval = Math.max(1, config.getMetadataCacheSweepIntervalSeconds());
+        refreshExecutor.scheduleWithFixedDelay(this::sweepExpired, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+
+        LOG.info("Metadata cache configured: maxStudies={}, maxInstances={}, ttl={}min, instanceJson={}MB",
+                config.getMetadataCacheMaxStudies(), config.getMetadataCacheMaxInstances(),
+                config.getMetadataCacheTtlMinutes(), config.getMetadataJsonCacheMaxMB());
+
+        if (manifestStore.isEnabled() && "eager".equalsIgnoreCase(config.getManifestStoreWarmUp())) {
+            int maxStudies = config.getMetadataCacheMaxStudies();
+            refreshExecutor.execute(() -> warmUpFromStore(maxStudies));
+        }
+    }
+
+    /**
+     * Load the most recently stored manifests into the cache. Each entry keeps the time
+     * its manifest was last fetched or validated against MHD, so entries expire and are
+     * revalidated on their own schedule instead of all at once. Manifests older than the
+     * cache TTL would be expired on arrival and are left to the lazy path.
+     */
+    private void warmUpFromStore(int maxStudies) {
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+        for (String studyInstanceUID : manifestStore.listStudies(maxStudies)) {
+            long storedAt = manifestStore.storedAt(studyInstanceUID);
+            if (start - storedAt > cacheTtlMs) {
+                // Most recent first: all remaining manifests are older
+                break;
+            }
+            StudyMetadata metadata = manifestStore.loadUnvalidated(studyInstanceUID);
+            if (metadata == null || metadata.series.isEmpty()) {
+                continue;
+            }
+            try {
+                buildEffectiveRetrieveURLs(metadata, mhdFhirClient);
+            } catch (RuntimeException e) {
+                LOG.debug("Skipping stored manifest for study {}: {}", studyInstanceUID, e.getMessage());
+                continue;
+            }
+            metadata.fetchedAt = Math.min(storedAt, System.currentTimeMillis());
+            metadataCache.put(studyInstanceUID, metadata);
+            loaded++;
+        }
+        LOG.info("Warmed metadata cache with {} stored MADO manifests in {} ms",
+                loaded, System.currentTimeMillis() - start);
     }
 
     // ============================================================================
@@ -233,7 +314,7 @@ public class MHDBackedMetadataService {
         for (SeriesMetadata series : studyMeta.series) {
             if (!isSpecified(seriesInstanceUID) || seriesInstanceUID.equals(series.seriesInstanceUID)) {
                 for (InstanceMetadata instance : series.instances) {
-                    if (!isSpecified(sopInstanceUID) || sopInstanceUID.equals(instance.sopInstanceUID)) {
+                    if (!isSpecified(sopInstanceUID) || sopInstanceUID.equals(instance.getSopInstanceUID())) {
                         results.add(instance);
                     }
                 }
@@ -253,15 +334,97 @@ public class MHDBackedMetadataService {
 
     /**
      * Get study metadata from cache or fetch from MHD.
+     * Concurrent misses for the same study wait for a single fetch; entries close to
+     * expiry are returned immediately and refreshed in the background.
      */
     public StudyMetadata getOrFetchStudyMetadata(String studyInstanceUID) throws IOException {
         // Check cache first
         StudyMetadata cached = metadataCache.get(studyInstanceUID);
         if (cached != null && !isCacheExpired(cached)) {
             LOG.debug("Using cached metadata for study {}", studyInstanceUID);
+            if (isNearExpiry(cached)) {
+                refreshInBackground(studyInstanceUID);
+            }
             return cached;
         }
 
+        CompletableFuture<StudyMetadata> load = new CompletableFuture<>();
+        CompletableFuture<StudyMetadata> shared = inFlightLoads.putIfAbsent(studyInstanceUID, load);
+        if (shared == null) {
+            runLoad(studyInstanceUID, load);
+            shared = load;
+        } else {
+            LOG.debug("Joining in-flight MHD fetch for study {}", studyInstanceUID);
+        }
+        return awaitLoad(studyInstanceUID, shared);
+    }
+
+    /**
+     * Cached metadata of a study, or null. Never fetches and does not count as a cache access.
+     */
+    public StudyMetadata peekStudyMetadata(String studyInstanceUID) {
+        return metadataCache.peek(studyInstanceUID);
+    }
+
+    /**
+     * Start a background refresh unless a fetch for this study is already running.
+     */
+    private void refreshInBackground(String studyInstanceUID) {
+        CompletableFuture<StudyMetadata> load = new CompletableFuture<>();
+        if (inFlightLoads.putIfAbsent(studyInstanceUID, load) != null) {
+            return;
+        }
+        LOG.debug("Refreshing metadata for study {} ahead of expiry", studyInstanceUID);
+        try {
+            refreshExecutor.execute(() -> runLoad(studyInstanceUID, load));
+        } catch (RejectedExecutionException e) {
+            inFlightLoads.remove(studyInstanceUID, load);
+            load.cancel(false);
+        }
+    }
+
+    private void runLoad(String studyInstanceUID, CompletableFuture<StudyMetadata> load) {
+        long start = System.nanoTime();
+        loads.increment();
+        try {
+            load.complete(fetchStudyMetadata(studyInstanceUID));
+        } catch (Throwable t) {
+            LOG.warn("Fetching metadata for study {} failed: {}", studyInstanceUID, t.getMessage());
+            loadFailures.increment();
+            load.completeExceptionally(t);
+        } finally {
+            loadTimeNanos.add(System.nanoTime() - start);
+            inFlightLoads.remove(studyInstanceUID, load);
+        }
+    }
+
+    private StudyMetadata awaitLoad(String studyInstanceUID, CompletableFuture<StudyMetadata> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching metadata for study " + studyInstanceUID);
+        } catch (CancellationException e) {
+            throw new IOException("Metadata fetch cancelled for study " + studyInstanceUID, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Fetch and parse the MADO of a study from MHD and cache the result.
+     */
+    private StudyMetadata fetchStudyMetadata(String studyInstanceUID) throws IOException {
         // TODO: Currently centered on DICOM MADO, extend it to be able to handle the FHIR MADO fully
         //  Currently the FHIR MADO does get fetched in retrieveDocumentRawDICOM but it gets converted to DICOM MADO, a bit ugly, to be improved
 
@@ -276,15 +439,27 @@ public class MHDBackedMetadataService {
             LOG.warn("No DocumentReference found for study {}", studyInstanceUID);
             return null;
         }
-        // then fetch the document itself
-        byte[] madoBytes = mhdFhirClient.retrieveDocumentRawDICOM(madoDocRef);
-        if (madoBytes == null) {
-            LOG.warn("No MADO found for study {}", studyInstanceUID);
-            return null;
-        }
 
-        // Parse DICOM MADO
-        StudyMetadata metadata = parseDICOMMADO(madoBytes, studyInstanceUID);
+        // Reuse the stored manifest if the DocumentReference still points to the same version
+        String fingerprint = MadoManifestStore.fingerprint(madoDocRef);
+        StudyMetadata metadata = manifestStore.load(studyInstanceUID, fingerprint);
+        byte[] madoBytes = null;
+        if (metadata != null) {
+            LOG.info("Using stored MADO manifest for study {}", studyInstanceUID);
+        } else {
+            madoBytes = manifestStore.loadManifest(studyInstanceUID, fingerprint);
+            if (madoBytes == null) {
+                // then fetch the document itself
+                madoBytes = mhdFhirClient.retrieveDocumentRawDICOM(madoDocRef);
+            }
+            if (madoBytes == null) {
+                LOG.warn("No MADO found for study {}", studyInstanceUID);
+                return null;
+            }
+
+            // Parse DICOM MADO
+            metadata = parseDICOMMADO(madoBytes, studyInstanceUID);
+        }
 
         // add some additional non-DICOM metadata to the study
         if (metadata != null) {
@@ -306,6 +481,9 @@ public class MHDBackedMetadataService {
             buildEffectiveRetrieveURLs(metadata, mhdFhirClient);
 
             metadataCache.put(studyInstanceUID, metadata);
+            if (madoBytes != null) {
+                manifestStore.save(studyInstanceUID, fingerprint, madoBytes, metadata);
+            }
         }
 
         return metadata;
@@ -592,17 +770,8 @@ public class MHDBackedMetadataService {
 
                 }
             }
-            // apply to instances
-            for (InstanceMetadata instance : series.instances) {
-                // Construct instance-level Retrieve URL from series-level URL
-                // MADO stores Retrieve URL at series level, so we build instance URL by appending /instances/{sopUID}
-                //instance.effectiveRetrieveURL = sopItem.getString(Tag.RetrieveURL);  // Check if explicitly present first
-                if (instance.effectiveRetrieveURL == null && series.effectiveRetrieveURL != null && instance.sopInstanceUID != null) {
-                    // Construct: {seriesURL}/instances/{sopInstanceUID}
-                    //instance.effectiveRetrieveURL = series.effectiveRetrieveURL + "/instances/" + instance.sopInstanceUID;
-                    instance.effectiveRetrieveURL = series.effectiveRetrieveURL.replace(series.seriesInstanceUID,series.seriesInstanceUID + "/instances/" + instance.sopInstanceUID);
-                }
-            }
+            // Instance-level URLs are not stored: MADO stores Retrieve URL at series level, and
+            // InstanceMetadata.getEffectiveRetrieveURL() derives {seriesURL}/instances/{sopUID} on demand
 
             // should be the same for all series?
             study.effectiveRetrieveURL = series.effectiveRetrieveURL.split("/series")[0];
@@ -621,15 +790,15 @@ public class MHDBackedMetadataService {
      */
     private InstanceMetadata extractInstanceMetadata(Attributes sopItem, String studyInstanceUID, String seriesInstanceUID, String seriesRetrieveURL) {
         InstanceMetadata instance = new InstanceMetadata();
-        instance.studyInstanceUID = studyInstanceUID;
-        instance.seriesInstanceUID = seriesInstanceUID;
-        instance.sopInstanceUID = sopItem.getString(Tag.ReferencedSOPInstanceUID);
-        instance.sopClassUID = sopItem.getString(Tag.ReferencedSOPClassUID);
+        instance.setStudyInstanceUID(studyInstanceUID);
+        instance.setSeriesInstanceUID(seriesInstanceUID);
+        instance.setSopInstanceUID(sopItem.getString(Tag.ReferencedSOPInstanceUID));
+        instance.setSopClassUID(sopItem.getString(Tag.ReferencedSOPClassUID));
         // the following 4 tags should not be present in a ReferencedSOPSequence
-        instance.instanceNumber = sopItem.getString(Tag.InstanceNumber);
-        instance.numberOfFrames = sopItem.getString(Tag.NumberOfFrames);
-        instance.rows = sopItem.getString(Tag.Rows);
-        instance.columns = sopItem.getString(Tag.Columns);
+        instance.setInstanceNumber(sopItem.getString(Tag.InstanceNumber));
+        instance.setNumberOfFrames(sopItem.getString(Tag.NumberOfFrames));
+        instance.setRows(sopItem.getString(Tag.Rows));
+        instance.setColumns(sopItem.getString(Tag.Columns));
 
         return instance;
     }
@@ -721,13 +890,12 @@ public class MHDBackedMetadataService {
                 image.getSequence(Tag.ContentSequence), CodeConstants.CODE_NUMBER_OF_FRAMES, CodeConstants.SCHEME_DCM, Tag.TextValue);
 
         // Add them to the existing instance metadata (must find the matching instance first)
-        series.instances.stream()
-                .filter(in -> sopInstanceUID.equals(in.sopInstanceUID))
-                .findFirst()
-                .ifPresent(in -> {
-                    in.instanceNumber = instanceNumber;
-                    in.numberOfFrames = numberOfFrames;
-                });
+        int row = series.indexOfInstance(sopInstanceUID);
+        if (row >= 0) {
+            InstanceMetadata in = series.instances.get(row);
+            in.setInstanceNumber(instanceNumber);
+            in.setNumberOfFrames(numberOfFrames);
+        }
     }
 
     // ============================================================================
@@ -927,7 +1095,43 @@ public class MHDBackedMetadataService {
     }
 
     private boolean isCacheExpired(StudyMetadata metadata) {
-        return System.currentTimeMillis() - metadata.fetchedAt > CACHE_TTL_MS;
+        return System.currentTimeMillis() - metadata.fetchedAt > cacheTtlMs;
+    }
+
+    private boolean isNearExpiry(StudyMetadata metadata) {
+        return System.currentTimeMillis() - metadata.fetchedAt > cacheTtlMs - refreshAheadMs;
+    }
+
+    /**
+     * Weight of a cached study: its instance count (at least 1).
+     */
+    private static long countInstances(StudyMetadata study) {
+        long count = 0;
+        for (SeriesMetadata series : study.series) {
+            count += series.instances.size();
+        }
+        return Math.max(1, count);
+    }
+
+    /**
+     * Drop expired studies and DocumentReferences that were never requested again.
+     */
+    private void sweepExpired() {
+        try {
+            int studies = metadataCache.cleanUp();
+            InstanceJsonFragments.cleanUp();
+            int docRefs = mhdFhirClient.cleanUpDocumentReferenceCache();
+            if (studies > 0 || docRefs > 0) {
+                LOG.debug("Cache sweep removed {} studies and {} DocumentReferences", studies, docRefs);
+            }
+        } catch (Exception e) {
+            LOG.warn("Cache sweep failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
     }
 
     /**
@@ -935,6 +1139,7 @@ public class MHDBackedMetadataService {
      */
     public void clearCache() {
         metadataCache.clear();
+        InstanceJsonFragments.clear();
         LOG.info("Metadata cache cleared");
     }
 
@@ -945,10 +1150,47 @@ public class MHDBackedMetadataService {
         return metadataCache.size();
     }
 
+    /**
+     * Metadata and DocumentReference cache counters, including MHD load times.
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> studyStats = metadataCache.statsSnapshot();
+        long loadCount = loads.sum();
+        studyStats.put("loads", loadCount);
+        studyStats.put("loadFailures", loadFailures.sum());
+        studyStats.put("averageLoadMillis", loadCount == 0 ? 0 : loadTimeNanos.sum() / loadCount / 1_000_000);
+        studyStats.put("loadsInFlight", inFlightLoads.size());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("studyMetadata", studyStats);
+        stats.put("instanceJson", InstanceJsonFragments.statsSnapshot());
+        stats.put("documentReferences", mhdFhirClient.getDocumentReferenceCacheStats());
+        return stats;
+    }
+
     // ============================================================================
     // Data Classes
     // ============================================================================
 
+    /**
+     * Serialized DICOM JSON of a study or series (see DICOMJSONWriter). Cached metadata does not
+     * change after it is built, except for the Retrieve URL rewrite of proxy mode, so a fragment
+     * stays valid as long as it was written for the current Retrieve URL.
+     */
+    private static final class JsonFragment {
+        private final String retrieveURL;
+        private final byte[] bytes;
+
+        JsonFragment(String retrieveURL, byte[] bytes) {
+            this.retrieveURL = retrieveURL;
+            this.bytes = bytes;
+        }
+
+        byte[] bytesFor(String retrieveURL) {
+            return Objects.equals(this.retrieveURL, retrieveURL) ? bytes : null;
+        }
+    }
+
     public static class StudyMetadata {
         public String studyInstanceUID;
         public String patientId;
@@ -973,6 +1215,19 @@ public class MHDBackedMetadataService {
         public String effectiveRetrieveURL;
         public String homeCommunityId;  // homeCommunityId necessary for XC-WADO retrieval
         public long fetchedAt;
+        private volatile JsonFragment jsonFragment;
+
+        /**
+         * DICOM JSON of this study as last written for the given Retrieve URL, or null.
+         */
+        public byte[] getJsonFragment(String retrieveURL) {
+            JsonFragment fragment = jsonFragment;
+            return fragment != null ? fragment.bytesFor(retrieveURL) : null;
+        }
+
+        public void setJsonFragment(String retrieveURL, byte[] json) {
+            jsonFragment = new JsonFragment(retrieveURL, json);
+        }
 
         public Attributes toAttributes() {
             Attributes attrs = new Attributes();
@@ -1027,7 +1282,28 @@ public class MHDBackedMetadataService {
         // info about the WADO-RS endpoints
         public String effectiveRetrieveURL;
         public String retrieveLocationUID;
-        public List<InstanceMetadata> instances = new ArrayList<>();
+        /** Columnar storage; elements are views created on access */
+        public final List<InstanceMetadata> instances = new InstanceColumns(this);
+        private volatile JsonFragment jsonFragment;
+
+        /**
+         * DICOM JSON of this series as last written for the given Retrieve URL, or null.
+         */
+        public byte[] getJsonFragment(String retrieveURL) {
+            JsonFragment fragment = jsonFragment;
+            return fragment != null ? fragment.bytesFor(retrieveURL) : null;
+        }
+
+        public void setJsonFragment(String retrieveURL, byte[] json) {
+            jsonFragment = new JsonFragment(retrieveURL, json);
+        }
+
+        /**
+         * Index of the instance with the given SOP Instance UID, or -1.
+         */
+        public int indexOfInstance(String sopInstanceUID) {
+            return ((InstanceColumns) instances).indexOfSopInstanceUID(sopInstanceUID);
+        }
 
         public Attributes toAttributes() {
             Attributes attrs = new Attributes();
@@ -1061,32 +1337,150 @@ public class MHDBackedMetadataService {
         }
     }
 
+    /**
+     * One instance of a series. Instances of a {@link SeriesMetadata} are views onto its
+     * columnar storage ({@link InstanceColumns}); a new InstanceMetadata holds its own
+     * single row until it is added to a series.
+     */
     public static class InstanceMetadata {
-        public String studyInstanceUID;
-        public String seriesInstanceUID;
-        public String sopInstanceUID;
-        public String sopClassUID;
-        public String instanceNumber;
-        public String numberOfFrames;
-        public String rows;
-        public String columns;
-        public String retrieveURL;  // Instance-level WADO-RS URL if present
-        // The final effective URL that can be used for fetching the images,
-        // after processing various DICOM and non-DICOM
-        // info about the WADO-RS endpoints
-        public String effectiveRetrieveURL;
+        private final InstanceColumns store;
+        private final int row;
+
+        public InstanceMetadata() {
+            this.store = new InstanceColumns(null, 1);
+            this.row = store.addRow();
+        }
+
+        InstanceMetadata(InstanceColumns store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        public String getStudyInstanceUID() {
+            return store.studyInstanceUID();
+        }
+
+        public void setStudyInstanceUID(String studyInstanceUID) {
+            store.studyInstanceUID = studyInstanceUID;
+        }
+
+        public String getSeriesInstanceUID() {
+            return store.seriesInstanceUID();
+        }
+
+        public void setSeriesInstanceUID(String seriesInstanceUID) {
+            store.seriesInstanceUID = seriesInstanceUID;
+        }
+
+        public String getSopInstanceUID() {
+            return store.sopInstanceUID(row);
+        }
+
+        public void setSopInstanceUID(String sopInstanceUID) {
+            store.setSopInstanceUID(row, sopInstanceUID);
+        }
+
+        public String getSopClassUID() {
+            return store.sopClassUID(row);
+        }
+
+        public void setSopClassUID(String sopClassUID) {
+            store.setSopClassUID(row, sopClassUID);
+        }
+
+        public String getInstanceNumber() {
+            return store.instanceNumber(row);
+        }
+
+        public void setInstanceNumber(String instanceNumber) {
+            store.setInstanceNumber(row, instanceNumber);
+        }
+
+        public String getNumberOfFrames() {
+            return store.numberOfFrames(row);
+        }
+
+        public void setNumberOfFrames(String numberOfFrames) {
+            store.setNumberOfFrames(row, numberOfFrames);
+        }
+
+        public String getRows() {
+            return store.rows(row);
+        }
+
+        public void setRows(String rows) {
+            store.setRows(row, rows);
+        }
+
+        public String getColumns() {
+            return store.columns(row);
+        }
+
+        public void setColumns(String columns) {
+            store.setColumns(row, columns);
+        }
+
+        /** Instance-level WADO-RS URL if present in the MADO */
+        public String getRetrieveURL() {
+            return store.retrieveURL(row);
+        }
+
+        public void setRetrieveURL(String retrieveURL) {
+            store.setRetrieveURL(row, retrieveURL);
+        }
+
+        /**
+         * The final effective URL that can be used for fetching the image, derived from the
+         * series' effective URL unless one was set explicitly.
+         */
+        public String getEffectiveRetrieveURL() {
+            return store.effectiveRetrieveURL(row);
+        }
+
+        public void setEffectiveRetrieveURL(String effectiveRetrieveURL) {
+            store.setEffectiveRetrieveURL(row, effectiveRetrieveURL);
+        }
+
+        String getExplicitEffectiveRetrieveURL() {
+            return store.explicitEffectiveRetrieveURL(row);
+        }
+
+        /**
+         * DICOM JSON of this instance as last written, or null if it was not written yet
+         * or a field changed since.
+         */
+        public byte[] getJsonFragment() {
+            return store.json(row);
+        }
+
+        public void setJsonFragment(byte[] json) {
+            store.setJson(row, json);
+        }
+
+        void copyFrom(InstanceMetadata other) {
+            setStudyInstanceUID(other.getStudyInstanceUID());
+            setSeriesInstanceUID(other.getSeriesInstanceUID());
+            setSopInstanceUID(other.getSopInstanceUID());
+            setSopClassUID(other.getSopClassUID());
+            setInstanceNumber(other.getInstanceNumber());
+            setNumberOfFrames(other.getNumberOfFrames());
+            setRows(other.getRows());
+            setColumns(other.getColumns());
+            setRetrieveURL(other.getRetrieveURL());
+            setEffectiveRetrieveURL(other.getExplicitEffectiveRetrieveURL());
+        }
 
         public Attributes toAttributes() {
             Attributes attrs = new Attributes();
-            setIfNotNull(attrs, Tag.StudyInstanceUID, VR.UI, studyInstanceUID);
-            setIfNotNull(attrs, Tag.SeriesInstanceUID, VR.UI, seriesInstanceUID);
-            setIfNotNull(attrs, Tag.SOPInstanceUID, VR.UI, sopInstanceUID);
-            setIfNotNull(attrs, Tag.SOPClassUID, VR.UI, sopClassUID);
-            setIfNotNull(attrs, Tag.InstanceNumber, VR.IS, instanceNumber);
-            setIfNotNull(attrs, Tag.NumberOfFrames, VR.IS, numberOfFrames);
-            setIfNotNull(attrs, Tag.Rows, VR.US, rows);
-            setIfNotNull(attrs, Tag.Columns, VR.US, columns);
-            setIfNotNull(attrs, Tag.RetrieveURL, VR.UR, retrieveURL);  // WADO-RS URL from MADO
+            setIfNotNull(attrs, Tag.StudyInstanceUID, VR.UI, getStudyInstanceUID());
+            setIfNotNull(attrs, Tag.SeriesInstanceUID, VR.UI, getSeriesInstanceUID());
+            setIfNotNull(attrs, Tag.SOPInstanceUID, VR.UI, getSopInstanceUID());
+            setIfNotNull(attrs, Tag.SOPClassUID, VR.UI, getSopClassUID());
+            setIfNotNull(attrs, Tag.InstanceNumber, VR.IS, getInstanceNumber());
+            setIfNotNull(attrs, Tag.NumberOfFrames, VR.IS, getNumberOfFrames());
+            setIfNotNull(attrs, Tag.Rows, VR.US, getRows());
+            setIfNotNull(attrs, Tag.Columns, VR.US, getColumns());
+            setIfNotNull(attrs, Tag.RetrieveURL, VR.UR, getRetrieveURL());  // WADO-RS URL from MADO
             return attrs;
         }
 
@@ -1097,8 +1491,9 @@ public class MHDBackedMetadataService {
          * @param seriesUID Series Instance UID
          */
         public void rewriteUrlsToProxy(String localBaseUrl, String studyUID, String seriesUID) {
-            if (retrieveURL != null && sopInstanceUID != null) {
-                retrieveURL = localBaseUrl + "/studies/" + studyUID + "/series/" + seriesUID + "/instances/" + sopInstanceUID;
+            String sopInstanceUID = getSopInstanceUID();
+            if (getRetrieveURL() != null && sopInstanceUID != null) {
+                setRetrieveURL(localBaseUrl + "/studies/" + studyUID + "/series/" + seriesUID + "/instances/" + sopInstanceUID);
             }
         }
 
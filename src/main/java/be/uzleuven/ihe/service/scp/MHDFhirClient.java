@@ -1,5 +1,6 @@
 package be.uzleuven.ihe.service.scp;
 
+import be.uzleuven.ihe.service.cache.SegmentedLruCache;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import org.hl7.fhir.r4.model.*;
@@ -17,7 +18,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.dcm4che3.data.Attributes;
 import be.uzleuven.ihe.dicom.convertor.dicom.FHIRToMADOConverter;
@@ -43,11 +44,16 @@ public class MHDFhirClient {
     private final FHIRToMADOConverter fhirToMADOConverter = new FHIRToMADOConverter();
 
     // Cache: studyInstanceUID -> DocumentReference (populated from broader searches like patient-based)
-    private final Map<String, DocumentReference> docRefCache = new ConcurrentHashMap<>();
+    // Bounded by entry count, entries expire after the configured TTL
+    private final SegmentedLruCache<String, DocumentReference> docRefCache;
 
     public MHDFhirClient(@Value("${mado.scp.mhd-fhir-base-url}") String mhdBaseUrl,
                          @Value("${mhd.home-community-id}") String localHomeCommunityID,
-                         @Value("${mhd.xc-wado-gateway}") String xcWadoGateway) {
+                         @Value("${mhd.xc-wado-gateway}") String xcWadoGateway,
+                         @Value("${mado.scp.docref-cache-max-entries:10000}") long docRefCacheMaxEntries,
+                         @Value("${mado.scp.docref-cache-ttl-minutes:60}") long docRefCacheTtlMinutes) {
+        this.docRefCache = new SegmentedLruCache<>(docRefCacheMaxEntries,
+                TimeUnit.MINUTES.toMillis(docRefCacheTtlMinutes), docRef -> 1L);
         this.mhdBaseUrl = mhdBaseUrl;
         this.localHomeCommunityID = localHomeCommunityID;
         this.xcWadoGateway = xcWadoGateway;
@@ -306,6 +312,20 @@ public class MHDFhirClient {
         return docRefCache.get(studyInstanceUid);
     }
 
+    /**
+     * Drop expired cached DocumentReferences.
+     */
+    public int cleanUpDocumentReferenceCache() {
+        return docRefCache.cleanUp();
+    }
+
+    /**
+     * DocumentReference cache counters, for monitoring.
+     */
+    public Map<String, Object> getDocumentReferenceCacheStats() {
+        return docRefCache.statsSnapshot();
+    }
+
     /**
      * Extract Study Instance UID from a DocumentReference.
      * Looks in context.related for identifier with type coding code "110180" (Study Instance UID),
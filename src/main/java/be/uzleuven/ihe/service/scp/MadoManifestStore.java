@@ -0,0 +1,536 @@
+package be.uzleuven.ihe.service.scp;
+
+import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent store of fetched MADO manifests, so the SCP does not have to download
+ * and parse every manifest again after a restart.
+ *
+ * Each study is kept as two files in {@code mado.scp.manifest-store-directory}:
+ * <ul>
+ *   <li>{@code <studyUID>.mado} - the MADO Part-10 bytes as retrieved from MHD</li>
+ *   <li>{@code <studyUID>.idx} - a compact binary index: the DocumentReference
+ *       fingerprint followed by the parsed {@link MHDBackedMetadataService.StudyMetadata}</li>
+ * </ul>
+ * A stored manifest is only used when the fingerprint (id, version, lastUpdated and
+ * attachment size/hash) of the current DocumentReference matches the stored one.
+ * Effective retrieve URLs are not stored; they depend on configuration and are
+ * rebuilt after loading.
+ *
+ * The modification time of the index file records when the manifest was last fetched or
+ * validated against MHD. Studies not used within {@code manifest-store-max-age-days} are
+ * removed, and the least recently used ones go first when the store exceeds
+ * {@code manifest-store-max-size-mb}.
+ */
+@Component
+public class MadoManifestStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MadoManifestStore.class);
+
+    private static final String MANIFEST_SUFFIX = ".mado";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int INDEX_MAGIC = 0x4D41444F; // "MADO"
+    /** Bump when the layout of the metadata section changes */
+    private static final int INDEX_VERSION = 1;
+
+    /** The store is pruned every this many saves */
+    private static final int PRUNE_INTERVAL = 64;
+
+    private final MADOSCPConfiguration config;
+    private volatile Path directory;
+    private final AtomicInteger saves = new AtomicInteger();
+    private final ReentrantLock pruneLock = new ReentrantLock();
+
+    @Autowired
+    public MadoManifestStore(MADOSCPConfiguration config) {
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isManifestStoreEnabled()) {
+            LOG.info("MADO manifest store disabled");
+            return;
+        }
+        try {
+            Path dir = Paths.get(config.getManifestStoreDirectory()).toAbsolutePath();
+            Files.createDirectories(dir);
+            deleteTempFiles(dir);
+            this.directory = dir;
+            prune();
+            LOG.info("MADO manifest store: dir={}, studies={}, maxSize={}MB, maxAge={}d", dir,
+                    listStudies(Integer.MAX_VALUE).size(), config.getManifestStoreMaxSizeMb(),
+                    config.getManifestStoreMaxAgeDays());
+        } catch (IOException e) {
+            LOG.error("MADO manifest store disabled, cannot use directory {}: {}",
+                    config.getManifestStoreDirectory(), e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Identify the version of the manifest a DocumentReference points to.
+     *
+     * @return The fingerprint, or null if the DocumentReference carries nothing to compare
+     */
+    public static String fingerprint(DocumentReference docRef) {
+        if (docRef == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        boolean versioned = false;
+        if (docRef.hasIdElement()) {
+            sb.append(docRef.getIdElement().getIdPart());
+        }
+        sb.append('|');
+        if (docRef.hasMeta()) {
+            if (docRef.getMeta().hasVersionId()) {
+                sb.append(docRef.getMeta().getVersionId());
+                versioned = true;
+            }
+            sb.append('|');
+            if (docRef.getMeta().hasLastUpdated()) {
+                sb.append(docRef.getMeta().getLastUpdated().getTime());
+                versioned = true;
+            }
+        }
+        for (DocumentReference.DocumentReferenceContentComponent content : docRef.getContent()) {
+            Attachment attachment = content.getAttachment();
+            sb.append('|');
+            if (attachment.hasSize()) {
+                sb.append(attachment.getSize());
+                versioned = true;
+            }
+            sb.append('|');
+            if (attachment.hasHash()) {
+                sb.append(attachment.getHashElement().getValueAsString());
+                versioned = true;
+            }
+        }
+        return versioned ? sb.toString() : null;
+    }
+
+    /**
+     * Load the parsed metadata of a study if it was stored for this fingerprint.
+     *
+     * @return The metadata, or null if absent, stale, unreadable or written by another format version
+     */
+    public MHDBackedMetadataService.StudyMetadata load(String studyInstanceUID, String fingerprint) {
+        Stored stored = read(studyInstanceUID, true);
+        if (stored == null || fingerprint == null || !fingerprint.equals(stored.fingerprint)) {
+            return null;
+        }
+        touch(studyInstanceUID);
+        return stored.metadata;
+    }
+
+    /**
+     * Load the raw MADO bytes of a study if they were stored for this fingerprint.
+     * Used to re-parse manifests whose index was written by another format version.
+     */
+    public byte[] loadManifest(String studyInstanceUID, String fingerprint) {
+        Stored stored = read(studyInstanceUID, false);
+        if (stored == null || fingerprint == null || !fingerprint.equals(stored.fingerprint)) {
+            return null;
+        }
+        touch(studyInstanceUID);
+        try {
+            return Files.readAllBytes(directory.resolve(studyInstanceUID + MANIFEST_SUFFIX));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * When the stored manifest of a study was last fetched or validated against MHD.
+     *
+     * @return Epoch milliseconds, or 0 if the study is not stored
+     */
+    public long storedAt(String studyInstanceUID) {
+        Path dir = directory;
+        if (dir == null || !isSafeKey(studyInstanceUID)) {
+            return 0;
+        }
+        return lastModified(dir.resolve(studyInstanceUID + INDEX_SUFFIX));
+    }
+
+    /**
+     * Load the parsed metadata of a study without checking freshness, for warm-up.
+     */
+    public MHDBackedMetadataService.StudyMetadata loadUnvalidated(String studyInstanceUID) {
+        Stored stored = read(studyInstanceUID, true);
+        return stored != null ? stored.metadata : null;
+    }
+
+    /**
+     * Persist a fetched manifest and its parsed metadata. Failures are logged, not thrown.
+     */
+    public void save(String studyInstanceUID, String fingerprint, byte[] madoBytes,
+                     MHDBackedMetadataService.StudyMetadata metadata) {
+        Path dir = directory;
+        if (dir == null || fingerprint == null || !isSafeKey(studyInstanceUID)) {
+            return;
+        }
+        try {
+            if (madoBytes != null) {
+                writeAtomically(dir.resolve(studyInstanceUID + MANIFEST_SUFFIX), out -> out.write(madoBytes));
+            }
+            writeAtomically(dir.resolve(studyInstanceUID + INDEX_SUFFIX), out -> {
+                DataOutputStream dos = new DataOutputStream(out);
+                dos.writeInt(INDEX_MAGIC);
+                dos.writeUTF(fingerprint);
+                dos.writeInt(INDEX_VERSION);
+                writeStudy(dos, metadata);
+                dos.flush();
+            });
+            LOG.debug("Stored MADO manifest for study {}", studyInstanceUID);
+        } catch (IOException e) {
+            LOG.warn("Could not store MADO manifest for study {}: {}", studyInstanceUID, e.getMessage());
+        }
+        if (saves.incrementAndGet() % PRUNE_INTERVAL == 0) {
+            prune();
+        }
+    }
+
+    /**
+     * Remove studies not used within the maximum age, then the least recently used ones
+     * until the store fits its maximum size. Skipped if another thread is already pruning.
+     */
+    public void prune() {
+        Path dir = directory;
+        if (dir == null || !pruneLock.tryLock()) {
+            return;
+        }
+        try {
+            List<StoredStudy> studies = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path index : (Iterable<Path>) files::iterator) {
+                    String name = index.getFileName().toString();
+                    if (!name.endsWith(INDEX_SUFFIX)) {
+                        continue;
+                    }
+                    String studyInstanceUID = name.substring(0, name.length() - INDEX_SUFFIX.length());
+                    studies.add(new StoredStudy(studyInstanceUID, lastModified(index),
+                            size(index) + size(dir.resolve(studyInstanceUID + MANIFEST_SUFFIX))));
+                }
+            }
+
+            long totalBytes = studies.stream().mapToLong(s -> s.bytes).sum();
+            long maxBytes = config.getManifestStoreMaxSizeMb() * 1024 * 1024;
+            long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(config.getManifestStoreMaxAgeDays());
+
+            // Least recently used first
+            studies.sort(Comparator.comparingLong(s -> s.lastUsed));
+            int removed = 0;
+            for (StoredStudy study : studies) {
+                if (study.lastUsed >= oldest && totalBytes <= maxBytes) {
+                    break;
+                }
+                // The index goes first, so a half removed study is never loaded
+                deleteQuietly(dir.resolve(study.studyInstanceUID + INDEX_SUFFIX));
+                deleteQuietly(dir.resolve(study.studyInstanceUID + MANIFEST_SUFFIX));
+                totalBytes -= study.bytes;
+                removed++;
+            }
+            if (removed > 0) {
+                LOG.info("Removed {} MADO manifests from the store ({} MB left)", removed, totalBytes / (1024 * 1024));
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not prune MADO manifest store: {}", e.getMessage());
+        } finally {
+            pruneLock.unlock();
+        }
+    }
+
+    /**
+     * Study Instance UIDs in the store, most recently written first.
+     */
+    public List<String> listStudies(int max) {
+        Path dir = directory;
+        if (dir == null) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(p -> p.getFileName().toString().endsWith(INDEX_SUFFIX))
+                    .sorted(Comparator.comparingLong(MadoManifestStore::lastModified).reversed())
+                    .limit(max)
+                    .map(p -> {
+                        String name = p.getFileName().toString();
+                        return name.substring(0, name.length() - INDEX_SUFFIX.length());
+                    })
+                    .filter(MadoManifestStore::isSafeKey)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.warn("Could not list MADO manifest store: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // ============================================================================
+    // Index format
+    // ============================================================================
+
+    private static class StoredStudy {
+        final String studyInstanceUID;
+        final long lastUsed;
+        final long bytes;
+
+        StoredStudy(String studyInstanceUID, long lastUsed, long bytes) {
+            this.studyInstanceUID = studyInstanceUID;
+            this.lastUsed = lastUsed;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Stored {
+        final String fingerprint;
+        final MHDBackedMetadataService.StudyMetadata metadata;
+
+        Stored(String fingerprint, MHDBackedMetadataService.StudyMetadata metadata) {
+            this.fingerprint = fingerprint;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Read an index file. With {@code withMetadata} false only the header is read.
+     */
+    private Stored read(String studyInstanceUID, boolean withMetadata) {
+        Path dir = directory;
+        if (dir == null || !isSafeKey(studyInstanceUID)) {
+            return null;
+        }
+        Path file = dir.resolve(studyInstanceUID + INDEX_SUFFIX);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                return null;
+            }
+            String fingerprint = in.readUTF();
+            if (!withMetadata) {
+                return new Stored(fingerprint, null);
+            }
+            if (in.readInt() != INDEX_VERSION) {
+                return null;
+            }
+            return new Stored(fingerprint, readStudy(in));
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable MADO index {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeStudy(DataOutputStream out, MHDBackedMetadataService.StudyMetadata study)
+            throws IOException {
+        writeString(out, study.studyInstanceUID);
+        writeString(out, study.patientId);
+        writeString(out, study.patientName);
+        writeString(out, study.patientBirthDate);
+        writeString(out, study.patientSex);
+        writeString(out, study.studyDate);
+        writeString(out, study.studyTime);
+        writeString(out, study.studyDescription);
+        writeString(out, study.studyID);
+        writeString(out, study.accessionNumber);
+        writeString(out, study.referringPhysicianName);
+        writeString(out, study.institutionName);
+        writeString(out, study.modalitiesInStudy);
+        out.writeInt(study.numberOfStudyRelatedSeries);
+        out.writeInt(study.numberOfStudyRelatedInstances);
+        writeString(out, study.retrieveURL);
+        writeString(out, study.homeCommunityId);
+
+        out.writeInt(study.series.size());
+        for (MHDBackedMetadataService.SeriesMetadata series : study.series) {
+            writeString(out, series.seriesInstanceUID);
+            writeString(out, series.modality);
+            writeString(out, series.seriesNumber);
+            writeString(out, series.seriesDescription);
+            writeString(out, series.retrieveURL);
+            writeString(out, series.retrieveLocationUID);
+
+            out.writeInt(series.instances.size());
+            for (MHDBackedMetadataService.InstanceMetadata instance : series.instances) {
+                writeString(out, instance.getSopInstanceUID());
+                writeString(out, instance.getSopClassUID());
+                writeString(out, instance.getInstanceNumber());
+                writeString(out, instance.getNumberOfFrames());
+                writeString(out, instance.getRows());
+                writeString(out, instance.getColumns());
+                writeString(out, instance.getRetrieveURL());
+            }
+        }
+    }
+
+    private static MHDBackedMetadataService.StudyMetadata readStudy(DataInputStream in) throws IOException {
+        MHDBackedMetadataService.StudyMetadata study = new MHDBackedMetadataService.StudyMetadata();
+        study.studyInstanceUID = readString(in);
+        study.patientId = readString(in);
+        study.patientName = readString(in);
+        study.patientBirthDate = readString(in);
+        study.patientSex = readString(in);
+        study.studyDate = readString(in);
+        study.studyTime = readString(in);
+        study.studyDescription = readString(in);
+        study.studyID = readString(in);
+        study.accessionNumber = readString(in);
+        study.referringPhysicianName = readString(in);
+        study.institutionName = readString(in);
+        study.modalitiesInStudy = readString(in);
+        study.numberOfStudyRelatedSeries = in.readInt();
+        study.numberOfStudyRelatedInstances = in.readInt();
+        study.retrieveURL = readString(in);
+        study.homeCommunityId = readString(in);
+
+        int seriesCount = in.readInt();
+        for (int s = 0; s < seriesCount; s++) {
+            MHDBackedMetadataService.SeriesMetadata series = new MHDBackedMetadataService.SeriesMetadata();
+            series.studyInstanceUID = study.studyInstanceUID;
+            series.seriesInstanceUID = readString(in);
+            series.modality = readString(in);
+            series.seriesNumber = readString(in);
+            series.seriesDescription = readString(in);
+            series.retrieveURL = readString(in);
+            series.retrieveLocationUID = readString(in);
+
+            int instanceCount = in.readInt();
+            for (int i = 0; i < instanceCount; i++) {
+                MHDBackedMetadataService.InstanceMetadata instance = new MHDBackedMetadataService.InstanceMetadata();
+                instance.setSopInstanceUID(readString(in));
+                instance.setSopClassUID(readString(in));
+                instance.setInstanceNumber(readString(in));
+                instance.setNumberOfFrames(readString(in));
+                instance.setRows(readString(in));
+                instance.setColumns(readString(in));
+                instance.setRetrieveURL(readString(in));
+                series.instances.add(instance);
+            }
+            study.series.add(series);
+        }
+        return study;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ============================================================================
+    // File helpers
+    // ============================================================================
+
+    private interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void writeAtomically(Path target, StreamWriter writer) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            writer.write(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTempFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .forEach(MadoManifestStore::deleteQuietly);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Mark a stored study as used now, for the age limit and the LRU order.
+     */
+    private void touch(String studyInstanceUID) {
+        Path dir = directory;
+        if (dir == null) {
+            return;
+        }
+        try {
+            Files.setLastModifiedTime(dir.resolve(studyInstanceUID + INDEX_SUFFIX),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.debug("Could not touch MADO index of study {}: {}", studyInstanceUID, e.getMessage());
+        }
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Study Instance UIDs become file names: allow only UID characters.
+     */
+    private static boolean isSafeKey(String studyInstanceUID) {
+        if (studyInstanceUID == null || studyInstanceUID.isEmpty() || studyInstanceUID.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < studyInstanceUID.length(); i++) {
+            char c = studyInstanceUID.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
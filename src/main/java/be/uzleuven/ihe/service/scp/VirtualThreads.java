@@ -0,0 +1,111 @@
+package be.uzleuven.ihe.service.scp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the SCP and C-MOVE pipeline, on virtual or platform threads.
+ *
+ * Virtual threads need a Java 21 runtime. The default build still targets Java 17, so
+ * the virtual thread API is looked up reflectively; on an older runtime the virtual
+ * mode (mado.scp.virtual-threads) falls back to daemon platform threads with a warning.
+ */
+final class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method perTask = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            // Runtime older than Java 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = perTask;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Thread factory producing threads named {@code prefix-N}.
+     *
+     * @param virtual Use virtual threads if the runtime supports them
+     */
+    static ThreadFactory factory(String prefix, boolean virtual) {
+        if (virtual && isSupported()) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                builder = BUILDER_NAME.invoke(builder, prefix + "-", 1L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Virtual threads unavailable, using platform threads for {}: {}", prefix, e.getMessage());
+            }
+        } else if (virtual) {
+            LOG.warn("Virtual threads require Java 21 (running {}), using platform threads for {}",
+                    System.getProperty("java.version"), prefix);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Unbounded executor starting a thread per task (virtual) or reusing idle ones (platform).
+     * Callers bound the concurrency themselves, typically with a semaphore.
+     */
+    static ExecutorService newExecutor(String prefix, boolean virtual) {
+        ThreadFactory threadFactory = factory(prefix, virtual);
+        if (virtual && isSupported()) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Thread-per-task executor unavailable for {}: {}", prefix, e.getMessage());
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Executor for tasks that block for most of their life: a thread per task (virtual),
+     * or a fixed pool of {@code maxThreads} platform threads with a queue in front.
+     */
+    static ExecutorService newBoundedExecutor(String prefix, boolean virtual, int maxThreads) {
+        if (virtual && isSupported()) {
+            return newExecutor(prefix, true);
+        }
+        return Executors.newFixedThreadPool(Math.max(1, maxThreads), factory(prefix, false));
+    }
+}
@@ -0,0 +1,335 @@
+package be.uzleuven.ihe.service.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming reader for multipart/related bodies (RFC 2046), as returned by WADO-RS.
+ *
+ * The underlying stream is read through a fixed sliding buffer and each part is
+ * exposed as an InputStream that ends at the next delimiter, so parts of any size
+ * are processed with bounded memory. Delimiters are located with Boyer-Moore-Horspool,
+ * and each buffer region is scanned at most once.
+ *
+ * A part's stream is only valid until the next call to {@link #nextPart()}.
+ */
+public class MultipartRelatedReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LINE = 8192;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final int[] skipTable;
+
+    private final byte[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    /** Buffer index of the next delimiter, or -1 if not located yet. */
+    private int delimiterIndex = -1;
+    /** Buffer index before which no delimiter can start (already scanned). */
+    private int scannedUpTo = 0;
+
+    private PartInputStream currentPart;
+    private boolean started = false;
+    private boolean finished = false;
+
+    public MultipartRelatedReader(InputStream in, String boundary) {
+        this(in, boundary, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MultipartRelatedReader(InputStream in, String boundary, int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buf = new byte[Math.max(bufferSize, delimiter.length * 4)];
+        this.skipTable = buildSkipTable(delimiter);
+
+        // The first delimiter need not be preceded by CRLF; pretend it is.
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Extract the boundary parameter from a multipart Content-Type header.
+     *
+     * @return The unquoted boundary, or null if absent
+     */
+    public static String extractBoundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String boundary = trimmed.substring(9).trim();
+                if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advance to the next part, discarding whatever is left of the current one.
+     *
+     * @return The next part, or null after the close delimiter or end of stream
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        if (!started) {
+            // Skip the preamble
+            started = true;
+            new PartInputStream().drain();
+        } else if (currentPart != null) {
+            currentPart.drain();
+        }
+        currentPart = null;
+
+        if (!fill(2)) {
+            finished = true;
+            return null;
+        }
+        if (buf[pos] == '-' && buf[pos + 1] == '-') {
+            // Close delimiter
+            finished = true;
+            return null;
+        }
+
+        // Rest of the delimiter line (transport padding) then the part headers
+        readLine();
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            finished = true;
+            return null;
+        }
+
+        currentPart = new PartInputStream();
+        return new Part(Collections.unmodifiableMap(headers), currentPart);
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        in.close();
+    }
+
+    // ============================================================================
+    // Buffer management
+    // ============================================================================
+
+    /**
+     * Ensure at least {@code n} unread bytes are buffered, compacting and reading as needed.
+     *
+     * @return false if the stream ended before {@code n} bytes were available
+     */
+    private boolean fill(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            int remaining = limit - pos;
+            System.arraycopy(buf, pos, buf, 0, remaining);
+            if (delimiterIndex >= 0) {
+                delimiterIndex -= pos;
+            }
+            scannedUpTo = Math.max(0, scannedUpTo - pos);
+            pos = 0;
+            limit = remaining;
+        }
+        while (limit - pos < n && !eof) {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - pos >= n;
+    }
+
+    /**
+     * Locate the next delimiter in the buffered data using Boyer-Moore-Horspool.
+     * Regions that were already searched are not scanned again.
+     */
+    private void scanForDelimiter() {
+        if (delimiterIndex >= 0) {
+            return;
+        }
+        int m = delimiter.length;
+        int i = Math.max(scannedUpTo, pos);
+        while (i + m <= limit) {
+            int j = m - 1;
+            while (j >= 0 && buf[i + j] == delimiter[j]) {
+                j--;
+            }
+            if (j < 0) {
+                delimiterIndex = i;
+                return;
+            }
+            i += skipTable[buf[i + m - 1] & 0xFF];
+        }
+        scannedUpTo = i;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (!fill(1)) {
+                return sb.length() > 0 ? sb.toString() : null;
+            }
+            byte b = buf[pos++];
+            if (b == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_HEADER_LINE) {
+                throw new IOException("Multipart header line too long");
+            }
+            sb.append((char) (b & 0xFF));
+        }
+    }
+
+    private static int[] buildSkipTable(byte[] pattern) {
+        int[] table = new int[256];
+        Arrays.fill(table, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            table[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        return table;
+    }
+
+    // ============================================================================
+    // Parts
+    // ============================================================================
+
+    /**
+     * One body part: lower-cased header names and a stream over its content.
+     */
+    public static class Part {
+        private final Map<String, String> headers;
+        private final InputStream body;
+
+        Part(Map<String, String> headers, InputStream body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public String getContentType() {
+            return headers.get("content-type");
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Stream over the bytes up to (not including) the next delimiter.
+     */
+    private class PartInputStream extends InputStream {
+        private boolean ended = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            int available = availableInBuffer();
+            if (available == 0 && delimiterIndex == pos) {
+                // Reached the delimiter: consume it and end this part
+                pos += delimiter.length;
+                delimiterIndex = -1;
+                scannedUpTo = pos;
+                ended = true;
+                return -1;
+            }
+            if (available == 0) {
+                // Missing close delimiter: treat end of stream as end of part
+                pos = limit;
+                ended = true;
+                return -1;
+            }
+
+            int n = Math.min(len, available);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            if (ended) {
+                return 0;
+            }
+            scanForDelimiter();
+            int safe = delimiterIndex >= 0 ? delimiterIndex : limit - delimiter.length + 1;
+            return Math.max(0, safe - pos);
+        }
+
+        /**
+         * Bytes that can be handed out without risking a delimiter straddling the buffer end.
+         */
+        private int availableInBuffer() throws IOException {
+            scanForDelimiter();
+            if (delimiterIndex < 0 && !eof && limit - pos < buf.length / 2) {
+                fill(buf.length / 2);
+                scanForDelimiter();
+            }
+            if (delimiterIndex >= 0) {
+                return delimiterIndex - pos;
+            }
+            if (eof) {
+                return limit - pos;
+            }
+            return Math.max(0, limit - pos - delimiter.length + 1);
+        }
+
+        void drain() throws IOException {
+            byte[] skip = new byte[8192];
+            while (read(skip, 0, skip.length) >= 0) {
+                // discard
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package be.uzleuven.ihe.service.utils;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for controllers that answer with a {@link StreamingResponseBody}, such as the WADO proxies.
+ */
+public final class StreamingResponses {
+
+    private StreamingResponses() {
+        // Utility class - no instantiation
+    }
+
+    /**
+     * Plain-text (UTF-8) response, used for errors of streaming endpoints.
+     */
+    public static ResponseEntity<StreamingResponseBody> textResponse(HttpStatus status, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(bytes));
+    }
+}